@@ -0,0 +1,602 @@
+package com.indeed.proctor.common;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.common.model.TestType;
+import com.indeed.proctor.webapp.util.threads.LogOnUncaughtExceptionHandler;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs identifiers through the hashing and allocation ranges of a test, to see how they actually spread across
+ * buckets rather than only checking that the ranges add up.
+ *
+ * Identifiers are hashed like proctor's hash chooser does: the MD5 of the salt followed by the identifier, read
+ * as a big endian int, falls into the range whose cumulative share of the int space covers it. The hashing is
+ * repeated here so it can run over primitive arrays. Before its first simulation, a simulator runs a fixed set of
+ * identifiers through both its hashing and the proctor chooser on the classpath, and refuses to simulate if they
+ * disagree. Allocation rules are not evaluated, every allocation is simulated as if its rule matched.
+ *
+ * Tests with the same salt hash each identifier to the same value, so the simulation also reports the joint
+ * distribution of this test's buckets with theirs. Those use the last allocation of each test, which is the one
+ * without a rule in a well formed definition.
+ *
+ * All simulations share one pool of threads. Synthetic identifiers are split into one chunk per thread. Uploaded
+ * identifiers are hashed in batches as they are read, with a few batches in flight per simulation, so an upload
+ * is never held in memory as a whole. Each chunk or batch counts into primitive arrays that are summed at the end.
+ */
+public class AllocationSimulator {
+    /** Bucket name reported for identifiers that fall outside of every range */
+    public static final String UNALLOCATED = "(unallocated)";
+
+    private static final byte[] SYNTHETIC_PREFIX = "sim".getBytes(Charsets.UTF_8);
+    private static final double INT_SPACE = 4294967296.0;
+    private static final int BATCH_SIZE = 10000;
+    private static final String HASHING_CHECK_TEST = "simulator_hashing_check";
+
+    private final int parallelism;
+    private final ThreadPoolExecutor executor;
+    private volatile boolean hashingChecked = false;
+
+    /**
+     * @param threads threads shared by every simulation of this simulator
+     */
+    public AllocationSimulator(final int threads) {
+        Preconditions.checkArgument(threads > 0, "threads > 0");
+        this.parallelism = threads;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                                               new ArrayBlockingQueue<Runnable>(4 * threads),
+                                               new ThreadFactoryBuilder()
+                                                       .setNameFormat("proctor-allocation-simulator-Thread-%d")
+                                                       .setDaemon(true)
+                                                       .setUncaughtExceptionHandler(new LogOnUncaughtExceptionHandler())
+                                                       .build(),
+                                               new RejectedExecutionHandler() {
+                                                   @Override
+                                                   public void rejectedExecution(final Runnable task, final ThreadPoolExecutor executor) {
+                                                       if (executor.isShutdown()) {
+                                                           throw new RejectedExecutionException("The allocation simulator is shut down");
+                                                       }
+                                                       // a full queue makes the submitting job count its own batch, so concurrent simulations never grow it
+                                                       task.run();
+                                                   }
+                                               });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Simulates synthetic identifiers.
+     *
+     * @param others tests sharing the salt of this test, by name
+     * @param count number of synthetic identifiers
+     */
+    public Report simulate(final String testName,
+                           final TestDefinition definition,
+                           final Map<String, TestDefinition> others,
+                           final int count) throws InterruptedException {
+        final Simulation simulation = new Simulation(testName, definition, others);
+        final Deque<Future<Counts>> chunks = new ArrayDeque<Future<Counts>>();
+        try {
+            final int chunkSize = Math.max(1, (count + parallelism - 1) / parallelism);
+            for (int from = 0; from < count; from += chunkSize) {
+                final int start = from;
+                final int end = Math.min(count, from + chunkSize);
+                chunks.add(executor.submit(new Callable<Counts>() {
+                    @Override
+                    public Counts call() {
+                        return simulation.count(null, start, end);
+                    }
+                }));
+            }
+            return simulation.report(sum(chunks, new Counts(simulation.layout, simulation.otherLayouts)), count);
+        } finally {
+            cancel(chunks);
+        }
+    }
+
+    /**
+     * Simulates identifiers as they are read, hashing them in batches.
+     *
+     * @param others tests sharing the salt of this test, by name
+     * @param identifiers read once; stops the simulation when it has no more identifiers
+     */
+    public Report simulate(final String testName,
+                           final TestDefinition definition,
+                           final Map<String, TestDefinition> others,
+                           final Iterator<String> identifiers) throws InterruptedException {
+        final Simulation simulation = new Simulation(testName, definition, others);
+        final Deque<Future<Counts>> batches = new ArrayDeque<Future<Counts>>();
+        final Counts counts = new Counts(simulation.layout, simulation.otherLayouts);
+        int total = 0;
+        try {
+            while (identifiers.hasNext()) {
+                final byte[][] batch = new byte[BATCH_SIZE][];
+                int size = 0;
+                while (size < BATCH_SIZE && identifiers.hasNext()) {
+                    batch[size++] = identifiers.next().getBytes(Charsets.UTF_8);
+                }
+                total += size;
+                final int end = size;
+                batches.add(executor.submit(new Callable<Counts>() {
+                    @Override
+                    public Counts call() {
+                        return simulation.count(batch, 0, end);
+                    }
+                }));
+                // bounds the identifiers held by this simulation to a few batches per thread
+                if (batches.size() >= 2 * parallelism) {
+                    counts.add(get(batches.poll()));
+                }
+            }
+            return simulation.report(sum(batches, counts), total);
+        } finally {
+            cancel(batches);
+        }
+    }
+
+    /* adds the counts of the pending futures, removing them as they complete */
+    private static Counts sum(final Deque<Future<Counts>> pending, final Counts counts) throws InterruptedException {
+        while (!pending.isEmpty()) {
+            counts.add(get(pending.peek()));
+            pending.poll();
+        }
+        return counts;
+    }
+
+    private static Counts get(final Future<Counts> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException("Allocation simulation failed", e.getCause());
+        }
+    }
+
+    private static void cancel(final Deque<Future<Counts>> pending) {
+        for (final Future<Counts> future : pending) {
+            future.cancel(true);
+        }
+    }
+
+    /* compares the hashing with proctor's chooser once, before the first simulation */
+    private void checkHashing() {
+        if (hashingChecked) {
+            return;
+        }
+        final TestDefinition definition = new TestDefinition();
+        definition.setVersion("1");
+        definition.setTestType(TestType.USER);
+        definition.setSalt(HASHING_CHECK_TEST);
+        definition.setBuckets(Lists.newArrayList(new TestBucket("inactive", -1, "inactive"),
+                                                 new TestBucket("control", 0, "control"),
+                                                 new TestBucket("test", 1, "test")));
+        definition.setAllocations(Lists.newArrayList(new Allocation(null, Lists.newArrayList(new Range(-1, .1), new Range(0, .45), new Range(1, .45)))));
+        final TestMatrixVersion matrix = new TestMatrixVersion();
+        matrix.setVersion("1");
+        matrix.setAuthor(HASHING_CHECK_TEST);
+        matrix.setPublished(new Date());
+        matrix.setTestMatrixDefinition(new TestMatrixDefinition(ImmutableMap.of(HASHING_CHECK_TEST, definition)));
+        final Proctor proctor = Proctor.construct(ConsumableArtifacts.convert(matrix), ProctorLoadResult.emptyResult(), RuleEvaluator.FUNCTION_MAPPER);
+
+        final Layout layout = new Layout(definition);
+        final byte[] salt = definition.getSalt().getBytes(Charsets.UTF_8);
+        final MessageDigest md5 = md5();
+        final List<String> identifiers = Lists.newArrayList("", "0", "été", "a,b");
+        for (int i = 0; i < 100; i++) {
+            identifiers.add("user" + i);
+        }
+        for (final String identifier : identifiers) {
+            final byte[] bytes = identifier.getBytes(Charsets.UTF_8);
+            final TestBucket expected = proctor.determineTestGroups(new Identifiers(TestType.USER, identifier),
+                                                                    Collections.<String, Object>emptyMap(),
+                                                                    Collections.<String, Integer>emptyMap()).getBuckets().get(HASHING_CHECK_TEST);
+            final String simulated = layout.slotName(layout.slot(0, hash(md5, salt, bytes, bytes.length)));
+            if (!simulated.equals(expected == null ? UNALLOCATED : expected.getName())) {
+                throw new IllegalStateException(String.format("The simulated hashing puts '%s' in %s, proctor's chooser in %s; simulations would be wrong",
+                                                              identifier, simulated, expected == null ? UNALLOCATED : expected.getName()));
+            }
+        }
+        hashingChecked = true;
+    }
+
+    /**
+     * One simulation: the layouts of the test and of the tests sharing its salt.
+     */
+    private class Simulation {
+        private final String testName;
+        private final String saltValue;
+        private final byte[] salt;
+        private final Layout layout;
+        private final List<String> otherNames = Lists.newArrayList();
+        private final List<Layout> otherLayouts = Lists.newArrayList();
+
+        private Simulation(final String testName, final TestDefinition definition, final Map<String, TestDefinition> others) {
+            this.testName = testName;
+            this.layout = new Layout(definition);
+            Preconditions.checkArgument(layout.cutoffs.length > 0, "Test " + testName + " has no allocations");
+            for (final Map.Entry<String, TestDefinition> other : others.entrySet()) {
+                final Layout otherLayout;
+                try {
+                    otherLayout = new Layout(other.getValue());
+                } catch (final IllegalArgumentException e) {
+                    // the other test's own validation reports it, it does not make this test's simulation wrong
+                    continue;
+                }
+                if (otherLayout.cutoffs.length > 0) {
+                    otherNames.add(other.getKey());
+                    otherLayouts.add(otherLayout);
+                }
+            }
+            this.saltValue = definition.getSalt();
+            this.salt = Strings.nullToEmpty(saltValue).getBytes(Charsets.UTF_8);
+            checkHashing();
+        }
+
+        /* synthetic identifiers from to to if uploaded is null, uploaded[from] to uploaded[to] otherwise */
+        private Counts count(/* @Nullable */ final byte[][] uploaded, final int from, final int to) {
+            final MessageDigest md5 = md5();
+            final Counts counts = new Counts(layout, otherLayouts);
+            final int slots = layout.slots();
+            final int defaultAllocation = layout.cutoffs.length - 1;
+            final byte[] buffer = new byte[SYNTHETIC_PREFIX.length + 20];
+            System.arraycopy(SYNTHETIC_PREFIX, 0, buffer, 0, SYNTHETIC_PREFIX.length);
+
+            for (int i = from; i < to; i++) {
+                final int hash = uploaded != null
+                        ? hash(md5, salt, uploaded[i], uploaded[i].length)
+                        : hash(md5, salt, buffer, writeDigits(i, buffer, SYNTHETIC_PREFIX.length));
+                int defaultSlot = -1;
+                for (int a = 0; a < layout.cutoffs.length; a++) {
+                    final int slot = layout.slot(a, hash);
+                    counts.allocations[a * slots + slot]++;
+                    if (a == defaultAllocation) {
+                        defaultSlot = slot;
+                    }
+                }
+                for (int o = 0; o < otherLayouts.size(); o++) {
+                    final Layout other = otherLayouts.get(o);
+                    final int otherSlot = other.slot(other.cutoffs.length - 1, hash);
+                    counts.joint[o][defaultSlot * other.slots() + otherSlot]++;
+                }
+            }
+            return counts;
+        }
+
+        private Report report(final Counts counts, final int total) {
+            return new Report(testName, saltValue, total, layout, counts, otherNames, otherLayouts);
+        }
+    }
+
+    private static int hash(final MessageDigest md5, final byte[] salt, final byte[] identifier, final int length) {
+        md5.update(salt);
+        md5.update(identifier, 0, length);
+        return toInt(md5.digest());
+    }
+
+    /* writes the decimal digits of value at offset, returns the end of the identifier */
+    private static int writeDigits(final int value, final byte[] buffer, final int offset) {
+        if (value == 0) {
+            buffer[offset] = '0';
+            return offset + 1;
+        }
+        int length = 0;
+        for (int v = value; v > 0; v /= 10) {
+            length++;
+        }
+        int v = value;
+        for (int i = offset + length - 1; i >= offset; i--) {
+            buffer[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        return offset + length;
+    }
+
+    private static int toInt(final byte[] digest) {
+        return ((digest[0] & 0xFF) << 24) | ((digest[1] & 0xFF) << 16) | ((digest[2] & 0xFF) << 8) | (digest[3] & 0xFF);
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    /**
+     * Buckets of a definition and the ranges of its allocations as cutoffs in the int space.
+     * Slot i is the i-th bucket, the last slot collects hashes not covered by any range.
+     */
+    private static class Layout {
+        private final List<TestBucket> buckets;
+        private final List<String> rules;
+        /* per allocation, the last hash of each range */
+        private final long[][] cutoffs;
+        /* per allocation, the bucket slot of each range */
+        private final int[][] rangeSlots;
+        /* per allocation, the expected share of each slot */
+        private final double[][] expected;
+
+        private Layout(final TestDefinition definition) {
+            this.buckets = definition.getBuckets() == null ? Collections.<TestBucket>emptyList() : ImmutableList.copyOf(definition.getBuckets());
+            final Map<Integer, Integer> slotByValue = Maps.newHashMap();
+            for (int i = 0; i < buckets.size(); i++) {
+                slotByValue.put(buckets.get(i).getValue(), i);
+            }
+            final List<Allocation> allocations = definition.getAllocations() == null ? Collections.<Allocation>emptyList() : definition.getAllocations();
+            this.rules = Lists.newArrayList();
+            this.cutoffs = new long[allocations.size()][];
+            this.rangeSlots = new int[allocations.size()][];
+            this.expected = new double[allocations.size()][buckets.size() + 1];
+            for (int a = 0; a < allocations.size(); a++) {
+                final Allocation allocation = allocations.get(a);
+                rules.add(allocation.getRule());
+                final List<Range> ranges = allocation.getRanges() == null ? Collections.<Range>emptyList() : allocation.getRanges();
+                cutoffs[a] = new long[ranges.size()];
+                rangeSlots[a] = new int[ranges.size()];
+                double cumulative = 0;
+                for (int r = 0; r < ranges.size(); r++) {
+                    final Range range = ranges.get(r);
+                    final Integer slot = slotByValue.get(range.getBucketValue());
+                    if (slot == null) {
+                        throw new IllegalArgumentException("Allocation " + a + " refers to unknown bucket value " + range.getBucketValue());
+                    }
+                    cumulative += range.getLength();
+                    cutoffs[a][r] = Integer.MIN_VALUE + (long) Math.floor(Math.min(cumulative, 1) * INT_SPACE) - 1;
+                    rangeSlots[a][r] = slot;
+                    expected[a][slot] += range.getLength();
+                }
+                expected[a][buckets.size()] = Math.max(0, 1 - cumulative);
+            }
+        }
+
+        private int slots() {
+            return buckets.size() + 1;
+        }
+
+        private int slot(final int allocation, final int hash) {
+            final long[] allocationCutoffs = cutoffs[allocation];
+            for (int r = 0; r < allocationCutoffs.length; r++) {
+                if (hash <= allocationCutoffs[r]) {
+                    return rangeSlots[allocation][r];
+                }
+            }
+            return buckets.size();
+        }
+
+        private String slotName(final int slot) {
+            return slot < buckets.size() ? buckets.get(slot).getName() : UNALLOCATED;
+        }
+    }
+
+    private static class Counts {
+        private final long[] allocations;
+        private final long[][] joint;
+
+        private Counts(final Layout layout, final List<Layout> others) {
+            this.allocations = new long[layout.cutoffs.length * layout.slots()];
+            this.joint = new long[others.size()][];
+            for (int o = 0; o < others.size(); o++) {
+                joint[o] = new long[layout.slots() * others.get(o).slots()];
+            }
+        }
+
+        private void add(final Counts other) {
+            for (int i = 0; i < allocations.length; i++) {
+                allocations[i] += other.allocations[i];
+            }
+            for (int o = 0; o < joint.length; o++) {
+                for (int i = 0; i < joint[o].length; i++) {
+                    joint[o][i] += other.joint[o][i];
+                }
+            }
+        }
+    }
+
+    public static class Report {
+        private final String testName;
+        private final String salt;
+        private final int identifiers;
+        private final List<AllocationResult> allocations;
+        private final List<SaltSharer> saltSharers;
+
+        private Report(final String testName,
+                       final String salt,
+                       final int identifiers,
+                       final Layout layout,
+                       final Counts counts,
+                       final List<String> otherNames,
+                       final List<Layout> others) {
+            this.testName = testName;
+            this.salt = salt;
+            this.identifiers = identifiers;
+            final List<AllocationResult> allocations = Lists.newArrayList();
+            final int slots = layout.slots();
+            for (int a = 0; a < layout.cutoffs.length; a++) {
+                final List<BucketResult> buckets = Lists.newArrayList();
+                for (int slot = 0; slot < slots; slot++) {
+                    final long count = counts.allocations[a * slots + slot];
+                    if (slot < layout.buckets.size() || count > 0 || layout.expected[a][slot] > 0) {
+                        buckets.add(new BucketResult(layout.slotName(slot), layout.expected[a][slot], count, identifiers));
+                    }
+                }
+                allocations.add(new AllocationResult(layout.rules.get(a), buckets));
+            }
+            this.allocations = ImmutableList.copyOf(allocations);
+
+            final List<SaltSharer> saltSharers = Lists.newArrayList();
+            for (int o = 0; o < others.size(); o++) {
+                saltSharers.add(new SaltSharer(otherNames.get(o), layout, others.get(o), counts.joint[o], identifiers));
+            }
+            this.saltSharers = ImmutableList.copyOf(saltSharers);
+        }
+
+        public String getTestName() {
+            return testName;
+        }
+
+        public String getSalt() {
+            return salt;
+        }
+
+        public int getIdentifiers() {
+            return identifiers;
+        }
+
+        public List<AllocationResult> getAllocations() {
+            return allocations;
+        }
+
+        public List<SaltSharer> getSaltSharers() {
+            return saltSharers;
+        }
+    }
+
+    public static class AllocationResult {
+        private final String rule;
+        private final List<BucketResult> buckets;
+
+        private AllocationResult(final String rule, final List<BucketResult> buckets) {
+            this.rule = rule;
+            this.buckets = ImmutableList.copyOf(buckets);
+        }
+
+        // @Nullable
+        public String getRule() {
+            return rule;
+        }
+
+        public List<BucketResult> getBuckets() {
+            return buckets;
+        }
+
+        /**
+         * @return the largest difference between the observed and expected share of a bucket
+         */
+        public double getMaxDeviation() {
+            double max = 0;
+            for (final BucketResult bucket : buckets) {
+                max = Math.max(max, Math.abs(bucket.getObserved() - bucket.getExpected()));
+            }
+            return max;
+        }
+    }
+
+    public static class BucketResult {
+        private final String bucket;
+        private final double expected;
+        private final long count;
+        private final double observed;
+
+        private BucketResult(final String bucket, final double expected, final long count, final int identifiers) {
+            this.bucket = bucket;
+            this.expected = expected;
+            this.count = count;
+            this.observed = identifiers == 0 ? 0 : (double) count / identifiers;
+        }
+
+        public String getBucket() {
+            return bucket;
+        }
+
+        public double getExpected() {
+            return expected;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getObserved() {
+            return observed;
+        }
+    }
+
+    /**
+     * Joint distribution of this test's buckets with the buckets of a test that has the same salt.
+     */
+    public static class SaltSharer {
+        private final String testName;
+        /* this test's bucket -> other test's bucket -> share of identifiers */
+        private final Map<String, Map<String, Double>> joint;
+        private final double maxDependence;
+
+        private SaltSharer(final String testName, final Layout layout, final Layout other, final long[] counts, final int identifiers) {
+            this.testName = testName;
+            final int otherSlots = other.slots();
+            final double[] marginal = new double[layout.slots()];
+            final double[] otherMarginal = new double[otherSlots];
+            final double total = Math.max(1, identifiers);
+            for (int slot = 0; slot < layout.slots(); slot++) {
+                for (int otherSlot = 0; otherSlot < otherSlots; otherSlot++) {
+                    final double share = counts[slot * otherSlots + otherSlot] / total;
+                    marginal[slot] += share;
+                    otherMarginal[otherSlot] += share;
+                }
+            }
+            final Map<String, Map<String, Double>> joint = Maps.newLinkedHashMap();
+            double maxDependence = 0;
+            for (int slot = 0; slot < layout.slots(); slot++) {
+                final Map<String, Double> row = Maps.newLinkedHashMap();
+                for (int otherSlot = 0; otherSlot < otherSlots; otherSlot++) {
+                    final double share = counts[slot * otherSlots + otherSlot] / total;
+                    if (share > 0) {
+                        row.put(other.slotName(otherSlot), share);
+                    }
+                    maxDependence = Math.max(maxDependence, Math.abs(share - marginal[slot] * otherMarginal[otherSlot]));
+                }
+                if (!row.isEmpty()) {
+                    joint.put(layout.slotName(slot), row);
+                }
+            }
+            this.joint = joint;
+            this.maxDependence = maxDependence;
+        }
+
+        public String getTestName() {
+            return testName;
+        }
+
+        public Map<String, Map<String, Double>> getJoint() {
+            return joint;
+        }
+
+        /**
+         * @return the largest difference between the joint share of two buckets and what it would be if the tests
+         * were independent; close to 0 for independent tests
+         */
+        public double getMaxDependence() {
+            return maxDependence;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.indeed.proctor.common;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.indeed.proctor.common.model.Audit;
+import com.indeed.proctor.common.model.ConsumableTestDefinition;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixArtifact;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Same as {@link ProctorUtils#convertToConsumableArtifact(TestMatrixVersion)}, but each test is converted once
+ * per content and version: most tests are identical between the matrices of consecutive revisions and across
+ * branches, so the conversion is done once per content.
+ *
+ * Callers may modify the artifact they get, for example when consolidating it for verification, so every artifact
+ * gets its own copy of the cached conversions; copying is much cheaper than converting again.
+ */
+public class ConsumableArtifacts {
+    private static final int MAX_CACHED_DEFINITIONS = 10000;
+
+    private static final Cache<TestDefinitionFingerprint.Key, ConsumableTestDefinition> CONVERTED = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_DEFINITIONS)
+            .build();
+
+    private ConsumableArtifacts() {
+    }
+
+    public static TestMatrixArtifact convert(final TestMatrixVersion testMatrixVersion) {
+        final Date published = Preconditions.checkNotNull(testMatrixVersion.getPublished(), "Missing publication date");
+        final Audit audit = new Audit();
+        audit.setVersion(testMatrixVersion.getVersion());
+        audit.setUpdated(published.getTime());
+        audit.setUpdatedBy(testMatrixVersion.getAuthor());
+
+        final Map<String, TestDefinition> definitions = Preconditions.checkNotNull(testMatrixVersion.getTestMatrixDefinition(), "Missing test matrix definition").getTests();
+        final Map<String, ConsumableTestDefinition> tests = Maps.newLinkedHashMap();
+        for (final Map.Entry<String, TestDefinition> entry : definitions.entrySet()) {
+            tests.put(entry.getKey(), convert(entry.getValue()));
+        }
+
+        final TestMatrixArtifact artifact = new TestMatrixArtifact();
+        artifact.setAudit(audit);
+        artifact.setTests(tests);
+        return artifact;
+    }
+
+    private static ConsumableTestDefinition convert(final TestDefinition definition) {
+        try {
+            return TestDefinitions.copyOf(CONVERTED.get(new TestDefinitionFingerprint.Key(definition), new Callable<ConsumableTestDefinition>() {
+                @Override
+                public ConsumableTestDefinition call() {
+                    return ProctorUtils.convertToConsumableTestDefinition(definition);
+                }
+            }));
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException("Failed to convert test definition", e.getCause());
+        }
+    }
+}
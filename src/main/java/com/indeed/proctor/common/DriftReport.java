@@ -0,0 +1,179 @@
+package com.indeed.proctor.common;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.webapp.db.Environment;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * How each test differs between the trunk, qa and production matrices.
+ *
+ * Pairs of definitions with the same {@link TestDefinitionFingerprint} are identical without further comparison,
+ * only the others are compared structurally, to tell allocation-only changes from other changes.
+ */
+public class DriftReport {
+    /* ordered from least to most different */
+    public static enum Status {
+        IDENTICAL, ALLOCATION_ONLY, DIFFERENT, MISSING
+    }
+
+    private final String trunkVersion;
+    private final String qaVersion;
+    private final String productionVersion;
+    private final Map<Status, List<TestDrift>> tests;
+
+    private DriftReport(final String trunkVersion,
+                        final String qaVersion,
+                        final String productionVersion,
+                        final Map<Status, List<TestDrift>> tests) {
+        this.trunkVersion = trunkVersion;
+        this.qaVersion = qaVersion;
+        this.productionVersion = productionVersion;
+        this.tests = tests;
+    }
+
+    public static DriftReport compute(final TestMatrixVersion trunk, final TestMatrixVersion qa, final TestMatrixVersion production) {
+        final Map<String, TestDefinition> trunkTests = getTests(trunk);
+        final Map<String, TestDefinition> qaTests = getTests(qa);
+        final Map<String, TestDefinition> productionTests = getTests(production);
+
+        final Map<Status, List<TestDrift>> tests = new EnumMap<Status, List<TestDrift>>(Status.class);
+        for (final Status status : Status.values()) {
+            tests.put(status, Lists.<TestDrift>newArrayList());
+        }
+        final Set<String> testNames = Sets.newTreeSet();
+        testNames.addAll(trunkTests.keySet());
+        testNames.addAll(qaTests.keySet());
+        testNames.addAll(productionTests.keySet());
+        for (final String testName : testNames) {
+            final Version trunkVersion = Version.of(trunkTests.get(testName));
+            final Version qaVersion = Version.of(qaTests.get(testName));
+            final Version productionVersion = Version.of(productionTests.get(testName));
+
+            final Map<String, Status> comparisons = Maps.newLinkedHashMap();
+            comparisons.put(Environment.WORKING.getName() + "-" + Environment.QA.getName(), compare(trunkVersion, qaVersion));
+            comparisons.put(Environment.QA.getName() + "-" + Environment.PRODUCTION.getName(), compare(qaVersion, productionVersion));
+            comparisons.put(Environment.WORKING.getName() + "-" + Environment.PRODUCTION.getName(), compare(trunkVersion, productionVersion));
+            Status status = Status.IDENTICAL;
+            for (final Status comparison : comparisons.values()) {
+                status = comparison.compareTo(status) > 0 ? comparison : status;
+            }
+            tests.get(status).add(new TestDrift(testName, status, comparisons));
+        }
+        final Map<Status, List<TestDrift>> immutableTests = new EnumMap<Status, List<TestDrift>>(Status.class);
+        for (final Map.Entry<Status, List<TestDrift>> entry : tests.entrySet()) {
+            immutableTests.put(entry.getKey(), ImmutableList.copyOf(entry.getValue()));
+        }
+        return new DriftReport(getVersion(trunk), getVersion(qa), getVersion(production), Collections.unmodifiableMap(immutableTests));
+    }
+
+    /**
+     * @return true if this report was computed from these matrix versions
+     */
+    public boolean isFor(final TestMatrixVersion trunk, final TestMatrixVersion qa, final TestMatrixVersion production) {
+        return Objects.equal(trunkVersion, getVersion(trunk))
+                && Objects.equal(qaVersion, getVersion(qa))
+                && Objects.equal(productionVersion, getVersion(production));
+    }
+
+    public String getTrunkVersion() {
+        return trunkVersion;
+    }
+
+    public String getQaVersion() {
+        return qaVersion;
+    }
+
+    public String getProductionVersion() {
+        return productionVersion;
+    }
+
+    /**
+     * @return tests grouped by how much they differ across the three branches
+     */
+    public Map<Status, List<TestDrift>> getTests() {
+        return tests;
+    }
+
+    private static Status compare(final Version a, final Version b) {
+        if (a == null && b == null) {
+            return Status.IDENTICAL;
+        }
+        if (a == null || b == null) {
+            return Status.MISSING;
+        }
+        if (a.hash.equals(b.hash)) {
+            return Status.IDENTICAL;
+        }
+        final TestDefinitionDiff diff = TestDefinitionDiff.compare(a.definition, b.definition);
+        // any resize counts, ramping a bucket up from 0% is still only an allocation change
+        return diff.isRangeOnlyChange() ? Status.ALLOCATION_ONLY : Status.DIFFERENT;
+    }
+
+    private static Map<String, TestDefinition> getTests(/* @Nullable */ final TestMatrixVersion matrix) {
+        if (matrix == null || matrix.getTestMatrixDefinition() == null) {
+            return Collections.emptyMap();
+        }
+        return matrix.getTestMatrixDefinition().getTests();
+    }
+
+    private static String getVersion(/* @Nullable */ final TestMatrixVersion matrix) {
+        return matrix == null ? null : matrix.getVersion();
+    }
+
+    private static class Version {
+        private final TestDefinition definition;
+        private final HashCode hash;
+
+        private Version(final TestDefinition definition, final HashCode hash) {
+            this.definition = definition;
+            this.hash = hash;
+        }
+
+        // @Nullable
+        private static Version of(/* @Nullable */ final TestDefinition definition) {
+            if (definition == null) {
+                return null;
+            }
+            return new Version(definition, TestDefinitionFingerprint.of(definition));
+        }
+    }
+
+    public static class TestDrift {
+        private final String testName;
+        private final Status status;
+        private final Map<String, Status> comparisons;
+
+        private TestDrift(final String testName, final Status status, final Map<String, Status> comparisons) {
+            this.testName = testName;
+            this.status = status;
+            this.comparisons = comparisons;
+        }
+
+        public String getTestName() {
+            return testName;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return per pair of branches, e.g. "trunk-qa"
+         */
+        public Map<String, Status> getComparisons() {
+            return comparisons;
+        }
+    }
+}
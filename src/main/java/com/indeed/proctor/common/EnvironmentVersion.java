@@ -22,6 +22,9 @@ public class EnvironmentVersion {
     private final Revision production;
     private final String productionEffectiveRevision; // "effective" revision, aka the 'version' number from the TestDefinition on the Production Branch. This should refer to a revision on the TRUNK branch
 
+    // built on first use; every update creates a new EnvironmentVersion and so a new index
+    private volatile RevisionEnvironmentIndex revisionIndex;
+
     public EnvironmentVersion(final String testName,
                               final Revision trunk,
                               final Revision qa,
@@ -99,6 +102,16 @@ public class EnvironmentVersion {
         return productionEffectiveRevision;
     }
 
+    public RevisionEnvironmentIndex getRevisionIndex() {
+        RevisionEnvironmentIndex index = revisionIndex;
+        if (index == null) {
+            // a racing thread may build an identical index, either one can be kept
+            index = new RevisionEnvironmentIndex(this);
+            revisionIndex = index;
+        }
+        return index;
+    }
+
     public String getRevision(final Environment branch) {
         switch (branch) {
             case WORKING:
@@ -16,6 +16,7 @@ import com.indeed.proctor.store.ProctorStore;
 import com.indeed.util.core.DataLoadingTimerTask;
 import org.apache.log4j.Logger;
 
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
@@ -33,6 +34,8 @@ public class ProctorPromoter extends DataLoadingTimerTask {
     final ProctorStore qa;
     final ProctorStore production;
     private volatile ConcurrentMap<String, EnvironmentVersion>  environmentVersions;
+    private final TestSearchIndex searchIndex = new TestSearchIndex();
+    private volatile SaltIndex saltIndex = SaltIndex.build(new EnumMap<Environment, TestMatrixVersion>(Environment.class));
 
     public ProctorPromoter(final ProctorStore trunk,
                            final ProctorStore qa,
@@ -77,6 +80,51 @@ public class ProctorPromoter extends DataLoadingTimerTask {
         }
     }
 
+    /**
+     * Promotes several tests from srcBranch to destBranch. ProctorStore has no multi-test commit, so each test is
+     * still committed separately, but the cached environment versions are refreshed once after all commits.
+     * If a commit fails, the tests committed before it remain promoted and the failure is rethrown.
+     */
+    public void promoteAll(final Environment srcBranch, final Environment destBranch, final List<Promotion> promotions,
+                           final String username, final String password, final Map<String, String> metadata) throws StoreException, TestPromotionException {
+        final Map<String, String> effectiveVersions = Maps.newLinkedHashMap();
+        try {
+            for (final Promotion promotion : promotions) {
+                final String effectiveVersion = commitPromotion(promotion.getTestName(), srcBranch, promotion.getSrcRevision(),
+                                                                destBranch, promotion.getDestRevision(), username, password, metadata);
+                effectiveVersions.put(promotion.getTestName(), effectiveVersion);
+            }
+        } finally {
+            updateTestVersions(destBranch, effectiveVersions);
+        }
+    }
+
+    private void updateTestVersions(final Environment branch,
+                                    final Map<String, String> effectiveVersions) {
+        final ConcurrentMap<String, EnvironmentVersion> versions = this.environmentVersions;
+        if(versions == null || effectiveVersions.isEmpty()) {
+            return;
+        }
+        final ProctorStore store = getStoreFromBranch(branch);
+        final Map<String, EnvironmentVersion> updates = Maps.newHashMapWithExpectedSize(effectiveVersions.size());
+        for(final Map.Entry<String, String> entry : effectiveVersions.entrySet()) {
+            final String testName = entry.getKey();
+            try {
+                final List<Revision> history = getMostRecentHistory(store, testName);
+                if(history.isEmpty()) {
+                    continue;
+                }
+                final EnvironmentVersion current = versions.get(testName);
+                final EnvironmentVersion base = current != null ? current : new EnvironmentVersion(testName, null, null, UNKNOWN_VERSION, null, UNKNOWN_VERSION);
+                updates.put(testName, base.update(branch, history.get(0), entry.getValue()));
+            } catch (StoreException exp) {
+                // the next load() picks it up
+                LOGGER.warn("Failed to refresh " + branch + " version of " + testName + " after promotion", exp);
+            }
+        }
+        versions.putAll(updates);
+    }
+
     private void updateTestVersion(final String testName,
                                    final Environment branch,
                                    final String effectiveVersion) throws StoreException {
@@ -96,13 +144,23 @@ public class ProctorPromoter extends DataLoadingTimerTask {
     @SuppressWarnings({"MethodWithTooManyParameters"})
     private void promote(final String testName, final Environment srcBranch, final String srcRevision, final Environment destBranch, String destRevision,
                          String username, String password, Map<String, String> metadata) throws TestPromotionException, StoreException {
+        final String effectiveVersion = commitPromotion(testName, srcBranch, srcRevision, destBranch, destRevision, username, password, metadata);
+        updateTestVersion(testName, destBranch, effectiveVersion);
+    }
+
+    /**
+     * @return the version of the definition committed to destBranch
+     */
+    @SuppressWarnings({"MethodWithTooManyParameters"})
+    private String commitPromotion(final String testName, final Environment srcBranch, final String srcRevision, final Environment destBranch, String destRevision,
+                                   String username, String password, Map<String, String> metadata) throws TestPromotionException, StoreException {
         LOGGER.info(String.format("%s : Promoting %s from %s r%s to %s r%s", username, testName, srcBranch,
                 srcRevision, destBranch, destRevision));
         final ProctorStore src = getStoreFromBranch(srcBranch);
         final ProctorStore dest = getStoreFromBranch(destBranch);
         final boolean isSrcTrunk = Environment.WORKING == srcBranch;
 
-        final TestDefinition d = new TestDefinition(getTestDefinition(src, testName, srcRevision));
+        final TestDefinition d = TestDefinitions.copyOf(getTestDefinition(src, testName, srcRevision));
 
         final EnvironmentVersion version = getEnvironmentVersion(testName);
         final String knownDestRevision = version != null ? version.getRevision(destBranch) : UNKNOWN_VERSION;
@@ -146,7 +204,7 @@ public class ProctorPromoter extends DataLoadingTimerTask {
             dest.addTestDefinition(username, password, testName, d, metadata, commitMessage);
         }
 
-        updateTestVersion(testName, destBranch, d.getVersion());
+        return d.getVersion();
     }
 
     private ProctorStore getStoreFromBranch(Environment srcBranch) {
@@ -172,6 +230,20 @@ public class ProctorPromoter extends DataLoadingTimerTask {
         return sb.toString();
     }
 
+    /**
+     * @return index of the test matrices as of the last load
+     */
+    public TestSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * @return index of the salts of the trunk, qa and production matrices as of the last load, empty before it
+     */
+    public SaltIndex getSaltIndex() {
+        return saltIndex;
+    }
+
     // cached
     public EnvironmentVersion getEnvironmentVersion(final String testName) {
         final ConcurrentMap<String, EnvironmentVersion> versions = environmentVersions;
@@ -224,6 +296,15 @@ public class ProctorPromoter extends DataLoadingTimerTask {
             return false;
         }
 
+        searchIndex.update(Environment.WORKING, trunkMatrix.getTestMatrixDefinition());
+        searchIndex.update(Environment.QA, qaMatrix.getTestMatrixDefinition());
+        searchIndex.update(Environment.PRODUCTION, prodMatrix.getTestMatrixDefinition());
+        final Map<Environment, TestMatrixVersion> matrices = new EnumMap<Environment, TestMatrixVersion>(Environment.class);
+        matrices.put(Environment.WORKING, trunkMatrix);
+        matrices.put(Environment.QA, qaMatrix);
+        matrices.put(Environment.PRODUCTION, prodMatrix);
+        saltIndex = SaltIndex.build(matrices);
+
         final ImmutableMap.Builder<String, Revision> trunkVersionBuilder = ImmutableMap.builder();
         final ImmutableMap.Builder<String, Revision> qaVersionBuilder = ImmutableMap.builder();
         final ImmutableMap.Builder<String, Revision> productionVersionBuilder = ImmutableMap.builder();
@@ -342,6 +423,33 @@ public class ProctorPromoter extends DataLoadingTimerTask {
         return def.getTests().get(testName);
     }
 
+    public static class Promotion {
+        private final String testName;
+        private final String srcRevision;
+        private final String destRevision;
+
+        /**
+         * @param destRevision current revision of the test on the destination branch, empty if it does not exist there
+         */
+        public Promotion(final String testName, final String srcRevision, final String destRevision) {
+            this.testName = testName;
+            this.srcRevision = srcRevision;
+            this.destRevision = destRevision;
+        }
+
+        public String getTestName() {
+            return testName;
+        }
+
+        public String getSrcRevision() {
+            return srcRevision;
+        }
+
+        public String getDestRevision() {
+            return destRevision;
+        }
+    }
+
     public static class TestPromotionException extends Exception {
 
         public TestPromotionException(final String message) {
@@ -0,0 +1,133 @@
+package com.indeed.proctor.common;
+
+import com.google.common.collect.Maps;
+import com.indeed.proctor.store.Revision;
+import com.indeed.proctor.webapp.db.Environment;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tells which environments a revision in a test's history is live on, given the test's {@link EnvironmentVersion}.
+ *
+ * Revisions on the branch being viewed are matched by their own revision number. Revisions that were promoted
+ * from another branch are matched by the "(trunk rXXX)" / "(qa rXXX)" references and the "merged rXXX:" prefix
+ * in their commit message. All of those keys are computed once per EnvironmentVersion, so classifying a revision
+ * is a single pass over its message plus a map lookup per key found.
+ *
+ * @see com.indeed.proctor.webapp.tags.TestDefinitionFunctions#isCurrentVersionOnTrunk
+ */
+public class RevisionEnvironmentIndex {
+    private static final Pattern PROMOTED_REVISION = Pattern.compile("(trunk|qa) r(\\w+)");
+    private static final Pattern CHARMED_REVISION = Pattern.compile("^merged r(\\w+):");
+
+    private final Map<Environment, Map<String, Set<Environment>>> byViewedBranch;
+
+    public RevisionEnvironmentIndex(final EnvironmentVersion version) {
+        byViewedBranch = new EnumMap<Environment, Map<String, Set<Environment>>>(Environment.class);
+
+        final Map<String, Set<Environment>> trunk = Maps.newHashMap();
+        // trunk.revision gets set to qa.version / production.version during promotion
+        put(trunk, revisionKey(version.getTrunkRevision()), Environment.WORKING);
+        put(trunk, revisionKey(version.getQaVersion()), Environment.QA);
+        put(trunk, revisionKey(version.getProductionVersion()), Environment.PRODUCTION);
+        byViewedBranch.put(Environment.WORKING, trunk);
+
+        final Map<String, Set<Environment>> qa = Maps.newHashMap();
+        put(qa, promotedKey(Environment.WORKING, version.getTrunkRevision()), Environment.WORKING);
+        put(qa, charmedKey(version.getTrunkRevision()), Environment.WORKING);
+        put(qa, revisionKey(version.getQaRevision()), Environment.QA);
+        put(qa, promotedKey(Environment.WORKING, version.getProductionVersion()), Environment.PRODUCTION);
+        put(qa, charmedKey(version.getProductionVersion()), Environment.PRODUCTION);
+        byViewedBranch.put(Environment.QA, qa);
+
+        final Map<String, Set<Environment>> production = Maps.newHashMap();
+        put(production, promotedKey(Environment.WORKING, version.getTrunkRevision()), Environment.WORKING);
+        put(production, charmedKey(version.getTrunkRevision()), Environment.WORKING);
+        // (qa r{qa.revision}) or (trunk r{qa.version}): the revision running on QA was promoted from QA or from trunk
+        put(production, promotedKey(Environment.QA, version.getQaRevision()), Environment.QA);
+        put(production, promotedKey(Environment.WORKING, version.getQaVersion()), Environment.QA);
+        put(production, charmedKey(version.getQaVersion()), Environment.QA);
+        put(production, revisionKey(version.getProductionRevision()), Environment.PRODUCTION);
+        byViewedBranch.put(Environment.PRODUCTION, production);
+    }
+
+    /**
+     * @param viewing the branch whose history contains the revision
+     */
+    public LiveEnvironments getLiveEnvironments(final Environment viewing, final Revision history) {
+        final Map<String, Set<Environment>> index = byViewedBranch.get(viewing);
+        final Set<Environment> live = EnumSet.noneOf(Environment.class);
+        addAll(live, index.get(revisionKey(history.getRevision())));
+        final String message = history.getMessage();
+        if (viewing != Environment.WORKING && message != null) {
+            final Matcher promoted = PROMOTED_REVISION.matcher(message);
+            while (promoted.find()) {
+                addAll(live, index.get(promoted.group(1) + " r" + promoted.group(2)));
+            }
+            final Matcher charmed = CHARMED_REVISION.matcher(message);
+            if (charmed.find()) {
+                addAll(live, index.get(charmedKey(charmed.group(1))));
+            }
+        }
+        return new LiveEnvironments(live);
+    }
+
+    private static void put(final Map<String, Set<Environment>> index, final String key, final Environment environment) {
+        if (key == null) {
+            return;
+        }
+        Set<Environment> environments = index.get(key);
+        if (environments == null) {
+            environments = EnumSet.noneOf(Environment.class);
+            index.put(key, environments);
+        }
+        environments.add(environment);
+    }
+
+    private static void addAll(final Set<Environment> live, final Set<Environment> environments) {
+        if (environments != null) {
+            live.addAll(environments);
+        }
+    }
+
+    private static boolean isKnown(final String revision) {
+        return revision != null && !EnvironmentVersion.UNKNOWN_REVISION.equals(revision);
+    }
+
+    private static String revisionKey(final String revision) {
+        return isKnown(revision) ? "r" + revision : null;
+    }
+
+    private static String promotedKey(final Environment source, final String revision) {
+        return isKnown(revision) ? source.getName() + " r" + revision : null;
+    }
+
+    private static String charmedKey(final String revision) {
+        return isKnown(revision) ? "merged r" + revision : null;
+    }
+
+    public static class LiveEnvironments {
+        private final Set<Environment> environments;
+
+        private LiveEnvironments(final Set<Environment> environments) {
+            this.environments = environments;
+        }
+
+        public boolean isTrunk() {
+            return environments.contains(Environment.WORKING);
+        }
+
+        public boolean isQa() {
+            return environments.contains(Environment.QA);
+        }
+
+        public boolean isProduction() {
+            return environments.contains(Environment.PRODUCTION);
+        }
+    }
+}
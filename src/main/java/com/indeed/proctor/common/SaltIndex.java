@@ -0,0 +1,145 @@
+package com.indeed.proctor.common;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.webapp.db.Environment;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which tests use each salt, on which branches, for one combination of trunk, qa and production matrix versions.
+ *
+ * Tests with the same salt hash an identifier to the same value, so their buckets are correlated: the same
+ * identifiers end up in the first range of both, and so on.
+ */
+public class SaltIndex {
+    /* salt -> test name -> branches the test has that salt on */
+    private final Map<String, Map<String, Set<Environment>>> tests;
+
+    private SaltIndex(final Map<String, Map<String, Set<Environment>>> tests) {
+        this.tests = tests;
+    }
+
+    public static SaltIndex build(final Map<Environment, TestMatrixVersion> matrices) {
+        final Map<String, Map<String, Set<Environment>>> tests = Maps.newHashMap();
+        for (final Map.Entry<Environment, TestMatrixVersion> matrix : matrices.entrySet()) {
+            if (matrix.getValue() == null || matrix.getValue().getTestMatrixDefinition() == null) {
+                continue;
+            }
+            for (final Map.Entry<String, TestDefinition> test : matrix.getValue().getTestMatrixDefinition().getTests().entrySet()) {
+                final String salt = test.getValue() == null ? null : test.getValue().getSalt();
+                if (Strings.isNullOrEmpty(salt)) {
+                    continue;
+                }
+                Map<String, Set<Environment>> saltTests = tests.get(salt);
+                if (saltTests == null) {
+                    saltTests = Maps.newTreeMap();
+                    tests.put(salt, saltTests);
+                }
+                Set<Environment> branches = saltTests.get(test.getKey());
+                if (branches == null) {
+                    branches = EnumSet.noneOf(Environment.class);
+                    saltTests.put(test.getKey(), branches);
+                }
+                branches.add(matrix.getKey());
+            }
+        }
+        return new SaltIndex(tests);
+    }
+
+    /**
+     * @return the other tests using this salt on any branch, by name, with the branches they use it on
+     */
+    public Map<String, Set<Environment>> getCollisions(final String testName, /* @Nullable */ final String salt) {
+        final Map<String, Set<Environment>> saltTests = Strings.isNullOrEmpty(salt) ? null : tests.get(salt);
+        if (saltTests == null) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Set<Environment>> collisions = Maps.newTreeMap();
+        for (final Map.Entry<String, Set<Environment>> test : saltTests.entrySet()) {
+            if (!test.getKey().equals(testName)) {
+                collisions.put(test.getKey(), Collections.unmodifiableSet(test.getValue()));
+            }
+        }
+        return collisions;
+    }
+
+    /**
+     * @return the salts used by more than one test, ordered by salt
+     */
+    public List<SharedSalt> getSharedSalts() {
+        final List<SharedSalt> shared = Lists.newArrayList();
+        for (final Map.Entry<String, Map<String, Set<Environment>>> salt : tests.entrySet()) {
+            if (salt.getValue().size() > 1) {
+                final Map<String, String> branches = Maps.newLinkedHashMap();
+                for (final Map.Entry<String, Set<Environment>> test : salt.getValue().entrySet()) {
+                    branches.put(test.getKey(), describe(test.getValue()));
+                }
+                shared.add(new SharedSalt(salt.getKey(), Collections.unmodifiableMap(branches)));
+            }
+        }
+        Collections.sort(shared);
+        return ImmutableList.copyOf(shared);
+    }
+
+    /**
+     * @return salt -> names of the tests that have it on this branch, for the salts used by more than one test there
+     */
+    public Map<String, List<String>> getSharedSalts(final Environment branch) {
+        final Map<String, List<String>> shared = Maps.newTreeMap();
+        for (final Map.Entry<String, Map<String, Set<Environment>>> salt : tests.entrySet()) {
+            final List<String> testNames = Lists.newArrayList();
+            for (final Map.Entry<String, Set<Environment>> test : salt.getValue().entrySet()) {
+                if (test.getValue().contains(branch)) {
+                    testNames.add(test.getKey());
+                }
+            }
+            if (testNames.size() > 1) {
+                shared.put(salt.getKey(), testNames);
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Describes the branches a test has a salt on, e.g. "trunk, qa".
+     */
+    public static String describe(final Set<Environment> branches) {
+        return Joiner.on(", ").join(branches);
+    }
+
+    public static class SharedSalt implements Comparable<SharedSalt> {
+        private final String salt;
+        private final Map<String, String> tests;
+
+        private SharedSalt(final String salt, final Map<String, String> tests) {
+            this.salt = salt;
+            this.tests = tests;
+        }
+
+        public String getSalt() {
+            return salt;
+        }
+
+        /**
+         * @return test name -> branches the test has this salt on, e.g. "trunk, qa"
+         */
+        public Map<String, String> getTests() {
+            return tests;
+        }
+
+        @Override
+        public int compareTo(final SharedSalt o) {
+            return salt.compareTo(o.salt);
+        }
+    }
+}
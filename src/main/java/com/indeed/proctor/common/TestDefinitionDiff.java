@@ -0,0 +1,305 @@
+package com.indeed.proctor.common;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Structural differences between two versions of a test definition: rule, description, test type, salt,
+ * constants, buckets (matched by name) and their payloads, and allocations (matched by position) with their
+ * ranges summed per bucket.
+ *
+ * Ranges are aligned through a map from bucket value to total length, so comparing two allocations is linear
+ * in their number of ranges however they are split.
+ *
+ * Autopromote only needs a yes or no, so {@link #isAllocationOnlyChange(TestDefinition, TestDefinition)} answers it
+ * without building the changes and stops at the first difference that is not an allocation range.
+ */
+public class TestDefinitionDiff {
+    public static enum Kind {
+        ADDED, REMOVED, CHANGED
+    }
+
+    public static enum Section {
+        RULE, DESCRIPTION, TEST_TYPE, SALT, CONSTANTS, SPECIAL_CONSTANTS, BUCKETS, PAYLOADS, ALLOCATION_RULE, ALLOCATIONS, ALLOCATION_RANGES
+    }
+
+    private final List<Change> changes;
+
+    private TestDefinitionDiff(final List<Change> changes) {
+        this.changes = ImmutableList.copyOf(changes);
+    }
+
+    public static TestDefinitionDiff compare(final TestDefinition from, final TestDefinition to) {
+        final List<Change> changes = Lists.newArrayList();
+        compareValue(changes, Section.RULE, "rule", from.getRule(), to.getRule());
+        compareValue(changes, Section.DESCRIPTION, "description", from.getDescription(), to.getDescription());
+        compareValue(changes, Section.TEST_TYPE, "testType", from.getTestType(), to.getTestType());
+        compareValue(changes, Section.SALT, "salt", from.getSalt(), to.getSalt());
+        compareMaps(changes, Section.CONSTANTS, "constants", from.getConstants(), to.getConstants());
+        compareMaps(changes, Section.SPECIAL_CONSTANTS, "specialConstants", from.getSpecialConstants(), to.getSpecialConstants());
+        compareBuckets(changes, nullToEmpty(from.getBuckets()), nullToEmpty(to.getBuckets()));
+        compareAllocations(changes, nullToEmpty(from.getAllocations()), nullToEmpty(to.getAllocations()));
+        return new TestDefinitionDiff(changes);
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * True if only the sizes of existing allocation ranges changed, whatever the sizes.
+     */
+    public boolean isRangeOnlyChange() {
+        for (final Change change : changes) {
+            if (change.section != Section.ALLOCATION_RANGES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * True if only the sizes of existing allocation ranges changed, with no bucket going from 0 to a positive
+     * share or to 100%. Such changes can be promoted automatically; see {@link #isRangeOnlyChange()} to classify
+     * changes without the autopromote rules.
+     */
+    public boolean isAllocationOnlyChange() {
+        for (final Change change : changes) {
+            if (change.section != Section.ALLOCATION_RANGES || change.kind != Kind.CHANGED) {
+                return false;
+            }
+            if (!isAutopromotableRange((Double) change.before, (Double) change.after)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same answer as {@code compare(from, to).isAllocationOnlyChange()}, with buckets compared by position.
+     */
+    public static boolean isAllocationOnlyChange(final TestDefinition from, final TestDefinition to) {
+        if (!Objects.equal(from.getRule(), to.getRule())
+                || !Objects.equal(from.getDescription(), to.getDescription())
+                || !Objects.equal(from.getTestType(), to.getTestType())
+                || !Objects.equal(from.getSalt(), to.getSalt())
+                || !nullToEmpty(from.getConstants()).equals(nullToEmpty(to.getConstants()))
+                || !nullToEmpty(from.getSpecialConstants()).equals(nullToEmpty(to.getSpecialConstants()))) {
+            return false;
+        }
+        final List<TestBucket> fromBuckets = nullToEmpty(from.getBuckets());
+        final List<TestBucket> toBuckets = nullToEmpty(to.getBuckets());
+        if (fromBuckets.size() != toBuckets.size()) {
+            return false;
+        }
+        for (int i = 0; i < fromBuckets.size(); i++) {
+            final TestBucket before = fromBuckets.get(i);
+            final TestBucket after = toBuckets.get(i);
+            if (before == null || after == null) {
+                if (before != after) {
+                    return false;
+                }
+            } else if (!Objects.equal(before.getName(), after.getName())
+                    || before.getValue() != after.getValue()
+                    || !Objects.equal(before.getDescription(), after.getDescription())
+                    || !Objects.equal(before.getPayload(), after.getPayload())) {
+                return false;
+            }
+        }
+        final List<Allocation> fromAllocations = nullToEmpty(from.getAllocations());
+        final List<Allocation> toAllocations = nullToEmpty(to.getAllocations());
+        if (fromAllocations.size() != toAllocations.size()) {
+            return false;
+        }
+        for (int i = 0; i < fromAllocations.size(); i++) {
+            if (!Objects.equal(fromAllocations.get(i).getRule(), toAllocations.get(i).getRule())) {
+                return false;
+            }
+            final Map<Integer, Double> before = lengthByBucket(fromAllocations.get(i).getRanges());
+            final Map<Integer, Double> after = lengthByBucket(toAllocations.get(i).getRanges());
+            if (!before.keySet().equals(after.keySet())) {
+                return false;
+            }
+            for (final Map.Entry<Integer, Double> range : before.entrySet()) {
+                if (!isAutopromotableRange(range.getValue(), after.get(range.getKey()))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /* no bucket goes from 0 to a positive share, or to 100% */
+    private static boolean isAutopromotableRange(final double before, final double after) {
+        return !(before == 0 && after != 0) && !(before != 1 && after == 1);
+    }
+
+    private static void compareValue(final List<Change> changes, final Section section, final String path, final Object before, final Object after) {
+        if (!Objects.equal(before, after)) {
+            changes.add(new Change(section, path, before == null ? Kind.ADDED : after == null ? Kind.REMOVED : Kind.CHANGED, before, after));
+        }
+    }
+
+    private static void compareMaps(final List<Change> changes, final Section section, final String path,
+                                    final Map<String, Object> before, final Map<String, Object> after) {
+        final Map<String, Object> from = nullToEmpty(before);
+        final Map<String, Object> to = nullToEmpty(after);
+        for (final String key : Sets.union(from.keySet(), to.keySet())) {
+            compareValue(changes, section, path + "." + key, from.get(key), to.get(key));
+        }
+    }
+
+    private static void compareBuckets(final List<Change> changes, final List<TestBucket> before, final List<TestBucket> after) {
+        final Map<String, TestBucket> from = byName(before);
+        final Map<String, TestBucket> to = byName(after);
+        for (final TestBucket bucket : before) {
+            if (!to.containsKey(bucket.getName())) {
+                changes.add(new Change(Section.BUCKETS, bucketPath(bucket.getName()), Kind.REMOVED, bucket.getValue(), null));
+            }
+        }
+        for (final TestBucket bucket : after) {
+            final TestBucket previous = from.get(bucket.getName());
+            if (previous == null) {
+                changes.add(new Change(Section.BUCKETS, bucketPath(bucket.getName()), Kind.ADDED, null, bucket.getValue()));
+                continue;
+            }
+            final String path = bucketPath(bucket.getName());
+            compareValue(changes, Section.BUCKETS, path + ".value", previous.getValue(), bucket.getValue());
+            compareValue(changes, Section.BUCKETS, path + ".description", previous.getDescription(), bucket.getDescription());
+            compareValue(changes, Section.PAYLOADS, path + ".payload", previous.getPayload(), bucket.getPayload());
+        }
+        if (from.keySet().equals(to.keySet()) && !Lists.newArrayList(from.keySet()).equals(Lists.newArrayList(to.keySet()))) {
+            changes.add(new Change(Section.BUCKETS, "buckets", Kind.CHANGED, Lists.newArrayList(from.keySet()), Lists.newArrayList(to.keySet())));
+        }
+    }
+
+    private static void compareAllocations(final List<Change> changes, final List<Allocation> before, final List<Allocation> after) {
+        for (int i = 0; i < Math.max(before.size(), after.size()); i++) {
+            final String path = "allocations[" + i + "]";
+            if (i >= after.size()) {
+                changes.add(new Change(Section.ALLOCATIONS, path, Kind.REMOVED, before.get(i).getRule(), null));
+                continue;
+            }
+            if (i >= before.size()) {
+                changes.add(new Change(Section.ALLOCATIONS, path, Kind.ADDED, null, after.get(i).getRule()));
+                continue;
+            }
+            compareValue(changes, Section.ALLOCATION_RULE, path + ".rule", before.get(i).getRule(), after.get(i).getRule());
+            final Map<Integer, Double> from = lengthByBucket(before.get(i).getRanges());
+            final Map<Integer, Double> to = lengthByBucket(after.get(i).getRanges());
+            for (final Map.Entry<Integer, Double> range : from.entrySet()) {
+                final Double length = to.get(range.getKey());
+                final String rangePath = path + ".ranges[" + range.getKey() + "]";
+                if (length == null) {
+                    changes.add(new Change(Section.ALLOCATIONS, rangePath, Kind.REMOVED, range.getValue(), null));
+                } else if (length.doubleValue() != range.getValue().doubleValue()) {
+                    changes.add(new Change(Section.ALLOCATION_RANGES, rangePath, Kind.CHANGED, range.getValue(), length));
+                }
+            }
+            for (final Map.Entry<Integer, Double> range : to.entrySet()) {
+                if (!from.containsKey(range.getKey())) {
+                    changes.add(new Change(Section.ALLOCATIONS, path + ".ranges[" + range.getKey() + "]", Kind.ADDED, null, range.getValue()));
+                }
+            }
+        }
+    }
+
+    private static Map<Integer, Double> lengthByBucket(final List<Range> ranges) {
+        final Map<Integer, Double> lengths = Maps.newLinkedHashMap();
+        if (ranges != null) {
+            for (final Range range : ranges) {
+                final Double length = lengths.get(range.getBucketValue());
+                lengths.put(range.getBucketValue(), (length == null ? 0 : length) + range.getLength());
+            }
+        }
+        return lengths;
+    }
+
+    private static Map<String, TestBucket> byName(final List<TestBucket> buckets) {
+        final Map<String, TestBucket> byName = Maps.newLinkedHashMap();
+        for (final TestBucket bucket : buckets) {
+            if (bucket != null) {
+                byName.put(bucket.getName(), bucket);
+            }
+        }
+        return byName;
+    }
+
+    private static String bucketPath(final String name) {
+        return "buckets[" + name + "]";
+    }
+
+    private static <T> List<T> nullToEmpty(final List<T> list) {
+        return list == null ? Collections.<T>emptyList() : list;
+    }
+
+    private static Map<String, Object> nullToEmpty(final Map<String, Object> map) {
+        return map == null ? Collections.<String, Object>emptyMap() : map;
+    }
+
+    public static class Change {
+        private final Section section;
+        private final String path;
+        private final Kind kind;
+        private final Object before;
+        private final Object after;
+
+        private Change(final Section section, final String path, final Kind kind, final Object before, final Object after) {
+            this.section = section;
+            this.path = path;
+            this.kind = kind;
+            this.before = before;
+            this.after = after;
+        }
+
+        public Section getSection() {
+            return section;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        // @Nullable
+        public Object getBefore() {
+            return before;
+        }
+
+        // @Nullable
+        public Object getAfter() {
+            return after;
+        }
+
+        @Override
+        public String toString() {
+            switch (kind) {
+                case ADDED:
+                    return path + " added: " + after;
+                case REMOVED:
+                    return path + " removed: " + before;
+                default:
+                    return path + ": " + before + " -> " + after;
+            }
+        }
+    }
+}
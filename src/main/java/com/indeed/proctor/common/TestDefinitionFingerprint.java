@@ -0,0 +1,207 @@
+package com.indeed.proctor.common;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Payload;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Canonical hash of the content of a test definition: everything but its version, with constants hashed in key
+ * order so two definitions with the same content have the same fingerprint however they were deserialized.
+ *
+ * Definitions loaded from a store are shared and never modified, so {@link #register(TestMatrixVersion)} computes
+ * their fingerprints once, when a matrix version is loaded, and {@link #of(TestDefinition)} looks them up by
+ * identity. Other definitions, such as the ones being edited, are hashed on every call.
+ *
+ * The identity lookup is only correct as long as registered definitions are never modified: a registered
+ * definition that changes keeps its old fingerprint, so it would still compare equal to its old content and
+ * share the consumable conversion and search entries of that content. Code that needs to modify a definition read
+ * from a {@link com.indeed.proctor.webapp.db.CachingProctorStore} works on {@link TestDefinitions#copyOf(TestDefinition)}.
+ */
+public class TestDefinitionFingerprint {
+    private static final Cache<TestDefinition, HashCode> LOADED = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    private TestDefinitionFingerprint() {
+    }
+
+    public static HashCode of(final TestDefinition definition) {
+        final HashCode fingerprint = LOADED.getIfPresent(definition);
+        return fingerprint != null ? fingerprint : compute(definition);
+    }
+
+    public static boolean sameContent(/* @Nullable */ final TestDefinition a, /* @Nullable */ final TestDefinition b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        return of(a).equals(of(b));
+    }
+
+    /**
+     * Remembers the fingerprint of a definition that will not be modified anymore. Modifying it afterwards leaves
+     * its fingerprint stale for as long as the definition is reachable.
+     */
+    public static HashCode register(final TestDefinition definition) {
+        final HashCode fingerprint = compute(definition);
+        LOADED.put(definition, fingerprint);
+        return fingerprint;
+    }
+
+    public static void register(/* @Nullable */ final TestMatrixVersion matrix) {
+        if (matrix == null || matrix.getTestMatrixDefinition() == null) {
+            return;
+        }
+        for (final TestDefinition definition : matrix.getTestMatrixDefinition().getTests().values()) {
+            if (definition != null && LOADED.getIfPresent(definition) == null) {
+                register(definition);
+            }
+        }
+    }
+
+    static HashCode compute(final TestDefinition definition) {
+        final Hasher hasher = Hashing.md5().newHasher();
+        putString(hasher, definition.getRule());
+        putString(hasher, definition.getDescription());
+        putString(hasher, definition.getTestType() == null ? null : definition.getTestType().toString());
+        putString(hasher, definition.getSalt());
+        putValue(hasher, definition.getConstants());
+        putValue(hasher, definition.getSpecialConstants());
+        final List<TestBucket> buckets = definition.getBuckets();
+        hasher.putInt(buckets == null ? -1 : buckets.size());
+        if (buckets != null) {
+            for (final TestBucket bucket : buckets) {
+                putString(hasher, bucket.getName());
+                hasher.putInt(bucket.getValue());
+                putString(hasher, bucket.getDescription());
+                putPayload(hasher, bucket.getPayload());
+            }
+        }
+        final List<Allocation> allocations = definition.getAllocations();
+        hasher.putInt(allocations == null ? -1 : allocations.size());
+        if (allocations != null) {
+            for (final Allocation allocation : allocations) {
+                putString(hasher, allocation.getRule());
+                final List<Range> ranges = allocation.getRanges();
+                hasher.putInt(ranges == null ? -1 : ranges.size());
+                if (ranges != null) {
+                    // order matters, it decides which part of the hash space each bucket gets
+                    for (final Range range : ranges) {
+                        hasher.putInt(range.getBucketValue());
+                        hasher.putDouble(range.getLength());
+                    }
+                }
+            }
+        }
+        return hasher.hash();
+    }
+
+    private static void putPayload(final Hasher hasher, /* @Nullable */ final Payload payload) {
+        hasher.putBoolean(payload != null);
+        if (payload != null) {
+            putValue(hasher, payload.getDoubleValue());
+            putValue(hasher, payload.getDoubleArray());
+            putValue(hasher, payload.getLongValue());
+            putValue(hasher, payload.getLongArray());
+            putValue(hasher, payload.getStringValue());
+            putValue(hasher, payload.getStringArray());
+            putValue(hasher, payload.getMap());
+        }
+    }
+
+    private static void putString(final Hasher hasher, /* @Nullable */ final String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            // the length keeps adjacent fields from running into each other
+            hasher.putInt(value.length()).putString(value, Charsets.UTF_8);
+        }
+    }
+
+    /* values deserialized from json: null, strings, numbers, booleans, lists, arrays and maps */
+    private static void putValue(final Hasher hasher, /* @Nullable */ final Object value) {
+        if (value == null) {
+            hasher.putChar('0');
+        } else if (value instanceof Map) {
+            final SortedMap<String, Object> sorted = Maps.newTreeMap();
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            hasher.putChar('m').putInt(sorted.size());
+            for (final Map.Entry<String, Object> entry : sorted.entrySet()) {
+                putString(hasher, entry.getKey());
+                putValue(hasher, entry.getValue());
+            }
+        } else if (value instanceof Collection) {
+            hasher.putChar('l').putInt(((Collection<?>) value).size());
+            for (final Object element : (Collection<?>) value) {
+                putValue(hasher, element);
+            }
+        } else if (value instanceof Object[]) {
+            hasher.putChar('l').putInt(((Object[]) value).length);
+            for (final Object element : (Object[]) value) {
+                putValue(hasher, element);
+            }
+        } else if (value instanceof Number) {
+            hasher.putChar('n');
+            putString(hasher, value.toString());
+        } else if (value instanceof Boolean) {
+            hasher.putChar('b').putBoolean((Boolean) value);
+        } else {
+            hasher.putChar('s');
+            putString(hasher, value.toString());
+        }
+    }
+
+    /**
+     * Key for caches of values derived from a definition, which may also depend on its version.
+     */
+    public static class Key {
+        private final HashCode fingerprint;
+        private final String version;
+
+        public Key(final TestDefinition definition) {
+            this.fingerprint = of(definition);
+            this.version = definition.getVersion();
+        }
+
+        public HashCode getFingerprint() {
+            return fingerprint;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) o;
+            return fingerprint.equals(that.fingerprint) && Objects.equal(version, that.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return fingerprint.hashCode() * 31 + (version == null ? 0 : version.hashCode());
+        }
+    }
+}
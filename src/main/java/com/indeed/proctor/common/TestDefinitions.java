@@ -0,0 +1,129 @@
+package com.indeed.proctor.common;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.ConsumableTestDefinition;
+import com.indeed.proctor.common.model.Payload;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copies of test definitions that share nothing mutable with the original.
+ *
+ * Definitions read from a {@link com.indeed.proctor.webapp.db.CachingProctorStore} are shared by every caller and
+ * their fingerprints are remembered by identity, so code that may modify a definition, such as extensions and
+ * commits, is handed a copy. The same goes for the consumable definitions {@link ConsumableArtifacts} caches.
+ */
+public class TestDefinitions {
+    private TestDefinitions() {
+    }
+
+    public static TestDefinition copyOf(/* @Nullable */ final TestDefinition definition) {
+        if (definition == null) {
+            return null;
+        }
+        final TestDefinition copy = new TestDefinition(definition);
+        copy.setConstants(copyOf(definition.getConstants()));
+        copy.setSpecialConstants(copyOf(definition.getSpecialConstants()));
+        copy.setBuckets(copyBuckets(definition.getBuckets()));
+        copy.setAllocations(copyAllocations(definition.getAllocations()));
+        return copy;
+    }
+
+    public static ConsumableTestDefinition copyOf(/* @Nullable */ final ConsumableTestDefinition definition) {
+        if (definition == null) {
+            return null;
+        }
+        final ConsumableTestDefinition copy = new ConsumableTestDefinition();
+        copy.setVersion(definition.getVersion());
+        copy.setRule(definition.getRule());
+        copy.setTestType(definition.getTestType());
+        copy.setSalt(definition.getSalt());
+        copy.setDescription(definition.getDescription());
+        copy.setConstants(copyOf(definition.getConstants()));
+        copy.setBuckets(copyBuckets(definition.getBuckets()));
+        copy.setAllocations(copyAllocations(definition.getAllocations()));
+        return copy;
+    }
+
+    private static List<TestBucket> copyBuckets(/* @Nullable */ final List<TestBucket> buckets) {
+        if (buckets == null) {
+            return null;
+        }
+        final List<TestBucket> copy = Lists.newArrayListWithCapacity(buckets.size());
+        for (final TestBucket bucket : buckets) {
+            copy.add(bucket == null ? null : new TestBucket(bucket.getName(), bucket.getValue(), bucket.getDescription(), copyOf(bucket.getPayload())));
+        }
+        return copy;
+    }
+
+    private static List<Allocation> copyAllocations(/* @Nullable */ final List<Allocation> allocations) {
+        if (allocations == null) {
+            return null;
+        }
+        final List<Allocation> copy = Lists.newArrayListWithCapacity(allocations.size());
+        for (final Allocation allocation : allocations) {
+            copy.add(allocation == null ? null : new Allocation(allocation.getRule(), copyOf(allocation.getRanges())));
+        }
+        return copy;
+    }
+
+    private static List<Range> copyOf(/* @Nullable */ final List<Range> ranges) {
+        if (ranges == null) {
+            return null;
+        }
+        final List<Range> copy = Lists.newArrayListWithCapacity(ranges.size());
+        for (final Range range : ranges) {
+            copy.add(range == null ? null : new Range(range.getBucketValue(), range.getLength()));
+        }
+        return copy;
+    }
+
+    private static Payload copyOf(/* @Nullable */ final Payload payload) {
+        if (payload == null) {
+            return null;
+        }
+        final Payload copy = new Payload();
+        copy.setDoubleValue(payload.getDoubleValue());
+        copy.setDoubleArray(payload.getDoubleArray() == null ? null : payload.getDoubleArray().clone());
+        copy.setLongValue(payload.getLongValue());
+        copy.setLongArray(payload.getLongArray() == null ? null : payload.getLongArray().clone());
+        copy.setStringValue(payload.getStringValue());
+        copy.setStringArray(payload.getStringArray() == null ? null : payload.getStringArray().clone());
+        copy.setMap(copyOf(payload.getMap()));
+        return copy;
+    }
+
+    /* constants are json values: nested maps and lists are copied, everything else is immutable */
+    private static Map<String, Object> copyOf(/* @Nullable */ final Map<String, Object> values) {
+        if (values == null) {
+            return null;
+        }
+        final Map<String, Object> copy = Maps.newLinkedHashMap();
+        for (final Map.Entry<String, Object> entry : values.entrySet()) {
+            copy.put(entry.getKey(), copyValue(entry.getValue()));
+        }
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copyValue(final Object value) {
+        if (value instanceof Map) {
+            return copyOf((Map<String, Object>) value);
+        } else if (value instanceof List) {
+            final List<Object> copy = Lists.newArrayListWithCapacity(((List<?>) value).size());
+            for (final Object element : (List<?>) value) {
+                copy.add(copyValue(element));
+            }
+            return copy;
+        } else if (value instanceof Object[]) {
+            return ((Object[]) value).clone();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,298 @@
+package com.indeed.proctor.common;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Payload;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixDefinition;
+import com.indeed.proctor.webapp.db.Environment;
+import org.apache.log4j.Logger;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index from words to the tests whose name, description, rules, bucket names or payload values
+ * contain them, one per branch.
+ *
+ * {@link #update(Environment, TestMatrixDefinition)} only re-indexes the tests whose definition fingerprint changed
+ * since the previous update, so it is cheap to call on every new matrix version.
+ */
+public class TestSearchIndex {
+    private static final Logger LOGGER = Logger.getLogger(TestSearchIndex.class);
+
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}_]+");
+
+    public static enum Field {
+        NAME, DESCRIPTION, RULE, ALLOCATION_RULE, BUCKET, PAYLOAD
+    }
+
+    private final Map<Environment, BranchIndex> branches;
+
+    public TestSearchIndex() {
+        branches = new EnumMap<Environment, BranchIndex>(Environment.class);
+        for (final Environment branch : Environment.values()) {
+            branches.put(branch, new BranchIndex());
+        }
+    }
+
+    public void update(final Environment branch, final TestMatrixDefinition matrix) {
+        final long start = System.currentTimeMillis();
+        final int reindexed = branches.get(branch).update(matrix.getTests());
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Re-indexed " + reindexed + " " + branch + " tests in " + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    /**
+     * Every word of the query must prefix-match a word of the test, in any of its fields.
+     *
+     * @param branch null to search all branches
+     * @return at most limit hits, ordered by branch then test name
+     */
+    public List<Hit> search(final String query, /* @Nullable */ final Environment branch, final int limit) {
+        final List<String> words = words(query);
+        if (words.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<Hit> hits = Lists.newArrayList();
+        for (final Map.Entry<Environment, BranchIndex> entry : branches.entrySet()) {
+            if (branch != null && branch != entry.getKey()) {
+                continue;
+            }
+            for (final Map.Entry<String, Set<Field>> match : entry.getValue().search(words).entrySet()) {
+                if (hits.size() >= limit) {
+                    return hits;
+                }
+                hits.add(new Hit(entry.getKey(), match.getKey(), match.getValue()));
+            }
+        }
+        return hits;
+    }
+
+    static List<String> words(final String text) {
+        if (Strings.isNullOrEmpty(text)) {
+            return Collections.emptyList();
+        }
+        final List<String> words = Lists.newArrayList();
+        for (final String word : WORD_SEPARATOR.split(text.toLowerCase(Locale.ENGLISH))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static class BranchIndex {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        /* guarded by lock */
+        private final Map<String, IndexedTest> tests = Maps.newHashMap();
+        /* word -> test name -> fields containing the word; guarded by lock */
+        private final NavigableMap<String, Map<String, Set<Field>>> postings = new TreeMap<String, Map<String, Set<Field>>>();
+
+        private int update(final Map<String, TestDefinition> definitions) {
+            final Map<String, IndexedTest> changed = Maps.newHashMap();
+            final Set<String> removed;
+            lock.readLock().lock();
+            try {
+                removed = Sets.newHashSet(tests.keySet());
+                removed.removeAll(definitions.keySet());
+                for (final Map.Entry<String, TestDefinition> entry : definitions.entrySet()) {
+                    final IndexedTest current = tests.get(entry.getKey());
+                    final TestDefinition definition = entry.getValue();
+                    if (definition != null && (current == null || current.isStale(definition))) {
+                        changed.put(entry.getKey(), null);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            // tokenize outside of the lock, searches keep running against the previous version meanwhile
+            for (final Map.Entry<String, IndexedTest> entry : changed.entrySet()) {
+                entry.setValue(new IndexedTest(entry.getKey(), definitions.get(entry.getKey())));
+            }
+
+            lock.writeLock().lock();
+            try {
+                for (final String testName : removed) {
+                    unindex(testName);
+                }
+                for (final IndexedTest test : changed.values()) {
+                    unindex(test.testName);
+                    tests.put(test.testName, test);
+                    for (final Map.Entry<String, Set<Field>> word : test.words.entrySet()) {
+                        Map<String, Set<Field>> posting = postings.get(word.getKey());
+                        if (posting == null) {
+                            posting = Maps.newHashMap();
+                            postings.put(word.getKey(), posting);
+                        }
+                        posting.put(test.testName, word.getValue());
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return changed.size() + removed.size();
+        }
+
+        /* called with the write lock held */
+        private void unindex(final String testName) {
+            final IndexedTest previous = tests.remove(testName);
+            if (previous == null) {
+                return;
+            }
+            for (final String word : previous.words.keySet()) {
+                final Map<String, Set<Field>> posting = postings.get(word);
+                if (posting != null) {
+                    posting.remove(testName);
+                    if (posting.isEmpty()) {
+                        postings.remove(word);
+                    }
+                }
+            }
+        }
+
+        private NavigableMap<String, Set<Field>> search(final List<String> words) {
+            lock.readLock().lock();
+            try {
+                NavigableMap<String, Set<Field>> matches = null;
+                for (final String word : words) {
+                    final NavigableMap<String, Set<Field>> wordMatches = new TreeMap<String, Set<Field>>();
+                    for (final Map<String, Set<Field>> posting : postings.subMap(word, true, word + Character.MAX_VALUE, false).values()) {
+                        for (final Map.Entry<String, Set<Field>> entry : posting.entrySet()) {
+                            if (matches != null && !matches.containsKey(entry.getKey())) {
+                                continue;
+                            }
+                            Set<Field> fields = wordMatches.get(entry.getKey());
+                            if (fields == null) {
+                                fields = EnumSet.noneOf(Field.class);
+                                wordMatches.put(entry.getKey(), fields);
+                            }
+                            fields.addAll(entry.getValue());
+                        }
+                    }
+                    if (matches != null) {
+                        for (final Map.Entry<String, Set<Field>> entry : wordMatches.entrySet()) {
+                            entry.getValue().addAll(matches.get(entry.getKey()));
+                        }
+                    }
+                    matches = wordMatches;
+                    if (matches.isEmpty()) {
+                        break;
+                    }
+                }
+                return matches;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    private static class IndexedTest {
+        private final String testName;
+        private final HashCode fingerprint;
+        private final Map<String, Set<Field>> words = Maps.newHashMap();
+
+        private IndexedTest(final String testName, final TestDefinition definition) {
+            this.testName = testName;
+            this.fingerprint = TestDefinitionFingerprint.of(definition);
+            add(Field.NAME, testName);
+            add(Field.DESCRIPTION, definition.getDescription());
+            add(Field.RULE, definition.getRule());
+            if (definition.getAllocations() != null) {
+                for (final Allocation allocation : definition.getAllocations()) {
+                    add(Field.ALLOCATION_RULE, allocation.getRule());
+                }
+            }
+            if (definition.getBuckets() != null) {
+                for (final TestBucket bucket : definition.getBuckets()) {
+                    add(Field.BUCKET, bucket.getName());
+                    final Payload payload = bucket.getPayload();
+                    if (payload != null) {
+                        addValue(Field.PAYLOAD, payload.fetchAValue());
+                    }
+                }
+            }
+        }
+
+        private boolean isStale(final TestDefinition definition) {
+            return !fingerprint.equals(TestDefinitionFingerprint.of(definition));
+        }
+
+        private void addValue(final Field field, final Object value) {
+            if (value == null) {
+                return;
+            }
+            if (value instanceof Object[]) {
+                for (final Object element : (Object[]) value) {
+                    addValue(field, element);
+                }
+            } else if (value instanceof Collection) {
+                for (final Object element : (Collection<?>) value) {
+                    addValue(field, element);
+                }
+            } else if (value instanceof Map) {
+                for (final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    addValue(field, entry.getKey());
+                    addValue(field, entry.getValue());
+                }
+            } else {
+                add(field, value.toString());
+            }
+        }
+
+        private void add(final Field field, final String text) {
+            for (final String word : words(text)) {
+                Set<Field> fields = words.get(word);
+                if (fields == null) {
+                    fields = EnumSet.noneOf(Field.class);
+                    words.put(word, fields);
+                }
+                fields.add(field);
+            }
+        }
+    }
+
+    public static class Hit {
+        private final Environment branch;
+        private final String testName;
+        private final Set<Field> fields;
+
+        private Hit(final Environment branch, final String testName, final Set<Field> fields) {
+            this.branch = branch;
+            this.testName = testName;
+            this.fields = fields;
+        }
+
+        public String getBranch() {
+            return branch.getName();
+        }
+
+        public String getTestName() {
+            return testName;
+        }
+
+        /**
+         * @return the fields that matched the query
+         */
+        public Set<Field> getFields() {
+            return fields;
+        }
+    }
+}
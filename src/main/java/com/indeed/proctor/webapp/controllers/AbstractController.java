@@ -1,5 +1,7 @@
 package com.indeed.proctor.webapp.controllers;
 
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.indeed.proctor.common.model.TestMatrixVersion;
 import com.indeed.proctor.store.ProctorStore;
@@ -40,6 +42,12 @@ public class AbstractController {
         return sw.toString();
     }
 
+    protected static void validateUsernamePassword(String username, String password) throws IllegalArgumentException {
+        if (CharMatcher.WHITESPACE.matchesAllOf(Strings.nullToEmpty(username)) || CharMatcher.WHITESPACE.matchesAllOf(Strings.nullToEmpty(password))) {
+            throw new IllegalArgumentException("No username or password provided");
+        }
+    }
+
     protected static boolean isAJAXRequest(final HttpServletRequest request) {
         final String xhrHeader = request.getHeader("X-Requested-With");
         if ("XMLHttpRequest".equals(xhrHeader)) {
@@ -11,7 +11,8 @@ import java.util.concurrent.Future;
 public abstract class BackgroundJob<T> implements Callable<T> {
     private Future<T> future;
     private String status = "PENDING";
-    protected final StringBuilder logBuilder = new StringBuilder();
+    private final BackgroundJobLog jobLog = new BackgroundJobLog();
+    private BackgroundJobJournal journal;
 
     private Long id;
 
@@ -19,11 +20,28 @@ public abstract class BackgroundJob<T> implements Callable<T> {
     private List<ResultUrl> urls = Lists.newArrayList();
 
     public void log(String message) {
-        logBuilder.append(message).append("\n");
+        jobLog.append(message);
+        if (journal != null) {
+            journal.recordLog(id, message);
+        }
     }
 
     public String getLog() {
-        return logBuilder.toString();
+        return jobLog.getText();
+    }
+
+    /**
+     * @param since number of log lines the caller has already seen
+     */
+    public BackgroundJobLog.Slice getLog(final int since) {
+        return jobLog.read(since);
+    }
+
+    /**
+     * Called by the BackgroundJobManager once the job has completed or was cancelled.
+     */
+    protected void onFinished() {
+        jobLog.compact();
     }
 
     public String getStatus() {
@@ -49,6 +67,10 @@ public abstract class BackgroundJob<T> implements Callable<T> {
         this.future = future;
     }
 
+    void setJournal(final BackgroundJobJournal journal) {
+        this.journal = journal;
+    }
+
     public void setId(long id) {
         this.id = id;
     }
@@ -0,0 +1,344 @@
+package com.indeed.proctor.webapp.controllers;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.indeed.proctor.webapp.util.threads.LogOnUncaughtExceptionHandler;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only file journal of BackgroundJob lifecycle events (submission, log lines, completion),
+ * so the jobs page and job status survive a restart of the webapp.
+ *
+ * Records are queued by the threads that produce them and written in batches by a background thread every
+ * {@link #FLUSH_INTERVAL_MILLIS}, or right away when a job finishes, so logging never waits on the disk. On open, the journal is read back in a single pass,
+ * jobs that never finished are marked {@link #INTERRUPTED_STATUS}, and the file is compacted down to the most
+ * recent jobs. The file is compacted again whenever it grows past its size limit.
+ */
+public class BackgroundJobJournal implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(BackgroundJobJournal.class);
+
+    public static final String INTERRUPTED_STATUS = "INTERRUPTED";
+
+    private static final byte SUBMITTED = 1;
+    private static final byte LOGGED = 2;
+    private static final byte FINISHED = 3;
+
+    static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    private final File file;
+    private final int maxRetainedJobs;
+    private final long maxBytes;
+    private final List<RestoredBackgroundJob> restoredJobs;
+    private final Queue<Record> pending = new ConcurrentLinkedQueue<Record>();
+    private final ScheduledExecutorService flusher;
+
+    /* guarded by this */
+    private DataOutputStream out;
+
+    private BackgroundJobJournal(final File file,
+                                 final int maxRetainedJobs,
+                                 final long maxBytes,
+                                 final List<RestoredBackgroundJob> restoredJobs) throws IOException {
+        this.file = file;
+        this.maxRetainedJobs = maxRetainedJobs;
+        this.maxBytes = maxBytes;
+        this.restoredJobs = restoredJobs;
+        this.out = openForAppend(file);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat(BackgroundJobJournal.class.getSimpleName() + "-Thread-%d")
+                .setDaemon(true)
+                .setUncaughtExceptionHandler(new LogOnUncaughtExceptionHandler())
+                .build());
+        this.flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads the jobs recorded in the journal at file (if any), compacts it and opens it for appending.
+     * @param maxRetainedJobs number of most recent jobs kept across compactions
+     * @param maxBytes journal size that triggers a compaction
+     */
+    public static BackgroundJobJournal open(final File file, final int maxRetainedJobs, final long maxBytes) throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Failed to create directory for job journal " + file);
+        }
+        final Collection<JournaledJob> jobs = read(file, maxRetainedJobs);
+        final List<RestoredBackgroundJob> restored = Lists.newArrayListWithCapacity(jobs.size());
+        for (final JournaledJob job : jobs) {
+            if (job.status == null) {
+                final String lastStep = job.lines.isEmpty() ? "(nothing logged)" : job.lines.get(job.lines.size() - 1);
+                job.lines.add("Interrupted by a restart of the webapp. Last step: " + lastStep);
+                job.status = INTERRUPTED_STATUS;
+            }
+            restored.add(new RestoredBackgroundJob(job.id, job.title, job.status, job.lines));
+        }
+        rewrite(file, jobs);
+        LOGGER.info("Restored " + restored.size() + " background jobs from " + file);
+        return new BackgroundJobJournal(file, maxRetainedJobs, maxBytes, restored);
+    }
+
+    /**
+     * @return the jobs read from the journal when it was opened, oldest first
+     */
+    public List<RestoredBackgroundJob> getRestoredJobs() {
+        return restoredJobs;
+    }
+
+    public void recordSubmitted(final long id, final String title) {
+        pending.add(new Record(SUBMITTED, id, title));
+    }
+
+    public void recordLog(final long id, final String line) {
+        pending.add(new Record(LOGGED, id, line));
+    }
+
+    /**
+     * Writes out the finished job along with everything queued before it.
+     */
+    public void recordFinished(final long id, final String status) {
+        pending.add(new Record(FINISHED, id, status));
+        flush();
+    }
+
+    /**
+     * Writes the queued records to the file.
+     */
+    synchronized void flush() {
+        if (out == null) {
+            pending.clear();
+            return;
+        }
+        try {
+            boolean finished = false;
+            for (Record record = pending.poll(); record != null; record = pending.poll()) {
+                out.writeByte(record.type);
+                out.writeLong(record.id);
+                writeString(out, record.value);
+                finished |= record.type == FINISHED;
+            }
+            out.flush();
+            if (finished && file.length() > maxBytes) {
+                compact();
+            }
+        } catch (final IOException e) {
+            disable(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        flush();
+        synchronized (this) {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (final IOException e) {
+                    LOGGER.warn("Failed to close job journal " + file, e);
+                }
+                out = null;
+            }
+        }
+    }
+
+    private void compact() throws IOException {
+        out.close();
+        rewrite(file, read(file, maxRetainedJobs));
+        out = openForAppend(file);
+    }
+
+    /* called with the lock held */
+    private void disable(final IOException e) {
+        LOGGER.error("Failed to write job journal " + file + ", journaling disabled until restart", e);
+        flusher.shutdown();
+        pending.clear();
+        try {
+            out.close();
+        } catch (final IOException closeFailure) {
+            LOGGER.warn("Failed to close job journal " + file, closeFailure);
+        }
+        out = null;
+    }
+
+    private static DataOutputStream openForAppend(final File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    /**
+     * Reads the most recent maxRetainedJobs jobs. A truncated trailing record (from a crash mid-write) is ignored.
+     */
+    private static Collection<JournaledJob> read(final File file, final int maxRetainedJobs) throws IOException {
+        final Map<Long, JournaledJob> jobs = new LinkedHashMap<Long, JournaledJob>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, JournaledJob> eldest) {
+                return size() > maxRetainedJobs;
+            }
+        };
+        if (!file.exists()) {
+            return jobs.values();
+        }
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                final byte type = in.readByte();
+                final long id = in.readLong();
+                final String value = readString(in, file.length());
+                if (type == SUBMITTED) {
+                    jobs.put(id, new JournaledJob(id, value));
+                } else {
+                    final JournaledJob job = jobs.get(id);
+                    if (job == null) {
+                        // submitted before the retained window
+                        continue;
+                    }
+                    if (type == LOGGED) {
+                        job.lines.add(value);
+                    } else if (type == FINISHED) {
+                        job.status = value;
+                    } else {
+                        LOGGER.warn("Unknown record type " + type + " in job journal " + file + ", ignoring the rest");
+                        break;
+                    }
+                }
+            }
+        } catch (final EOFException e) {
+            // end of journal
+        } finally {
+            in.close();
+        }
+        return jobs.values();
+    }
+
+    private static void rewrite(final File file, final Collection<JournaledJob> jobs) throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            for (final JournaledJob job : jobs) {
+                out.writeByte(SUBMITTED);
+                out.writeLong(job.id);
+                writeString(out, job.title);
+                for (final String line : job.lines) {
+                    out.writeByte(LOGGED);
+                    out.writeLong(job.id);
+                    writeString(out, line);
+                }
+                if (job.status != null) {
+                    out.writeByte(FINISHED);
+                    out.writeLong(job.id);
+                    writeString(out, job.status);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            // renameTo does not replace existing files on every platform
+            if (!file.delete() || !tmp.renameTo(file)) {
+                throw new IOException("Failed to replace job journal " + file + " with " + tmp);
+            }
+        }
+    }
+
+    /* DataOutput.writeUTF is limited to 64k, which a log line with a stack trace can exceed */
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = (value == null ? "" : value).getBytes(Charsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in, final long maxLength) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > maxLength) {
+            // treat a corrupt length like a truncated record
+            throw new EOFException("Invalid string length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static class Record {
+        private final byte type;
+        private final long id;
+        private final String value;
+
+        private Record(final byte type, final long id, final String value) {
+            this.type = type;
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    private static class JournaledJob {
+        private final long id;
+        private final String title;
+        private final List<String> lines = Lists.newArrayList();
+        private String status;
+
+        private JournaledJob(final long id, final String title) {
+            this.id = id;
+            this.title = title;
+        }
+    }
+
+    /**
+     * Read-only view of a job recorded by a previous run of the webapp. It already ran, so it is never submitted and
+     * has no future; its recorded outcome is its final status.
+     */
+    public static class RestoredBackgroundJob extends BackgroundJob<String> {
+        private final String recordedStatus;
+        private final String title;
+
+        private RestoredBackgroundJob(final long id, final String title, final String status, final List<String> lines) {
+            this.title = title;
+            this.recordedStatus = status;
+            setId(id);
+            setStatus(status);
+            for (final String line : lines) {
+                log(line);
+            }
+            onFinished();
+        }
+
+        @Override
+        public String getTitle() {
+            return title;
+        }
+
+        @Override
+        public boolean isRunning() {
+            return false;
+        }
+
+        @Override
+        public String call() {
+            return recordedStatus;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.indeed.proctor.webapp.controllers;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * Thread-safe, append-only log of a {@link BackgroundJob}.
+ *
+ * Lines are stored in fixed-size chunks so appending never copies earlier output, and readers can ask for
+ * the lines after a given offset instead of the whole log. Once a job has finished its log can be compacted
+ * into a single string (plus line start positions), which drops the per-line and per-chunk overhead of
+ * logs that are only ever read from then on.
+ */
+public class BackgroundJobLog {
+    private static final int CHUNK_SIZE = 128;
+
+    /* compacted prefix of the log: lines [0, compactedLineCount) */
+    private String compacted = "";
+    private int[] compactedLineStarts = new int[0];
+
+    /* lines appended since the last compaction, in full chunks plus the partially filled last chunk */
+    private final List<String[]> chunks = Lists.newArrayList();
+    private int lineCount = 0;
+
+    public synchronized void append(final String line) {
+        final int index = lineCount - compactedLineStarts.length;
+        if (index % CHUNK_SIZE == 0) {
+            chunks.add(new String[CHUNK_SIZE]);
+        }
+        chunks.get(index / CHUNK_SIZE)[index % CHUNK_SIZE] = line;
+        lineCount++;
+    }
+
+    public synchronized int getLineCount() {
+        return lineCount;
+    }
+
+    public String getText() {
+        return read(0).getText();
+    }
+
+    /**
+     * @param since line offset to start from; offsets past the end yield an empty slice
+     * @return the lines after since, each terminated by a newline, along with the offset to ask for next
+     */
+    public synchronized Slice read(final int since) {
+        final int start = Math.max(0, Math.min(since, lineCount));
+        final StringBuilder text = new StringBuilder();
+        final int compactedLineCount = compactedLineStarts.length;
+        if (start < compactedLineCount) {
+            text.append(compacted, compactedLineStarts[start], compacted.length());
+        }
+        for (int i = Math.max(start, compactedLineCount); i < lineCount; i++) {
+            final int index = i - compactedLineCount;
+            text.append(chunks.get(index / CHUNK_SIZE)[index % CHUNK_SIZE]).append('\n');
+        }
+        return new Slice(text.toString(), start, lineCount);
+    }
+
+    /**
+     * Folds all appended lines into the compacted prefix.
+     */
+    public synchronized void compact() {
+        final int compactedLineCount = compactedLineStarts.length;
+        if (lineCount == compactedLineCount) {
+            return;
+        }
+        final StringBuilder text = new StringBuilder(compacted);
+        final int[] lineStarts = new int[lineCount];
+        System.arraycopy(compactedLineStarts, 0, lineStarts, 0, compactedLineCount);
+        for (int i = compactedLineCount; i < lineCount; i++) {
+            final int index = i - compactedLineCount;
+            lineStarts[i] = text.length();
+            text.append(chunks.get(index / CHUNK_SIZE)[index % CHUNK_SIZE]).append('\n');
+        }
+        compacted = text.toString();
+        compactedLineStarts = lineStarts;
+        chunks.clear();
+    }
+
+    public static class Slice {
+        private final String text;
+        private final int start;
+        private final int end;
+
+        public Slice(final String text, final int start, final int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return the line offset this slice starts at
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * @return the line offset following this slice, i.e. the since offset for the next read
+         */
+        public int getEnd() {
+            return end;
+        }
+    }
+}
@@ -1,18 +1,31 @@
 package com.indeed.proctor.webapp.controllers;
 
 
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.indeed.proctor.webapp.util.threads.LogOnUncaughtExceptionHandler;
+import com.indeed.util.varexport.Export;
 import com.indeed.util.varexport.VarExporter;
 import com.indeed.proctor.webapp.util.ThreadPoolExecutorVarExports;
+import org.apache.log4j.Logger;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -20,6 +33,10 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class BackgroundJobManager {
+    private static final Logger LOGGER = Logger.getLogger(BackgroundJobManager.class);
+
+    private static final int JOURNAL_RETAINED_JOBS = 200;
+    private static final long JOURNAL_MAX_BYTES = 32L * 1024 * 1024;
 
     private final List<BackgroundJob> backgroundJobs = Lists.newLinkedList();
     private final ExecutorService service;
@@ -27,16 +44,62 @@ public class BackgroundJobManager {
             .softValues()
             .makeMap();
     private final AtomicLong lastId = new AtomicLong(0);
+    /*
+     * Jobs of each lane in submission order, keyed by lane (test name). A job runs once it is at the head of
+     * every one of its lanes and leaves them when it finishes. A lane is present in the map while it has jobs.
+     */
+    private final Map<String, Queue<LaneJob>> lanes = Maps.newHashMap();
+    // null when journaling is disabled
+    private final BackgroundJobJournal journal;
 
     public BackgroundJobManager() {
         this(initThreadPool(10, 60));
     }
 
     public BackgroundJobManager(final ThreadPoolExecutor executor) {
+        this(executor, null);
+    }
+
+    /**
+     * @param journalPath file to journal jobs to, so they survive restarts. Blank disables journaling.
+     */
+    public BackgroundJobManager(final String journalPath) {
+        this(initThreadPool(10, 60), openJournal(journalPath));
+    }
+
+    public BackgroundJobManager(final ThreadPoolExecutor executor, final BackgroundJobJournal journal) {
         final VarExporter exporter = VarExporter.forNamespace(getClass().getSimpleName());
 
         exporter.export(new ThreadPoolExecutorVarExports(executor), "pool-");
+        exporter.export(this, "");
         this.service = executor;
+        this.journal = journal;
+
+        if (journal != null) {
+            for (final BackgroundJob job : journal.getRestoredJobs()) {
+                backgroundJobs.add(job);
+                history.put(job.getId(), job);
+                lastId.set(Math.max(lastId.get(), job.getId()));
+            }
+        }
+    }
+
+    private static BackgroundJobJournal openJournal(final String journalPath) {
+        if (Strings.isNullOrEmpty(journalPath) || journalPath.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return BackgroundJobJournal.open(new File(journalPath.trim()), JOURNAL_RETAINED_JOBS, JOURNAL_MAX_BYTES);
+        } catch (final IOException e) {
+            LOGGER.error("Failed to open job journal " + journalPath + ", jobs will not survive restarts", e);
+            return null;
+        }
+    }
+
+    public void shutdown() {
+        if (journal != null) {
+            journal.close();
+        }
     }
 
     private static ThreadPoolExecutor initThreadPool(final int coreThreads, final int maxThreads) {
@@ -49,12 +112,211 @@ public class BackgroundJobManager {
     }
 
     public <T> void submit(BackgroundJob<T> job) {
-        long id = lastId.incrementAndGet();
+        final JobFutureTask<T> future = register(job);
+        try {
+            service.execute(future);
+        } catch (final RejectedExecutionException e) {
+            reject(future);
+            throw e;
+        }
+    }
+
+    /**
+     * Submits a job to the serial lane identified by laneKey (typically a test name).
+     * Jobs sharing a lane run one at a time in submission order, so two edits or promotions
+     * of the same test never race each other in the store. Jobs in different lanes run in parallel.
+     */
+    public <T> void submit(final BackgroundJob<T> job, final String laneKey) {
+        if (laneKey == null) {
+            submit(job);
+            return;
+        }
+        submit(job, Collections.singleton(laneKey));
+    }
+
+    /**
+     * Submits a job that holds several lanes at once, such as a batch change of many tests. It runs after the jobs
+     * submitted earlier to any of its lanes, and the jobs submitted later to any of them wait for it.
+     */
+    public <T> void submit(final BackgroundJob<T> job, final Collection<String> laneKeys) {
+        if (laneKeys.isEmpty()) {
+            submit(job);
+            return;
+        }
+        final LaneJob laneJob = new LaneJob(register(job), ImmutableSet.copyOf(laneKeys));
+
+        synchronized (lanes) {
+            for (final String laneKey : laneJob.laneKeys) {
+                Queue<LaneJob> lane = lanes.get(laneKey);
+                if (lane == null) {
+                    lane = Lists.newLinkedList();
+                    lanes.put(laneKey, lane);
+                } else {
+                    job.log("Waiting for " + lane.size() + " earlier job(s) on " + laneKey + " to finish");
+                }
+                lane.add(laneJob);
+            }
+            if (!isReady(laneJob)) {
+                return;
+            }
+            laneJob.started = true;
+        }
+        try {
+            service.execute(new LaneRunner(laneJob));
+        } catch (final RejectedExecutionException e) {
+            reject(laneJob.future);
+            cancel(laneJob);
+            throw e;
+        }
+    }
+
+    /**
+     * Finishes a registered job the executor refused, so it does not show as running forever.
+     */
+    private void reject(final JobFutureTask<?> future) {
+        future.job.log("Failed to start: no thread is available to run the job");
+        future.cancel(false);
+    }
+
+    /* called with the lanes lock held */
+    private boolean isReady(final LaneJob laneJob) {
+        for (final String laneKey : laneJob.laneKeys) {
+            if (lanes.get(laneKey).peek() != laneJob) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes a finished job from its lanes.
+     * @return the jobs that were waiting on it and can start now
+     */
+    private List<LaneJob> release(final LaneJob laneJob) {
+        final List<LaneJob> ready = Lists.newArrayList();
+        synchronized (lanes) {
+            for (final String laneKey : laneJob.laneKeys) {
+                final Queue<LaneJob> lane = lanes.get(laneKey);
+                lane.remove(laneJob);
+                final LaneJob next = lane.peek();
+                if (next == null) {
+                    lanes.remove(laneKey);
+                } else if (!next.started && isReady(next)) {
+                    next.started = true;
+                    ready.add(next);
+                }
+            }
+        }
+        return ready;
+    }
+
+    private void dispatch(final LaneJob laneJob) {
+        try {
+            service.execute(new LaneRunner(laneJob));
+        } catch (final RejectedExecutionException e) {
+            LOGGER.error("Failed to start job " + laneJob.future.job.getId() + ", cancelling it", e);
+            reject(laneJob.future);
+            cancel(laneJob);
+        }
+    }
+
+    private void cancel(final LaneJob laneJob) {
+        laneJob.future.cancel(false);
+        for (final LaneJob next : release(laneJob)) {
+            dispatch(next);
+        }
+    }
+
+    private <T> JobFutureTask<T> register(final BackgroundJob<T> job) {
+        final long id = lastId.incrementAndGet();
         job.setId(id);
-        Future<T> future = service.submit(job);
+        final JobFutureTask<T> future = new JobFutureTask<T>(job);
         job.setFuture(future);
+        if (journal != null) {
+            journal.recordSubmitted(id, job.getTitle());
+            job.setJournal(journal);
+        }
         backgroundJobs.add(job);
         history.put(id, job);
+        return future;
+    }
+
+    @Export(name = "active-lanes")
+    public int getActiveLaneCount() {
+        synchronized (lanes) {
+            return lanes.size();
+        }
+    }
+
+    @Export(name = "queued-lane-jobs")
+    public int getQueuedLaneJobCount() {
+        synchronized (lanes) {
+            // a job holding several lanes is in each of their queues
+            final Set<LaneJob> queued = Sets.newIdentityHashSet();
+            for (final Queue<LaneJob> lane : lanes.values()) {
+                for (final LaneJob laneJob : lane) {
+                    if (!laneJob.started) {
+                        queued.add(laneJob);
+                    }
+                }
+            }
+            return queued.size();
+        }
+    }
+
+    private class JobFutureTask<T> extends FutureTask<T> {
+        private final BackgroundJob<T> job;
+
+        private JobFutureTask(final BackgroundJob<T> job) {
+            super(job);
+            this.job = job;
+        }
+
+        @Override
+        protected void done() {
+            job.onFinished();
+            if (journal != null) {
+                journal.recordFinished(job.getId(), job.getStatus());
+            }
+        }
+    }
+
+    private static class LaneJob {
+        private final JobFutureTask<?> future;
+        private final Set<String> laneKeys;
+        /* guarded by the lanes lock */
+        private boolean started = false;
+
+        private LaneJob(final JobFutureTask<?> future, final Set<String> laneKeys) {
+            this.future = future;
+            this.laneKeys = laneKeys;
+        }
+    }
+
+    /**
+     * Runs lane jobs back to back on one pool thread: when a job finishes, the first job it was holding up runs
+     * next on the same thread and any others are handed to the pool.
+     * Cancelled jobs are skipped because FutureTask.run() is a no-op for them.
+     */
+    private class LaneRunner implements Runnable {
+        private final LaneJob first;
+
+        private LaneRunner(final LaneJob first) {
+            this.first = first;
+        }
+
+        @Override
+        public void run() {
+            LaneJob next = first;
+            while (next != null) {
+                next.future.run();
+                final List<LaneJob> ready = release(next);
+                next = ready.isEmpty() ? null : ready.get(0);
+                for (int i = 1; i < ready.size(); i++) {
+                    dispatch(ready.get(i));
+                }
+            }
+        }
     }
 
     public List<BackgroundJob> getRecentJobs() {
@@ -63,7 +325,7 @@ public class BackgroundJobManager {
         while (jobs.hasNext()) {
             BackgroundJob job = jobs.next();
             recent.add(job); // inactive jobs get to be returned once...
-            if (job.getFuture().isDone() || job.getFuture().isCancelled()) {
+            if (!job.isRunning()) {
                 jobs.remove();
             }
         }
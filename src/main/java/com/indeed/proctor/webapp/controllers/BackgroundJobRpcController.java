@@ -8,17 +8,19 @@ import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.View;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 /**
  * @author parker
@@ -30,16 +32,24 @@ public class BackgroundJobRpcController {
 
     private final WebappConfiguration configuration;
     private final BackgroundJobManager manager;
+    private final BackgroundJobStatusStream statusStream;
 
     @Autowired
     public BackgroundJobRpcController(final BackgroundJobManager manager,
+                                      final BackgroundJobStatusStream statusStream,
                                       final WebappConfiguration configuration) {
         this.manager = manager;
+        this.statusStream = statusStream;
         this.configuration = configuration;
     }
 
+    /**
+     * @param since number of log lines the client already has; only later lines are returned.
+     *              The response's logOffset is the value to pass on the next call.
+     */
     @RequestMapping(value = "/status", method = RequestMethod.GET)
-    public View doGetJobStatus(@RequestParam("id") final long jobId) {
+    public View doGetJobStatus(@RequestParam("id") final long jobId,
+                               @RequestParam(value = "since", defaultValue = "0") final int since) {
         final BackgroundJob job = manager.getJobForId(jobId);
         if(job == null) {
             final String msg = "Failed to identify job for " + jobId;
@@ -48,30 +58,55 @@ public class BackgroundJobRpcController {
         } else {
             final Future future = job.getFuture();
             Object outcome = null;
-            final long timeout = 100;
-            final TimeUnit unit = TimeUnit.MILLISECONDS;
             try {
-                if(future != null) {
-                    outcome = future.get(timeout, unit);
-                } else {
-                    outcome = null;
+                // never block the request thread waiting for a running job
+                if(future != null && future.isDone() && !future.isCancelled()) {
+                    outcome = future.get();
                 }
             } catch (InterruptedException exp) {
-                LOGGER.warn("Interrupted during BackgroundJob.future.get(" + timeout + ", " + unit + ")");
-            } catch (TimeoutException exp) {
-                // Expected if Future is not complete, no need to log anything
+                LOGGER.warn("Interrupted during BackgroundJob.future.get()");
             } catch (ExecutionException exp) {
                 // bummer...
                 outcome = null;
-                LOGGER.error("Exception during BackgroundJob.future.get(" + timeout + ", " + unit + ")", exp);
+                LOGGER.error("Exception during BackgroundJob.future.get()", exp);
             }
 
-            final Map<String, Object> result = buildJobJson(job, outcome);
+            final Map<String, Object> result = buildJobJson(job, outcome, since);
             final JsonResponse<Map> response = new JsonResponse<Map>(result, true, null);
             return new JsonView(response);
         }
     }
 
+    /**
+     * Streams status changes and new log output of a job as server-sent events.
+     * Answers 501 when the container chain does not support async requests; clients then fall back to polling /status.
+     */
+    @RequestMapping(value = "/stream", method = RequestMethod.GET)
+    public void doStreamJobStatus(@RequestParam("id") final long jobId,
+                                  @RequestHeader(value = "Last-Event-ID", required = false) final String lastEventId,
+                                  final HttpServletRequest request,
+                                  final HttpServletResponse response) throws IOException {
+        final BackgroundJob job = manager.getJobForId(jobId);
+        if (job == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Failed to identify job for " + jobId);
+        } else if (!request.isAsyncSupported()) {
+            response.sendError(HttpServletResponse.SC_NOT_IMPLEMENTED, "Job status streaming is not supported");
+        } else {
+            statusStream.subscribe(job, request, response, parseLogOffset(lastEventId));
+        }
+    }
+
+    private static int parseLogOffset(final String lastEventId) {
+        if (lastEventId == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(lastEventId.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     @RequestMapping(value = "/list", method = RequestMethod.GET)
     public String doGetJobList(final Model model) {
         final List<BackgroundJob> jobs = manager.getRecentJobs();
@@ -142,11 +177,17 @@ public class BackgroundJobRpcController {
         return buildJobJson(job, null);
     }
     public static Map<String,Object> buildJobJson(final BackgroundJob job, final Object outcome) {
+        return buildJobJson(job, outcome, 0);
+    }
+    public static Map<String,Object> buildJobJson(final BackgroundJob job, final Object outcome, final int logSince) {
         final ImmutableMap.Builder<String,Object> builder = ImmutableMap.builder();
+        final BackgroundJobLog.Slice log = job.getLog(logSince);
 
         builder.put("jobId", job.getId())
             .put("status", job.getStatus())
-            .put("log", job.getLog())
+            .put("log", log.getText())
+            .put("logSince", log.getStart())
+            .put("logOffset", log.getEnd())
             .put("title", job.getTitle())
             .put("running", job.isRunning());
         if(outcome != null) {
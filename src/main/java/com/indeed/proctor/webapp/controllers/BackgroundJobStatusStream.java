@@ -0,0 +1,276 @@
+package com.indeed.proctor.webapp.controllers;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.indeed.proctor.common.Serializers;
+import com.indeed.proctor.webapp.util.threads.LogOnUncaughtExceptionHandler;
+import com.indeed.util.varexport.Export;
+import com.indeed.util.varexport.VarExporter;
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes BackgroundJob status changes and new log output to clients as server-sent events.
+ *
+ * Each subscriber is a suspended (Servlet 3 async) request, so no container thread is held while a job runs.
+ * A single scheduler thread checks the subscribed jobs every {@link #PUSH_INTERVAL_MILLIS} ms and hands a write to
+ * a pool of writer threads only when something changed. A subscriber has at most one write in flight; one still
+ * blocked after {@link #WRITE_TIMEOUT_MILLIS} ms is dropped, so a slow client never holds up the others. The event id is the log line offset, which lets the browser resume
+ * a dropped stream via Last-Event-ID without resending the log.
+ */
+public class BackgroundJobStatusStream {
+    private static final Logger LOGGER = Logger.getLogger(BackgroundJobStatusStream.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = Serializers.strict();
+    private static final String CONTENT_TYPE = "text/event-stream;charset=utf-8";
+
+    private static final long PUSH_INTERVAL_MILLIS = 250;
+    private static final long HEARTBEAT_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(15);
+    // the browser reconnects on its own after a timeout, resuming from the last event id
+    private static final long STREAM_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long WRITE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final int MAX_WRITER_THREADS = 32;
+
+    private final Set<Subscriber> subscribers = Sets.newSetFromMap(Maps.<Subscriber, Boolean>newConcurrentMap());
+    private final ScheduledExecutorService scheduler;
+    private final ThreadPoolExecutor writers;
+    private final AtomicLong slowSubscribersDropped = new AtomicLong(0);
+    private final long writeTimeoutMillis;
+
+    public BackgroundJobStatusStream() {
+        this(WRITE_TIMEOUT_MILLIS);
+    }
+
+    BackgroundJobStatusStream(final long writeTimeoutMillis) {
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat(BackgroundJobStatusStream.class.getSimpleName() + "-Thread-%d")
+                .setDaemon(true)
+                .setUncaughtExceptionHandler(new LogOnUncaughtExceptionHandler())
+                .build();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        final ThreadFactory writerThreadFactory = new ThreadFactoryBuilder()
+                .setNameFormat(BackgroundJobStatusStream.class.getSimpleName() + "-Writer-%d")
+                .setDaemon(true)
+                .setUncaughtExceptionHandler(new LogOnUncaughtExceptionHandler())
+                .build();
+        /* no queue: when every writer is busy, the subscriber is tried again on the next push */
+        this.writers = new ThreadPoolExecutor(0, MAX_WRITER_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), writerThreadFactory);
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                pushAll();
+            }
+        }, PUSH_INTERVAL_MILLIS, PUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        VarExporter.forNamespace(getClass().getSimpleName()).export(this, "");
+    }
+
+    /**
+     * Suspends the request and streams the status of the job into it until the job finishes.
+     * The caller must have verified that the request supports async processing.
+     */
+    public void subscribe(final BackgroundJob<?> job,
+                          final HttpServletRequest request,
+                          final HttpServletResponse response,
+                          final int logOffset) throws IOException {
+        response.setContentType(CONTENT_TYPE);
+        response.setHeader("Cache-Control", "no-cache");
+
+        final AsyncContext context = request.startAsync(request, response);
+        context.setTimeout(STREAM_TIMEOUT_MILLIS);
+        final Subscriber subscriber = new Subscriber(job, context, logOffset);
+        context.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(final AsyncEvent event) {
+                subscribers.remove(subscriber);
+            }
+
+            @Override
+            public void onTimeout(final AsyncEvent event) {
+                subscribers.remove(subscriber);
+                event.getAsyncContext().complete();
+            }
+
+            @Override
+            public void onError(final AsyncEvent event) {
+                subscribers.remove(subscriber);
+            }
+
+            @Override
+            public void onStartAsync(final AsyncEvent event) {
+            }
+        });
+        response.flushBuffer();
+        subscribers.add(subscriber);
+    }
+
+    @Export(name = "subscribers")
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @Export(name = "slow-subscribers-dropped")
+    public long getSlowSubscribersDropped() {
+        return slowSubscribersDropped.get();
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        writers.shutdownNow();
+        for (final Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+        subscribers.clear();
+    }
+
+    private void pushAll() {
+        final long now = System.currentTimeMillis();
+        for (final Subscriber subscriber : subscribers) {
+            final long writeStarted = subscriber.writeStartedMillis.get();
+            if (writeStarted != 0) {
+                if (now - writeStarted >= writeTimeoutMillis) {
+                    LOGGER.debug("Dropping slow job status subscriber for job " + subscriber.job.getId());
+                    slowSubscribersDropped.incrementAndGet();
+                    drop(subscriber);
+                }
+                continue;
+            }
+            subscriber.writeStartedMillis.set(now);
+            try {
+                writers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        write(subscriber);
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                subscriber.writeStartedMillis.set(0);
+            }
+        }
+    }
+
+    private void write(final Subscriber subscriber) {
+        try {
+            if (!subscriber.push()) {
+                drop(subscriber);
+            }
+        } catch (final Exception e) {
+            // most likely the client went away
+            LOGGER.debug("Dropping job status subscriber for job " + subscriber.job.getId(), e);
+            drop(subscriber);
+        } finally {
+            subscriber.writeStartedMillis.set(0);
+        }
+    }
+
+    private void drop(final Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            subscriber.close();
+        }
+    }
+
+    private static class Subscriber {
+        private final BackgroundJob<?> job;
+        private final AsyncContext context;
+        /* when the write in flight started, 0 when there is none; the other fields are only used by that write */
+        private final AtomicLong writeStartedMillis = new AtomicLong(0);
+        private int logOffset;
+        private String lastStatus = null;
+        private long lastWriteMillis = System.currentTimeMillis();
+
+        private Subscriber(final BackgroundJob<?> job, final AsyncContext context, final int logOffset) {
+            this.job = job;
+            this.context = context;
+            this.logOffset = logOffset;
+        }
+
+        /**
+         * Writes pending changes to the client.
+         * @return false once the final event for a finished job has been written
+         */
+        private boolean push() throws IOException {
+            final boolean running = job.isRunning();
+            final String status = job.getStatus();
+            final BackgroundJobLog.Slice log = job.getLog(logOffset);
+            final PrintWriter writer = context.getResponse().getWriter();
+
+            if (log.getStart() < log.getEnd() || !status.equals(lastStatus) || !running) {
+                final Map<String, Object> event = Maps.newLinkedHashMap();
+                event.put("jobId", job.getId());
+                event.put("status", status);
+                event.put("log", log.getText());
+                event.put("logSince", log.getStart());
+                event.put("logOffset", log.getEnd());
+                event.put("title", job.getTitle());
+                event.put("running", running);
+                if (!running) {
+                    final Object outcome = getOutcome(job);
+                    if (outcome != null) {
+                        event.put("outcome", outcome);
+                    }
+                }
+                event.put("urls", job.getUrls());
+
+                logOffset = log.getEnd();
+                lastStatus = status;
+                writer.write("id: " + logOffset + "\n");
+                writer.write("data: " + OBJECT_MAPPER.writeValueAsString(event) + "\n\n");
+            } else if (System.currentTimeMillis() - lastWriteMillis >= HEARTBEAT_INTERVAL_MILLIS) {
+                writer.write(": heartbeat\n\n");
+            } else {
+                return true;
+            }
+            writer.flush();
+            if (writer.checkError()) {
+                throw new IOException("Failed to write job status for " + job.getId());
+            }
+            lastWriteMillis = System.currentTimeMillis();
+            return running;
+        }
+
+        private void close() {
+            try {
+                context.complete();
+            } catch (final IllegalStateException e) {
+                // already completed or timed out
+            }
+        }
+    }
+
+    private static Object getOutcome(final BackgroundJob<?> job) {
+        final Future<?> future = job.getFuture();
+        if (future == null || !future.isDone() || future.isCancelled()) {
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (final ExecutionException e) {
+            return null;
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.indeed.proctor.webapp.controllers;
 
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.indeed.proctor.webapp.db.Environment;
+import com.indeed.proctor.webapp.db.WorkspaceCleaner;
 import com.indeed.proctor.store.ProctorStore;
 import com.indeed.proctor.webapp.model.WebappConfiguration;
 import com.indeed.proctor.webapp.views.JsonView;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -13,8 +18,13 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.View;
 import org.springframework.web.servlet.view.RedirectView;
 
+import java.io.IOException;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 /**
  * @author parker
@@ -24,15 +34,20 @@ import javax.servlet.http.HttpServletRequest;
 public class CleanWorkingDirectoryController extends AbstractController {
 
     private final BackgroundJobManager jobManager;
+    private final WorkspaceCleaner workspaceCleaner;
+    // users, as authenticated by the servlet container, allowed to delete the stale workspaces of every user
+    private Set<String> workspaceCleanupAdmins = Collections.emptySet();
 
     @Autowired
     public CleanWorkingDirectoryController(final WebappConfiguration configuration,
                                            @Qualifier("trunk") final ProctorStore trunkStore,
                                            @Qualifier("qa") final ProctorStore qaStore,
                                            @Qualifier("production") final ProctorStore productionStore,
-                                           final BackgroundJobManager jobManager) {
+                                           final BackgroundJobManager jobManager,
+                                           final WorkspaceCleaner workspaceCleaner) {
         super(configuration, trunkStore, qaStore, productionStore);
         this.jobManager = jobManager;
+        this.workspaceCleaner = workspaceCleaner;
     }
 
     @RequestMapping(value = "/rpc/svn/clean-working-directory", method = RequestMethod.POST)
@@ -59,18 +74,76 @@ public class CleanWorkingDirectoryController extends AbstractController {
 
             @Override
             public Boolean call() throws Exception {
-                boolean success = true;
+                log(String.format("Cleaning trunk, qa and production workspaces for user %s", username));
+                final Map<Environment, ProctorStore> stores = Maps.newLinkedHashMap();
                 for(final Environment env : new Environment[] { Environment.WORKING, Environment.QA, Environment.PRODUCTION }) {
-                    success &= cleanUserWorkspace(env, determineStoreFromEnvironment(env));
+                    stores.put(env, determineStoreFromEnvironment(env));
                 }
-                return success;
+                return logResults(this, workspaceCleaner.cleanUserWorkspaces(username, stores));
             }
+        };
+    }
+
+    @Value("${workspace.cleanup.admins:}")
+    public void setWorkspaceCleanupAdmins(final String workspaceCleanupAdmins) {
+        this.workspaceCleanupAdmins = ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(workspaceCleanupAdmins));
+    }
+
+    /**
+     * Deletes the workspaces of all users that have not been used for maxAgeMinutes, throttled to filesPerSecond files visited.
+     * Removes every user's workspaces, so it answers 403 unless the servlet container authenticated the request as
+     * one of the users listed in workspace.cleanup.admins; with no list, nobody may.
+     */
+    @RequestMapping(value = "/rpc/svn/clean-stale-workspaces", method = RequestMethod.POST)
+    public View cleanStaleWorkspaces(final HttpServletRequest request,
+                                     final HttpServletResponse response,
+                                     @RequestParam(defaultValue = "1440") final long maxAgeMinutes,
+                                     @RequestParam(defaultValue = "200") final double filesPerSecond) throws IOException {
+        final String username = request.getRemoteUser();
+        if (username == null || !workspaceCleanupAdmins.contains(username)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, "Cleaning the workspaces of every user is restricted to workspace.cleanup.admins");
+            return null;
+        }
+        final BackgroundJob<Boolean> job = createCleanStaleWorkspacesJob(username, maxAgeMinutes, filesPerSecond);
+        jobManager.submit(job);
 
-            private boolean cleanUserWorkspace(final Environment environment,
-                                               final ProctorStore store) {
-                log(String.format("Cleaning %s workspace for user %s", environment.getName(), username));
-                return store.cleanUserWorkspace(username);
+        if (isAJAXRequest(request)) {
+            final JsonResponse<Map> jsonResponse = new JsonResponse<Map>(BackgroundJobRpcController.buildJobJson(job), true, job.getTitle());
+            return new JsonView(jsonResponse);
+        } else {
+            // redirect to a status page for the job id
+            return new RedirectView("/proctor/rpc/jobs/list?id=" + job.getId());
+        }
+    }
+
+    private BackgroundJob<Boolean> createCleanStaleWorkspacesJob(final String username, final long maxAgeMinutes, final double filesPerSecond) {
+        return new BackgroundJob<Boolean>() {
+            @Override
+            public String getTitle() {
+                return String.format("(%s) Cleaning workspaces unused for %d minutes", username, maxAgeMinutes);
+            }
+
+            @Override
+            public Boolean call() throws Exception {
+                if (maxAgeMinutes <= 0 || filesPerSecond <= 0) {
+                    log("maxAgeMinutes and filesPerSecond must be positive");
+                    return false;
+                }
+                log(String.format("Deleting workspaces unused for %d minutes, at most %.0f files per second", maxAgeMinutes, filesPerSecond));
+                return logResults(this, workspaceCleaner.cleanStaleWorkspaces(TimeUnit.MINUTES.toMillis(maxAgeMinutes), filesPerSecond));
             }
         };
     }
+
+    private static boolean logResults(final BackgroundJob<?> job, final Map<Environment, WorkspaceCleaner.Result> results) {
+        boolean success = true;
+        long reclaimed = 0;
+        for (final WorkspaceCleaner.Result result : results.values()) {
+            job.log(result.toString());
+            success &= result.isSuccess();
+            reclaimed += result.getBytesReclaimed();
+        }
+        job.log(String.format("Reclaimed %d bytes in total", reclaimed));
+        return success;
+    }
 }
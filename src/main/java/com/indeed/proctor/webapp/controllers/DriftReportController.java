@@ -0,0 +1,53 @@
+package com.indeed.proctor.webapp.controllers;
+
+import com.indeed.proctor.common.DriftReport;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.store.ProctorStore;
+import com.indeed.proctor.webapp.db.Environment;
+import com.indeed.proctor.webapp.model.WebappConfiguration;
+import com.indeed.proctor.webapp.views.JsonView;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.View;
+
+/**
+ * Lists the tests that differ between trunk, qa and production.
+ * The report is computed once per combination of matrix versions.
+ */
+@Controller
+@RequestMapping({ "/drift", "/proctor/drift" })
+public class DriftReportController extends AbstractController {
+    private static final Logger LOGGER = Logger.getLogger(DriftReportController.class);
+
+    private volatile DriftReport report;
+
+    @Autowired
+    public DriftReportController(final WebappConfiguration configuration,
+                                 @Qualifier("trunk") final ProctorStore trunkStore,
+                                 @Qualifier("qa") final ProctorStore qaStore,
+                                 @Qualifier("production") final ProctorStore productionStore) {
+        super(configuration, trunkStore, qaStore, productionStore);
+    }
+
+    @RequestMapping(value = "", method = RequestMethod.GET)
+    public View doGetDrift() {
+        final TestMatrixVersion trunk = getCurrentMatrix(Environment.WORKING);
+        final TestMatrixVersion qa = getCurrentMatrix(Environment.QA);
+        final TestMatrixVersion production = getCurrentMatrix(Environment.PRODUCTION);
+
+        DriftReport current = report;
+        if (current == null || !current.isFor(trunk, qa, production)) {
+            final long start = System.currentTimeMillis();
+            current = DriftReport.compute(trunk, qa, production);
+            report = current;
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Computed drift report in " + (System.currentTimeMillis() - start) + " ms");
+            }
+        }
+        return new JsonView(new JsonResponse<DriftReport>(current, true, null));
+    }
+}
@@ -1,28 +1,26 @@
 package com.indeed.proctor.webapp.controllers;
 
-import com.google.common.base.Charsets;
 import com.google.common.base.Functions;
 import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.indeed.proctor.common.ConsumableArtifacts;
 import com.indeed.proctor.common.ProctorLoadResult;
 import com.indeed.proctor.common.ProctorSpecification;
 import com.indeed.proctor.common.ProctorUtils;
-import com.indeed.proctor.common.Serializers;
 import com.indeed.proctor.common.TestSpecification;
-import com.indeed.proctor.common.model.TestBucket;
-import com.indeed.proctor.common.model.TestDefinition;
 import com.indeed.proctor.common.model.TestMatrixArtifact;
-import com.indeed.proctor.common.model.TestMatrixDefinition;
 import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.common.model.TestType;
 import com.indeed.proctor.webapp.ProctorSpecificationSource;
 import com.indeed.proctor.webapp.db.Environment;
 import com.indeed.proctor.store.ProctorStore;
 import com.indeed.proctor.webapp.model.AppVersion;
+import com.indeed.proctor.webapp.model.MatrixListIndex;
 import com.indeed.proctor.webapp.model.ProctorClientApplication;
 import com.indeed.proctor.webapp.model.RemoteSpecificationResult;
 import com.indeed.proctor.webapp.model.SessionViewModel;
@@ -30,9 +28,6 @@ import com.indeed.proctor.webapp.model.WebappConfiguration;
 import com.indeed.proctor.webapp.util.threads.LogOnUncaughtExceptionHandler;
 import com.indeed.proctor.webapp.views.JsonView;
 import org.apache.log4j.Logger;
-import org.codehaus.jackson.JsonGenerationException;
-import org.codehaus.jackson.map.JsonMappingException;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
@@ -40,17 +35,19 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.SortedSet;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -60,10 +57,14 @@ import java.util.concurrent.ThreadFactory;
 public class ProctorController extends AbstractController {
     private static final Logger LOGGER = Logger.getLogger(ProctorController.class);
 
-    private final ObjectMapper objectMapper = Serializers.strict();
     private final int verificationTimeout;
     private final ExecutorService executor;
     private final ProctorSpecificationSource specificationSource;
+    private final int matrixListPageSize;
+    /* rebuilt when the branch's matrix version changes */
+    private final ConcurrentMap<Environment, MatrixListIndex> matrixListIndexes = Maps.newConcurrentMap();
+
+    private static final int MAX_MATRIX_LIST_PAGE_SIZE = 1000;
 
     private static enum View {
         MATRIX_LIST("matrix/list"),
@@ -88,6 +89,7 @@ public class ProctorController extends AbstractController {
                              @Qualifier("production") final ProctorStore productionStore,
             @Value("${verify.http.timeout:1000}") final int verificationTimeout,
             @Value("${verify.executor.threads:10}") final int executorThreads,
+            @Value("${matrix.list.page.size:50}") final int matrixListPageSize,
             final ProctorSpecificationSource specificationSource) {
         super(configuration, trunkStore, qaStore, productionStore);
         this.verificationTimeout = verificationTimeout;
@@ -97,6 +99,7 @@ public class ProctorController extends AbstractController {
                 .build();
         this.executor = Executors.newFixedThreadPool(executorThreads, threadFactory);
         this.specificationSource = specificationSource;
+        this.matrixListPageSize = matrixListPageSize;
     }
 
     /**
@@ -104,17 +107,45 @@ public class ProctorController extends AbstractController {
      */
     @RequestMapping(value="/", method=RequestMethod.GET)
     public String viewTestMatrix(final String branch,
+                                 @RequestParam(required = false) final String prefix,
+                                 @RequestParam(required = false) final String q,
+                                 @RequestParam(required = false) final String testType,
+                                 @RequestParam(required = false) final Boolean hasRule,
+                                 @RequestParam(required = false, defaultValue = "1") final int page,
+                                 @RequestParam(required = false, defaultValue = "0") final int pageSize,
                                  final Model model) {
         final Environment which = determineEnvironmentFromParameter(branch);
         model.addAttribute("emptyClients", specificationSource.loadAllSpecifications(determineEnvironmentFromParameter(branch)).keySet().isEmpty());
-        return getArtifactForView(model, which, View.MATRIX_LIST);
+        model.addAttribute("prefix", prefix);
+        model.addAttribute("q", q);
+        model.addAttribute("testType", testType);
+        model.addAttribute("hasRule", hasRule);
+        model.addAttribute("testTypes", Arrays.asList(TestType.values()));
+        return getArtifactForView(model, which, View.MATRIX_LIST, new MatrixListIndex.Filter(prefix, q, testType, hasRule), page, pageSize);
+    }
+
+    /**
+     * One page of the matrix list, filtered like the matrix list page, so that rows can be loaded on demand.
+     * Each row carries the fields the list shows rather than the whole test definition.
+     */
+    @RequestMapping(value="/matrix/list", method=RequestMethod.GET)
+    public JsonView viewTestMatrixPage(final String branch,
+                                       @RequestParam(required = false) final String prefix,
+                                       @RequestParam(required = false) final String q,
+                                       @RequestParam(required = false) final String testType,
+                                       @RequestParam(required = false) final Boolean hasRule,
+                                       @RequestParam(required = false, defaultValue = "1") final int page,
+                                       @RequestParam(required = false, defaultValue = "0") final int pageSize) {
+        final Environment which = determineEnvironmentFromParameter(branch);
+        final MatrixListIndex index = getMatrixListIndex(which, getCurrentMatrix(which));
+        return new JsonView(index.query(new MatrixListIndex.Filter(prefix, q, testType, hasRule), page, getMatrixListPageSize(pageSize)));
     }
-    
+
     @RequestMapping(value="/matrix/raw", method=RequestMethod.GET)
     public JsonView viewRawTestMatrix(final String branch, final Model model) {
         final Environment which = determineEnvironmentFromParameter(branch);
         final TestMatrixVersion testMatrixVersion = getCurrentMatrix(which);
-        final TestMatrixArtifact testMatrixArtifact = ProctorUtils.convertToConsumableArtifact(testMatrixVersion);
+        final TestMatrixArtifact testMatrixArtifact = ConsumableArtifacts.convert(testMatrixVersion);
         return new JsonView(testMatrixArtifact);
     }
 
@@ -163,7 +194,7 @@ public class ProctorController extends AbstractController {
                                             final TestMatrixVersion matrix,
                                             final Map<String, CompatibilityRow> tests,
                                             final Environment environment) {
-        final TestMatrixArtifact artifact = ProctorUtils.convertToConsumableArtifact(matrix);
+        final TestMatrixArtifact artifact = ConsumableArtifacts.convert(matrix);
 
         final Map<AppVersion, ProctorSpecification> clients = specificationSource.loadAllSuccessfulSpecifications(environment);
         // sort the apps (probably should sort the Map.Entry, but this is good enough for now
@@ -222,7 +253,7 @@ public class ProctorController extends AbstractController {
         final CompatibilityRow row = new CompatibilityRow();
         rows.put(rowEnv, row);
         final TestMatrixVersion matrix = getCurrentMatrix(rowEnv);
-        final TestMatrixArtifact artifact = ProctorUtils.convertToConsumableArtifact(matrix);
+        final TestMatrixArtifact artifact = ConsumableArtifacts.convert(matrix);
         populateSingleCompabilityColumn(rowEnv, artifact, row, Environment.WORKING);
         populateSingleCompabilityColumn(rowEnv, artifact, row, Environment.QA);
         populateSingleCompabilityColumn(rowEnv, artifact, row, Environment.PRODUCTION);
@@ -338,14 +369,13 @@ public class ProctorController extends AbstractController {
         }
     }
 
-    private String getArtifactForView(final Model model, final Environment branch, final View view) {
+    private String getArtifactForView(final Model model,
+                                      final Environment branch,
+                                      final View view,
+                                      final MatrixListIndex.Filter filter,
+                                      final int page,
+                                      final int pageSize) {
         final TestMatrixVersion testMatrix = getCurrentMatrix(branch);
-        final TestMatrixDefinition testMatrixDefinition;
-        if (testMatrix == null) {
-            testMatrixDefinition = new TestMatrixDefinition();
-        } else {
-            testMatrixDefinition = testMatrix.getTestMatrixDefinition();
-        }
 
         model.addAttribute("branch", branch);
         model.addAttribute("session",
@@ -355,36 +385,27 @@ public class ProctorController extends AbstractController {
                                    // todo get the appropriate js compile / non-compile url
                                .build());
         model.addAttribute("testMatrixVersion", testMatrix);
-        final String errorMessage = "Apparently not impossible exception generating JSON";
-        try {
-            final String testMatrixJson = objectMapper.defaultPrettyPrintingWriter().writeValueAsString(testMatrixDefinition);
-            model.addAttribute("testMatrixDefinition", testMatrixJson);
-
-            final Map<String, Map<String, String>> colors = Maps.newHashMap();
-            for (final Entry<String, TestDefinition> entry : testMatrixDefinition.getTests().entrySet()) {
-                final Map<String, String> testColors = Maps.newHashMap();
-                for (final TestBucket bucket : entry.getValue().getBuckets()) {
-                    final long hashedBucketName = Hashing.md5().newHasher().putString(bucket.getName(), Charsets.UTF_8).hash().asLong();
-                    final int color = ((int) (hashedBucketName & 0x00FFFFFFL)) | 0x00808080; //  convert a hash of the bucket to a color, but keep it light
-                    testColors.put(bucket.getName(), Integer.toHexString(color));
-                }
-                colors.put(entry.getKey(), testColors);
-            }
-            model.addAttribute("colors", colors);
-
-            return view.getName();
-        } catch (final JsonGenerationException e) {
-            LOGGER.error(errorMessage, e);
-            model.addAttribute("exception", toString(e));
-        } catch (final JsonMappingException e) {
-            LOGGER.error(errorMessage, e);
-            model.addAttribute("exception", toString(e));
-        } catch (final IOException e) {
-            LOGGER.error(errorMessage, e);
-            model.addAttribute("exception", toString(e));
+        final MatrixListIndex index = getMatrixListIndex(branch, testMatrix);
+        // only the tests of the requested page are rendered, matrix-list.js loads other pages through /matrix/list
+        model.addAttribute("testMatrixPage", index.query(filter, page, getMatrixListPageSize(pageSize)));
+        model.addAttribute("colors", index.getColors());
+
+        return view.getName();
+    }
+
+    private MatrixListIndex getMatrixListIndex(final Environment branch, /* @Nullable */ final TestMatrixVersion testMatrix) {
+        final MatrixListIndex current = matrixListIndexes.get(branch);
+        final String version = testMatrix == null ? null : testMatrix.getVersion();
+        if (current != null && testMatrix != null && Objects.equal(current.getVersion(), version)) {
+            return current;
         }
-        model.addAttribute("error", errorMessage);
-        return View.ERROR.getName();
+        final MatrixListIndex index = new MatrixListIndex(testMatrix);
+        matrixListIndexes.put(branch, index);
+        return index;
+    }
+
+    private int getMatrixListPageSize(final int requested) {
+        return Math.min(requested > 0 ? requested : matrixListPageSize, MAX_MATRIX_LIST_PAGE_SIZE);
     }
 
     /**
@@ -1,23 +1,39 @@
 package com.indeed.proctor.webapp.controllers;
 
 import com.google.common.base.CharMatcher;
+import com.google.common.base.Objects;
+import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.indeed.proctor.common.model.Payload;
 import com.indeed.proctor.webapp.controllers.BackgroundJob.ResultUrl;
+import com.indeed.proctor.common.AllocationSimulator;
+import com.indeed.proctor.common.ConsumableArtifacts;
 import com.indeed.proctor.common.EnvironmentVersion;
 import com.indeed.proctor.common.IncompatibleTestMatrixException;
 import com.indeed.proctor.common.ProctorPromoter;
+import com.indeed.proctor.common.TestDefinitionDiff;
+import com.indeed.proctor.common.TestDefinitionFingerprint;
+import com.indeed.proctor.common.TestDefinitions;
 import com.indeed.proctor.common.ProctorSpecification;
 import com.indeed.proctor.common.ProctorUtils;
+import com.indeed.proctor.common.SaltIndex;
+import com.indeed.proctor.common.Serializers;
 import com.indeed.proctor.common.TestSpecification;
 import com.indeed.proctor.common.model.Allocation;
 import com.indeed.proctor.common.model.ConsumableTestDefinition;
@@ -54,6 +70,7 @@ import com.indeed.proctor.webapp.views.JsonView;
 import org.apache.log4j.Logger;
 import org.codehaus.jackson.JsonGenerationException;
 import org.codehaus.jackson.map.JsonMappingException;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Controller;
@@ -63,10 +80,13 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.View;
 import org.springframework.web.servlet.view.RedirectView;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -80,6 +100,7 @@ import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 /**
  * @author parker
@@ -92,6 +113,11 @@ public class ProctorTestDefinitionController extends AbstractController {
 
     private static final Pattern ALPHA_NUMERIC_PATTERN = Pattern.compile("^[a-z0-9_]+$", Pattern.CASE_INSENSITIVE);
     private static final Pattern VALID_TEST_NAME_PATTERN = ALPHA_NUMERIC_PATTERN;
+    private static final ObjectMapper OBJECT_MAPPER = Serializers.strict();
+    private static final CharMatcher LIST_SEPARATORS = CharMatcher.anyOf(", \t\r\n");
+    private static final Splitter TEST_LIST_SPLITTER = Splitter.on(LIST_SEPARATORS).trimResults().omitEmptyStrings();
+    private static final int MAX_SERIALIZED_DEFINITIONS = 1000;
+    private static final int MAX_SIMULATED_IDENTIFIERS = 10000000;
 
     private final ProctorPromoter promoter;
 
@@ -100,6 +126,12 @@ public class ProctorTestDefinitionController extends AbstractController {
     private final ExecutorService verifierExecutor;
 
     private final BackgroundJobManager jobManager;
+    private final AllocationSimulator allocationSimulator;
+
+    /* "branch:test:revision" -> json, a revision's content never changes */
+    private final Cache<String, SerializedDefinition> serializedDefinitions = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SERIALIZED_DEFINITIONS)
+            .build();
 
     /*
        TODO: preDefinitionChanges and postDefinitionChanges should be included in the autowird constructor.
@@ -152,10 +184,12 @@ public class ProctorTestDefinitionController extends AbstractController {
                                            @Qualifier("production") final ProctorStore productionStore,
                                            final ProctorPromoter promoter,
                                            final ProctorSpecificationSource specificationSource,
-                                           final BackgroundJobManager jobManager) {
+                                           final BackgroundJobManager jobManager,
+                                           final AllocationSimulator allocationSimulator) {
         super(configuration, trunkStore, qaStore, productionStore);
         this.promoter = promoter;
         this.jobManager = jobManager;
+        this.allocationSimulator = allocationSimulator;
 
         this.verificationTimeout = configuration.getVerifyHttpTimeout();
         this.specificationSource = specificationSource;
@@ -188,7 +222,7 @@ public class ProctorTestDefinitionController extends AbstractController {
         );
         final List<Revision> history = Collections.emptyList();
         final EnvironmentVersion version = null;
-        return doView(Environment.WORKING, Views.CREATE, "", definition, history, version, model);
+        return doView(Environment.WORKING, Views.CREATE, "", null, definition, history, version, model);
     }
 
     @RequestMapping(value = "/{testName}", method = RequestMethod.GET)
@@ -215,7 +249,8 @@ public class ProctorTestDefinitionController extends AbstractController {
         }
         final List<Revision> history = getTestHistory(store, testName);
         final EnvironmentVersion version = promoter.getEnvironmentVersion(testName);
-        return doView(theEnvironment, Views.DETAILS, testName, definition, history, version, model);
+        final String definitionRevision = revision.length() > 0 ? revision : getCurrentRevision(theEnvironment, version);
+        return doView(theEnvironment, Views.DETAILS, testName, definitionRevision, definition, history, version, model);
     }
 
     @RequestMapping(value = "/{testName}/edit", method = RequestMethod.GET)
@@ -234,7 +269,39 @@ public class ProctorTestDefinitionController extends AbstractController {
         }
         final List<Revision> history = getTestHistory(store, testName);
         final EnvironmentVersion version = promoter.getEnvironmentVersion(testName);
-        return doView(theEnvironment, Views.EDIT, testName, definition, history, version, model);
+        return doView(theEnvironment, Views.EDIT, testName, getCurrentRevision(theEnvironment, version), definition, history, version, model);
+    }
+
+    /**
+     * The definition as json, with an ETag so the editor can skip reloading a definition it already has.
+     * An empty revision means the branch's current definition.
+     */
+    @RequestMapping(value = "/{testName}/json", method = RequestMethod.GET)
+    public void doJsonGet(
+        @PathVariable final String testName,
+        @RequestParam(required = false) final String branch,
+        @RequestParam(required = false, defaultValue = "", value = "r") final String revision,
+        final HttpServletRequest request,
+        final HttpServletResponse response
+    ) throws IOException {
+        final Environment theEnvironment = determineEnvironmentFromParameter(branch);
+        final TestDefinition definition = getTestDefinition(theEnvironment, testName, revision);
+        if (definition == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown test definition " + testName + " revision " + revision);
+            return;
+        }
+        final String definitionRevision = revision.length() > 0 ? revision : getCurrentRevision(theEnvironment, promoter.getEnvironmentVersion(testName));
+        final SerializedDefinition serialized = getSerializedDefinition(theEnvironment, testName, definitionRevision, definition);
+
+        response.setHeader("ETag", serialized.etag);
+        // the current definition of a branch changes, so clients always revalidate
+        response.setHeader("Cache-Control", "no-cache");
+        if (matchesETag(request.getHeader("If-None-Match"), serialized.etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType("application/json;charset=utf-8");
+        response.getWriter().write(serialized.json);
     }
 
     @RequestMapping(value = "/{testName}/delete", method = RequestMethod.POST)
@@ -260,7 +327,7 @@ public class ProctorTestDefinitionController extends AbstractController {
                                                                      password,
                                                                      comment,
                                                                      requestParameterMap);
-        jobManager.submit(job);
+        jobManager.submit(job, testName);
 
         if (isAJAXRequest(request)) {
             final JsonResponse<Map> response = new JsonResponse<Map>(BackgroundJobRpcController.buildJobJson(job), true, job.getTitle());
@@ -321,7 +388,7 @@ public class ProctorTestDefinitionController extends AbstractController {
                     //PreDefinitionDeleteChanges
                     log("Executing pre delete extension tasks.");
                     for (final PreDefinitionDeleteChange preDefinitionDeleteChange: preDefinitionDeleteChanges) {
-                        final DefinitionChangeLog definitionChangeLog = preDefinitionDeleteChange.preDelete(definition, requestParameterMap);
+                        final DefinitionChangeLog definitionChangeLog = preDefinitionDeleteChange.preDelete(TestDefinitions.copyOf(definition), requestParameterMap);
                         logDefinitionChangeLog(definitionChangeLog, preDefinitionDeleteChange.getClass().getSimpleName(), this);
                     }
 
@@ -372,7 +439,7 @@ public class ProctorTestDefinitionController extends AbstractController {
         final Map<String, String[]> requestParameterMap = new HashMap<String, String[]>();
         requestParameterMap.putAll(request.getParameterMap());
         final BackgroundJob job = doPromoteInternal(testName, username, password, source, srcRevision, destination, destRevision, requestParameterMap);
-        jobManager.submit(job);
+        jobManager.submit(job, testName);
 
         if (isAJAXRequest(request)) {
             final JsonResponse<Map> response = new JsonResponse<Map>(BackgroundJobRpcController.buildJobJson(job), true, job.getTitle());
@@ -382,6 +449,386 @@ public class ProctorTestDefinitionController extends AbstractController {
         }
     }
 
+    /**
+     * Structural differences of a test between two revisions and/or branches.
+     * An empty revision means the branch's current definition.
+     */
+    @RequestMapping(value = "/{testName}/diff", method = RequestMethod.GET)
+    public View doDiffGet(
+        @PathVariable final String testName,
+        @RequestParam(required = false) final String src,
+        @RequestParam(required = false, defaultValue = "") final String srcRevision,
+        @RequestParam(required = false) final String dest,
+        @RequestParam(required = false, defaultValue = "") final String destRevision
+    ) {
+        final TestDefinition from = getTestDefinition(determineEnvironmentFromParameter(src), testName, srcRevision);
+        final TestDefinition to = getTestDefinition(determineEnvironmentFromParameter(dest), testName, destRevision);
+        if (from == null || to == null) {
+            final String missing = from == null ? src + " r" + srcRevision : dest + " r" + destRevision;
+            return new JsonView(new JsonResponse<List>(Collections.emptyList(), false, "Unknown test definition " + testName + " on " + missing));
+        }
+        final TestDefinitionDiff diff = TestDefinitionDiff.compare(from, to);
+        final String message = diff.isEmpty() ? "identical" : diff.getChanges().size() + " changes";
+        return new JsonView(new JsonResponse<List<TestDefinitionDiff.Change>>(diff.getChanges(), true, message));
+    }
+
+    /**
+     * Simulates how identifiers spread across the buckets of a test, and how they overlap with the buckets of the
+     * tests that share its salt on the same branch.
+     *
+     * @param count number of synthetic identifiers, ignored if identifiers are given
+     * @param identifiers comma or whitespace separated identifiers, for a handful; larger lists go in identifiersFile
+     * @param identifiersFile multipart upload of comma or whitespace separated identifiers, UTF-8; identifiers past
+     *                        the first MAX_SIMULATED_IDENTIFIERS are ignored
+     */
+    @RequestMapping(value = "/{testName}/simulate", method = RequestMethod.POST)
+    public View doSimulatePost(
+        @PathVariable final String testName,
+        @RequestParam(required = false) final String branch,
+        @RequestParam(required = false, defaultValue = "") final String revision,
+        @RequestParam(required = false, defaultValue = "1000000") final int count,
+        @RequestParam(required = false) final String identifiers,
+        @RequestParam(required = false) final MultipartFile identifiersFile,
+        final HttpServletRequest request
+    ) {
+        final Environment theEnvironment = determineEnvironmentFromParameter(branch);
+        final File upload;
+        try {
+            upload = saveIdentifiers(identifiersFile);
+        } catch (final IOException e) {
+            LOGGER.error("Failed to save uploaded identifiers for " + testName, e);
+            return new JsonView(new JsonResponse<List>(Collections.emptyList(), false, "Failed to read the uploaded identifiers: " + e.getMessage()));
+        }
+        final List<String> listed = Strings.isNullOrEmpty(identifiers) ? null : Lists.newArrayList(TEST_LIST_SPLITTER.split(identifiers));
+        if (listed != null && listed.size() > MAX_SIMULATED_IDENTIFIERS) {
+            return new JsonView(new JsonResponse<List>(Collections.emptyList(), false, "At most " + MAX_SIMULATED_IDENTIFIERS + " identifiers can be simulated"));
+        }
+        final BackgroundJob<AllocationSimulator.Report> job = createSimulationBackgroundJob(testName, theEnvironment, revision,
+                                                                                           Math.min(Math.max(count, 1), MAX_SIMULATED_IDENTIFIERS), listed, upload);
+        jobManager.submit(job);
+
+        if (isAJAXRequest(request)) {
+            final JsonResponse<Map> response = new JsonResponse<Map>(BackgroundJobRpcController.buildJobJson(job), true, job.getTitle());
+            return new JsonView(response);
+        } else {
+            // redirect to a status page for the job id
+            return new RedirectView("/proctor/rpc/jobs/list?id=" + job.getId());
+        }
+    }
+
+    /* the uploaded file is deleted once the request completes, the job reads its own copy and deletes it */
+    // @Nullable
+    private static File saveIdentifiers(/* @Nullable */ final MultipartFile identifiersFile) throws IOException {
+        if (identifiersFile == null || identifiersFile.isEmpty()) {
+            return null;
+        }
+        final File file = File.createTempFile("proctor-simulate-", ".txt");
+        try {
+            identifiersFile.transferTo(file);
+        } catch (final IOException e) {
+            if (!file.delete()) {
+                LOGGER.warn("Failed to delete " + file);
+            }
+            throw e;
+        }
+        return file;
+    }
+
+    /* the separated identifiers of reader, read as they are needed rather than line by line */
+    private static Iterator<String> readIdentifiers(final Reader reader) {
+        return new AbstractIterator<String>() {
+            private final char[] buffer = new char[8192];
+            private int position = 0;
+            private int limit = 0;
+
+            @Override
+            protected String computeNext() {
+                final StringBuilder identifier = new StringBuilder();
+                try {
+                    while (true) {
+                        if (position == limit) {
+                            limit = Math.max(0, reader.read(buffer));
+                            position = 0;
+                            if (limit == 0) {
+                                return identifier.length() > 0 ? identifier.toString() : endOfData();
+                            }
+                        }
+                        final char c = buffer[position++];
+                        if (!LIST_SEPARATORS.matches(c)) {
+                            identifier.append(c);
+                        } else if (identifier.length() > 0) {
+                            return identifier.toString();
+                        }
+                    }
+                } catch (final IOException e) {
+                    throw new IllegalStateException("Failed to read the uploaded identifiers", e);
+                }
+            }
+        };
+    }
+
+    private BackgroundJob<AllocationSimulator.Report> createSimulationBackgroundJob(
+        final String testName,
+        final Environment branch,
+        final String revision,
+        final int count,
+        /* @Nullable */ final List<String> identifiers,
+        /* @Nullable */ final File upload
+    ) {
+        return new BackgroundJob<AllocationSimulator.Report>() {
+            @Override
+            public String getTitle() {
+                return String.format("Simulating allocations of %s on %s", testName, branch.getName());
+            }
+
+            @Override
+            public AllocationSimulator.Report call() throws Exception {
+                try {
+                    return simulate();
+                } finally {
+                    if (upload != null && !upload.delete()) {
+                        LOGGER.warn("Failed to delete " + upload);
+                    }
+                }
+            }
+
+            private AllocationSimulator.Report simulate() throws Exception {
+                final TestDefinition definition = getTestDefinition(branch, testName, revision);
+                if (definition == null) {
+                    log("Unknown test definition " + testName + " on " + branch.getName() + " revision " + revision);
+                    return null;
+                }
+                final Map<String, TestDefinition> saltSharers = Maps.newTreeMap();
+                final TestMatrixVersion matrix = getCurrentMatrix(branch);
+                if (matrix != null && matrix.getTestMatrixDefinition() != null) {
+                    for (final Map.Entry<String, TestDefinition> entry : matrix.getTestMatrixDefinition().getTests().entrySet()) {
+                        if (!entry.getKey().equals(testName) && entry.getValue() != null
+                                && Objects.equal(definition.getSalt(), entry.getValue().getSalt())) {
+                            saltSharers.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                }
+                final long start = System.currentTimeMillis();
+                final AllocationSimulator.Report report;
+                if (upload != null) {
+                    log(String.format("Hashing uploaded identifiers with salt %s", definition.getSalt()));
+                    final Reader reader = Files.newReader(upload, Charsets.UTF_8);
+                    try {
+                        final Iterator<String> uploaded = readIdentifiers(reader);
+                        report = allocationSimulator.simulate(testName, definition, saltSharers, Iterators.limit(uploaded, MAX_SIMULATED_IDENTIFIERS));
+                        if (uploaded.hasNext()) {
+                            log(String.format("Only the first %d uploaded identifiers were simulated", MAX_SIMULATED_IDENTIFIERS));
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                } else if (identifiers != null) {
+                    log(String.format("Hashing %d identifiers with salt %s", identifiers.size(), definition.getSalt()));
+                    report = allocationSimulator.simulate(testName, definition, saltSharers, identifiers.iterator());
+                } else {
+                    log(String.format("Hashing %d synthetic identifiers with salt %s", count, definition.getSalt()));
+                    report = allocationSimulator.simulate(testName, definition, saltSharers, count);
+                }
+                log(String.format("Simulated %d identifiers in %d ms", report.getIdentifiers(), System.currentTimeMillis() - start));
+                for (final AllocationSimulator.AllocationResult allocation : report.getAllocations()) {
+                    log(String.format("Allocation %s: max deviation from expected %.4f", Strings.nullToEmpty(allocation.getRule()), allocation.getMaxDeviation()));
+                    for (final AllocationSimulator.BucketResult bucket : allocation.getBuckets()) {
+                        log(String.format("  %s: expected %.4f, observed %.4f", bucket.getBucket(), bucket.getExpected(), bucket.getObserved()));
+                    }
+                }
+                for (final AllocationSimulator.SaltSharer sharer : report.getSaltSharers()) {
+                    log(String.format("Shares its salt with %s: max dependence %.4f", sharer.getTestName(), sharer.getMaxDependence()));
+                }
+                return report;
+            }
+        };
+    }
+
+    /**
+     * Promotes many tests in one job: all definitions are verified together in a single compatibility pass
+     * before anything is committed.
+     *
+     * @param tests comma or whitespace separated test names
+     * Per test, srcRevision.{testName} and destRevision.{testName} may be given; otherwise the current
+     * revisions known to the promoter are used.
+     */
+    @RequestMapping(value = "/promote/batch", method = RequestMethod.POST)
+    public View doBatchPromotePost(
+        @RequestParam final String tests,
+        @RequestParam(required = false) final String username,
+        @RequestParam(required = false) final String password,
+
+        @RequestParam(required = false) final String src,
+        @RequestParam(required = false) final String dest,
+        final HttpServletRequest request
+    ) {
+        final Environment source = determineEnvironmentFromParameter(src);
+        final Environment destination = determineEnvironmentFromParameter(dest);
+
+        final Map<String, String[]> requestParameterMap = new HashMap<String, String[]>();
+        requestParameterMap.putAll(request.getParameterMap());
+        // a test named twice would otherwise be promoted twice, and the second commit fails on the stale revision
+        final List<String> testNames = ImmutableSet.copyOf(TEST_LIST_SPLITTER.split(tests)).asList();
+        final BackgroundJob job = createBatchPromoteBackgroundJob(testNames, username, password, source, destination, requestParameterMap);
+        jobManager.submit(job, testNames);
+
+        if (isAJAXRequest(request)) {
+            final JsonResponse<Map> response = new JsonResponse<Map>(BackgroundJobRpcController.buildJobJson(job), true, job.getTitle());
+            return new JsonView(response);
+        } else {
+            // redirect to a status page for the job id
+            return new RedirectView("/proctor/rpc/jobs/list?id=" + job.getId());
+        }
+    }
+
+    private BackgroundJob<Boolean> createBatchPromoteBackgroundJob(final List<String> testNames,
+                                                                   final String username,
+                                                                   final String password,
+                                                                   final Environment source,
+                                                                   final Environment destination,
+                                                                   final Map<String, String[]> requestParameterMap) {
+        LOGGER.info(String.format("Batch promoting %d tests from %s to %s user: %s", testNames.size(), source, destination, username));
+        return new BackgroundJob<Boolean>() {
+            @Override
+            public String getTitle() {
+                return String.format("(%s) promoting %d tests from %s to %s", username, testNames.size(), source, destination);
+            }
+
+            @Override
+            public Boolean call() throws Exception {
+                try {
+                    doBatchPromoteInternal(testNames, username, password, source, destination, requestParameterMap, this);
+                    return true;
+                } catch (ProctorPromoter.TestPromotionException exp) {
+                    logFailedJob(this, exp);
+                    LOGGER.error("Batch Promotion Failed: " + getTitle(), exp);
+                } catch (StoreException exp) {
+                    logFailedJob(this, exp);
+                    LOGGER.error("Batch Promotion Failed: " + getTitle(), exp);
+                } catch (IllegalArgumentException exp) {
+                    logFailedJob(this, exp);
+                    LOGGER.error("Batch Promotion Failed: " + getTitle(), exp);
+                } catch (Exception exp) {
+                    logFailedJob(this, exp);
+                    LOGGER.error("Batch Promotion Failed: " + getTitle(), exp);
+                }
+                return false;
+            }
+        };
+    }
+
+    private void doBatchPromoteInternal(final List<String> testNames,
+                                        final String username,
+                                        final String password,
+                                        final Environment source,
+                                        final Environment destination,
+                                        final Map<String, String[]> requestParameterMap,
+                                        final BackgroundJob job) throws Exception {
+        validateUsernamePassword(username, password);
+        if (testNames.isEmpty()) {
+            throw new IllegalArgumentException("No tests to promote");
+        }
+        final List<ProctorPromoter.Promotion> promotions = Lists.newArrayListWithCapacity(testNames.size());
+        for (final String testName : testNames) {
+            promotions.add(resolvePromotion(testName, source, destination, requestParameterMap));
+        }
+        doJobIndependentBatchPromoteInternal(promotions, username, password, source, destination, requestParameterMap, job, false);
+    }
+
+    private void doJobIndependentBatchPromoteInternal(final List<ProctorPromoter.Promotion> promotions,
+                                                      final String username,
+                                                      final String password,
+                                                      final Environment source,
+                                                      final Environment destination,
+                                                      final Map<String, String[]> requestParameterMap,
+                                                      final BackgroundJob job,
+                                                      final boolean isAutopromote) throws Exception {
+        final Map<String, String> metadata = Collections.emptyMap();
+        final Map<Environment, PromoteAction> actions = PROMOTE_ACTIONS.get(source);
+        if (actions == null || !actions.containsKey(destination)) {
+            throw new IllegalArgumentException("Invalid combination of source and destination: source=" + source + " dest=" + destination);
+        }
+
+        final ProctorStore srcStore = determineStoreFromEnvironment(source);
+        final Map<String, TestDefinition> definitions = Maps.newLinkedHashMap();
+        for (final ProctorPromoter.Promotion promotion : promotions) {
+            final String testName = promotion.getTestName();
+            final TestDefinition definition = getTestDefinition(srcStore, testName, promotion.getSrcRevision());
+            if (definition == null) {
+                throw new IllegalArgumentException("Could not find " + testName + " on " + source.getName() + " at r" + promotion.getSrcRevision());
+            }
+            definitions.put(testName, definition);
+        }
+
+        job.log(String.format("Verifying %d tests against %s specifications", definitions.size(), destination.getName()));
+        final CheckMatrixResult result = checkMatrix(destination, definitions);
+        if (!result.isValid()) {
+            throw new IllegalArgumentException(String.format("Test Promotion not compatible, errors: %s", Joiner.on("\n").join(result.getErrors())));
+        }
+        for (final Map.Entry<String, TestDefinition> entry : definitions.entrySet()) {
+            logSaltCollisions(job, entry.getKey(), entry.getValue().getSalt());
+        }
+
+        //PreDefinitionPromoteChanges
+        job.log("Executing pre promote extension tasks.");
+        for (final Map.Entry<String, TestDefinition> entry : definitions.entrySet()) {
+            for (final PreDefinitionPromoteChange preDefinitionPromoteChange: preDefinitionPromoteChanges) {
+                final DefinitionChangeLog definitionChangeLog = preDefinitionPromoteChange.prePromote(TestDefinitions.copyOf(entry.getValue()), requestParameterMap, source, destination, isAutopromote);
+                logDefinitionChangeLog(definitionChangeLog, preDefinitionPromoteChange.getClass().getSimpleName(), job);
+            }
+        }
+
+        for (final ProctorPromoter.Promotion promotion : promotions) {
+            job.log(String.format("(svn) promote %sr%s (%s to %s)", promotion.getTestName(), promotion.getSrcRevision(), source.getName(), destination.getName()));
+        }
+        promoter.promoteAll(source, destination, promotions, username, password, metadata);
+
+        //PostDefinitionPromoteChanges, once per batch: the hook is not told which test was promoted
+        job.log("Executing post promote extension tasks.");
+        for (final PostDefinitionPromoteChange postDefinitionPromoteChange: postDefinitionPromoteChanges) {
+            final DefinitionChangeLog definitionChangeLog = postDefinitionPromoteChange.postPromote(requestParameterMap, source, destination, isAutopromote);
+            logDefinitionChangeLog(definitionChangeLog, postDefinitionPromoteChange.getClass().getSimpleName(), job);
+        }
+
+        for (final ProctorPromoter.Promotion promotion : promotions) {
+            final String testName = promotion.getTestName();
+            job.log(String.format("Promoted %s from %s (r%s) to %s (r%s)", testName, source.getName(), promotion.getSrcRevision(), destination.getName(), promotion.getDestRevision()));
+            job.addUrl("/proctor/definition/" + UtilityFunctions.urlEncode(testName) + "?branch=" + destination.getName(), "view " + testName + " on " + destination.getName());
+        }
+    }
+
+    /**
+     * Uses the srcRevision.{testName} / destRevision.{testName} request parameters, falling back to the
+     * revisions currently known to the promoter.
+     */
+    private ProctorPromoter.Promotion resolvePromotion(final String testName,
+                                                      final Environment source,
+                                                      final Environment destination,
+                                                      final Map<String, String[]> requestParameterMap) {
+        final EnvironmentVersion version = promoter.getEnvironmentVersion(testName);
+        String srcRevision = getFirstParameter(requestParameterMap, "srcRevision." + testName);
+        if (srcRevision == null) {
+            srcRevision = version == null ? EnvironmentVersion.UNKNOWN_REVISION : version.getRevision(source);
+        }
+        if (EnvironmentVersion.UNKNOWN_REVISION.equals(srcRevision)) {
+            throw new IllegalArgumentException("No known revision of " + testName + " on " + source.getName());
+        }
+        String destRevision = getFirstParameter(requestParameterMap, "destRevision." + testName);
+        if (destRevision == null) {
+            destRevision = version == null ? EnvironmentVersion.UNKNOWN_REVISION : version.getRevision(destination);
+            if (EnvironmentVersion.UNKNOWN_REVISION.equals(destRevision)) {
+                // not yet on the destination branch
+                destRevision = "";
+            }
+        }
+        return new ProctorPromoter.Promotion(testName, srcRevision, destRevision);
+    }
+
+    private static String getFirstParameter(final Map<String, String[]> requestParameterMap, final String name) {
+        final String[] values = requestParameterMap.get(name);
+        return values == null || values.length == 0 ? null : values[0];
+    }
+
     private BackgroundJob doPromoteInternal(final String testName,
                                             final String username,
                                             final String password,
@@ -458,7 +905,7 @@ public class ProctorTestDefinitionController extends AbstractController {
             //PreDefinitionPromoteChanges
             job.log("Executing pre promote extension tasks.");
             for (final PreDefinitionPromoteChange preDefinitionPromoteChange: preDefinitionPromoteChanges) {
-                final DefinitionChangeLog definitionChangeLog = preDefinitionPromoteChange.prePromote(testDefintion, requestParameterMap, source, destination, isAutopromote);
+                final DefinitionChangeLog definitionChangeLog = preDefinitionPromoteChange.prePromote(TestDefinitions.copyOf(testDefintion), requestParameterMap, source, destination, isAutopromote);
                 logDefinitionChangeLog(definitionChangeLog, preDefinitionPromoteChange.getClass().getSimpleName(), job);
             }
 
@@ -535,6 +982,7 @@ public class ProctorTestDefinitionController extends AbstractController {
                                    final String password,
                                    final Map<String, String> metadata) throws IllegalArgumentException, ProctorPromoter.TestPromotionException, StoreException.TestUpdateException, StoreException.TestUpdateException {
             try {
+                checkPromotedRevision(job, testName, srcRevision);
                 doPromotion(job, testName, srcRevision, destRevision, username, password, metadata);
                 return true;
             } catch (Exception t) {
@@ -544,6 +992,31 @@ public class ProctorTestDefinitionController extends AbstractController {
             }
         }
 
+        /**
+         * Fails the promotion if the source has no definition at srcRevision. Otherwise only logs what the promotion
+         * changes on the destination and which tests share the salt; neither stops the promotion.
+         * With store.cache both reads are cache hits after the first: definitions at a revision never change and the
+         * destination definition comes from the current matrix.
+         */
+        private void checkPromotedRevision(final BackgroundJob job, final String testName, final String srcRevision) throws ProctorPromoter.TestPromotionException {
+            final TestDefinition promoted = getTestDefinition(determineStoreFromEnvironment(src), testName, srcRevision);
+            if (promoted == null) {
+                throw new ProctorPromoter.TestPromotionException("Unknown test definition " + testName + " on " + src.getName() + " r" + srcRevision);
+            }
+            logSaltCollisions(job, testName, promoted.getSalt());
+            final TestDefinition current = getTestDefinition(determineStoreFromEnvironment(destination), testName);
+            if (current == null) {
+                return;
+            }
+            final TestDefinitionDiff diff = TestDefinitionDiff.compare(current, promoted);
+            if (diff.isEmpty()) {
+                job.log(String.format("%s on %s is identical to %s r%s", testName, destination.getName(), src.getName(), srcRevision));
+            }
+            for (final TestDefinitionDiff.Change change : diff.getChanges()) {
+                job.log(String.format("%s on %s: %s", testName, destination.getName(), change));
+            }
+        }
+
         @Override
         public final Environment getSource() {
             return src;
@@ -638,7 +1111,7 @@ public class ProctorTestDefinitionController extends AbstractController {
                                              previousRevision,
                                              isAutopromote,
                                              requestParameterMap);
-        jobManager.submit(job);
+        jobManager.submit(job, testName);
         if (isAJAXRequest(request)) {
             final JsonResponse<Map> response = new JsonResponse<Map>(BackgroundJobRpcController.buildJobJson(job), true, job.getTitle());
             return new JsonView(response);
@@ -731,6 +1204,7 @@ public class ProctorTestDefinitionController extends AbstractController {
                     }
                     log("verifying test definition and buckets");
                     validateBasicInformation(testDefinitionToUpdate, this);
+                    logSaltCollisions(this, testName, testDefinitionToUpdate.getSalt());
 
                     final ConsumableTestDefinition consumableTestDefinition = ProctorUtils.convertToConsumableTestDefinition(testDefinitionToUpdate);
                     ProctorUtils.verifyInternallyConsistentDefinition(testName, "edit", consumableTestDefinition);
@@ -747,7 +1221,7 @@ public class ProctorTestDefinitionController extends AbstractController {
                     } else {
                         log("Executing pre edit extension tasks.");
                         for (final PreDefinitionEditChange preDefinitionEditChange: preDefinitionEditChanges) {
-                            final DefinitionChangeLog definitionChangeLog = preDefinitionEditChange.preEdit(existingTestDefinition, testDefinitionToUpdate, requestParameterMap);
+                            final DefinitionChangeLog definitionChangeLog = preDefinitionEditChange.preEdit(TestDefinitions.copyOf(existingTestDefinition), testDefinitionToUpdate, requestParameterMap);
                             logDefinitionChangeLog(definitionChangeLog, preDefinitionEditChange.getClass().getSimpleName(), this);
                         }
                     }
@@ -780,7 +1254,7 @@ public class ProctorTestDefinitionController extends AbstractController {
                     } else {
                         log("Executing post edit extension tasks.");
                         for (final PostDefinitionEditChange postDefinitionEditChange : postDefinitionEditChanges) {
-                            final DefinitionChangeLog definitionChangeLog = postDefinitionEditChange.postEdit(existingTestDefinition, testDefinitionToUpdate, requestParameterMap);
+                            final DefinitionChangeLog definitionChangeLog = postDefinitionEditChange.postEdit(TestDefinitions.copyOf(existingTestDefinition), testDefinitionToUpdate, requestParameterMap);
                             logDefinitionChangeLog(definitionChangeLog, postDefinitionEditChange.getClass().getSimpleName(), this);
                         }
                     }
@@ -834,109 +1308,411 @@ public class ProctorTestDefinitionController extends AbstractController {
         };
     }
 
-     public static boolean isAllocationOnlyChange(final TestDefinition existingTestDefinition, final TestDefinition testDefinitionToUpdate) {
-         final List<Allocation> existingAllocations = existingTestDefinition.getAllocations();
-         final List<Allocation> allocationsToUpdate = testDefinitionToUpdate.getAllocations();
-         final boolean nullRule = existingTestDefinition.getRule() == null;
-         final boolean nullDescription = existingTestDefinition.getDescription() == null;
-         if (nullRule && testDefinitionToUpdate.getRule() != null) {
-             return false;
-         } else if (!nullRule && !existingTestDefinition.getRule().equals(testDefinitionToUpdate.getRule())) {
-             return false;
-         }
-         if (nullDescription && testDefinitionToUpdate.getDescription() != null) {
-             return false;
-         } else if (!nullDescription && !existingTestDefinition.getDescription().equals(testDefinitionToUpdate.getDescription())) {
-             return false;
-         }
-         if (!existingTestDefinition.getConstants().equals(testDefinitionToUpdate.getConstants())
-            || !existingTestDefinition.getSpecialConstants().equals(testDefinitionToUpdate.getSpecialConstants())
-            || !existingTestDefinition.getTestType().equals(testDefinitionToUpdate.getTestType())
-            || !existingTestDefinition.getSalt().equals(testDefinitionToUpdate.getSalt())
-            || !existingTestDefinition.getBuckets().equals(testDefinitionToUpdate.getBuckets())
-            || existingAllocations.size()!=allocationsToUpdate.size())
-            return false;
+    /**
+     * Applies one allocation change to every selected test on trunk in a single job.
+     * All edits are validated before any is committed, but ProctorStore commits one test at a time, so a failed
+     * commit leaves the tests before it changed; the job log lists which were committed.
+     *
+     * @param tests comma or whitespace separated test names to edit
+     * @param pattern regular expression selecting the tests to edit by name, alternative to tests
+     * @param ranges JSON object mapping bucket value to allocation length, e.g. {"0": 0.5, "1": 0.5}.
+     *               Replaces the ranges of every allocation of each selected test, or only the one at allocationIndex.
+     */
+    @RequestMapping(value = "/edit/batch", method = RequestMethod.POST)
+    public View doBatchEditPost(
+        @RequestParam(required = false) final String tests,
+        @RequestParam(required = false) final String pattern,
+        @RequestParam final String ranges,
+        @RequestParam(required = false, defaultValue = "-1") final int allocationIndex,
+        @RequestParam(required = false) final String username,
+        @RequestParam(required = false) final String password,
+        @RequestParam(required = false) final String comment,
+        @RequestParam(required = false, defaultValue = "false") final boolean isAutopromote,
+        final HttpServletRequest request
+    ) {
+        final Map<String, String[]> requestParameterMap = new HashMap<String, String[]>();
+        requestParameterMap.putAll(request.getParameterMap());
+        final BatchSelection selection = selectBatchEditTests(tests, pattern);
+        final BackgroundJob job = createBatchEditBackgroundJob(selection, ranges, allocationIndex, username, password, comment, isAutopromote, requestParameterMap);
+        jobManager.submit(job, selection.testNames);
 
-        /*
-         * TestBucket .equals() override only checks name equality
-         * loop below compares each attribute of a TestBucket
-         */
-        for (int i = 0; i<existingTestDefinition.getBuckets().size(); i++) {
-            final TestBucket bucketOne = existingTestDefinition.getBuckets().get(i);
-            final TestBucket bucketTwo = testDefinitionToUpdate.getBuckets().get(i);
-            if (bucketOne == null) {
-                if (bucketTwo != null) {
-                    return false;
+        if (isAJAXRequest(request)) {
+            final JsonResponse<Map> response = new JsonResponse<Map>(BackgroundJobRpcController.buildJobJson(job), true, job.getTitle());
+            return new JsonView(response);
+        } else {
+            // redirect to a status page for the job id
+            return new RedirectView("/proctor/rpc/jobs/list?id=" + job.getId());
+        }
+    }
+
+    /**
+     * Resolves the tests a batch edit selects when it is submitted, so the job can hold the lane of each of them
+     * and edits exactly those tests.
+     */
+    private BatchSelection selectBatchEditTests(final String tests, final String pattern) {
+        final String selector = tests != null ? tests : "/" + Strings.nullToEmpty(pattern) + "/";
+        try {
+            final TestMatrixVersion matrix = determineStoreFromEnvironment(Environment.WORKING).getCurrentTestMatrix();
+            final Map<String, TestDefinition> selected = selectTests(matrix.getTestMatrixDefinition().getTests(), tests, pattern);
+            if (selected.isEmpty()) {
+                return new BatchSelection(selector, Collections.<String>emptyList(), "No tests on trunk match " + selector);
+            }
+            return new BatchSelection(selector, ImmutableList.copyOf(selected.keySet()), null);
+        } catch (final StoreException e) {
+            LOGGER.error("Failed to load the trunk test matrix to select " + selector, e);
+            return new BatchSelection(selector, Collections.<String>emptyList(), "Failed to load the trunk test matrix: " + e.getMessage());
+        } catch (final IllegalArgumentException e) {
+            return new BatchSelection(selector, Collections.<String>emptyList(), e.getMessage());
+        }
+    }
+
+    private static class BatchSelection {
+        final String selector;
+        final List<String> testNames;
+        // why no tests were selected, null if some were
+        final String error;
+
+        private BatchSelection(final String selector, final List<String> testNames, final String error) {
+            this.selector = selector;
+            this.testNames = testNames;
+            this.error = error;
+        }
+    }
+
+    private BackgroundJob<Boolean> createBatchEditBackgroundJob(final BatchSelection selection,
+                                                                final String rangesJson,
+                                                                final int allocationIndex,
+                                                                final String username,
+                                                                final String password,
+                                                                final String comment,
+                                                                final boolean isAutopromote,
+                                                                final Map<String, String[]> requestParameterMap) {
+        return new BackgroundJob<Boolean>() {
+            @Override
+            public String getTitle() {
+                return String.format("(%s) Editing allocations of %s", username, selection.selector);
+            }
+
+            @Override
+            public Boolean call() throws Exception {
+                try {
+                    validateUsernamePassword(username, password);
+                    validateComment(comment);
+                    if (selection.error != null) {
+                        throw new IllegalArgumentException(selection.error);
+                    }
+                    final List<Range> newRanges = parseRanges(rangesJson);
+
+                    log("(svn) loading trunk, qa and production test matrices");
+                    final ProctorStore trunkStore = determineStoreFromEnvironment(Environment.WORKING);
+                    final TestMatrixVersion trunkMatrix = trunkStore.getCurrentTestMatrix();
+                    final TestMatrixVersion qaMatrix = isAutopromote ? determineStoreFromEnvironment(Environment.QA).getCurrentTestMatrix() : null;
+                    final TestMatrixVersion productionMatrix = isAutopromote ? determineStoreFromEnvironment(Environment.PRODUCTION).getCurrentTestMatrix() : null;
+
+                    // the tests selected on submission, whose lanes this job holds
+                    final Map<String, TestDefinition> existingDefinitions = selectTests(trunkMatrix.getTestMatrixDefinition().getTests(),
+                                                                                        Joiner.on(',').join(selection.testNames), null);
+                    log("verifying " + existingDefinitions.size() + " test definitions: " + Joiner.on(", ").join(existingDefinitions.keySet()));
+
+                    final Map<String, BatchEdit> edits = validateBatchEdits(existingDefinitions, trunkMatrix, qaMatrix, productionMatrix, newRanges, allocationIndex, this);
+                    for (final BatchEdit edit : edits.values()) {
+                        logSaltCollisions(this, edit.testName, edit.updated.getSalt());
+                    }
+
+                    //PreDefinitionEdit
+                    log("Executing pre edit extension tasks.");
+                    for (final BatchEdit edit : edits.values()) {
+                        for (final PreDefinitionEditChange preDefinitionEditChange: preDefinitionEditChanges) {
+                            final DefinitionChangeLog definitionChangeLog = preDefinitionEditChange.preEdit(TestDefinitions.copyOf(edit.existing), edit.updated, requestParameterMap);
+                            logDefinitionChangeLog(definitionChangeLog, preDefinitionEditChange.getClass().getSimpleName(), this);
+                        }
+                    }
+
+                    // ProctorStore commits one test at a time
+                    final String fullComment = formatFullComment(comment, requestParameterMap);
+                    final Map<String, String> metadata = Collections.emptyMap();
+                    final List<String> committed = Lists.newArrayListWithCapacity(edits.size());
+                    try {
+                        for (final BatchEdit edit : edits.values()) {
+                            log("(svn) updating test definition " + edit.testName + " r" + edit.previousRevision);
+                            trunkStore.updateTestDefinition(username, password, edit.previousRevision, edit.testName, edit.updated, metadata, fullComment);
+                            committed.add(edit.testName);
+                            promoter.refreshWorkingVersion(edit.testName);
+                        }
+                    } catch (final Exception e) {
+                        final List<String> notCommitted = Lists.newArrayList(Sets.difference(edits.keySet(), Sets.newHashSet(committed)));
+                        log("Committed: " + (committed.isEmpty() ? "none" : Joiner.on(", ").join(committed)));
+                        log("Not committed: " + Joiner.on(", ").join(notCommitted));
+                        throw e;
+                    }
+
+                    //PostDefinitionEdit
+                    log("Executing post edit extension tasks.");
+                    for (final BatchEdit edit : edits.values()) {
+                        for (final PostDefinitionEditChange postDefinitionEditChange : postDefinitionEditChanges) {
+                            final DefinitionChangeLog definitionChangeLog = postDefinitionEditChange.postEdit(TestDefinitions.copyOf(edit.existing), edit.updated, requestParameterMap);
+                            logDefinitionChangeLog(definitionChangeLog, postDefinitionEditChange.getClass().getSimpleName(), this);
+                        }
+                        addUrl("/proctor/definition/" + UtilityFunctions.urlEncode(edit.testName) + "?branch=" + Environment.WORKING.getName(), "view " + edit.testName);
+                    }
+
+                    if (isAutopromote) {
+                        doBatchAutopromote(edits.values(), trunkStore.getLatestVersion(), username, password, requestParameterMap, this);
+                    }
+
+                    log("COMPLETE");
+                    return true;
+                } catch (final StoreException.TestUpdateException exp) {
+                    logFailedJob(this, exp);
+                    LOGGER.error("Batch Edit Failed: " + getTitle(), exp);
+                } catch (IllegalArgumentException exp) {
+                    logFailedJob(this, exp);
+                    LOGGER.error("Batch Edit Failed: " + getTitle(), exp);
+                } catch (Exception exp) {
+                    logFailedJob(this, exp);
+                    LOGGER.error("Batch Edit Failed: " + getTitle(), exp);
                 }
-            } else if (bucketTwo == null) {
                 return false;
-            } else {
-                if (bucketOne.getValue() != bucketTwo.getValue()) {
-                    return false;
+            }
+        };
+    }
+
+    private static Map<String, TestDefinition> selectTests(final Map<String, TestDefinition> tests,
+                                                           final String testList,
+                                                           final String pattern) {
+        final Map<String, TestDefinition> selected = Maps.newTreeMap();
+        if (testList != null) {
+            for (final String testName : TEST_LIST_SPLITTER.split(testList)) {
+                final TestDefinition definition = tests.get(testName);
+                if (definition == null) {
+                    throw new IllegalArgumentException("Unknown test definition : " + testName);
                 }
-                final Payload payloadOne = bucketOne.getPayload();
-                final Payload payloadTwo = bucketTwo.getPayload();
-                if (payloadOne == null) {
-                    if (payloadTwo != null) {
-                        return false;
-                    }
-                } else if (!payloadOne.equals(payloadTwo)) {
-                    return false;
+                selected.put(testName, definition);
+            }
+        } else if (!CharMatcher.WHITESPACE.matchesAllOf(Strings.nullToEmpty(pattern))) {
+            final Pattern selector = Pattern.compile(pattern);
+            for (final Map.Entry<String, TestDefinition> entry : tests.entrySet()) {
+                if (selector.matcher(entry.getKey()).matches()) {
+                    selected.put(entry.getKey(), entry.getValue());
                 }
-                if (bucketOne.getDescription() == null) {
-                    if (bucketTwo.getDescription() != null) {
-                        return false;
+            }
+        } else {
+            throw new IllegalArgumentException("Either tests or pattern is required.");
+        }
+        return selected;
+    }
+
+    private static List<Range> parseRanges(final String rangesJson) throws IOException {
+        final Map<?, ?> parsed = OBJECT_MAPPER.readValue(rangesJson, Map.class);
+        if (parsed == null || parsed.isEmpty()) {
+            throw new IllegalArgumentException("ranges must map bucket values to allocation lengths");
+        }
+        final List<Range> ranges = Lists.newArrayListWithCapacity(parsed.size());
+        for (final Map.Entry<?, ?> entry : parsed.entrySet()) {
+            if (!(entry.getValue() instanceof Number)) {
+                throw new IllegalArgumentException("Allocation length for bucket " + entry.getKey() + " must be a number");
+            }
+            try {
+                ranges.add(new Range(Integer.parseInt(String.valueOf(entry.getKey())), ((Number) entry.getValue()).doubleValue()));
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("Bucket value must be an integer, found: '" + entry.getKey() + "'");
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Builds and verifies the updated definition of each test in parallel on the verifier executor,
+     * and works out whether each is an allocation-only change relative to qa and production.
+     * Fails without any changes if a single definition is invalid.
+     *
+     * Revisions are read from the history of each test as of the matrix its definition was read from, so a commit
+     * or promotion made against them fails if the test changed since, instead of overwriting the change.
+     */
+    private Map<String, BatchEdit> validateBatchEdits(final Map<String, TestDefinition> existingDefinitions,
+                                                      final TestMatrixVersion trunkMatrix,
+                                                      /* @Nullable */ final TestMatrixVersion qaMatrix,
+                                                      /* @Nullable */ final TestMatrixVersion productionMatrix,
+                                                      final List<Range> newRanges,
+                                                      final int allocationIndex,
+                                                      final BackgroundJob job) throws InterruptedException {
+        final Map<String, Future<BatchEdit>> futures = Maps.newLinkedHashMap();
+        for (final Map.Entry<String, TestDefinition> entry : existingDefinitions.entrySet()) {
+            final String testName = entry.getKey();
+            final TestDefinition existing = entry.getValue();
+            futures.put(testName, verifierExecutor.submit(new Callable<BatchEdit>() {
+                @Override
+                public BatchEdit call() throws Exception {
+                    final TestDefinition updated = applyRanges(testName, existing, newRanges, allocationIndex);
+                    validateBasicInformation(updated, job);
+                    ProctorUtils.verifyInternallyConsistentDefinition(testName, "edit", ProctorUtils.convertToConsumableTestDefinition(updated));
+
+                    final String previousRevision = getRevisionAsOf(Environment.WORKING, trunkMatrix, testName);
+                    if (previousRevision == null) {
+                        throw new IllegalArgumentException("Could not get any history for " + testName);
                     }
-                } else if (!bucketOne.getDescription().equals(bucketTwo.getDescription())) {
-                    return false;
+                    final boolean allocationOnly = isAllocationOnlyChange(existing, updated);
+                    return new BatchEdit(testName, existing, updated, previousRevision,
+                                         allocationOnly ? getAutopromoteRevision(Environment.QA, qaMatrix, testName, updated) : null,
+                                         allocationOnly ? getAutopromoteRevision(Environment.PRODUCTION, productionMatrix, testName, updated) : null);
                 }
+            }));
+        }
+
+        final Map<String, BatchEdit> edits = Maps.newLinkedHashMap();
+        final List<String> errors = Lists.newArrayList();
+        for (final Map.Entry<String, Future<BatchEdit>> entry : futures.entrySet()) {
+            try {
+                edits.put(entry.getKey(), entry.getValue().get());
+            } catch (final ExecutionException e) {
+                errors.add(entry.getKey() + ": " + e.getCause().getMessage());
             }
         }
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException("Invalid test definitions, nothing was changed:\n" + Joiner.on("\n").join(errors));
+        }
+        return edits;
+    }
 
-        /*
-         * Comparing everything in an allocation except the lengths
-         */
-        for (int i = 0; i<existingAllocations.size(); i++) {
-            final List<Range> existingAllocationRanges = existingAllocations.get(i).getRanges();
-            final List<Range> allocationToUpdateRanges = allocationsToUpdate.get(i).getRanges();
-            if (existingAllocations.get(i).getRule() == null && allocationsToUpdate.get(i).getRule() != null)
-                return false;
-            else if (existingAllocations.get(i).getRule() != null && !existingAllocations.get(i).getRule().equals(allocationsToUpdate.get(i).getRule()))
-                return false;
-            Map<Integer, Double> existingAllocRangeMap = generateAllocationRangeMap(existingAllocationRanges);
-            Map<Integer, Double> allocToUpdateRangeMap = generateAllocationRangeMap(allocationToUpdateRanges);
-            if (!existingAllocRangeMap.keySet().equals(allocToUpdateRangeMap.keySet())) {
-                //An allocation was removed or added, do not autopromote
-                return false;
-            } else {
-                for (Map.Entry<Integer, Double> entry : existingAllocRangeMap.entrySet()) {
-                    final int bucketVal = entry.getKey();
-                    final double existingLength = entry.getValue();
-                    final double allocToUpdateLength = allocToUpdateRangeMap.get(bucketVal);
-                    if (existingLength == 0 && allocToUpdateLength != 0) {
-                        return false;
-                    }
-                    if (existingLength != 1 && allocToUpdateLength == 1) {
-                        return false;
-                    }
+    /**
+     * @return the revision of the test in the branch matrix if the edit is an allocation-only change of it, otherwise null
+     */
+    private String getAutopromoteRevision(final Environment branch,
+                                          /* @Nullable */ final TestMatrixVersion matrix,
+                                          final String testName,
+                                          final TestDefinition updated) throws StoreException {
+        if (matrix == null || matrix.getTestMatrixDefinition() == null) {
+            return null;
+        }
+        final TestDefinition definition = matrix.getTestMatrixDefinition().getTests().get(testName);
+        if (definition == null || !isAllocationOnlyChange(definition, updated)) {
+            return null;
+        }
+        return getRevisionAsOf(branch, matrix, testName);
+    }
+
+    /**
+     * @return the last revision of the test as of the matrix, or null if it has no history there
+     */
+    private String getRevisionAsOf(final Environment branch, final TestMatrixVersion matrix, final String testName) throws StoreException {
+        final List<Revision> history = determineStoreFromEnvironment(branch).getHistory(testName, matrix.getVersion(), 0, 1);
+        return history == null || history.isEmpty() ? null : history.get(0).getRevision();
+    }
+
+    private static TestDefinition applyRanges(final String testName,
+                                              final TestDefinition existing,
+                                              final List<Range> newRanges,
+                                              final int allocationIndex) {
+        final Set<Integer> bucketValues = Sets.newHashSet();
+        for (final TestBucket bucket : existing.getBuckets()) {
+            bucketValues.add(bucket.getValue());
+        }
+        for (final Range range : newRanges) {
+            if (!bucketValues.contains(range.getBucketValue())) {
+                throw new IllegalArgumentException(testName + " has no bucket with value " + range.getBucketValue());
+            }
+        }
+        final List<Allocation> existingAllocations = existing.getAllocations();
+        if (allocationIndex >= existingAllocations.size()) {
+            throw new IllegalArgumentException(testName + " has no allocation " + allocationIndex);
+        }
+        final List<Allocation> allocations = Lists.newArrayListWithCapacity(existingAllocations.size());
+        for (int i = 0; i < existingAllocations.size(); i++) {
+            final Allocation allocation = existingAllocations.get(i);
+            if (allocationIndex < 0 || allocationIndex == i) {
+                final List<Range> ranges = Lists.newArrayListWithCapacity(newRanges.size());
+                for (final Range range : newRanges) {
+                    ranges.add(new Range(range.getBucketValue(), range.getLength()));
                 }
+                allocations.add(new Allocation(allocation.getRule(), ranges));
+            } else {
+                allocations.add(allocation);
             }
         }
-        return true;
+        final TestDefinition updated = TestDefinitions.copyOf(existing);
+        updated.setAllocations(allocations);
+        return updated;
     }
 
-    private static Map<Integer, Double> generateAllocationRangeMap(List<Range> ranges) {
-        Map<Integer, Double> bucketToTotalAllocationMap = new HashMap<Integer, Double>();
-        for (int aIndex = 0; aIndex < ranges.size(); aIndex++) {
-            final int bucketVal = ranges.get(aIndex).getBucketValue();
-            double sum = 0;
-            if (bucketToTotalAllocationMap.containsKey(bucketVal)) {
-                sum+=bucketToTotalAllocationMap.get(bucketVal);
+    /**
+     * Promotes the allocation-only edits to qa, then those promoted to qa on to production,
+     * each stage as one batch promotion.
+     */
+    private void doBatchAutopromote(final Collection<BatchEdit> edits,
+                                    final String trunkRevision,
+                                    final String username,
+                                    final String password,
+                                    final Map<String, String[]> requestParameterMap,
+                                    final BackgroundJob job) {
+        final List<ProctorPromoter.Promotion> toQa = Lists.newArrayList();
+        for (final BatchEdit edit : edits) {
+            if (edit.qaRevision != null) {
+                toQa.add(new ProctorPromoter.Promotion(edit.testName, trunkRevision, edit.qaRevision));
+            } else {
+                job.log("previous revision changes prevented auto-promote of " + edit.testName);
+            }
+        }
+        if (toQa.isEmpty()) {
+            return;
+        }
+        try {
+            job.log("auto-promoting " + toQa.size() + " tests to QA");
+            doJobIndependentBatchPromoteInternal(toQa, username, password, Environment.WORKING, Environment.QA, requestParameterMap, job, true);
+        } catch (final Exception e) {
+            job.log("auto-promote to QA failed, skipping PRODUCTION: " + e.getMessage());
+            LOGGER.error("Batch auto-promote to QA failed: " + job.getTitle(), e);
+            return;
+        }
+
+        final List<ProctorPromoter.Promotion> toProduction = Lists.newArrayList();
+        for (final BatchEdit edit : edits) {
+            if (edit.qaRevision != null && edit.productionRevision != null) {
+                toProduction.add(new ProctorPromoter.Promotion(edit.testName, trunkRevision, edit.productionRevision));
+            } else if (edit.qaRevision != null) {
+                job.log("previous revision changes prevented auto-promote of " + edit.testName + " to PRODUCTION");
             }
-            sum+=ranges.get(aIndex).getLength();
-            bucketToTotalAllocationMap.put(bucketVal, sum);
         }
-        return bucketToTotalAllocationMap;
+        if (toProduction.isEmpty()) {
+            return;
+        }
+        try {
+            job.log("auto-promoting " + toProduction.size() + " tests to PRODUCTION");
+            doJobIndependentBatchPromoteInternal(toProduction, username, password, Environment.WORKING, Environment.PRODUCTION, requestParameterMap, job, true);
+        } catch (final Exception e) {
+            job.log("auto-promote to PRODUCTION failed: " + e.getMessage());
+            LOGGER.error("Batch auto-promote to PRODUCTION failed: " + job.getTitle(), e);
+        }
+    }
+
+    private static class BatchEdit {
+        final String testName;
+        final TestDefinition existing;
+        final TestDefinition updated;
+        final String previousRevision;
+        // current qa / production revision if the edit may be auto-promoted there, otherwise null
+        final String qaRevision;
+        final String productionRevision;
+
+        private BatchEdit(final String testName,
+                          final TestDefinition existing,
+                          final TestDefinition updated,
+                          final String previousRevision,
+                          final String qaRevision,
+                          final String productionRevision) {
+            this.testName = testName;
+            this.existing = existing;
+            this.updated = updated;
+            this.previousRevision = previousRevision;
+            this.qaRevision = qaRevision;
+            this.productionRevision = productionRevision;
+        }
+    }
+
+    public static boolean isAllocationOnlyChange(final TestDefinition existingTestDefinition, final TestDefinition testDefinitionToUpdate) {
+        if (TestDefinitionFingerprint.sameContent(existingTestDefinition, testDefinitionToUpdate)) {
+            return true;
+        }
+        return TestDefinitionDiff.isAllocationOnlyChange(existingTestDefinition, testDefinitionToUpdate);
     }
 
     private String formatFullComment(final String comment, final Map<String,String[]> requestParameterMap) {
@@ -985,23 +1761,31 @@ public class ProctorTestDefinitionController extends AbstractController {
     private CheckMatrixResult checkMatrix(final Environment checkAgainst,
                                           final String testName,
                                           final TestDefinition potential) {
+        return checkMatrix(checkAgainst, ImmutableMap.<String, TestDefinition>of(testName, potential));
+    }
+
+    /**
+     * Verifies all the potential definitions against every application's specification in one pass.
+     */
+    private CheckMatrixResult checkMatrix(final Environment checkAgainst,
+                                          final Map<String, TestDefinition> potentials) {
         final TestMatrixVersion tmv = new TestMatrixVersion();
         tmv.setAuthor("author");
         tmv.setVersion("");
-        tmv.setDescription("fake matrix for validation of " + testName);
+        tmv.setDescription("fake matrix for validation of " + Joiner.on(", ").join(potentials.keySet()));
         tmv.setPublished(new Date());
 
-        final TestMatrixDefinition tmd = new TestMatrixDefinition(ImmutableMap.<String, TestDefinition>of(testName, potential));
+        final TestMatrixDefinition tmd = new TestMatrixDefinition(potentials);
         tmv.setTestMatrixDefinition(tmd);
 
-        final TestMatrixArtifact artifact = ProctorUtils.convertToConsumableArtifact(tmv);
+        final TestMatrixArtifact artifact = ConsumableArtifacts.convert(tmv);
         // Verify
         final Map<AppVersion, IncompatibleTestMatrixException> matrixErrors = Maps.newLinkedHashMap();
         final Map<AppVersion, Throwable> exceptions = Maps.newLinkedHashMap();
         final Map<AppVersion, Future<AppVersion>> futures = Maps.newLinkedHashMap();
         final Set<AppVersion> appVersionsToCheck = Sets.newLinkedHashSet();
 
-        final Set<String> limitToTests = Collections.singleton(testName);
+        final Set<String> limitToTests = ImmutableSet.copyOf(potentials.keySet());
 
         final Map<AppVersion, ProctorSpecification> toVerify = specificationSource.loadAllSuccessfulSpecifications(checkAgainst);
         for (Map.Entry<AppVersion, ProctorSpecification> entry : toVerify.entrySet()) {
@@ -1081,13 +1865,6 @@ public class ProctorTestDefinitionController extends AbstractController {
     }
 
 
-    private static void validateUsernamePassword(String username, String password) throws IllegalArgumentException {
-        if (CharMatcher.WHITESPACE.matchesAllOf(Strings.nullToEmpty(username)) || CharMatcher.WHITESPACE.matchesAllOf(Strings.nullToEmpty(password))) {
-            throw new IllegalArgumentException("No username or password provided");
-        }
-    }
-
-
 
     private void validateComment(String comment) throws IllegalArgumentException {
         if (CharMatcher.WHITESPACE.matchesAllOf(Strings.nullToEmpty(comment))) {
@@ -1177,9 +1954,13 @@ public class ProctorTestDefinitionController extends AbstractController {
 
 
 
+    /**
+     * @param revision the revision the definition was read at, null if it is not stored yet
+     */
     private String doView(final Environment b,
                           final Views view,
                           final String testName,
+                          /* @Nullable */ final String revision,
                           // TODO (parker) 7/27/12 - add Revisioned (that has Revision + testName)
                           final TestDefinition definition,
                           final List<Revision> history,
@@ -1216,10 +1997,7 @@ public class ProctorTestDefinitionController extends AbstractController {
         model.addAttribute("productionApplications", productionApplications);
 
         try {
-            // convert to artifact?
-            final StringWriter sw = new StringWriter();
-            ProctorUtils.serializeTestDefinition(sw, definition);
-            model.addAttribute("testDefinitionJson", sw.toString());
+            model.addAttribute("testDefinitionJson", getSerializedDefinition(b, testName, revision, definition).json);
         } catch (JsonGenerationException e) {
             LOGGER.error("Could not generate JSON", e);
         } catch (JsonMappingException e) {
@@ -1237,6 +2015,18 @@ public class ProctorTestDefinitionController extends AbstractController {
         return view.getName();
     }
 
+    /**
+     * Warns about the other tests using the same salt on any branch: identifiers land in correlated buckets of
+     * tests that share a salt, which is rarely intended.
+     */
+    private void logSaltCollisions(final BackgroundJob job, final String testName, final String salt) {
+        final Map<String, Set<Environment>> collisions = promoter.getSaltIndex().getCollisions(testName, salt);
+        for (final Map.Entry<String, Set<Environment>> collision : collisions.entrySet()) {
+            job.log(String.format("WARNING: salt '%s' is also used by %s on %s, their buckets will be correlated.",
+                                  salt, collision.getKey(), SaltIndex.describe(collision.getValue())));
+        }
+    }
+
     private static void logFailedJob(final BackgroundJob job, final Throwable t) {
         job.log("Failed:");
         Throwable cause = t;
@@ -1261,6 +2051,70 @@ public class ProctorTestDefinitionController extends AbstractController {
     }
 
 
+    // @Nullable
+    private TestDefinition getTestDefinition(final Environment branch, final String testName, final String revision) {
+        final ProctorStore store = determineStoreFromEnvironment(branch);
+        return revision.length() > 0 ? getTestDefinition(store, testName, revision) : getTestDefinition(store, testName);
+    }
+
+    // @Nullable
+    private static String getCurrentRevision(final Environment branch, /* @Nullable */ final EnvironmentVersion version) {
+        if (version == null) {
+            return null;
+        }
+        final String revision = version.getRevision(branch);
+        return EnvironmentVersion.UNKNOWN_REVISION.equals(revision) ? null : revision;
+    }
+
+    /**
+     * Cached per branch, test and revision. The entry is also checked against the definition's fingerprint, in case
+     * the revision was resolved from a more recent view of the branch than the definition itself.
+     */
+    private SerializedDefinition getSerializedDefinition(final Environment branch,
+                                                         final String testName,
+                                                         /* @Nullable */ final String revision,
+                                                         final TestDefinition definition) throws IOException {
+        final TestDefinitionFingerprint.Key content = new TestDefinitionFingerprint.Key(definition);
+        final String key = revision == null ? null : branch.getName() + ":" + testName + ":" + revision;
+        if (key != null) {
+            final SerializedDefinition cached = serializedDefinitions.getIfPresent(key);
+            if (cached != null && cached.content.equals(content)) {
+                return cached;
+            }
+        }
+        final StringWriter sw = new StringWriter();
+        ProctorUtils.serializeTestDefinition(sw, definition);
+        final SerializedDefinition serialized = new SerializedDefinition(content, sw.toString());
+        if (key != null) {
+            serializedDefinitions.put(key, serialized);
+        }
+        return serialized;
+    }
+
+    private static boolean matchesETag(/* @Nullable */ final String ifNoneMatch, final String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (final String candidate : Splitter.on(',').trimResults().split(ifNoneMatch)) {
+            if (candidate.equals(etag) || candidate.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class SerializedDefinition {
+        private final TestDefinitionFingerprint.Key content;
+        private final String json;
+        private final String etag;
+
+        private SerializedDefinition(final TestDefinitionFingerprint.Key content, final String json) {
+            this.content = content;
+            this.json = json;
+            this.etag = '"' + Hashing.md5().hashString(json, Charsets.UTF_8).toString() + '"';
+        }
+    }
+
     // @Nullable
     private static TestDefinition getTestDefinition(final ProctorStore store, final String testName) {
         try {
@@ -0,0 +1,134 @@
+package com.indeed.proctor.webapp.controllers;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.indeed.proctor.common.AllocationSimulator;
+import com.indeed.proctor.common.ProctorPromoter;
+import com.indeed.proctor.common.SaltIndex;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.store.ProctorStore;
+import com.indeed.proctor.webapp.db.Environment;
+import com.indeed.proctor.webapp.model.WebappConfiguration;
+import com.indeed.proctor.webapp.views.JsonView;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.View;
+import org.springframework.web.servlet.view.RedirectView;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Lists the salts shared by several tests across trunk, qa and production, and estimates how the buckets of those
+ * tests overlap by simulating their allocations.
+ */
+@Controller
+@RequestMapping({ "/salts", "/proctor/salts" })
+public class SaltCollisionController extends AbstractController {
+    private static final int MAX_SIMULATED_IDENTIFIERS = 1000000;
+
+    private final ProctorPromoter promoter;
+    private final BackgroundJobManager jobManager;
+    private final AllocationSimulator allocationSimulator;
+
+    @Autowired
+    public SaltCollisionController(final WebappConfiguration configuration,
+                                   @Qualifier("trunk") final ProctorStore trunkStore,
+                                   @Qualifier("qa") final ProctorStore qaStore,
+                                   @Qualifier("production") final ProctorStore productionStore,
+                                   final ProctorPromoter promoter,
+                                   final BackgroundJobManager jobManager,
+                                   final AllocationSimulator allocationSimulator) {
+        super(configuration, trunkStore, qaStore, productionStore);
+        this.promoter = promoter;
+        this.jobManager = jobManager;
+        this.allocationSimulator = allocationSimulator;
+    }
+
+    @RequestMapping(value = "", method = RequestMethod.GET)
+    public View doGetSharedSalts() {
+        final List<SaltIndex.SharedSalt> shared = promoter.getSaltIndex().getSharedSalts();
+        return new JsonView(new JsonResponse<List<SaltIndex.SharedSalt>>(shared, true, shared.size() + " shared salts"));
+    }
+
+    /**
+     * Starts a job simulating every pair of tests that share a salt on the branch.
+     *
+     * @param count number of synthetic identifiers per test
+     */
+    @RequestMapping(value = "/overlap", method = RequestMethod.POST)
+    public View doPostOverlap(@RequestParam(required = false) final String branch,
+                              @RequestParam(required = false, defaultValue = "100000") final int count,
+                              final HttpServletRequest request) {
+        final Environment environment = determineEnvironmentFromParameter(branch);
+        final BackgroundJob<List<AllocationSimulator.Report>> job = createOverlapJob(environment, Math.min(Math.max(count, 1), MAX_SIMULATED_IDENTIFIERS));
+        jobManager.submit(job);
+
+        if (isAJAXRequest(request)) {
+            final JsonResponse<Map> response = new JsonResponse<Map>(BackgroundJobRpcController.buildJobJson(job), true, job.getTitle());
+            return new JsonView(response);
+        } else {
+            // redirect to a status page for the job id
+            return new RedirectView("/proctor/rpc/jobs/list?id=" + job.getId());
+        }
+    }
+
+    private BackgroundJob<List<AllocationSimulator.Report>> createOverlapJob(final Environment branch, final int count) {
+        return new BackgroundJob<List<AllocationSimulator.Report>>() {
+            @Override
+            public String getTitle() {
+                return String.format("Estimating the overlap of tests sharing a salt on %s", branch.getName());
+            }
+
+            @Override
+            public List<AllocationSimulator.Report> call() throws Exception {
+                final TestMatrixVersion matrix = getCurrentMatrix(branch);
+                if (matrix == null || matrix.getTestMatrixDefinition() == null) {
+                    log("No test matrix on " + branch.getName());
+                    return Collections.emptyList();
+                }
+                final Map<String, TestDefinition> definitions = matrix.getTestMatrixDefinition().getTests();
+                final Map<String, List<String>> shared = promoter.getSaltIndex().getSharedSalts(branch);
+                log(String.format("%d salts are shared by several tests on %s", shared.size(), branch.getName()));
+
+                final List<AllocationSimulator.Report> reports = Lists.newArrayList();
+                for (final Map.Entry<String, List<String>> salt : shared.entrySet()) {
+                    final List<String> testNames = salt.getValue();
+                    // each test against the ones after it, so every pair is simulated once
+                    for (int i = 0; i < testNames.size() - 1; i++) {
+                        final TestDefinition definition = definitions.get(testNames.get(i));
+                        final Map<String, TestDefinition> others = Maps.newLinkedHashMap();
+                        for (final String other : testNames.subList(i + 1, testNames.size())) {
+                            if (definitions.get(other) != null) {
+                                others.put(other, definitions.get(other));
+                            }
+                        }
+                        if (definition == null || others.isEmpty()) {
+                            continue;
+                        }
+                        final AllocationSimulator.Report report;
+                        try {
+                            report = allocationSimulator.simulate(testNames.get(i), definition, others, count);
+                        } catch (final IllegalArgumentException e) {
+                            log(String.format("Skipping %s: %s", testNames.get(i), e.getMessage()));
+                            continue;
+                        }
+                        for (final AllocationSimulator.SaltSharer sharer : report.getSaltSharers()) {
+                            log(String.format("salt '%s': %s / %s max dependence %.4f",
+                                              salt.getKey(), testNames.get(i), sharer.getTestName(), sharer.getMaxDependence()));
+                        }
+                        reports.add(report);
+                    }
+                }
+                return reports;
+            }
+        };
+    }
+}
@@ -0,0 +1,44 @@
+package com.indeed.proctor.webapp.controllers;
+
+import com.google.common.collect.ImmutableMap;
+import com.indeed.proctor.webapp.db.EagerStoreFactory;
+import com.indeed.proctor.webapp.db.StoreFactory;
+import com.indeed.proctor.webapp.views.JsonView;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.View;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * Readiness check for load balancers: answers 503 until the trunk, qa and production stores are initialized.
+ */
+@Controller
+@RequestMapping({ "/rpc", "/proctor/rpc" })
+public class StoreReadinessController {
+    private final StoreFactory storeFactory;
+
+    @Autowired
+    public StoreReadinessController(final StoreFactory storeFactory) {
+        this.storeFactory = storeFactory;
+    }
+
+    @RequestMapping(value = "/ready", method = RequestMethod.GET)
+    public View doGetReady(final HttpServletResponse response) {
+        if (!(storeFactory instanceof EagerStoreFactory)) {
+            // stores are created on first use, nothing to wait for
+            final JsonResponse<Map> ready = new JsonResponse<Map>(ImmutableMap.of(), true, "ready");
+            return new JsonView(ready);
+        }
+        final EagerStoreFactory eagerStoreFactory = (EagerStoreFactory) storeFactory;
+        final boolean ready = eagerStoreFactory.isReady();
+        if (!ready) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+        final JsonResponse<Map> result = new JsonResponse<Map>(eagerStoreFactory.getReadiness(), ready, ready ? "ready" : "initializing");
+        return new JsonView(result);
+    }
+}
@@ -0,0 +1,43 @@
+package com.indeed.proctor.webapp.controllers;
+
+import com.indeed.proctor.common.ProctorPromoter;
+import com.indeed.proctor.common.TestSearchIndex;
+import com.indeed.proctor.webapp.db.Environment;
+import com.indeed.proctor.webapp.views.JsonView;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.View;
+
+import java.util.List;
+
+/**
+ * Finds the tests whose name, description, rules, bucket names or payload values contain the words of a query,
+ * from the index the promoter keeps of the current test matrices.
+ */
+@Controller
+@RequestMapping({ "/search", "/proctor/search" })
+public class TestSearchController {
+    private static final int MAX_LIMIT = 1000;
+
+    private final ProctorPromoter promoter;
+
+    @Autowired
+    public TestSearchController(final ProctorPromoter promoter) {
+        this.promoter = promoter;
+    }
+
+    /**
+     * @param branch trunk, qa or production; all branches if empty
+     */
+    @RequestMapping(value = "", method = RequestMethod.GET)
+    public View doGetSearch(@RequestParam(required = false, defaultValue = "") final String q,
+                            @RequestParam(required = false) final String branch,
+                            @RequestParam(required = false, defaultValue = "100") final int limit) {
+        final Environment environment = Environment.fromName(branch);
+        final List<TestSearchIndex.Hit> hits = promoter.getSearchIndex().search(q, environment, Math.min(Math.max(limit, 0), MAX_LIMIT));
+        return new JsonView(new JsonResponse<List<TestSearchIndex.Hit>>(hits, true, hits.size() + " tests found"));
+    }
+}
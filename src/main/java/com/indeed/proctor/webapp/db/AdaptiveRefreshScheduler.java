@@ -0,0 +1,264 @@
+package com.indeed.proctor.webapp.db;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.store.ProctorStore;
+import com.indeed.proctor.store.StoreException;
+import com.indeed.util.varexport.Export;
+import org.apache.log4j.Logger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a directory refresher at an interval that follows activity instead of a fixed period.
+ *
+ * After a local write, or a refresh that pulled in a remote change, the next refresh runs after minDelayMillis.
+ * Every refresh that finds nothing new doubles the delay, up to maxDelayMillis. Changes are detected by comparing
+ * the latest versions of the stores registered through {@link #watch(ProctorStore)} before and after a refresh.
+ * A local write is not a remote change: the refresh that follows it takes the versions as a new baseline instead.
+ * Listeners added through {@link #addRefreshListener(Runnable)}, such as caches of the watched stores, run after
+ * every refresh.
+ */
+public class AdaptiveRefreshScheduler implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(AdaptiveRefreshScheduler.class);
+
+    private final ScheduledExecutorService executor;
+    private final Runnable refresher;
+    private final String name;
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+    private final List<ProctorStore> watchedStores = new CopyOnWriteArrayList<ProctorStore>();
+    private final List<Runnable> refreshListeners = new CopyOnWriteArrayList<Runnable>();
+
+    /* guarded by this */
+    private long delayMillis;
+    private ScheduledFuture<?> next;
+    // null until the next refresh takes a baseline
+    private String lastVersions;
+    private long localWriteCount = 0;
+
+    private volatile long refreshCount = 0;
+    private volatile long changeCount = 0;
+    private volatile long totalRefreshMillis = 0;
+    private volatile long lastRefreshMillis = 0;
+
+    public AdaptiveRefreshScheduler(final ScheduledExecutorService executor,
+                                    final Runnable refresher,
+                                    final String name,
+                                    final long minDelayMillis,
+                                    final long maxDelayMillis) {
+        this.executor = executor;
+        this.refresher = refresher;
+        this.name = name;
+        this.minDelayMillis = minDelayMillis;
+        this.maxDelayMillis = Math.max(minDelayMillis, maxDelayMillis);
+        this.delayMillis = minDelayMillis;
+    }
+
+    public synchronized void start() {
+        LOGGER.info("Scheduling adaptive refresh of " + name + " every " + minDelayMillis + " to " + maxDelayMillis + " milliseconds");
+        next = executor.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return store that reports its writes to this scheduler; its latest version is used to detect remote changes
+     */
+    public ProctorStore watch(final ProctorStore store) {
+        watchedStores.add(store);
+        return new WatchedStore(store);
+    }
+
+    /**
+     * Runs listener after every refresh, whether or not it pulled in a change
+     */
+    public void addRefreshListener(final Runnable listener) {
+        refreshListeners.add(listener);
+    }
+
+    /**
+     * Brings the next refresh forward to minDelayMillis from now.
+     */
+    public synchronized void onLocalWrite() {
+        localWriteCount++;
+        lastVersions = null;
+        delayMillis = minDelayMillis;
+        if (next != null && next.getDelay(TimeUnit.MILLISECONDS) > minDelayMillis && next.cancel(false)) {
+            next = executor.schedule(this, minDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Refreshes and schedules the next run. Nothing thrown by the refresher or the stores may escape, since
+     * the executor would silently drop this task and the directory would never be refreshed again.
+     */
+    @Override
+    public void run() {
+        boolean changed = false;
+        try {
+            changed = refresh();
+        } catch (final Throwable t) {
+            LOGGER.error("Refresh of " + name + " failed", t);
+        }
+        for (final Runnable listener : refreshListeners) {
+            try {
+                listener.run();
+            } catch (final Throwable t) {
+                LOGGER.error("Listener to the refresh of " + name + " failed", t);
+            }
+        }
+        synchronized (this) {
+            delayMillis = changed ? minDelayMillis : Math.min(delayMillis * 2, maxDelayMillis);
+            if (!executor.isShutdown()) {
+                try {
+                    next = executor.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+                } catch (final RejectedExecutionException e) {
+                    // shut down since the check above
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the refresh pulled in a change
+     */
+    private boolean refresh() {
+        final long writesBefore;
+        synchronized (this) {
+            writesBefore = localWriteCount;
+        }
+        final long start = System.currentTimeMillis();
+        try {
+            refresher.run();
+        } finally {
+            final long elapsed = System.currentTimeMillis() - start;
+            refreshCount++;
+            totalRefreshMillis += elapsed;
+            lastRefreshMillis = elapsed;
+        }
+
+        final String versions = getWatchedVersions();
+        synchronized (this) {
+            if (writesBefore != localWriteCount) {
+                // the versions read may or may not include the write, leave the baseline to the next refresh
+                return false;
+            }
+            final boolean changed = versions != null && lastVersions != null && !versions.equals(lastVersions);
+            if (changed) {
+                changeCount++;
+            }
+            if (versions != null) {
+                lastVersions = versions;
+            }
+            return changed;
+        }
+    }
+
+    private String getWatchedVersions() {
+        if (watchedStores.isEmpty()) {
+            return null;
+        }
+        final List<String> versions = Lists.newArrayListWithCapacity(watchedStores.size());
+        for (final ProctorStore store : watchedStores) {
+            try {
+                versions.add(store.getLatestVersion());
+            } catch (final StoreException e) {
+                LOGGER.warn("Failed to read latest version after refreshing " + name, e);
+                return null;
+            }
+        }
+        return Joiner.on(',').useForNull("").join(versions);
+    }
+
+    @Export(name = "refresh-count")
+    public long getRefreshCount() {
+        return refreshCount;
+    }
+
+    @Export(name = "refresh-change-count", doc = "refreshes that pulled in a change")
+    public long getChangeCount() {
+        return changeCount;
+    }
+
+    @Export(name = "refresh-total-millis")
+    public long getTotalRefreshMillis() {
+        return totalRefreshMillis;
+    }
+
+    @Export(name = "refresh-last-millis")
+    public long getLastRefreshMillis() {
+        return lastRefreshMillis;
+    }
+
+    @Export(name = "refresh-delay-millis", doc = "delay before the next refresh")
+    public synchronized long getDelayMillis() {
+        return delayMillis;
+    }
+
+    @Export(name = "refresh-max-delay-millis", doc = "longest delay between refreshes")
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    /**
+     * Store that reports its writes to the scheduler watching it
+     */
+    public class WatchedStore extends ForwardingProctorStore {
+        private WatchedStore(final ProctorStore delegate) {
+            super(delegate);
+        }
+
+        public AdaptiveRefreshScheduler getScheduler() {
+            return AdaptiveRefreshScheduler.this;
+        }
+
+        @Override
+        public void updateTestDefinition(final String username,
+                                         final String password,
+                                         final String previousVersion,
+                                         final String testName,
+                                         final TestDefinition testDefinition,
+                                         final Map<String, String> metadata,
+                                         final String comment) throws StoreException.TestUpdateException {
+            try {
+                super.updateTestDefinition(username, password, previousVersion, testName, testDefinition, metadata, comment);
+            } finally {
+                onLocalWrite();
+            }
+        }
+
+        @Override
+        public void deleteTestDefinition(final String username,
+                                         final String password,
+                                         final String previousVersion,
+                                         final String testName,
+                                         final TestDefinition testDefinition,
+                                         final String comment) throws StoreException.TestUpdateException {
+            try {
+                super.deleteTestDefinition(username, password, previousVersion, testName, testDefinition, comment);
+            } finally {
+                onLocalWrite();
+            }
+        }
+
+        @Override
+        public void addTestDefinition(final String username,
+                                      final String password,
+                                      final String testName,
+                                      final TestDefinition testDefinition,
+                                      final Map<String, String> metadata,
+                                      final String comment) throws StoreException.TestUpdateException {
+            try {
+                super.addTestDefinition(username, password, testName, testDefinition, metadata, comment);
+            } finally {
+                onLocalWrite();
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.indeed.proctor.webapp.db;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.indeed.proctor.common.TestDefinitionFingerprint;
+import com.indeed.proctor.common.TestDefinitions;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.store.ProctorStore;
+import com.indeed.proctor.store.StoreException;
+import com.indeed.util.varexport.Export;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Read-through cache in front of any {@link ProctorStore}, svn or git.
+ *
+ * Matrices and test definitions fetched at a given revision never change, so they are kept until evicted by size.
+ * The current matrix and latest version are kept until a write goes through this store or {@link #refresh()}
+ * notices a new latest version, which {@link CachingStoreFactory} checks on every refresher tick.
+ *
+ * Cached objects are shared between callers and must not be modified. The fingerprints of the definitions they
+ * contain are computed once, when they are loaded. Code that may modify a definition, such as extensions, works on
+ * a copy from {@link TestDefinitions#copyOf(TestDefinition)}, and writes hand the underlying store a copy too.
+ */
+public class CachingProctorStore extends ForwardingProctorStore {
+    private static final Logger LOGGER = Logger.getLogger(CachingProctorStore.class);
+
+    private static final int MAX_CACHED_MATRICES = 8;
+    private static final int MAX_CACHED_DEFINITIONS = 2000;
+
+    private final Cache<String, Optional<TestMatrixVersion>> matrices = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_MATRICES)
+            .recordStats()
+            .build();
+    private final Cache<DefinitionKey, Optional<TestDefinition>> definitions = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_DEFINITIONS)
+            .recordStats()
+            .build();
+
+    /* guarded by this; generation is bumped on every invalidation so a load that raced with a write is not cached */
+    private long generation = 0;
+    private TestMatrixVersion currentMatrix = null;
+    private String latestVersion = null;
+
+    public CachingProctorStore(final ProctorStore delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public TestMatrixVersion getCurrentTestMatrix() throws StoreException {
+        final long loadGeneration;
+        synchronized (this) {
+            if (currentMatrix != null) {
+                return currentMatrix;
+            }
+            loadGeneration = generation;
+        }
+        final TestMatrixVersion matrix = getDelegate().getCurrentTestMatrix();
+        TestDefinitionFingerprint.register(matrix);
+        synchronized (this) {
+            if (loadGeneration == generation) {
+                currentMatrix = matrix;
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public TestDefinition getCurrentTestDefinition(final String test) throws StoreException {
+        final TestMatrixVersion matrix = getCurrentTestMatrix();
+        if (matrix == null || matrix.getTestMatrixDefinition() == null) {
+            return getDelegate().getCurrentTestDefinition(test);
+        }
+        return matrix.getTestMatrixDefinition().getTests().get(test);
+    }
+
+    @Override
+    public String getLatestVersion() throws StoreException {
+        final long loadGeneration;
+        synchronized (this) {
+            if (latestVersion != null) {
+                return latestVersion;
+            }
+            loadGeneration = generation;
+        }
+        final String version = getDelegate().getLatestVersion();
+        synchronized (this) {
+            if (loadGeneration == generation) {
+                latestVersion = version;
+            }
+        }
+        return version;
+    }
+
+    @Override
+    public TestMatrixVersion getTestMatrix(final String fetchRevision) throws StoreException {
+        try {
+            return matrices.get(fetchRevision, new Callable<Optional<TestMatrixVersion>>() {
+                @Override
+                public Optional<TestMatrixVersion> call() throws StoreException {
+                    final TestMatrixVersion matrix = getDelegate().getTestMatrix(fetchRevision);
+                    TestDefinitionFingerprint.register(matrix);
+                    return Optional.fromNullable(matrix);
+                }
+            }).orNull();
+        } catch (final ExecutionException e) {
+            throw propagate(e.getCause());
+        } catch (final UncheckedExecutionException e) {
+            throw propagate(e.getCause());
+        }
+    }
+
+    @Override
+    public TestDefinition getTestDefinition(final String test, final String fetchRevision) throws StoreException {
+        try {
+            return definitions.get(new DefinitionKey(test, fetchRevision), new Callable<Optional<TestDefinition>>() {
+                @Override
+                public Optional<TestDefinition> call() throws StoreException {
+                    final TestDefinition definition = getDelegate().getTestDefinition(test, fetchRevision);
+                    if (definition != null) {
+                        TestDefinitionFingerprint.register(definition);
+                    }
+                    return Optional.fromNullable(definition);
+                }
+            }).orNull();
+        } catch (final ExecutionException e) {
+            throw propagate(e.getCause());
+        } catch (final UncheckedExecutionException e) {
+            throw propagate(e.getCause());
+        }
+    }
+
+    @Override
+    public void updateTestDefinition(final String username,
+                                     final String password,
+                                     final String previousVersion,
+                                     final String testName,
+                                     final TestDefinition testDefinition,
+                                     final Map<String, String> metadata,
+                                     final String comment) throws StoreException.TestUpdateException {
+        try {
+            getDelegate().updateTestDefinition(username, password, previousVersion, testName, TestDefinitions.copyOf(testDefinition), metadata, comment);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void deleteTestDefinition(final String username,
+                                     final String password,
+                                     final String previousVersion,
+                                     final String testName,
+                                     final TestDefinition testDefinition,
+                                     final String comment) throws StoreException.TestUpdateException {
+        try {
+            getDelegate().deleteTestDefinition(username, password, previousVersion, testName, TestDefinitions.copyOf(testDefinition), comment);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void addTestDefinition(final String username,
+                                  final String password,
+                                  final String testName,
+                                  final TestDefinition testDefinition,
+                                  final Map<String, String> metadata,
+                                  final String comment) throws StoreException.TestUpdateException {
+        try {
+            getDelegate().addTestDefinition(username, password, testName, TestDefinitions.copyOf(testDefinition), metadata, comment);
+        } finally {
+            invalidate();
+        }
+    }
+
+    /**
+     * Drops the current matrix and latest version. Entries at fixed revisions stay valid.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        currentMatrix = null;
+        latestVersion = null;
+    }
+
+    /**
+     * Invalidates the current matrix if the underlying store has moved past the cached latest version.
+     */
+    public void refresh() {
+        final String cachedVersion;
+        synchronized (this) {
+            cachedVersion = latestVersion;
+        }
+        if (cachedVersion == null) {
+            // nothing cached that depends on the latest version being known
+            invalidate();
+            return;
+        }
+        try {
+            if (!cachedVersion.equals(getDelegate().getLatestVersion())) {
+                invalidate();
+            }
+        } catch (final StoreException e) {
+            LOGGER.warn("Failed to check latest version, dropping cached current matrix", e);
+            invalidate();
+        }
+    }
+
+    @Export(name = "matrix-cache-hit-rate")
+    public double getMatrixCacheHitRate() {
+        return matrices.stats().hitRate();
+    }
+
+    @Export(name = "definition-cache-hit-rate")
+    public double getDefinitionCacheHitRate() {
+        return definitions.stats().hitRate();
+    }
+
+    @Export(name = "definition-cache-size")
+    public long getDefinitionCacheSize() {
+        return definitions.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        invalidate();
+        matrices.invalidateAll();
+        definitions.invalidateAll();
+        getDelegate().close();
+    }
+
+    private static StoreException propagate(final Throwable cause) {
+        if (cause instanceof StoreException) {
+            return (StoreException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new StoreException("Failed to load from " + cause.getMessage(), cause);
+    }
+
+    private static class DefinitionKey {
+        private final String test;
+        private final String revision;
+
+        private DefinitionKey(final String test, final String revision) {
+            this.test = test;
+            this.revision = revision;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DefinitionKey)) {
+                return false;
+            }
+            final DefinitionKey that = (DefinitionKey) o;
+            return Objects.equal(test, that.test) && Objects.equal(revision, that.revision);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(test, revision);
+        }
+    }
+}
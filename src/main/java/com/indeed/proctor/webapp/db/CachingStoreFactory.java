@@ -0,0 +1,130 @@
+package com.indeed.proctor.webapp.db;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.indeed.proctor.store.ProctorStore;
+import com.indeed.util.varexport.VarExporter;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps every store created by another StoreFactory in a {@link CachingProctorStore}, so all controllers and
+ * the promoter share one cache per branch regardless of the revision control backend.
+ * Each store is created and wrapped once, on first lookup; later lookups return the same cached store.
+ */
+public class CachingStoreFactory implements WorkspaceStoreFactory {
+    private static final Logger LOGGER = Logger.getLogger(CachingStoreFactory.class);
+
+    private final StoreFactory delegate;
+    private final ScheduledExecutorService executor;
+    private final long refreshMillis;
+    /* branch (Environment) or relative path (String) -> cached store; stores with different keys are created in parallel */
+    private final LoadingCache<Object, ProctorStore> stores = CacheBuilder.newBuilder().build(new CacheLoader<Object, ProctorStore>() {
+        @Override
+        public ProctorStore load(final Object key) throws ConfigurationException {
+            if (key instanceof Environment) {
+                final Environment branch = (Environment) key;
+                return cache(createBranchStore(branch), branch.getName());
+            }
+            final String relativePath = (String) key;
+            return cache(delegate.createStore(relativePath), relativePath.replace('/', '-'));
+        }
+    });
+
+    /**
+     * @param refreshMillis period of the backend's directory refresher; the cached current matrices are
+     *                      checked against the latest version at the same period, or after every refresh for
+     *                      stores whose directory is refreshed by an {@link AdaptiveRefreshScheduler}
+     */
+    public CachingStoreFactory(final StoreFactory delegate, final ScheduledExecutorService executor, final long refreshMillis) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.refreshMillis = refreshMillis;
+    }
+
+    @Override
+    public ProctorStore getTrunkStore() {
+        return getBranchStore(Environment.WORKING);
+    }
+
+    @Override
+    public ProctorStore getQaStore() {
+        return getBranchStore(Environment.QA);
+    }
+
+    @Override
+    public ProctorStore getProductionStore() {
+        return getBranchStore(Environment.PRODUCTION);
+    }
+
+    @Override
+    public File getWorkspaceDirectory(final Environment branch) {
+        return delegate instanceof WorkspaceStoreFactory ? ((WorkspaceStoreFactory) delegate).getWorkspaceDirectory(branch) : null;
+    }
+
+    @Override
+    public File getSharedWorkspaceDirectory(final Environment branch) {
+        return delegate instanceof WorkspaceStoreFactory ? ((WorkspaceStoreFactory) delegate).getSharedWorkspaceDirectory(branch) : null;
+    }
+
+    @Override
+    public ProctorStore createStore(final String relativePath) throws ConfigurationException {
+        try {
+            return stores.get(relativePath);
+        } catch (final ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), ConfigurationException.class);
+            throw Throwables.propagate(e.getCause());
+        } catch (final UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private ProctorStore getBranchStore(final Environment branch) {
+        try {
+            return stores.getUnchecked(branch);
+        } catch (final UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private ProctorStore createBranchStore(final Environment branch) {
+        switch (branch) {
+            case WORKING:
+                return delegate.getTrunkStore();
+            case QA:
+                return delegate.getQaStore();
+            case PRODUCTION:
+                return delegate.getProductionStore();
+            default:
+                throw new IllegalArgumentException("Unknown branch " + branch);
+        }
+    }
+
+    private ProctorStore cache(final ProctorStore store, final String name) {
+        final CachingProctorStore cachingStore = new CachingProctorStore(store);
+        final Runnable refresh = new Runnable() {
+            @Override
+            public void run() {
+                cachingStore.refresh();
+            }
+        };
+        if (store instanceof AdaptiveRefreshScheduler.WatchedStore) {
+            LOGGER.info("Refreshing cache of " + name + " store after every refresh of its directory");
+            ((AdaptiveRefreshScheduler.WatchedStore) store).getScheduler().addRefreshListener(refresh);
+        } else if (refreshMillis > 0) {
+            LOGGER.info("Scheduling cache refresh of " + name + " store every " + refreshMillis + " milliseconds");
+            executor.scheduleWithFixedDelay(refresh, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        }
+        final VarExporter exporter = VarExporter.forNamespace(CachingProctorStore.class.getSimpleName()).includeInGlobal();
+        exporter.export(cachingStore, name + "-");
+        return cachingStore;
+    }
+}
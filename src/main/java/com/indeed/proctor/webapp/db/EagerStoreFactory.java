@@ -0,0 +1,167 @@
+package com.indeed.proctor.webapp.db;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.indeed.proctor.store.ProctorStore;
+import com.indeed.proctor.webapp.util.threads.LogOnUncaughtExceptionHandler;
+import com.indeed.util.varexport.Export;
+import com.indeed.util.varexport.VarExporter;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Starts creating the trunk, qa and production stores in parallel as soon as the webapp boots, instead of
+ * serially on first use. The branch getters return immediately with a {@link PendingProctorStore} that waits
+ * for its store on first call, so startup is not held up; {@link #isReady()} tells when all three can serve.
+ */
+public class EagerStoreFactory implements WorkspaceStoreFactory {
+    private static final Logger LOGGER = Logger.getLogger(EagerStoreFactory.class);
+
+    private final StoreFactory delegate;
+    private final Map<Environment, StoreInitialization> initializations;
+
+    public EagerStoreFactory(final StoreFactory delegate) {
+        this.delegate = delegate;
+        this.initializations = ImmutableMap.of(
+                Environment.WORKING, new StoreInitialization(Environment.WORKING),
+                Environment.QA, new StoreInitialization(Environment.QA),
+                Environment.PRODUCTION, new StoreInitialization(Environment.PRODUCTION)
+        );
+        final VarExporter exporter = VarExporter.forNamespace(EagerStoreFactory.class.getSimpleName()).includeInGlobal();
+        exporter.export(this, "");
+        for (final StoreInitialization initialization : initializations.values()) {
+            exporter.export(initialization, initialization.branch.getName() + "-");
+        }
+    }
+
+    public void start() {
+        final ExecutorService executor = Executors.newFixedThreadPool(initializations.size(), new ThreadFactoryBuilder()
+                .setNameFormat(EagerStoreFactory.class.getSimpleName() + "-Thread-%d")
+                .setDaemon(true)
+                .setUncaughtExceptionHandler(new LogOnUncaughtExceptionHandler())
+                .build());
+        for (final StoreInitialization initialization : initializations.values()) {
+            executor.execute(initialization.task);
+        }
+        // threads exit once the stores are built
+        executor.shutdown();
+    }
+
+    @Override
+    public ProctorStore getTrunkStore() {
+        return initializations.get(Environment.WORKING).store;
+    }
+
+    @Override
+    public ProctorStore getQaStore() {
+        return initializations.get(Environment.QA).store;
+    }
+
+    @Override
+    public ProctorStore getProductionStore() {
+        return initializations.get(Environment.PRODUCTION).store;
+    }
+
+    @Override
+    public File getWorkspaceDirectory(final Environment branch) {
+        return delegate instanceof WorkspaceStoreFactory ? ((WorkspaceStoreFactory) delegate).getWorkspaceDirectory(branch) : null;
+    }
+
+    @Override
+    public File getSharedWorkspaceDirectory(final Environment branch) {
+        return delegate instanceof WorkspaceStoreFactory ? ((WorkspaceStoreFactory) delegate).getSharedWorkspaceDirectory(branch) : null;
+    }
+
+    @Override
+    public ProctorStore createStore(final String relativePath) throws ConfigurationException {
+        return delegate.createStore(relativePath);
+    }
+
+    @Export(name = "ready", doc = "true once the trunk, qa and production stores are all initialized")
+    public boolean isReady() {
+        for (final StoreInitialization initialization : initializations.values()) {
+            if (!initialization.isReady()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return per branch: "ready", "initializing" or "failed: reason"
+     */
+    public Map<String, String> getReadiness() {
+        final Map<String, String> readiness = Maps.newLinkedHashMap();
+        for (final StoreInitialization initialization : initializations.values()) {
+            readiness.put(initialization.branch.getName(), initialization.getState());
+        }
+        return readiness;
+    }
+
+    private ProctorStore createBranchStore(final Environment branch) {
+        switch (branch) {
+            case WORKING:
+                return delegate.getTrunkStore();
+            case QA:
+                return delegate.getQaStore();
+            case PRODUCTION:
+                return delegate.getProductionStore();
+            default:
+                throw new IllegalArgumentException("Unknown branch " + branch);
+        }
+    }
+
+    private class StoreInitialization {
+        private final Environment branch;
+        private final FutureTask<ProctorStore> task;
+        private final PendingProctorStore store;
+        private volatile long initMillis = -1;
+        private volatile String error = null;
+
+        private StoreInitialization(final Environment branch) {
+            this.branch = branch;
+            this.task = new FutureTask<ProctorStore>(new Callable<ProctorStore>() {
+                @Override
+                public ProctorStore call() throws Exception {
+                    final long start = System.currentTimeMillis();
+                    try {
+                        final ProctorStore store = createBranchStore(branch);
+                        initMillis = System.currentTimeMillis() - start;
+                        LOGGER.info("Initialized " + branch + " store in " + initMillis + " ms");
+                        return store;
+                    } catch (final RuntimeException e) {
+                        error = String.valueOf(e.getMessage());
+                        LOGGER.error("Failed to initialize " + branch + " store", e);
+                        throw e;
+                    }
+                }
+            });
+            this.store = new PendingProctorStore(branch.getName(), task);
+        }
+
+        @Export(name = "ready")
+        public boolean isReady() {
+            return task.isDone() && error == null;
+        }
+
+        @Export(name = "init-millis", doc = "time taken to create the store, -1 until it is created")
+        public long getInitMillis() {
+            return initMillis;
+        }
+
+        private String getState() {
+            if (error != null) {
+                return "failed: " + error;
+            }
+            return task.isDone() ? "ready" : "initializing";
+        }
+    }
+}
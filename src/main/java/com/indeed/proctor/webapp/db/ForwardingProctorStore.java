@@ -0,0 +1,124 @@
+package com.indeed.proctor.webapp.db;
+
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.store.ProctorStore;
+import com.indeed.proctor.store.Revision;
+import com.indeed.proctor.store.StoreException;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ProctorStore that forwards every call to another store; decorators override only the calls they change.
+ */
+public abstract class ForwardingProctorStore implements ProctorStore {
+    private static final Logger LOGGER = Logger.getLogger(ForwardingProctorStore.class);
+
+    private final ProctorStore delegate;
+
+    protected ForwardingProctorStore(final ProctorStore delegate) {
+        this.delegate = delegate;
+    }
+
+    public ProctorStore getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public TestMatrixVersion getCurrentTestMatrix() throws StoreException {
+        return delegate.getCurrentTestMatrix();
+    }
+
+    @Override
+    public TestDefinition getCurrentTestDefinition(final String test) throws StoreException {
+        return delegate.getCurrentTestDefinition(test);
+    }
+
+    @Override
+    public void verifySetup() throws StoreException {
+        delegate.verifySetup();
+    }
+
+    @Override
+    public boolean cleanUserWorkspace(final String username) {
+        return delegate.cleanUserWorkspace(username);
+    }
+
+    @Override
+    public void updateTestDefinition(final String username,
+                                     final String password,
+                                     final String previousVersion,
+                                     final String testName,
+                                     final TestDefinition testDefinition,
+                                     final Map<String, String> metadata,
+                                     final String comment) throws StoreException.TestUpdateException {
+        delegate.updateTestDefinition(username, password, previousVersion, testName, testDefinition, metadata, comment);
+    }
+
+    @Override
+    public void deleteTestDefinition(final String username,
+                                     final String password,
+                                     final String previousVersion,
+                                     final String testName,
+                                     final TestDefinition testDefinition,
+                                     final String comment) throws StoreException.TestUpdateException {
+        delegate.deleteTestDefinition(username, password, previousVersion, testName, testDefinition, comment);
+    }
+
+    @Override
+    public void addTestDefinition(final String username,
+                                  final String password,
+                                  final String testName,
+                                  final TestDefinition testDefinition,
+                                  final Map<String, String> metadata,
+                                  final String comment) throws StoreException.TestUpdateException {
+        delegate.addTestDefinition(username, password, testName, testDefinition, metadata, comment);
+    }
+
+    @Override
+    public String getLatestVersion() throws StoreException {
+        return delegate.getLatestVersion();
+    }
+
+    @Override
+    public TestMatrixVersion getTestMatrix(final String fetchRevision) throws StoreException {
+        return delegate.getTestMatrix(fetchRevision);
+    }
+
+    @Override
+    public TestDefinition getTestDefinition(final String test, final String fetchRevision) throws StoreException {
+        return delegate.getTestDefinition(test, fetchRevision);
+    }
+
+    @Override
+    public List<Revision> getMatrixHistory(final int start, final int limit) throws StoreException {
+        return delegate.getMatrixHistory(start, limit);
+    }
+
+    @Override
+    public List<Revision> getHistory(final String test, final int start, final int limit) throws StoreException {
+        return delegate.getHistory(test, start, limit);
+    }
+
+    @Override
+    public List<Revision> getHistory(final String test, final String revision, final int start, final int limit) throws StoreException {
+        return delegate.getHistory(test, revision, start, limit);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /* matches the destroy-method of the store beans, which may be any decorator */
+    public void shutdown() {
+        try {
+            close();
+        } catch (final IOException e) {
+            LOGGER.error("Failed to close " + delegate, e);
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.indeed.proctor.webapp.db;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.indeed.util.varexport.VarExporter;
 import com.indeed.proctor.store.*;
 import org.apache.commons.configuration.ConfigurationException;
@@ -10,12 +12,19 @@ import org.apache.log4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-public class GitProctorStoreFactory implements StoreFactory {
+public class GitProctorStoreFactory implements WorkspaceStoreFactory {
     private static final Logger LOGGER = Logger.getLogger(GitProctorStoreFactory.class);
 
+    private static final String SHARED_CLONE_PATH = "proctor/git/shared";
+    private static final long HISTORY_BACKFILL_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
     final ScheduledExecutorService executor;
 
     private String gitUrl;
@@ -29,6 +38,21 @@ public class GitProctorStoreFactory implements StoreFactory {
 
     private final File implicitTempRoot;
 
+    // When set, the trunk, qa and production stores share a single clone of the repository
+    private boolean shareClone = false;
+    private Clone sharedClone;
+    // cores whose stores leave them open, closed by shutdown()
+    private final List<GitProctorCore> ownedCores = Lists.newArrayList();
+
+    // When positive, the git directory is refreshed adaptively between these delays instead of every gitRefreshMillis
+    private long adaptiveRefreshMinMillis = TimeUnit.SECONDS.toMillis(30);
+    private long adaptiveRefreshMaxMillis = 0;
+    // overrides adaptiveRefreshMaxMillis for the store of a branch
+    private final Map<Environment, Long> adaptiveRefreshMaxMillisByBranch = Maps.newEnumMap(Environment.class);
+
+    // When set, a fresh workspace starts from a shallow clone and fetches the history in the background
+    private boolean shallowCloneEnabled = false;
+
     // The age (in milliseconds) to use when identifying temp directories that can be cleaned up
     private long tempDirCleanupAgeMillis = TimeUnit.DAYS.toMillis(1);
 
@@ -56,15 +80,88 @@ public class GitProctorStoreFactory implements StoreFactory {
         return createStore("proctor/git/production");
     }
     
+    public File getWorkspaceDirectory(final Environment branch) {
+        if (shareClone) {
+            return getTempDirectoryForPath(SHARED_CLONE_PATH);
+        }
+        return getTempDirectoryForPath("proctor/git/" + branch.getName());
+    }
+
+    /* the refresher works in the clone itself */
+    public File getSharedWorkspaceDirectory(final Environment branch) {
+        return getWorkspaceDirectory(branch);
+    }
+
     public ProctorStore createStore(final String relativePath) {
+        final Clone clone = shareClone ? getSharedClone() : createClone(relativePath, shallowCloneEnabled ? new ReentrantReadWriteLock() : null);
 
+        final String branchName = relativePath.substring(relativePath.lastIndexOf("/")+1);
+        final GitProctor store = new GitProctor(clone.core, branchName);
+        final String prefix = relativePath.replace('/', '-');
+        final VarExporter exporter = VarExporter.forNamespace(GitProctor.class.getSimpleName()).includeInGlobal();
+        exporter.export(store, prefix + "-");
+        ProctorStore decorated = store;
+        if (clone.lock != null) {
+            decorated = new LockingProctorStore(decorated, clone.lock);
+        }
+        if (clone.shallowClone != null) {
+            decorated = new ShallowHistoryProctorStore(decorated, clone.shallowClone);
+        }
+        return clone.refreshScheduler != null ? clone.refreshScheduler.watch(decorated) : decorated;
+    }
+
+    /*
+     * All branches live in the same repository, so one clone, object store and refresher can serve every
+     * branch store instead of cloning and fetching the repository once per branch.
+     * The clone has a single working tree, so commits on different branches and the refresher take turns through
+     * the clone's lock rather than relying on GitProctorCore to serialize checkouts across branches.
+     */
+    private synchronized Clone getSharedClone() {
+        if (sharedClone == null) {
+            sharedClone = createClone(SHARED_CLONE_PATH, new ReentrantReadWriteLock());
+        }
+        return sharedClone;
+    }
+
+    /**
+     * Closes the cores of the shared and shallow clones, after the stores using them have been closed
+     */
+    public synchronized void shutdown() {
+        for (final GitProctorCore core : ownedCores) {
+            try {
+                core.close();
+            } catch (final IOException e) {
+                LOGGER.error("Failed to close " + core, e);
+            }
+        }
+        ownedCores.clear();
+        sharedClone = null;
+    }
+
+    /**
+     * @param lock held by the stores and background tasks working in the clone, null if nothing else but its own
+     *             store and refresher works in it. Reads go through the object store and only take the read lock.
+     *             So does the refresher: fetching adds objects and moves refs, which reads tolerate, and only a commit
+     *             must not have the working tree updated under it. Backfilling a shallow clone rewrites its boundary,
+     *             so it takes the write lock.
+     *             Stores given a lock leave the core open when they are closed; it is closed by shutdown() instead.
+     */
+    private Clone createClone(final String relativePath, /* @Nullable */ final ReadWriteLock lock) {
         final File tempDirectory = createTempDirectoryForPath(relativePath);
 
         Preconditions.checkArgument(!CharMatcher.WHITESPACE.matchesAllOf(Strings.nullToEmpty(gitUrl)), "scm.path property cannot be empty");
 
+        final ShallowGitClone shallowClone = shallowCloneEnabled ? ShallowGitClone.seed(tempDirectory, gitUrl, gitUsername, gitPassword) : null;
+
         final GitWorkspaceProviderImpl provider = new GitWorkspaceProviderImpl(tempDirectory, tempDirCleanupAgeMillis);
         final GitProctorCore gitCore = new GitProctorCore(gitUrl, gitUsername, gitPassword, provider);
-        
+        final Clone clone = new Clone(gitCore, lock);
+        if (lock != null) {
+            synchronized (this) {
+                ownedCores.add(gitCore);
+            }
+        }
+
         // actively clean up directories every hour: (not relying on cache eviction)
         final long cleanupScheduleMillis = Math.min(TimeUnit.HOURS.toMillis(1), tempDirCleanupAgeMillis);
         LOGGER.info("Scheduling GitWorkspaceProvider every " + cleanupScheduleMillis + " milliseconds for dir: " +
@@ -74,24 +171,36 @@ public class GitProctorStoreFactory implements StoreFactory {
         if(gitRefreshMillis > 0) {
             final GitDirectoryRefresher refresher = gitCore.createRefresherTask
                     (gitUsername, gitPassword);
-            LOGGER.info("Scheduling GitDirectoryRefresher every " + gitRefreshMillis + " milliseconds for dir: " + refresher.getDirectoryPath());
-            executor.scheduleWithFixedDelay(refresher, gitRefreshMillis, gitRefreshMillis, TimeUnit.MILLISECONDS);
+            final Runnable refreshTask = lock != null ? LockingProctorStore.locking(refresher, lock.readLock()) : refresher;
+            if (adaptiveRefreshMaxMillis > 0) {
+                clone.refreshScheduler = new AdaptiveRefreshScheduler(executor, refreshTask, refresher.getDirectoryPath(), adaptiveRefreshMinMillis, getAdaptiveRefreshMaxMillis(relativePath));
+                clone.refreshScheduler.start();
+                VarExporter.forNamespace(AdaptiveRefreshScheduler.class.getSimpleName()).includeInGlobal().export(clone.refreshScheduler, relativePath.replace('/', '-') + "-");
+            } else {
+                LOGGER.info("Scheduling GitDirectoryRefresher every " + gitRefreshMillis + " milliseconds for dir: " + refresher.getDirectoryPath());
+                executor.scheduleWithFixedDelay(refreshTask, gitRefreshMillis, gitRefreshMillis, TimeUnit.MILLISECONDS);
+            }
         }
 
-        final String branchName = relativePath.substring(relativePath.lastIndexOf("/")+1);
-        final GitProctor store = new GitProctor(gitCore, branchName);
-        final String prefix = relativePath.replace('/', '-');
-        final VarExporter exporter = VarExporter.forNamespace(GitProctor.class.getSimpleName()).includeInGlobal();
-        exporter.export(store, prefix + "-");
-
-        return store;
+        if (shallowClone != null && !shallowClone.isHistoryComplete()) {
+            LOGGER.info("Scheduling history backfill of shallow clone in dir: " + tempDirectory);
+            clone.shallowClone = shallowClone;
+            shallowClone.scheduleBackfill(executor, lock.writeLock(), HISTORY_BACKFILL_RETRY_MILLIS);
+            final VarExporter exporter = VarExporter.forNamespace(ShallowGitClone.class.getSimpleName()).includeInGlobal();
+            exporter.export(shallowClone, relativePath.replace('/', '-') + "-");
+        }
+        return clone;
     }
 
-    private File createTempDirectoryForPath(final String relativePath) {
+    private File getTempDirectoryForPath(final String relativePath) {
         // replace "/" with "-" omit first "/" but omitEmptyStrings
         final String dirName = CharMatcher.is(File.separatorChar).trimAndCollapseFrom(relativePath, '-');
         final File parent = tempRoot != null ? tempRoot : implicitTempRoot;
-        final File temp = new File(parent, dirName);
+        return new File(parent, dirName);
+    }
+
+    private File createTempDirectoryForPath(final String relativePath) {
+        final File temp = getTempDirectoryForPath(relativePath);
         if(temp.exists()) {
            if(!temp.isDirectory()) {
                throw new IllegalStateException(temp + " exists but is not a directory");
@@ -115,6 +224,52 @@ public class GitProctorStoreFactory implements StoreFactory {
         return tempFile.getParentFile();
     }
 
+    public boolean isShareClone() {
+        return shareClone;
+    }
+
+    public void setShareClone(final boolean shareClone) {
+        this.shareClone = shareClone;
+    }
+
+    public void setAdaptiveRefresh(final long minDelayMillis, final long maxDelayMillis) {
+        this.adaptiveRefreshMinMillis = minDelayMillis;
+        this.adaptiveRefreshMaxMillis = maxDelayMillis;
+    }
+
+    /**
+     * Caps the adaptive refresh of the store of branch at maxDelayMillis instead of the default
+     */
+    public void setAdaptiveRefreshMax(final Environment branch, final long maxDelayMillis) {
+        adaptiveRefreshMaxMillisByBranch.put(branch, maxDelayMillis);
+    }
+
+    /* the shared clone has one refresher for every branch, which backs off no further than the lowest cap */
+    private long getAdaptiveRefreshMaxMillis(final String relativePath) {
+        if (SHARED_CLONE_PATH.equals(relativePath)) {
+            long maxMillis = adaptiveRefreshMaxMillis;
+            for (final Long branchMaxMillis : adaptiveRefreshMaxMillisByBranch.values()) {
+                maxMillis = Math.min(maxMillis, branchMaxMillis);
+            }
+            return maxMillis;
+        }
+        final String branchName = relativePath.substring(relativePath.lastIndexOf("/")+1);
+        for (final Map.Entry<Environment, Long> entry : adaptiveRefreshMaxMillisByBranch.entrySet()) {
+            if (entry.getKey().getName().equals(branchName)) {
+                return entry.getValue();
+            }
+        }
+        return adaptiveRefreshMaxMillis;
+    }
+
+    public boolean isShallowCloneEnabled() {
+        return shallowCloneEnabled;
+    }
+
+    public void setShallowCloneEnabled(final boolean shallowCloneEnabled) {
+        this.shallowCloneEnabled = shallowCloneEnabled;
+    }
+
     public File getTempRoot() {
         return tempRoot;
     }
@@ -122,4 +277,18 @@ public class GitProctorStoreFactory implements StoreFactory {
     public void setTempRoot(File tempRoot) {
         this.tempRoot = tempRoot;
     }
+
+    /* a clone and the background tasks working in it */
+    private static class Clone {
+        private final GitProctorCore core;
+        private final ReadWriteLock lock;
+        private AdaptiveRefreshScheduler refreshScheduler;
+        // until its history has been backfilled
+        private ShallowGitClone shallowClone;
+
+        private Clone(final GitProctorCore core, final ReadWriteLock lock) {
+            this.core = core;
+            this.lock = lock;
+        }
+    }
 }
@@ -0,0 +1,205 @@
+package com.indeed.proctor.webapp.db;
+
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.store.ProctorStore;
+import com.indeed.proctor.store.Revision;
+import com.indeed.proctor.store.StoreException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * Holds a lock for the duration of every call to the wrapped store: the read lock for reads, the write lock for
+ * commits, which check out a branch in the working tree.
+ *
+ * Stores that work in the same working tree, such as the branch stores of a shared git clone, are given the same
+ * lock, so one store cannot switch the checked out branch while another is committing, while reads on every branch
+ * go on side by side. Such stores also share their core, which belongs to whoever created it: closing this store
+ * leaves the wrapped store open.
+ */
+public class LockingProctorStore extends ForwardingProctorStore {
+    private final Lock readLock;
+    private final Lock writeLock;
+
+    public LockingProctorStore(final ProctorStore delegate, final ReadWriteLock lock) {
+        super(delegate);
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+    }
+
+    /**
+     * @return task that runs the given one while holding the lock
+     */
+    public static Runnable locking(final Runnable task, final Lock lock) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                lock.lock();
+                try {
+                    task.run();
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public String toString() {
+                return task.toString();
+            }
+        };
+    }
+
+    @Override
+    public TestMatrixVersion getCurrentTestMatrix() throws StoreException {
+        readLock.lock();
+        try {
+            return super.getCurrentTestMatrix();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public TestDefinition getCurrentTestDefinition(final String test) throws StoreException {
+        readLock.lock();
+        try {
+            return super.getCurrentTestDefinition(test);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void verifySetup() throws StoreException {
+        readLock.lock();
+        try {
+            super.verifySetup();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean cleanUserWorkspace(final String username) {
+        writeLock.lock();
+        try {
+            return super.cleanUserWorkspace(username);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void updateTestDefinition(final String username,
+                                     final String password,
+                                     final String previousVersion,
+                                     final String testName,
+                                     final TestDefinition testDefinition,
+                                     final Map<String, String> metadata,
+                                     final String comment) throws StoreException.TestUpdateException {
+        writeLock.lock();
+        try {
+            super.updateTestDefinition(username, password, previousVersion, testName, testDefinition, metadata, comment);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void deleteTestDefinition(final String username,
+                                     final String password,
+                                     final String previousVersion,
+                                     final String testName,
+                                     final TestDefinition testDefinition,
+                                     final String comment) throws StoreException.TestUpdateException {
+        writeLock.lock();
+        try {
+            super.deleteTestDefinition(username, password, previousVersion, testName, testDefinition, comment);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void addTestDefinition(final String username,
+                                  final String password,
+                                  final String testName,
+                                  final TestDefinition testDefinition,
+                                  final Map<String, String> metadata,
+                                  final String comment) throws StoreException.TestUpdateException {
+        writeLock.lock();
+        try {
+            super.addTestDefinition(username, password, testName, testDefinition, metadata, comment);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public String getLatestVersion() throws StoreException {
+        readLock.lock();
+        try {
+            return super.getLatestVersion();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public TestMatrixVersion getTestMatrix(final String fetchRevision) throws StoreException {
+        readLock.lock();
+        try {
+            return super.getTestMatrix(fetchRevision);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public TestDefinition getTestDefinition(final String test, final String fetchRevision) throws StoreException {
+        readLock.lock();
+        try {
+            return super.getTestDefinition(test, fetchRevision);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Revision> getMatrixHistory(final int start, final int limit) throws StoreException {
+        readLock.lock();
+        try {
+            return super.getMatrixHistory(start, limit);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Revision> getHistory(final String test, final int start, final int limit) throws StoreException {
+        readLock.lock();
+        try {
+            return super.getHistory(test, start, limit);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Revision> getHistory(final String test, final String revision, final int start, final int limit) throws StoreException {
+        readLock.lock();
+        try {
+            return super.getHistory(test, revision, start, limit);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /* the wrapped store's core is shared with the other stores holding the lock, and closed by its owner */
+    @Override
+    public void close() {
+    }
+}
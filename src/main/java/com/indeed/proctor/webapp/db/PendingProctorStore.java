@@ -0,0 +1,156 @@
+package com.indeed.proctor.webapp.db;
+
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.store.ProctorStore;
+import com.indeed.proctor.store.Revision;
+import com.indeed.proctor.store.StoreException;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * ProctorStore handed out while the real store is still being created in the background.
+ * Every call waits for the store to be ready, then delegates to it.
+ */
+public class PendingProctorStore implements ProctorStore {
+    private static final Logger LOGGER = Logger.getLogger(PendingProctorStore.class);
+
+    private final String name;
+    private final Future<ProctorStore> store;
+
+    public PendingProctorStore(final String name, final Future<ProctorStore> store) {
+        this.name = name;
+        this.store = store;
+    }
+
+    private ProctorStore getStore() throws StoreException {
+        try {
+            return store.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StoreException("Interrupted waiting for the " + name + " store to initialize", e);
+        } catch (final ExecutionException e) {
+            throw new StoreException("The " + name + " store failed to initialize", e.getCause());
+        }
+    }
+
+    private ProctorStore getStoreForUpdate() throws StoreException.TestUpdateException {
+        try {
+            return getStore();
+        } catch (final StoreException e) {
+            throw new StoreException.TestUpdateException(e.getMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public TestMatrixVersion getCurrentTestMatrix() throws StoreException {
+        return getStore().getCurrentTestMatrix();
+    }
+
+    @Override
+    public TestDefinition getCurrentTestDefinition(final String test) throws StoreException {
+        return getStore().getCurrentTestDefinition(test);
+    }
+
+    @Override
+    public void verifySetup() throws StoreException {
+        getStore().verifySetup();
+    }
+
+    @Override
+    public boolean cleanUserWorkspace(final String username) {
+        try {
+            return getStore().cleanUserWorkspace(username);
+        } catch (final StoreException e) {
+            LOGGER.error("Unable to clean workspace of " + username, e);
+            return false;
+        }
+    }
+
+    @Override
+    public void updateTestDefinition(final String username,
+                                     final String password,
+                                     final String previousVersion,
+                                     final String testName,
+                                     final TestDefinition testDefinition,
+                                     final Map<String, String> metadata,
+                                     final String comment) throws StoreException.TestUpdateException {
+        getStoreForUpdate().updateTestDefinition(username, password, previousVersion, testName, testDefinition, metadata, comment);
+    }
+
+    @Override
+    public void deleteTestDefinition(final String username,
+                                     final String password,
+                                     final String previousVersion,
+                                     final String testName,
+                                     final TestDefinition testDefinition,
+                                     final String comment) throws StoreException.TestUpdateException {
+        getStoreForUpdate().deleteTestDefinition(username, password, previousVersion, testName, testDefinition, comment);
+    }
+
+    @Override
+    public void addTestDefinition(final String username,
+                                  final String password,
+                                  final String testName,
+                                  final TestDefinition testDefinition,
+                                  final Map<String, String> metadata,
+                                  final String comment) throws StoreException.TestUpdateException {
+        getStoreForUpdate().addTestDefinition(username, password, testName, testDefinition, metadata, comment);
+    }
+
+    @Override
+    public String getLatestVersion() throws StoreException {
+        return getStore().getLatestVersion();
+    }
+
+    @Override
+    public TestMatrixVersion getTestMatrix(final String fetchRevision) throws StoreException {
+        return getStore().getTestMatrix(fetchRevision);
+    }
+
+    @Override
+    public TestDefinition getTestDefinition(final String test, final String fetchRevision) throws StoreException {
+        return getStore().getTestDefinition(test, fetchRevision);
+    }
+
+    @Override
+    public List<Revision> getMatrixHistory(final int start, final int limit) throws StoreException {
+        return getStore().getMatrixHistory(start, limit);
+    }
+
+    @Override
+    public List<Revision> getHistory(final String test, final int start, final int limit) throws StoreException {
+        return getStore().getHistory(test, start, limit);
+    }
+
+    @Override
+    public List<Revision> getHistory(final String test, final String revision, final int start, final int limit) throws StoreException {
+        return getStore().getHistory(test, revision, start, limit);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!store.isDone() && store.cancel(true)) {
+            return;
+        }
+        try {
+            getStore().close();
+        } catch (final StoreException e) {
+            // never initialized, nothing to close
+        }
+    }
+
+    /* matches the destroy-method of the store beans */
+    public void shutdown() {
+        try {
+            close();
+        } catch (final IOException e) {
+            LOGGER.error("Failed to close the " + name + " store", e);
+        }
+    }
+}
@@ -1,15 +1,20 @@
 package com.indeed.proctor.webapp.db;
 
-import com.indeed.proctor.store.ProctorStore;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
 import org.apache.log4j.Logger;
-import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartFactoryBean;
 import org.springframework.beans.factory.annotation.Value;
 
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  */
-public class RevisionControlStoreFactory implements FactoryBean<StoreFactory> {
+public class RevisionControlStoreFactory implements SmartFactoryBean<StoreFactory>, DisposableBean {
     private final Logger LOGGER = Logger.getLogger(RevisionControlStoreFactory.class);
 
     @Value("${revision.control}")
@@ -17,27 +22,93 @@ public class RevisionControlStoreFactory implements FactoryBean<StoreFactory> {
     private ScheduledExecutorService scheduledExecutorService;
 
     private boolean cache;
+    // blank: on for git, off for svn, whose stores already cache through CachedSvnPersisterCore (svn.cache)
+    private String storeCache;
+    private boolean gitShareClone;
+    private boolean gitShallowClone;
+    private boolean eagerInit;
+    private int svnWorkspacePoolSize;
     private long tempDirCleanupAgeMinutes;
     private long scmRefreshMinutes;
+    private boolean adaptiveRefresh;
+    private long scmRefreshMinSeconds;
+    private long scmRefreshMaxMinutes;
+    // overrides scmRefreshMaxMinutes for the store of a branch, blank for none
+    private final Map<Environment, String> scmRefreshMaxMinutesByBranch = Maps.newEnumMap(Environment.class);
     private String scmPath;
     private String scmUsername;
     private String scmPassword;
 
+    // owns the git clones whose stores leave them open, if any
+    private GitProctorStoreFactory gitStoreFactory;
 
     @Override
     public StoreFactory getObject() throws Exception {
+        StoreFactory factory = createStoreFactory();
+        if (factory != null && isStoreCache()) {
+            // with adaptive refresh, the caches are checked for changes after every refresh of their directory instead
+            factory = new CachingStoreFactory(factory, scheduledExecutorService, TimeUnit.MINUTES.toMillis(scmRefreshMinutes));
+        }
+        if (factory != null && eagerInit) {
+            final EagerStoreFactory eagerFactory = new EagerStoreFactory(factory);
+            eagerFactory.start();
+            return eagerFactory;
+        }
+        return factory;
+    }
+
+    private StoreFactory createStoreFactory() throws Exception {
         if ("svn".equals(revisionControlType)) {
-            return new SvnProctorStoreFactory(scheduledExecutorService, cache, tempDirCleanupAgeMinutes,
-                                              scmRefreshMinutes, scmPath, scmUsername, scmPassword);
+            final SvnProctorStoreFactory factory = new SvnProctorStoreFactory(scheduledExecutorService, cache, tempDirCleanupAgeMinutes,
+                                                                              scmRefreshMinutes, scmPath, scmUsername, scmPassword);
+            factory.setWorkspacePoolSize(svnWorkspacePoolSize);
+            if (adaptiveRefresh) {
+                factory.setAdaptiveRefresh(TimeUnit.SECONDS.toMillis(scmRefreshMinSeconds), TimeUnit.MINUTES.toMillis(scmRefreshMaxMinutes));
+                for (final Map.Entry<Environment, Long> entry : getScmRefreshMaxMillisByBranch().entrySet()) {
+                    factory.setAdaptiveRefreshMax(entry.getKey(), entry.getValue());
+                }
+            }
+            return factory;
         } else if ("git".equals(revisionControlType)) {
-            return new GitProctorStoreFactory(scheduledExecutorService, scmRefreshMinutes, scmPath, scmUsername, scmPassword);
+            final GitProctorStoreFactory factory = new GitProctorStoreFactory(scheduledExecutorService, scmRefreshMinutes, scmPath, scmUsername, scmPassword);
+            factory.setShareClone(gitShareClone);
+            gitStoreFactory = factory;
+            if (svnWorkspacePoolSize > 0) {
+                LOGGER.warn("svn.workspace.pool.size=" + svnWorkspacePoolSize + " has no effect on git stores, whose workspaces are cleaned up by age only");
+            }
+            factory.setShallowCloneEnabled(gitShallowClone);
+            if (adaptiveRefresh) {
+                factory.setAdaptiveRefresh(TimeUnit.SECONDS.toMillis(scmRefreshMinSeconds), TimeUnit.MINUTES.toMillis(scmRefreshMaxMinutes));
+                for (final Map.Entry<Environment, Long> entry : getScmRefreshMaxMillisByBranch().entrySet()) {
+                    factory.setAdaptiveRefreshMax(entry.getKey(), entry.getValue());
+                }
+            }
+            return factory;
         }
         return null;
     }
 
+    private Map<Environment, Long> getScmRefreshMaxMillisByBranch() {
+        final Map<Environment, Long> maxMillis = Maps.newEnumMap(Environment.class);
+        for (final Map.Entry<Environment, String> entry : scmRefreshMaxMinutesByBranch.entrySet()) {
+            if (!CharMatcher.WHITESPACE.matchesAllOf(Strings.nullToEmpty(entry.getValue()))) {
+                maxMillis.put(entry.getKey(), TimeUnit.MINUTES.toMillis(Long.parseLong(entry.getValue().trim())));
+            }
+        }
+        return maxMillis;
+    }
+
+    /* the store beans are destroyed before this one, so nothing uses the clones anymore */
+    @Override
+    public void destroy() {
+        if (gitStoreFactory != null) {
+            gitStoreFactory.shutdown();
+        }
+    }
+
     @Override
     public Class<?> getObjectType() {
-        return ProctorStore.class;
+        return StoreFactory.class;
     }
 
     @Override
@@ -45,6 +116,17 @@ public class RevisionControlStoreFactory implements FactoryBean<StoreFactory> {
         return true;
     }
 
+    @Override
+    public boolean isPrototype() {
+        return false;
+    }
+
+    /* when eager, the stores start initializing as soon as the context is refreshed */
+    @Override
+    public boolean isEagerInit() {
+        return eagerInit;
+    }
+
     @Value("${revision.control}")
     public void setRevisionControlType(String revisionControlType) {
         this.revisionControlType = revisionControlType;
@@ -67,6 +149,38 @@ public class RevisionControlStoreFactory implements FactoryBean<StoreFactory> {
         this.cache = cache;
     }
 
+    @Value("${store.cache:}")
+    public void setStoreCache(final String storeCache) {
+        this.storeCache = storeCache;
+    }
+
+    private boolean isStoreCache() {
+        if (CharMatcher.WHITESPACE.matchesAllOf(Strings.nullToEmpty(storeCache))) {
+            return !"svn".equals(revisionControlType);
+        }
+        return Boolean.parseBoolean(storeCache.trim());
+    }
+
+    @Value("${git.shared.clone:false}")
+    public void setGitShareClone(boolean gitShareClone) {
+        this.gitShareClone = gitShareClone;
+    }
+
+    @Value("${git.shallow.clone:false}")
+    public void setGitShallowClone(boolean gitShallowClone) {
+        this.gitShallowClone = gitShallowClone;
+    }
+
+    @Value("${store.eager.init:false}")
+    public void setEagerInit(boolean eagerInit) {
+        this.eagerInit = eagerInit;
+    }
+
+    @Value("${svn.workspace.pool.size:0}")
+    public void setSvnWorkspacePoolSize(int svnWorkspacePoolSize) {
+        this.svnWorkspacePoolSize = svnWorkspacePoolSize;
+    }
+
     @Value("${svn.tempdir.max.age.minutes:1440}")
     public void setTempDirCleanupAgeMinutes(long tempDirCleanupAgeMinutes) {
         this.tempDirCleanupAgeMinutes = tempDirCleanupAgeMinutes;
@@ -77,6 +191,36 @@ public class RevisionControlStoreFactory implements FactoryBean<StoreFactory> {
         this.scmRefreshMinutes = scmRefreshMinutes;
     }
 
+    @Value("${scm.refresh.adaptive:false}")
+    public void setAdaptiveRefresh(boolean adaptiveRefresh) {
+        this.adaptiveRefresh = adaptiveRefresh;
+    }
+
+    @Value("${scm.refresh.min.seconds:30}")
+    public void setScmRefreshMinSeconds(long scmRefreshMinSeconds) {
+        this.scmRefreshMinSeconds = scmRefreshMinSeconds;
+    }
+
+    @Value("${scm.refresh.max.minutes:60}")
+    public void setScmRefreshMaxMinutes(long scmRefreshMaxMinutes) {
+        this.scmRefreshMaxMinutes = scmRefreshMaxMinutes;
+    }
+
+    @Value("${scm.refresh.max.minutes.trunk:}")
+    public void setScmRefreshMaxMinutesTrunk(final String scmRefreshMaxMinutes) {
+        scmRefreshMaxMinutesByBranch.put(Environment.WORKING, scmRefreshMaxMinutes);
+    }
+
+    @Value("${scm.refresh.max.minutes.qa:}")
+    public void setScmRefreshMaxMinutesQa(final String scmRefreshMaxMinutes) {
+        scmRefreshMaxMinutesByBranch.put(Environment.QA, scmRefreshMaxMinutes);
+    }
+
+    @Value("${scm.refresh.max.minutes.production:}")
+    public void setScmRefreshMaxMinutesProduction(final String scmRefreshMaxMinutes) {
+        scmRefreshMaxMinutesByBranch.put(Environment.PRODUCTION, scmRefreshMaxMinutes);
+    }
+
     @Value("${scm.path}")
     public void setScmPath(final String scmPath) {
         this.scmPath = scmPath;
@@ -0,0 +1,159 @@
+package com.indeed.proctor.webapp.db;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.indeed.util.varexport.Export;
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Seeds a git workspace with a shallow clone (the current tree of every branch only) before GitProctorCore opens it,
+ * and backfills the history afterwards, so a fresh node can serve the current matrices without waiting on a full clone.
+ *
+ * JGit cannot fetch shallow, so this shells out to the git executable. Until the backfill completes, history
+ * queries would stop at the shallow boundary, so the stores report history as unavailable
+ * (see ShallowHistoryProctorStore).
+ *
+ * Credentials are handed to git through its environment and read back by an inline credential helper,
+ * so they never appear in the arguments of the git process, where any local user could list them.
+ */
+public class ShallowGitClone implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(ShallowGitClone.class);
+
+    static final String USERNAME_VARIABLE = "PROCTOR_GIT_USERNAME";
+    static final String PASSWORD_VARIABLE = "PROCTOR_GIT_PASSWORD";
+    // names the variables only, the values stay in the environment
+    private static final String CREDENTIAL_HELPER = "!f() { test \"$1\" = get"
+            + " && echo \"username=${" + USERNAME_VARIABLE + "}\""
+            + " && echo \"password=${" + PASSWORD_VARIABLE + "}\"; }; f";
+
+    private final File directory;
+    private final String gitUrl;
+    private final String username;
+    private final String password;
+
+    private volatile boolean historyComplete;
+    // the scheduled backfill, cancelled once it succeeds
+    private Future<?> backfill;
+
+    private ShallowGitClone(final File directory, final String gitUrl, final String username, final String password, final boolean historyComplete) {
+        this.directory = directory;
+        this.gitUrl = gitUrl;
+        this.username = username;
+        this.password = password;
+        this.historyComplete = historyComplete;
+    }
+
+    /**
+     * Shallow clones gitUrl into directory unless it already holds a repository.
+     * On failure the directory is emptied so GitProctorCore falls back to a full clone.
+     */
+    public static ShallowGitClone seed(final File directory, final String gitUrl, final String username, final String password) {
+        final boolean exists = new File(directory, ".git").exists();
+        final ShallowGitClone clone = new ShallowGitClone(directory, gitUrl, username, password,
+                                                          exists && !new File(directory, ".git/shallow").exists());
+        if (exists) {
+            return clone;
+        }
+        final long start = System.currentTimeMillis();
+        try {
+            clone.git(directory.getParentFile(), "clone", "--depth", "1", "--no-single-branch", gitUrl, directory.getName());
+            LOGGER.info("Shallow cloned " + gitUrl + " into " + directory + " in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (final IOException e) {
+            LOGGER.warn("Shallow clone of " + gitUrl + " failed, falling back to a full clone", e);
+            clone.historyComplete = true;
+            try {
+                FileUtils.cleanDirectory(directory);
+            } catch (final IOException cleanup) {
+                LOGGER.error("Failed to clean " + directory + " after a failed shallow clone", cleanup);
+            }
+        }
+        return clone;
+    }
+
+    @Export(name = "history-complete")
+    public boolean isHistoryComplete() {
+        return historyComplete;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Runs the backfill on executor every retryMillis, holding lock, until it succeeds.
+     * The fetch rewrites the shallow boundary that the stores read through, so lock should exclude them.
+     */
+    public synchronized void scheduleBackfill(final ScheduledExecutorService executor, final Lock lock, final long retryMillis) {
+        backfill = executor.scheduleWithFixedDelay(LockingProctorStore.locking(this, lock), 0, retryMillis, TimeUnit.MILLISECONDS);
+        if (historyComplete) {
+            backfill.cancel(false);
+        }
+    }
+
+    /**
+     * Fetches the rest of the history. Retried on every run until it succeeds.
+     */
+    @Override
+    public void run() {
+        if (historyComplete) {
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        try {
+            git(directory, "fetch", "--unshallow", "origin", "+refs/heads/*:refs/remotes/origin/*");
+            synchronized (this) {
+                historyComplete = true;
+                if (backfill != null) {
+                    backfill.cancel(false);
+                }
+            }
+            LOGGER.info("Backfilled git history of " + directory + " in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (final IOException e) {
+            LOGGER.warn("Failed to backfill git history of " + directory + ", will retry", e);
+        }
+    }
+
+    ProcessBuilder processBuilder(final File workingDirectory, final String... args) {
+        final ProcessBuilder builder = new ProcessBuilder();
+        builder.command().add("git");
+        if (!Strings.isNullOrEmpty(username)) {
+            // the empty helper drops any configured helpers so they neither answer first nor store the password
+            builder.command().addAll(Arrays.asList("-c", "credential.helper=", "-c", "credential.helper=" + CREDENTIAL_HELPER));
+            builder.environment().put(USERNAME_VARIABLE, username);
+            builder.environment().put(PASSWORD_VARIABLE, Strings.nullToEmpty(password));
+        }
+        builder.command().addAll(Arrays.asList(args));
+        builder.directory(workingDirectory);
+        builder.redirectErrorStream(true);
+        builder.environment().put("GIT_TERMINAL_PROMPT", "0");
+        return builder;
+    }
+
+    private void git(final File workingDirectory, final String... args) throws IOException {
+        final List<String> command = Arrays.asList(args);
+        final Process process = processBuilder(workingDirectory, args).start();
+        try {
+            process.getOutputStream().close();
+            final String output = new String(ByteStreams.toByteArray(process.getInputStream()), Charsets.UTF_8);
+            final int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IOException("git " + command.get(0) + " exited with " + exitCode + ": " + output);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroy();
+            throw new IOException("Interrupted running git " + command.get(0));
+        }
+    }
+}
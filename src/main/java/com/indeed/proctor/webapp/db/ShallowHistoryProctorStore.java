@@ -0,0 +1,45 @@
+package com.indeed.proctor.webapp.db;
+
+import com.indeed.proctor.store.ProctorStore;
+import com.indeed.proctor.store.Revision;
+import com.indeed.proctor.store.StoreException;
+
+import java.util.List;
+
+/**
+ * Reports the history of a store in a shallow clone as unavailable until the clone's history has been backfilled.
+ * Before then the history stops at the shallow boundary, which would present the tip commit as the latest revision
+ * of every test.
+ */
+public class ShallowHistoryProctorStore extends ForwardingProctorStore {
+    private final ShallowGitClone clone;
+
+    public ShallowHistoryProctorStore(final ProctorStore delegate, final ShallowGitClone clone) {
+        super(delegate);
+        this.clone = clone;
+    }
+
+    @Override
+    public List<Revision> getMatrixHistory(final int start, final int limit) throws StoreException {
+        checkHistoryComplete();
+        return super.getMatrixHistory(start, limit);
+    }
+
+    @Override
+    public List<Revision> getHistory(final String test, final int start, final int limit) throws StoreException {
+        checkHistoryComplete();
+        return super.getHistory(test, start, limit);
+    }
+
+    @Override
+    public List<Revision> getHistory(final String test, final String revision, final int start, final int limit) throws StoreException {
+        checkHistoryComplete();
+        return super.getHistory(test, revision, start, limit);
+    }
+
+    private void checkHistoryComplete() throws StoreException {
+        if (!clone.isHistoryComplete()) {
+            throw new StoreException.ReadException("History is unavailable until it has been fetched into " + clone.getDirectory());
+        }
+    }
+}
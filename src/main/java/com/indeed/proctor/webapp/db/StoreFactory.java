@@ -6,5 +6,11 @@ import org.apache.commons.configuration.ConfigurationException;
 /**
  */
 public interface StoreFactory {
+    public ProctorStore getTrunkStore();
+
+    public ProctorStore getQaStore();
+
+    public ProctorStore getProductionStore();
+
     public ProctorStore createStore(final String relativePath) throws ConfigurationException;
 }
@@ -3,6 +3,7 @@ package com.indeed.proctor.webapp.db;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
 import com.indeed.util.varexport.VarExporter;
 import com.indeed.proctor.store.*;
 import org.apache.commons.configuration.ConfigurationException;
@@ -10,15 +11,18 @@ import org.apache.log4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
  * @author parker
  */
-public class SvnProctorStoreFactory implements StoreFactory {
+public class SvnProctorStoreFactory implements WorkspaceStoreFactory {
     private static final Logger LOGGER = Logger.getLogger(SvnProctorStoreFactory.class);
 
+    private static final long POOLED_WORKSPACE_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+
     final ScheduledExecutorService executor;
 
     private boolean cache;
@@ -36,6 +40,19 @@ public class SvnProctorStoreFactory implements StoreFactory {
     // The age (in milliseconds) to use when identifying temp directories that can be cleaned up
     private long tempDirCleanupAgeMillis = TimeUnit.DAYS.toMillis(1);
 
+    // When positive, the svn directory is refreshed adaptively between these delays instead of every svnRefreshMillis
+    private long adaptiveRefreshMinMillis = TimeUnit.SECONDS.toMillis(30);
+    private long adaptiveRefreshMaxMillis = 0;
+    // overrides adaptiveRefreshMaxMillis for the store of a branch
+    private final Map<Environment, Long> adaptiveRefreshMaxMillisByBranch = Maps.newEnumMap(Environment.class);
+
+    // The number of user workspaces kept per store, recycled by LRU. 0 cleans up workspaces by age only.
+    // Workspaces are kept, not prepared: a user's first commit still checks out on the request
+    private int workspacePoolSize = 0;
+
+    // relative path -> directory kept up to date by the refresher of the store
+    private final Map<String, File> refresherDirectories = Maps.newConcurrentMap();
+
     // The period to use when scheduling a refresh of the svn directory
     private long svnRefreshMillis = TimeUnit.MINUTES.toMillis(5);
 
@@ -52,15 +69,38 @@ public class SvnProctorStoreFactory implements StoreFactory {
     }
 
     public ProctorStore getTrunkStore() {
-        return createStore("/trunk/matrices");
+        return createStore(getBranchPath(Environment.WORKING));
     }
 
     public ProctorStore getQaStore() {
-        return createStore("/branches/deploy/qa/matrices");
+        return createStore(getBranchPath(Environment.QA));
     }
 
     public ProctorStore getProductionStore() {
-        return createStore("/branches/deploy/production/matrices");
+        return createStore(getBranchPath(Environment.PRODUCTION));
+    }
+
+    public File getWorkspaceDirectory(final Environment branch) {
+        final String relativePath = getBranchPath(branch);
+        return relativePath != null ? getTempDirectoryForPath(relativePath) : null;
+    }
+
+    public File getSharedWorkspaceDirectory(final Environment branch) {
+        final String relativePath = getBranchPath(branch);
+        return relativePath != null ? refresherDirectories.get(relativePath) : null;
+    }
+
+    private static String getBranchPath(final Environment branch) {
+        switch (branch) {
+            case WORKING:
+                return "/trunk/matrices";
+            case QA:
+                return "/branches/deploy/qa/matrices";
+            case PRODUCTION:
+                return "/branches/deploy/production/matrices";
+            default:
+                return null;
+        }
     }
 
     public ProctorStore createStore(final String relativePath) {
@@ -71,25 +111,44 @@ public class SvnProctorStoreFactory implements StoreFactory {
         // TODO (parker) 9/13/12 - sanity check that path + relative path make a valid url
         final String fullPath = svnPath + relativePath;
 
-        final SvnWorkspaceProviderImpl provider = new SvnWorkspaceProviderImpl(tempDirectory, tempDirCleanupAgeMillis);
+        // pooled user workspaces are recycled by LRU, age only removes ones left over from before a restart
+        final long workspaceAgeMillis = workspacePoolSize > 0 ? Math.max(tempDirCleanupAgeMillis, POOLED_WORKSPACE_MAX_AGE_MILLIS) : tempDirCleanupAgeMillis;
+        final SvnWorkspaceProviderImpl provider = new SvnWorkspaceProviderImpl(tempDirectory, workspaceAgeMillis);
         final SvnPersisterCoreImpl svncore = new SvnPersisterCoreImpl(fullPath, svnUsername, svnPassword, provider, true /* shutdown provider */);
 
         // actively clean up directories every hour: (not relying on cache eviction)
-        final long cleanupScheduleMillis = Math.min(TimeUnit.HOURS.toMillis(1), tempDirCleanupAgeMillis);
-        LOGGER.info("Scheduling SvnWorkspaceProvider every " + cleanupScheduleMillis + " milliseconds for dir: " + tempDirectory + " with age millis " + tempDirCleanupAgeMillis);
+        final long cleanupScheduleMillis = Math.min(TimeUnit.HOURS.toMillis(1), workspaceAgeMillis);
+        LOGGER.info("Scheduling SvnWorkspaceProvider every " + cleanupScheduleMillis + " milliseconds for dir: " + tempDirectory + " with age millis " + workspaceAgeMillis);
         executor.scheduleWithFixedDelay(provider, cleanupScheduleMillis, cleanupScheduleMillis, TimeUnit.MILLISECONDS);
 
+        AdaptiveRefreshScheduler refreshScheduler = null;
         if(svnRefreshMillis > 0) {
             final SvnDirectoryRefresher refresher = svncore.createRefresherTask();
-            LOGGER.info("Scheduling SvnDirectoryRefresher every " + svnRefreshMillis + " milliseconds for dir: " + refresher.getDirectoryPath());
-            executor.scheduleWithFixedDelay(refresher, svnRefreshMillis, svnRefreshMillis, TimeUnit.MILLISECONDS);
+            refresherDirectories.put(relativePath, new File(refresher.getDirectoryPath()));
+            if (adaptiveRefreshMaxMillis > 0) {
+                refreshScheduler = new AdaptiveRefreshScheduler(executor, refresher, refresher.getDirectoryPath(), adaptiveRefreshMinMillis, getAdaptiveRefreshMaxMillis(relativePath));
+                refreshScheduler.start();
+            } else {
+                LOGGER.info("Scheduling SvnDirectoryRefresher every " + svnRefreshMillis + " milliseconds for dir: " + refresher.getDirectoryPath());
+                executor.scheduleWithFixedDelay(refresher, svnRefreshMillis, svnRefreshMillis, TimeUnit.MILLISECONDS);
+            }
         }
 
         final SvnProctor store = new SvnProctor(cache ? new CachedSvnPersisterCore(svncore) : svncore);
         final VarExporter exporter = VarExporter.forNamespace(SvnProctor.class.getSimpleName()).includeInGlobal();
         final String prefix = relativePath.substring(1).replace('/', '-');
         exporter.export(store, prefix + "-");
-        return store;
+        ProctorStore decorated = store;
+        if (workspacePoolSize > 0) {
+            final UserWorkspacePool pool = new UserWorkspacePool(decorated, executor, workspacePoolSize);
+            VarExporter.forNamespace(UserWorkspacePool.class.getSimpleName()).includeInGlobal().export(pool, prefix + "-");
+            decorated = pool;
+        }
+        if (refreshScheduler != null) {
+            VarExporter.forNamespace(AdaptiveRefreshScheduler.class.getSimpleName()).includeInGlobal().export(refreshScheduler, prefix + "-");
+            decorated = refreshScheduler.watch(decorated);
+        }
+        return decorated;
     }
 
     /**
@@ -103,11 +162,15 @@ public class SvnProctorStoreFactory implements StoreFactory {
         return tempFile.getParentFile();
     }
 
-    private File createTempDirectoryForPath(final String relativePath) {
+    private File getTempDirectoryForPath(final String relativePath) {
         // replace "/" with "-" omit first "/" but omitEmptyStrings
         final String dirName = CharMatcher.is(File.separatorChar).trimAndCollapseFrom(relativePath, '-');
         final File parent = tempRoot != null ? tempRoot : implicitTempRoot;
-        final File temp = new File(parent, dirName);
+        return new File(parent, dirName);
+    }
+
+    private File createTempDirectoryForPath(final String relativePath) {
+        final File temp = getTempDirectoryForPath(relativePath);
         if(temp.exists()) {
            if(!temp.isDirectory()) {
                throw new IllegalStateException(temp + " exists but is not a directory");
@@ -124,6 +187,35 @@ public class SvnProctorStoreFactory implements StoreFactory {
         return cache;
     }
 
+    public void setAdaptiveRefresh(final long minDelayMillis, final long maxDelayMillis) {
+        this.adaptiveRefreshMinMillis = minDelayMillis;
+        this.adaptiveRefreshMaxMillis = maxDelayMillis;
+    }
+
+    /**
+     * Caps the adaptive refresh of the store of branch at maxDelayMillis instead of the default
+     */
+    public void setAdaptiveRefreshMax(final Environment branch, final long maxDelayMillis) {
+        adaptiveRefreshMaxMillisByBranch.put(branch, maxDelayMillis);
+    }
+
+    private long getAdaptiveRefreshMaxMillis(final String relativePath) {
+        for (final Map.Entry<Environment, Long> entry : adaptiveRefreshMaxMillisByBranch.entrySet()) {
+            if (relativePath.equals(getBranchPath(entry.getKey()))) {
+                return entry.getValue();
+            }
+        }
+        return adaptiveRefreshMaxMillis;
+    }
+
+    public int getWorkspacePoolSize() {
+        return workspacePoolSize;
+    }
+
+    public void setWorkspacePoolSize(final int workspacePoolSize) {
+        this.workspacePoolSize = workspacePoolSize;
+    }
+
     public File getTempRoot() {
         return tempRoot;
     }
@@ -0,0 +1,128 @@
+package com.indeed.proctor.webapp.db;
+
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.store.ProctorStore;
+import com.indeed.proctor.store.StoreException;
+import com.indeed.util.varexport.Export;
+import org.apache.log4j.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Keeps the working copies that a store checks out per committing user, up to a fixed number of users,
+ * and recycles the least recently used one when a new user commits.
+ *
+ * This only governs retention: a user who commits again within the pool finds their working copy in place
+ * instead of one deleted by the age-based cleanup. The store core creates and updates working copies inside the
+ * commit itself, so nothing is checked out ahead of a user's first commit and the update still runs on the request.
+ * Evicted working copies are deleted in the background through {@link ProctorStore#cleanUserWorkspace(String)}.
+ */
+public class UserWorkspacePool extends ForwardingProctorStore {
+    private static final Logger LOGGER = Logger.getLogger(UserWorkspacePool.class);
+
+    private final ExecutorService executor;
+    private final int maxWorkspaces;
+
+    /* access ordered, guarded by itself */
+    private final LinkedHashMap<String, Boolean> workspaces;
+
+    private long evictions = 0;
+
+    public UserWorkspacePool(final ProctorStore delegate, final ExecutorService executor, final int maxWorkspaces) {
+        super(delegate);
+        this.executor = executor;
+        this.maxWorkspaces = maxWorkspaces;
+        this.workspaces = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+                if (size() > UserWorkspacePool.this.maxWorkspaces) {
+                    evict(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private void checkout(final String username) {
+        synchronized (workspaces) {
+            workspaces.put(username, Boolean.TRUE);
+        }
+    }
+
+    /* called with the workspaces lock held */
+    private void evict(final String username) {
+        evictions++;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (workspaces) {
+                    if (workspaces.containsKey(username)) {
+                        // committed again since it was evicted
+                        return;
+                    }
+                }
+                LOGGER.info("Recycling least recently used workspace of " + username);
+                getDelegate().cleanUserWorkspace(username);
+            }
+        });
+    }
+
+    @Export(name = "pooled-workspaces")
+    public int getPooledWorkspaces() {
+        synchronized (workspaces) {
+            return workspaces.size();
+        }
+    }
+
+    @Export(name = "workspace-evictions")
+    public long getEvictions() {
+        synchronized (workspaces) {
+            return evictions;
+        }
+    }
+
+    @Override
+    public boolean cleanUserWorkspace(final String username) {
+        synchronized (workspaces) {
+            workspaces.remove(username);
+        }
+        return super.cleanUserWorkspace(username);
+    }
+
+    @Override
+    public void updateTestDefinition(final String username,
+                                     final String password,
+                                     final String previousVersion,
+                                     final String testName,
+                                     final TestDefinition testDefinition,
+                                     final Map<String, String> metadata,
+                                     final String comment) throws StoreException.TestUpdateException {
+        checkout(username);
+        super.updateTestDefinition(username, password, previousVersion, testName, testDefinition, metadata, comment);
+    }
+
+    @Override
+    public void deleteTestDefinition(final String username,
+                                     final String password,
+                                     final String previousVersion,
+                                     final String testName,
+                                     final TestDefinition testDefinition,
+                                     final String comment) throws StoreException.TestUpdateException {
+        checkout(username);
+        super.deleteTestDefinition(username, password, previousVersion, testName, testDefinition, comment);
+    }
+
+    @Override
+    public void addTestDefinition(final String username,
+                                  final String password,
+                                  final String testName,
+                                  final TestDefinition testDefinition,
+                                  final Map<String, String> metadata,
+                                  final String comment) throws StoreException.TestUpdateException {
+        checkout(username);
+        super.addTestDefinition(username, password, testName, testDefinition, metadata, comment);
+    }
+}
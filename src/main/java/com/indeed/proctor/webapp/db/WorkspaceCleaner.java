@@ -0,0 +1,274 @@
+package com.indeed.proctor.webapp.db;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.indeed.proctor.store.ProctorStore;
+import com.indeed.proctor.webapp.util.threads.LogOnUncaughtExceptionHandler;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Cleans the local workspaces of the trunk, qa and production stores concurrently, one thread per store,
+ * and reports how much disk space each cleanup reclaimed.
+ *
+ * Every file visited, whether measured, checked for modifications or deleted, is paced by a rate limiter owned by
+ * the store's thread, so the stores neither contend for one limiter nor walk their directories unthrottled.
+ *
+ * The workspace providers name the workspace of a user after the user, so a user cleanup measures the entries of
+ * the store's workspace directory named after that user rather than walking everyone's.
+ */
+public class WorkspaceCleaner {
+    private static final Logger LOGGER = Logger.getLogger(WorkspaceCleaner.class);
+
+    // pace of the walks that measure a store's workspaces around a user cleanup
+    private static final double MEASURE_FILES_PER_SECOND = 1000;
+
+    private final StoreFactory storeFactory;
+    private final ThrottleFactory throttleFactory;
+    private final ExecutorService executor;
+
+    public WorkspaceCleaner(final StoreFactory storeFactory) {
+        this(storeFactory, new ThrottleFactory() {
+            @Override
+            public Throttle create(final double filesPerSecond) {
+                final RateLimiter rateLimiter = RateLimiter.create(filesPerSecond);
+                return new Throttle() {
+                    @Override
+                    public void acquire() {
+                        rateLimiter.acquire();
+                    }
+                };
+            }
+        });
+    }
+
+    WorkspaceCleaner(final StoreFactory storeFactory, final ThrottleFactory throttleFactory) {
+        this.storeFactory = storeFactory;
+        this.throttleFactory = throttleFactory;
+        this.executor = Executors.newFixedThreadPool(Environment.values().length, new ThreadFactoryBuilder()
+                .setNameFormat(WorkspaceCleaner.class.getSimpleName() + "-Thread-%d")
+                .setDaemon(true)
+                .setUncaughtExceptionHandler(new LogOnUncaughtExceptionHandler())
+                .build());
+    }
+
+    /**
+     * Removes the workspace of username from every store.
+     */
+    public Map<Environment, Result> cleanUserWorkspaces(final String username, final Map<Environment, ProctorStore> stores) throws InterruptedException {
+        final Map<Environment, Callable<Result>> cleanups = Maps.newLinkedHashMap();
+        for (final Map.Entry<Environment, ProctorStore> entry : stores.entrySet()) {
+            final Environment branch = entry.getKey();
+            final ProctorStore store = entry.getValue();
+            cleanups.put(branch, new Callable<Result>() {
+                @Override
+                public Result call() {
+                    final Throttle throttle = throttleFactory.create(MEASURE_FILES_PER_SECOND);
+                    final File directory = getWorkspaceDirectory(branch);
+                    final long start = System.currentTimeMillis();
+                    final long sizeBefore = sizeOfUserWorkspaces(directory, username, throttle);
+                    final boolean success = store.cleanUserWorkspace(username);
+                    final long sizeAfter = sizeOfUserWorkspaces(directory, username, throttle);
+                    return new Result(branch, success, Math.max(0, sizeBefore - sizeAfter), System.currentTimeMillis() - start);
+                }
+            });
+        }
+        return runAll(cleanups);
+    }
+
+    /**
+     * Deletes every user workspace of every store that has not been modified for maxAgeMillis,
+     * visiting at most filesPerSecond files per second across all stores to limit the I/O load.
+     * The rate is split evenly between the stores.
+     *
+     * A workspace is any directory directly under a store's workspace directory, except the working copy kept up to
+     * date by the store's refresher, which is shared by all users. Stores whose workspace directory is itself that
+     * working copy or a repository (a git clone shared by all users) have no per-user workspaces and are skipped.
+     */
+    public Map<Environment, Result> cleanStaleWorkspaces(final long maxAgeMillis, final double filesPerSecond) throws InterruptedException {
+        final double storeFilesPerSecond = filesPerSecond / Environment.values().length;
+        final long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        final Map<Environment, Callable<Result>> cleanups = Maps.newLinkedHashMap();
+        for (final Environment branch : Environment.values()) {
+            cleanups.put(branch, new Callable<Result>() {
+                @Override
+                public Result call() {
+                    final Throttle throttle = throttleFactory.create(storeFilesPerSecond);
+                    final long start = System.currentTimeMillis();
+                    final File directory = getWorkspaceDirectory(branch);
+                    final File shared = getSharedWorkspaceDirectory(branch);
+                    final File[] workspaces = directory == null ? null : directory.listFiles();
+                    if (workspaces == null || directory.getAbsoluteFile().equals(shared) || new File(directory, ".git").exists()) {
+                        return new Result(branch, true, 0, System.currentTimeMillis() - start);
+                    }
+                    long reclaimed = 0;
+                    boolean success = true;
+                    for (final File workspace : workspaces) {
+                        if (workspace.getAbsoluteFile().equals(shared)) {
+                            continue;
+                        }
+                        if (workspace.isDirectory() && !workspace.isHidden() && lastModified(workspace, throttle) < cutoff) {
+                            LOGGER.info("Deleting stale workspace " + workspace);
+                            reclaimed += delete(workspace, throttle);
+                            success &= !workspace.exists();
+                        }
+                    }
+                    return new Result(branch, success, reclaimed, System.currentTimeMillis() - start);
+                }
+            });
+        }
+        return runAll(cleanups);
+    }
+
+    /* null for stores without local working copies, or from a factory that does not say where they are */
+    private File getWorkspaceDirectory(final Environment branch) {
+        return storeFactory instanceof WorkspaceStoreFactory ? ((WorkspaceStoreFactory) storeFactory).getWorkspaceDirectory(branch) : null;
+    }
+
+    private File getSharedWorkspaceDirectory(final Environment branch) {
+        final File shared = storeFactory instanceof WorkspaceStoreFactory ? ((WorkspaceStoreFactory) storeFactory).getSharedWorkspaceDirectory(branch) : null;
+        return shared != null ? shared.getAbsoluteFile() : null;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Map<Environment, Result> runAll(final Map<Environment, Callable<Result>> cleanups) throws InterruptedException {
+        final List<Future<Result>> futures = Lists.newArrayListWithCapacity(cleanups.size());
+        for (final Callable<Result> cleanup : cleanups.values()) {
+            futures.add(executor.submit(cleanup));
+        }
+        final Map<Environment, Result> results = Maps.newLinkedHashMap();
+        int i = 0;
+        for (final Environment branch : cleanups.keySet()) {
+            final Future<Result> future = futures.get(i++);
+            try {
+                results.put(branch, future.get());
+            } catch (final ExecutionException e) {
+                LOGGER.error("Failed to clean " + branch + " workspaces", e.getCause());
+                results.put(branch, new Result(branch, false, 0, 0));
+            }
+        }
+        return results;
+    }
+
+    /* size of the entries of directory named after username, such as "username", "svn-username" or "username.tmp" */
+    private static long sizeOfUserWorkspaces(final File directory, final String username, final Throttle throttle) {
+        final File[] entries = directory == null ? null : directory.listFiles();
+        if (entries == null || Strings.isNullOrEmpty(username)) {
+            return 0;
+        }
+        final Pattern userEntry = Pattern.compile("(.*[^A-Za-z0-9])?" + Pattern.quote(username) + "([^A-Za-z0-9].*)?");
+        long size = 0;
+        for (final File entry : entries) {
+            if (userEntry.matcher(entry.getName()).matches()) {
+                size += sizeOf(entry, throttle);
+            }
+        }
+        return size;
+    }
+
+    private static long sizeOf(final File file, final Throttle throttle) {
+        if (file == null || !file.exists()) {
+            return 0;
+        }
+        throttle.acquire();
+        if (!file.isDirectory()) {
+            return file.length();
+        }
+        long size = 0;
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                size += sizeOf(child, throttle);
+            }
+        }
+        return size;
+    }
+
+    /* most recent modification anywhere in the tree; the directory's own time misses changes in nested files */
+    private static long lastModified(final File file, final Throttle throttle) {
+        throttle.acquire();
+        long lastModified = file.lastModified();
+        final File[] children = file.isDirectory() ? file.listFiles() : null;
+        if (children != null) {
+            for (final File child : children) {
+                lastModified = Math.max(lastModified, lastModified(child, throttle));
+            }
+        }
+        return lastModified;
+    }
+
+    /**
+     * @return bytes of the files deleted
+     */
+    private static long delete(final File file, final Throttle throttle) {
+        long deleted = 0;
+        final File[] children = file.isDirectory() ? file.listFiles() : null;
+        if (children != null) {
+            for (final File child : children) {
+                deleted += delete(child, throttle);
+            }
+        }
+        throttle.acquire();
+        final long length = file.isDirectory() ? 0 : file.length();
+        return file.delete() ? deleted + length : deleted;
+    }
+
+    /* paces the files visited by one walk */
+    interface Throttle {
+        void acquire();
+    }
+
+    interface ThrottleFactory {
+        Throttle create(double filesPerSecond);
+    }
+
+    public static class Result {
+        private final Environment branch;
+        private final boolean success;
+        private final long bytesReclaimed;
+        private final long elapsedMillis;
+
+        public Result(final Environment branch, final boolean success, final long bytesReclaimed, final long elapsedMillis) {
+            this.branch = branch;
+            this.success = success;
+            this.bytesReclaimed = bytesReclaimed;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public Environment getBranch() {
+            return branch;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public long getBytesReclaimed() {
+            return bytesReclaimed;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s, reclaimed %d bytes in %d ms", branch.getName(), success ? "cleaned" : "failed", bytesReclaimed, elapsedMillis);
+        }
+    }
+}
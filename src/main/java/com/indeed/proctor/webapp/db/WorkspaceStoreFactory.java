@@ -0,0 +1,20 @@
+package com.indeed.proctor.webapp.db;
+
+import java.io.File;
+
+/**
+ * A StoreFactory whose stores keep local working copies on disk, which {@link WorkspaceCleaner} can clean.
+ * Kept apart from StoreFactory so existing implementations of it still compile.
+ */
+public interface WorkspaceStoreFactory extends StoreFactory {
+    /**
+     * @return root directory of the local working copies of the branch store, null if it has none
+     */
+    public File getWorkspaceDirectory(final Environment branch);
+
+    /**
+     * @return working copy that the directory refresher of the branch store keeps up to date for every user,
+     *         which must never be cleaned up however long it goes unmodified; null if it has none (yet)
+     */
+    public File getSharedWorkspaceDirectory(final Environment branch);
+}
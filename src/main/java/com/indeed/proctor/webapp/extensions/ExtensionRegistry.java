@@ -0,0 +1,259 @@
+package com.indeed.proctor.webapp.extensions;
+
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.indeed.proctor.webapp.extensions.renderer.BasePageRenderer;
+import com.indeed.proctor.webapp.extensions.renderer.BasePageRenderer.BasePagePosition;
+import com.indeed.proctor.webapp.extensions.renderer.DefinitionDeletePageRenderer;
+import com.indeed.proctor.webapp.extensions.renderer.DefinitionDeletePageRenderer.DefinitionDeletePagePosition;
+import com.indeed.proctor.webapp.extensions.renderer.DefinitionDetailsPageRenderer;
+import com.indeed.proctor.webapp.extensions.renderer.DefinitionDetailsPageRenderer.DefinitionDetailsPagePosition;
+import com.indeed.proctor.webapp.extensions.renderer.DefinitionHistoryPageRenderer;
+import com.indeed.proctor.webapp.extensions.renderer.DefinitionHistoryPageRenderer.DefinitionHistoryPagePosition;
+import com.indeed.proctor.webapp.extensions.renderer.EditPageRenderer;
+import com.indeed.proctor.webapp.extensions.renderer.EditPageRenderer.EditPagePosition;
+import com.indeed.proctor.webapp.extensions.renderer.MatrixListPageRenderer;
+import com.indeed.proctor.webapp.extensions.renderer.MatrixListPageRenderer.MatrixListPagePosition;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.web.context.ServletContextAware;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+
+import javax.servlet.ServletContext;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Extension beans used by the JSP tags, looked up once when the application context is refreshed
+ * instead of on every tag invocation. Renderers are grouped by the page position they render at.
+ *
+ * The registry is published as a servlet context attribute, see {@link #get(ServletContext)}.
+ */
+public class ExtensionRegistry implements ApplicationListener<ContextRefreshedEvent>, ServletContextAware {
+    private static final Logger LOGGER = Logger.getLogger(ExtensionRegistry.class);
+
+    private static final String ATTRIBUTE_NAME = ExtensionRegistry.class.getName();
+
+    private ServletContext servletContext;
+
+    private volatile Extensions extensions = Extensions.EMPTY;
+
+    @Override
+    public void setServletContext(final ServletContext servletContext) {
+        this.servletContext = servletContext;
+    }
+
+    @Override
+    public void onApplicationEvent(final ContextRefreshedEvent event) {
+        // child contexts (the dispatcher servlet's) publish their refresh events here too
+        if (event.getApplicationContext().getParent() != null) {
+            return;
+        }
+        extensions = new Extensions(event.getApplicationContext());
+        if (servletContext != null) {
+            servletContext.setAttribute(ATTRIBUTE_NAME, extensions);
+        }
+    }
+
+    /**
+     * @return the extensions of the webapp's root application context, resolving them now if the registry bean
+     * has not published them yet
+     */
+    public static Extensions get(final ServletContext servletContext) {
+        final Object registered = servletContext.getAttribute(ATTRIBUTE_NAME);
+        if (registered instanceof Extensions) {
+            return (Extensions) registered;
+        }
+        final WebApplicationContext context = WebApplicationContextUtils.getRequiredWebApplicationContext(servletContext);
+        final Extensions resolved = new Extensions(context);
+        servletContext.setAttribute(ATTRIBUTE_NAME, resolved);
+        return resolved;
+    }
+
+    public Extensions getExtensions() {
+        return extensions;
+    }
+
+    public static class Extensions {
+        private static final Extensions EMPTY = new Extensions();
+        private static final int MAX_FORMATTED_HTML = 10000;
+
+        /* formatted revision html, dropped with the formatters that produced it when the context is refreshed */
+        private final Cache<String, String> formattedHtml = CacheBuilder.newBuilder()
+                .maximumSize(MAX_FORMATTED_HTML)
+                .build();
+
+        private final CommitMessageDisplayFormatter commitMessageDisplayFormatter;
+        private final DefinitionRevisionDisplayFormatter definitionRevisionDisplayFormatter;
+        private final Map<BasePagePosition, List<BasePageRenderer>> basePageRenderers;
+        private final Map<DefinitionDeletePagePosition, List<DefinitionDeletePageRenderer>> definitionDeletePageRenderers;
+        private final Map<DefinitionDetailsPagePosition, List<DefinitionDetailsPageRenderer>> definitionDetailsPageRenderers;
+        private final Map<DefinitionHistoryPagePosition, List<DefinitionHistoryPageRenderer>> definitionHistoryPageRenderers;
+        private final Map<EditPagePosition, List<EditPageRenderer>> editPageRenderers;
+        private final Map<MatrixListPagePosition, List<MatrixListPageRenderer>> matrixListPageRenderers;
+
+        private Extensions() {
+            commitMessageDisplayFormatter = null;
+            definitionRevisionDisplayFormatter = null;
+            basePageRenderers = Collections.emptyMap();
+            definitionDeletePageRenderers = Collections.emptyMap();
+            definitionDetailsPageRenderers = Collections.emptyMap();
+            definitionHistoryPageRenderers = Collections.emptyMap();
+            editPageRenderers = Collections.emptyMap();
+            matrixListPageRenderers = Collections.emptyMap();
+        }
+
+        private Extensions(final ApplicationContext context) {
+            commitMessageDisplayFormatter = getOptionalBean(context, CommitMessageDisplayFormatter.class);
+            definitionRevisionDisplayFormatter = getOptionalBean(context, DefinitionRevisionDisplayFormatter.class);
+            basePageRenderers = groupByPosition(BasePagePosition.class,
+                    beans(context, BasePageRenderer.class),
+                    new Function<BasePageRenderer, BasePagePosition>() {
+                        @Override
+                        public BasePagePosition apply(final BasePageRenderer renderer) {
+                            return renderer.getBasePagePosition();
+                        }
+                    });
+            definitionDeletePageRenderers = groupByPosition(DefinitionDeletePagePosition.class,
+                    beans(context, DefinitionDeletePageRenderer.class),
+                    new Function<DefinitionDeletePageRenderer, DefinitionDeletePagePosition>() {
+                        @Override
+                        public DefinitionDeletePagePosition apply(final DefinitionDeletePageRenderer renderer) {
+                            return renderer.getDefinitionDeletePagePosition();
+                        }
+                    });
+            definitionDetailsPageRenderers = groupByPosition(DefinitionDetailsPagePosition.class,
+                    beans(context, DefinitionDetailsPageRenderer.class),
+                    new Function<DefinitionDetailsPageRenderer, DefinitionDetailsPagePosition>() {
+                        @Override
+                        public DefinitionDetailsPagePosition apply(final DefinitionDetailsPageRenderer renderer) {
+                            return renderer.getDefinitionDetailsPagePosition();
+                        }
+                    });
+            definitionHistoryPageRenderers = groupByPosition(DefinitionHistoryPagePosition.class,
+                    beans(context, DefinitionHistoryPageRenderer.class),
+                    new Function<DefinitionHistoryPageRenderer, DefinitionHistoryPagePosition>() {
+                        @Override
+                        public DefinitionHistoryPagePosition apply(final DefinitionHistoryPageRenderer renderer) {
+                            return renderer.getDefinitionHistoryPagePositionPosition();
+                        }
+                    });
+            editPageRenderers = groupByPosition(EditPagePosition.class,
+                    beans(context, EditPageRenderer.class),
+                    new Function<EditPageRenderer, EditPagePosition>() {
+                        @Override
+                        public EditPagePosition apply(final EditPageRenderer renderer) {
+                            return renderer.getEditPagePosition();
+                        }
+                    });
+            matrixListPageRenderers = groupByPosition(MatrixListPagePosition.class,
+                    beans(context, MatrixListPageRenderer.class),
+                    new Function<MatrixListPageRenderer, MatrixListPagePosition>() {
+                        @Override
+                        public MatrixListPagePosition apply(final MatrixListPageRenderer renderer) {
+                            return renderer.getMatrixListPagePosition();
+                        }
+                    });
+        }
+
+        /**
+         * @return the formatter, or null to use the default formatting
+         */
+        public CommitMessageDisplayFormatter getCommitMessageDisplayFormatter() {
+            return commitMessageDisplayFormatter;
+        }
+
+        /**
+         * @return the formatter, or null to use the default formatting
+         */
+        public DefinitionRevisionDisplayFormatter getDefinitionRevisionDisplayFormatter() {
+            return definitionRevisionDisplayFormatter;
+        }
+
+        /**
+         * @return the html cached under key, formatting it now if absent. Only cache html of immutable input,
+         * such as a committed revision.
+         */
+        public String getFormattedHtml(final String key, final Callable<String> format) throws ExecutionException {
+            return formattedHtml.get(key, format);
+        }
+
+        public List<BasePageRenderer> getBasePageRenderers(final BasePagePosition position) {
+            return atPosition(basePageRenderers, position);
+        }
+
+        public List<DefinitionDeletePageRenderer> getDefinitionDeletePageRenderers(final DefinitionDeletePagePosition position) {
+            return atPosition(definitionDeletePageRenderers, position);
+        }
+
+        public List<DefinitionDetailsPageRenderer> getDefinitionDetailsPageRenderers(final DefinitionDetailsPagePosition position) {
+            return atPosition(definitionDetailsPageRenderers, position);
+        }
+
+        public List<DefinitionHistoryPageRenderer> getDefinitionHistoryPageRenderers(final DefinitionHistoryPagePosition position) {
+            return atPosition(definitionHistoryPageRenderers, position);
+        }
+
+        public List<EditPageRenderer> getEditPageRenderers(final EditPagePosition position) {
+            return atPosition(editPageRenderers, position);
+        }
+
+        public List<MatrixListPageRenderer> getMatrixListPageRenderers(final MatrixListPagePosition position) {
+            return atPosition(matrixListPageRenderers, position);
+        }
+
+        private static <P, R> List<R> atPosition(final Map<P, List<R>> renderers, final P position) {
+            final List<R> atPosition = renderers.get(position);
+            return atPosition == null ? Collections.<R>emptyList() : atPosition;
+        }
+
+        private static <T> Collection<T> beans(final ApplicationContext context, final Class<T> type) {
+            return BeanFactoryUtils.beansOfTypeIncludingAncestors(context, type).values();
+        }
+
+        private static <T> T getOptionalBean(final ApplicationContext context, final Class<T> type) {
+            final Collection<T> beans = beans(context, type);
+            if (beans.isEmpty()) {
+                //No bean found, which is acceptable.
+                return null;
+            } else if (beans.size() == 1) {
+                return beans.iterator().next();
+            } else {
+                LOGGER.error("Multiple beans of type " + type.getSimpleName() + " found, expected 0 or 1. Using the default formatting.");
+                return null;
+            }
+        }
+
+        private static <P extends Enum<P>, R> Map<P, List<R>> groupByPosition(final Class<P> positionType,
+                                                                             final Collection<R> renderers,
+                                                                             final Function<R, P> getPosition) {
+            final Map<P, ImmutableList.Builder<R>> builders = new EnumMap<P, ImmutableList.Builder<R>>(positionType);
+            for (final R renderer : renderers) {
+                final P position = getPosition.apply(renderer);
+                if (position == null) {
+                    continue;
+                }
+                if (!builders.containsKey(position)) {
+                    builders.put(position, ImmutableList.<R>builder());
+                }
+                builders.get(position).add(renderer);
+            }
+            final Map<P, List<R>> grouped = new EnumMap<P, List<R>>(positionType);
+            for (final Map.Entry<P, ImmutableList.Builder<R>> entry : builders.entrySet()) {
+                grouped.put(entry.getKey(), entry.getValue().build());
+            }
+            return Collections.unmodifiableMap(grouped);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.indeed.proctor.webapp.model;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import org.codehaus.jackson.annotate.JsonIgnore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The tests of one test matrix version sorted by name, with the lower cased names and descriptions precomputed
+ * so the matrix list can be filtered and paged without touching the rest of the matrix.
+ * A name prefix is found by binary search; the other filters scan the rows.
+ *
+ * The bucket colors of the list are computed here as well, once per matrix version.
+ *
+ * The list page renders the rows of its first page from their definitions. Pages loaded later through /matrix/list
+ * are serialized from the row fields only: the name, description, type, rule and allocations of each test.
+ */
+public class MatrixListIndex {
+    private final String version;
+    private final List<Row> rows;
+    /* lower cased names, same order as rows */
+    private final String[] names;
+    /* test name -> bucket name -> hex color */
+    private final Map<String, Map<String, String>> colors;
+
+    public MatrixListIndex(/* @Nullable */ final TestMatrixVersion matrix) {
+        this.version = matrix == null ? null : matrix.getVersion();
+        final List<Row> rows = Lists.newArrayList();
+        if (matrix != null && matrix.getTestMatrixDefinition() != null) {
+            for (final Map.Entry<String, TestDefinition> entry : matrix.getTestMatrixDefinition().getTests().entrySet()) {
+                if (entry.getValue() != null) {
+                    rows.add(new Row(entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+        Collections.sort(rows);
+        this.rows = ImmutableList.copyOf(rows);
+        this.names = new String[rows.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = rows.get(i).lowerName;
+        }
+        this.colors = computeColors(rows);
+    }
+
+    // @Nullable
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return test name -> bucket name -> hex color
+     */
+    public Map<String, Map<String, String>> getColors() {
+        return colors;
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * @param page 1-based, clamped to the available pages
+     */
+    public Page query(final Filter filter, final int page, final int pageSize) {
+        final int size = Math.max(1, pageSize);
+        final List<Row> matching = Lists.newArrayList();
+        final String prefix = filter.prefix;
+        final int start = prefix.isEmpty() ? 0 : lowerBound(prefix);
+        for (int i = start; i < rows.size(); i++) {
+            if (!prefix.isEmpty() && !names[i].startsWith(prefix)) {
+                // sorted, so no later name has the prefix either
+                break;
+            }
+            final Row row = rows.get(i);
+            if (filter.matches(row)) {
+                matching.add(row);
+            }
+        }
+        final int pageCount = Math.max(1, (matching.size() + size - 1) / size);
+        final int current = Math.min(Math.max(1, page), pageCount);
+        final int from = (current - 1) * size;
+        final List<Row> tests = matching.subList(Math.min(from, matching.size()), Math.min(from + size, matching.size()));
+        return new Page(version, rows.size(), matching.size(), current, size, pageCount, ImmutableList.copyOf(tests));
+    }
+
+    private int lowerBound(final String prefix) {
+        final int index = Arrays.binarySearch(names, prefix);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    private static Map<String, Map<String, String>> computeColors(final List<Row> rows) {
+        // colors only depend on the bucket name, which most tests share ("control", "inactive", ...)
+        final Map<String, String> bucketColors = Maps.newHashMap();
+        final ImmutableMap.Builder<String, Map<String, String>> colors = ImmutableMap.builder();
+        for (final Row row : rows) {
+            final Map<String, String> testColors = Maps.newHashMap();
+            if (row.definition.getBuckets() != null) {
+                for (final TestBucket bucket : row.definition.getBuckets()) {
+                    String color = bucketColors.get(bucket.getName());
+                    if (color == null) {
+                        color = bucketColor(bucket.getName());
+                        bucketColors.put(bucket.getName(), color);
+                    }
+                    testColors.put(bucket.getName(), color);
+                }
+            }
+            row.bucketColors = Collections.unmodifiableMap(testColors);
+            colors.put(row.name, row.bucketColors);
+        }
+        return colors.build();
+    }
+
+    private static String bucketColor(final String bucketName) {
+        final long hashedBucketName = Hashing.md5().newHasher().putString(bucketName, Charsets.UTF_8).hash().asLong();
+        final int color = ((int) (hashedBucketName & 0x00FFFFFFL)) | 0x00808080; //  convert a hash of the bucket to a color, but keep it light
+        return Integer.toHexString(color);
+    }
+
+    private static String lower(final String value) {
+        return Strings.nullToEmpty(value).toLowerCase(Locale.ENGLISH);
+    }
+
+    public static class Filter {
+        private final String prefix;
+        private final String substring;
+        private final String testType;
+        private final Boolean hasRule;
+
+        /**
+         * Empty or null arguments match every test.
+         *
+         * @param prefix case insensitive test name prefix
+         * @param substring case insensitive part of the test name or description
+         * @param testType test type name, case insensitive
+         * @param hasRule whether the test has a test-level rule
+         */
+        public Filter(final String prefix, final String substring, final String testType, final Boolean hasRule) {
+            this.prefix = lower(prefix).trim();
+            this.substring = lower(substring).trim();
+            this.testType = Strings.nullToEmpty(testType).trim();
+            this.hasRule = hasRule;
+        }
+
+        private boolean matches(final Row row) {
+            if (!substring.isEmpty() && !row.lowerName.contains(substring) && !row.lowerDescription.contains(substring)) {
+                return false;
+            }
+            if (!testType.isEmpty() && !testType.equalsIgnoreCase(row.testType())) {
+                return false;
+            }
+            return hasRule == null || hasRule == row.hasRule();
+        }
+    }
+
+    public static class Row implements Comparable<Row> {
+        private final String name;
+        private final TestDefinition definition;
+        private final String lowerName;
+        private final String lowerDescription;
+        /* bucket name -> hex color, set with the colors of the index */
+        private Map<String, String> bucketColors = Collections.emptyMap();
+
+        private Row(final String name, final TestDefinition definition) {
+            this.name = name;
+            this.definition = definition;
+            this.lowerName = lower(name);
+            this.lowerDescription = lower(definition.getDescription());
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /* for the list page; not serialized, rows are loaded through the fields below */
+        @JsonIgnore
+        public TestDefinition getDefinition() {
+            return definition;
+        }
+
+        public String getDescription() {
+            return definition.getDescription();
+        }
+
+        public String getTestType() {
+            return testType();
+        }
+
+        public String getRule() {
+            return definition.getRule();
+        }
+
+        public List<RowAllocation> getAllocations() {
+            if (definition.getAllocations() == null) {
+                return Collections.emptyList();
+            }
+            final Map<Integer, String> bucketNames = Maps.newHashMap();
+            if (definition.getBuckets() != null) {
+                for (final TestBucket bucket : definition.getBuckets()) {
+                    bucketNames.put(bucket.getValue(), bucket.getName());
+                }
+            }
+            final List<RowAllocation> allocations = Lists.newArrayListWithCapacity(definition.getAllocations().size());
+            for (final Allocation allocation : definition.getAllocations()) {
+                final List<RowRange> ranges = Lists.newArrayList();
+                if (allocation.getRanges() != null) {
+                    for (final Range range : allocation.getRanges()) {
+                        final String bucketName = bucketNames.get(range.getBucketValue());
+                        ranges.add(new RowRange(bucketName, range.getBucketValue(), range.getLength(), bucketColors.get(bucketName)));
+                    }
+                }
+                allocations.add(new RowAllocation(allocation.getRule(), ranges));
+            }
+            return allocations;
+        }
+
+        private String testType() {
+            return definition.getTestType() == null ? "" : definition.getTestType().toString();
+        }
+
+        private boolean hasRule() {
+            return !Strings.nullToEmpty(definition.getRule()).trim().isEmpty();
+        }
+
+        @Override
+        public int compareTo(final Row o) {
+            final int byLowerName = lowerName.compareTo(o.lowerName);
+            return byLowerName != 0 ? byLowerName : name.compareTo(o.name);
+        }
+    }
+
+    public static class RowAllocation {
+        private final String rule;
+        private final List<RowRange> ranges;
+
+        private RowAllocation(final String rule, final List<RowRange> ranges) {
+            this.rule = rule;
+            this.ranges = ranges;
+        }
+
+        public String getRule() {
+            return rule;
+        }
+
+        public List<RowRange> getRanges() {
+            return ranges;
+        }
+    }
+
+    public static class RowRange {
+        private final String bucket;
+        private final int bucketValue;
+        private final double length;
+        private final String color;
+
+        private RowRange(final String bucket, final int bucketValue, final double length, final String color) {
+            this.bucket = bucket;
+            this.bucketValue = bucketValue;
+            this.length = length;
+            this.color = color;
+        }
+
+        public String getBucket() {
+            return bucket;
+        }
+
+        public int getBucketValue() {
+            return bucketValue;
+        }
+
+        public double getLength() {
+            return length;
+        }
+
+        public String getColor() {
+            return color;
+        }
+    }
+
+    public static class Page {
+        private final String version;
+        private final int totalTests;
+        private final int matchingTests;
+        private final int page;
+        private final int pageSize;
+        private final int pageCount;
+        private final List<Row> tests;
+
+        private Page(final String version,
+                     final int totalTests,
+                     final int matchingTests,
+                     final int page,
+                     final int pageSize,
+                     final int pageCount,
+                     final List<Row> tests) {
+            this.version = version;
+            this.totalTests = totalTests;
+            this.matchingTests = matchingTests;
+            this.page = page;
+            this.pageSize = pageSize;
+            this.pageCount = pageCount;
+            this.tests = tests;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public int getTotalTests() {
+            return totalTests;
+        }
+
+        public int getMatchingTests() {
+            return matchingTests;
+        }
+
+        public int getPage() {
+            return page;
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public int getPageCount() {
+            return pageCount;
+        }
+
+        public List<Row> getTests() {
+            return tests;
+        }
+    }
+}
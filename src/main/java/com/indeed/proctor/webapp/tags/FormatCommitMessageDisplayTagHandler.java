@@ -1,16 +1,16 @@
 package com.indeed.proctor.webapp.tags;
 
+import com.indeed.proctor.store.Revision;
+import com.indeed.proctor.webapp.db.Environment;
 import com.indeed.proctor.webapp.extensions.CommitMessageDisplayFormatter;
+import com.indeed.proctor.webapp.extensions.ExtensionRegistry;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.log4j.Logger;
-import org.springframework.beans.factory.BeanFactoryUtils;
-import org.springframework.web.context.WebApplicationContext;
-import org.springframework.web.context.support.WebApplicationContextUtils;
 
 import javax.servlet.ServletContext;
 import javax.servlet.jsp.tagext.TagSupport;
 import java.io.IOException;
-import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  */
@@ -18,14 +18,28 @@ public class FormatCommitMessageDisplayTagHandler extends TagSupport {
     private static final Logger LOGGER = Logger.getLogger(FormatCommitMessageDisplayTagHandler.class);
 
     private String commitMessage;
+    private Revision revision;
+    private Environment branch;
 
     public void setCommitMessage(final String commitMessage) {
         this.commitMessage = commitMessage;
     }
 
+    /**
+     * Optional: the revision the message was committed in. Commit messages never change, so the formatted
+     * message is then cached per branch and revision.
+     */
+    public void setRevision(final Revision revision) {
+        this.revision = revision;
+    }
+
+    public void setBranch(final Environment branch) {
+        this.branch = branch;
+    }
+
     public int doStartTag() {
         try {
-            pageContext.getOut().print(formatMessage(commitMessage));
+            pageContext.getOut().print(revision == null ? formatMessage(commitMessage) : formatRevisionMessage(commitMessage, revision));
         } catch (IOException e) {
             LOGGER.error("Failed to write formatted commit message to page context", e);
         }
@@ -33,21 +47,38 @@ public class FormatCommitMessageDisplayTagHandler extends TagSupport {
         return SKIP_BODY;
     }
 
+    @Override
+    public void release() {
+        super.release();
+        commitMessage = null;
+        revision = null;
+        branch = null;
+    }
+
     public String formatMessage(final String commitMessage) {
         final ServletContext servletContext = pageContext.getServletContext();
-        final WebApplicationContext context = WebApplicationContextUtils.getRequiredWebApplicationContext(servletContext);
         try {
-            final Map<String, CommitMessageDisplayFormatter> formatterBeans = BeanFactoryUtils.beansOfTypeIncludingAncestors(context,CommitMessageDisplayFormatter.class);
-
-            if (formatterBeans.size() == 0) {
+            final CommitMessageDisplayFormatter formatter = ExtensionRegistry.get(servletContext).getCommitMessageDisplayFormatter();
+            if (formatter == null) {
                 //No bean found, which is acceptable.
                 return StringEscapeUtils.escapeHtml(commitMessage);
-            } else if (formatterBeans.size() == 1) {
-                CommitMessageDisplayFormatter formatter = (CommitMessageDisplayFormatter) formatterBeans.values().toArray()[0];
-                return formatter.formatMessage(commitMessage);
-            } else {
-                throw new IllegalArgumentException("Multiple beans of type " + CommitMessageDisplayFormatter.class.getSimpleName()  + " found, expected 0 or 1.");
             }
+            return formatter.formatMessage(commitMessage);
+        } catch (Exception e) {
+            LOGGER.error("An error occurred when formatting commit message.", e);
+            return commitMessage;
+        }
+    }
+
+    private String formatRevisionMessage(final String commitMessage, final Revision revision) {
+        final String key = "message:" + (branch == null ? "" : branch.getName()) + ":" + revision.getRevision();
+        try {
+            return ExtensionRegistry.get(pageContext.getServletContext()).getFormattedHtml(key, new Callable<String>() {
+                @Override
+                public String call() {
+                    return formatMessage(commitMessage);
+                }
+            });
         } catch (Exception e) {
             LOGGER.error("An error occurred when formatting commit message.", e);
             return commitMessage;
@@ -1,29 +1,34 @@
 package com.indeed.proctor.webapp.tags;
 
 import com.indeed.proctor.store.Revision;
+import com.indeed.proctor.webapp.db.Environment;
 import com.indeed.proctor.webapp.extensions.DefinitionRevisionDisplayFormatter;
+import com.indeed.proctor.webapp.extensions.ExtensionRegistry;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.log4j.Logger;
-import org.springframework.beans.factory.BeanFactoryUtils;
-import org.springframework.web.context.WebApplicationContext;
-import org.springframework.web.context.support.WebApplicationContextUtils;
 
 import javax.servlet.ServletContext;
 import javax.servlet.jsp.tagext.TagSupport;
 import java.io.IOException;
-import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
+ * Revisions never change once committed, so the formatted html is cached per branch and revision.
  */
 public class FormatDefinitionRevisionDisplayTagHandler extends TagSupport {
     private static final Logger LOGGER = Logger.getLogger(FormatDefinitionRevisionDisplayTagHandler.class);
 
     private Revision revision;
+    private Environment branch;
 
     public void setRevision(final Revision revision) {
         this.revision = revision;
     }
 
+    public void setBranch(final Environment branch) {
+        this.branch = branch;
+    }
+
     public int doStartTag() {
         try {
             pageContext.getOut().print(formatRevisionDisplay(revision));
@@ -34,22 +39,30 @@ public class FormatDefinitionRevisionDisplayTagHandler extends TagSupport {
         return SKIP_BODY;
     }
 
+    @Override
+    public void release() {
+        super.release();
+        revision = null;
+        branch = null;
+    }
+
     public String formatRevisionDisplay(final Revision revision) {
         final String defaultFormattedRevision = revision.getAuthor() + " @ " + revision.getDate() + " (" + revision.getRevision() + ")";
         final ServletContext servletContext = pageContext.getServletContext();
-        final WebApplicationContext context = WebApplicationContextUtils.getRequiredWebApplicationContext(servletContext);
+        final String key = "revision:" + (branch == null ? "" : branch.getName()) + ":" + revision.getRevision();
         try {
-            final Map<String, DefinitionRevisionDisplayFormatter> formatterBeans = BeanFactoryUtils.beansOfTypeIncludingAncestors(context,DefinitionRevisionDisplayFormatter.class);
-
-            if (formatterBeans.isEmpty()) {
-                //No bean found, which is acceptable.
-                return StringEscapeUtils.escapeHtml(defaultFormattedRevision);
-            } else if (formatterBeans.size() == 1) {
-                DefinitionRevisionDisplayFormatter formatter = formatterBeans.values().iterator().next();
-                return formatter.formatRevision(revision);
-            } else {
-                throw new IllegalArgumentException("Multiple beans of type " + DefinitionRevisionDisplayFormatter.class.getSimpleName()  + " found, expected 0 or 1.");
-            }
+            final ExtensionRegistry.Extensions extensions = ExtensionRegistry.get(servletContext);
+            return extensions.getFormattedHtml(key, new Callable<String>() {
+                @Override
+                public String call() {
+                    final DefinitionRevisionDisplayFormatter formatter = extensions.getDefinitionRevisionDisplayFormatter();
+                    if (formatter == null) {
+                        //No bean found, which is acceptable.
+                        return StringEscapeUtils.escapeHtml(defaultFormattedRevision);
+                    }
+                    return formatter.formatRevision(revision);
+                }
+            });
         } catch (Exception e) {
             LOGGER.error("An error occurred when retrieving revision url.", e);
             return defaultFormattedRevision;
@@ -3,15 +3,12 @@ package com.indeed.proctor.webapp.tags;
 import com.indeed.proctor.webapp.db.Environment;
 import com.indeed.proctor.webapp.extensions.renderer.BasePageRenderer;
 import com.indeed.proctor.webapp.extensions.renderer.BasePageRenderer.BasePagePosition;
+import com.indeed.proctor.webapp.extensions.ExtensionRegistry;
 import org.apache.log4j.Logger;
-import org.springframework.beans.factory.BeanFactoryUtils;
-import org.springframework.web.context.WebApplicationContext;
-import org.springframework.web.context.support.WebApplicationContextUtils;
 
 import javax.servlet.ServletContext;
 import javax.servlet.jsp.tagext.TagSupport;
 import java.io.IOException;
-import java.util.Map;
 
 /**
  */
@@ -42,13 +39,9 @@ public class RenderBasePageInjectionTemplatesHandler extends TagSupport {
     private String renderTemplates() {
         final StringBuilder renderedHTML = new StringBuilder();
         final ServletContext servletContext = pageContext.getServletContext();
-        final WebApplicationContext context = WebApplicationContextUtils.getRequiredWebApplicationContext(servletContext);
         try {
-            final Map<String, BasePageRenderer> rendererBeans = BeanFactoryUtils.beansOfTypeIncludingAncestors(context, BasePageRenderer.class);
-            for (final BasePageRenderer renderer : rendererBeans.values()) {
-                if (position == renderer.getBasePagePosition()) {
-                    renderedHTML.append(renderer.getRenderedHtml(branch));
-                }
+            for (final BasePageRenderer renderer : ExtensionRegistry.get(servletContext).getBasePageRenderers(position)) {
+                renderedHTML.append(renderer.getRenderedHtml(branch));
             }
         } catch (Exception e) {
             LOGGER.error("An error occurred when attempting to inject template.", e);
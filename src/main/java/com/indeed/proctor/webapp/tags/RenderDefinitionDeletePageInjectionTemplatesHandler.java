@@ -2,15 +2,12 @@ package com.indeed.proctor.webapp.tags;
 
 import com.indeed.proctor.webapp.extensions.renderer.DefinitionDeletePageRenderer;
 import com.indeed.proctor.webapp.extensions.renderer.DefinitionDeletePageRenderer.DefinitionDeletePagePosition;
+import com.indeed.proctor.webapp.extensions.ExtensionRegistry;
 import org.apache.log4j.Logger;
-import org.springframework.beans.factory.BeanFactoryUtils;
-import org.springframework.web.context.WebApplicationContext;
-import org.springframework.web.context.support.WebApplicationContextUtils;
 
 import javax.servlet.ServletContext;
 import javax.servlet.jsp.tagext.TagSupport;
 import java.io.IOException;
-import java.util.Map;
 
 /**
  */
@@ -41,13 +38,9 @@ public class RenderDefinitionDeletePageInjectionTemplatesHandler extends TagSupp
     private String renderTemplates() {
         final StringBuilder renderedHTML = new StringBuilder();
         final ServletContext servletContext = pageContext.getServletContext();
-        final WebApplicationContext context = WebApplicationContextUtils.getRequiredWebApplicationContext(servletContext);
         try {
-            final Map<String, DefinitionDeletePageRenderer> rendererBeans = BeanFactoryUtils.beansOfTypeIncludingAncestors(context, DefinitionDeletePageRenderer.class);
-            for (final DefinitionDeletePageRenderer renderer : rendererBeans.values()) {
-                if (position == renderer.getDefinitionDeletePagePosition()) {
-                    renderedHTML.append(renderer.getRenderedHtml(testName));
-                }
+            for (final DefinitionDeletePageRenderer renderer : ExtensionRegistry.get(servletContext).getDefinitionDeletePageRenderers(position)) {
+                renderedHTML.append(renderer.getRenderedHtml(testName));
             }
         } catch (Exception e) {
             LOGGER.error("An error occurred when attempting to inject template.", e);
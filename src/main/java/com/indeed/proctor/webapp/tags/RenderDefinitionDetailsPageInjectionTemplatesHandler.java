@@ -3,15 +3,12 @@ package com.indeed.proctor.webapp.tags;
 import com.indeed.proctor.common.model.TestDefinition;
 import com.indeed.proctor.webapp.extensions.renderer.DefinitionDetailsPageRenderer;
 import com.indeed.proctor.webapp.extensions.renderer.DefinitionDetailsPageRenderer.DefinitionDetailsPagePosition;
+import com.indeed.proctor.webapp.extensions.ExtensionRegistry;
 import org.apache.log4j.Logger;
-import org.springframework.beans.factory.BeanFactoryUtils;
-import org.springframework.web.context.WebApplicationContext;
-import org.springframework.web.context.support.WebApplicationContextUtils;
 
 import javax.servlet.ServletContext;
 import javax.servlet.jsp.tagext.TagSupport;
 import java.io.IOException;
-import java.util.Map;
 
 /**
  */
@@ -47,13 +44,9 @@ public class RenderDefinitionDetailsPageInjectionTemplatesHandler extends TagSup
     private String renderTemplates() {
         final StringBuilder renderedHTML = new StringBuilder();
         final ServletContext servletContext = pageContext.getServletContext();
-        final WebApplicationContext context = WebApplicationContextUtils.getRequiredWebApplicationContext(servletContext);
         try {
-            final Map<String, DefinitionDetailsPageRenderer> rendererBeans = BeanFactoryUtils.beansOfTypeIncludingAncestors(context, DefinitionDetailsPageRenderer.class);
-            for (final DefinitionDetailsPageRenderer renderer : rendererBeans.values()) {
-                if (position == renderer.getDefinitionDetailsPagePosition()) {
-                    renderedHTML.append(renderer.getRenderedHtml(testName, testDefinition));
-                }
+            for (final DefinitionDetailsPageRenderer renderer : ExtensionRegistry.get(servletContext).getDefinitionDetailsPageRenderers(position)) {
+                renderedHTML.append(renderer.getRenderedHtml(testName, testDefinition));
             }
         } catch (Exception e) {
             LOGGER.error("An error occurred when attempting to inject template.", e);
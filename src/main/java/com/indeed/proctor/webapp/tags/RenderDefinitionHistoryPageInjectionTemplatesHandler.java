@@ -3,15 +3,12 @@ package com.indeed.proctor.webapp.tags;
 import com.indeed.proctor.store.Revision;
 import com.indeed.proctor.webapp.extensions.renderer.DefinitionHistoryPageRenderer;
 import com.indeed.proctor.webapp.extensions.renderer.DefinitionHistoryPageRenderer.DefinitionHistoryPagePosition;
+import com.indeed.proctor.webapp.extensions.ExtensionRegistry;
 import org.apache.log4j.Logger;
-import org.springframework.beans.factory.BeanFactoryUtils;
-import org.springframework.web.context.WebApplicationContext;
-import org.springframework.web.context.support.WebApplicationContextUtils;
 
 import javax.servlet.ServletContext;
 import javax.servlet.jsp.tagext.TagSupport;
 import java.io.IOException;
-import java.util.Map;
 
 /**
  */
@@ -47,13 +44,9 @@ public class RenderDefinitionHistoryPageInjectionTemplatesHandler extends TagSup
     private String renderTemplates() {
         final StringBuilder renderedHTML = new StringBuilder();
         final ServletContext servletContext = pageContext.getServletContext();
-        final WebApplicationContext context = WebApplicationContextUtils.getRequiredWebApplicationContext(servletContext);
         try {
-            final Map<String, DefinitionHistoryPageRenderer> rendererBeans = BeanFactoryUtils.beansOfTypeIncludingAncestors(context, DefinitionHistoryPageRenderer.class);
-            for (final DefinitionHistoryPageRenderer renderer : rendererBeans.values()) {
-                if (position == renderer.getDefinitionHistoryPagePositionPosition()) {
-                    renderedHTML.append(renderer.getRenderedHtml(testName, testDefinitionVersion));
-                }
+            for (final DefinitionHistoryPageRenderer renderer : ExtensionRegistry.get(servletContext).getDefinitionHistoryPageRenderers(position)) {
+                renderedHTML.append(renderer.getRenderedHtml(testName, testDefinitionVersion));
             }
         } catch (Exception e) {
             LOGGER.error("An error occurred when attempting to inject template.", e);
@@ -2,15 +2,12 @@ package com.indeed.proctor.webapp.tags;
 
 import com.indeed.proctor.webapp.extensions.renderer.EditPageRenderer;
 import com.indeed.proctor.webapp.extensions.renderer.EditPageRenderer.EditPagePosition;
+import com.indeed.proctor.webapp.extensions.ExtensionRegistry;
 import org.apache.log4j.Logger;
-import org.springframework.beans.factory.BeanFactoryUtils;
-import org.springframework.web.context.WebApplicationContext;
-import org.springframework.web.context.support.WebApplicationContextUtils;
 
 import javax.servlet.ServletContext;
 import javax.servlet.jsp.tagext.TagSupport;
 import java.io.IOException;
-import java.util.Map;
 
 /**
  */
@@ -51,13 +48,9 @@ public class RenderEditPageInjectionTemplatesTagHandler extends TagSupport {
     private String renderTemplates() {
         final StringBuilder renderedHTML = new StringBuilder();
         final ServletContext servletContext = pageContext.getServletContext();
-        final WebApplicationContext context = WebApplicationContextUtils.getRequiredWebApplicationContext(servletContext);
         try {
-            final Map<String, EditPageRenderer> rendererBeans = BeanFactoryUtils.beansOfTypeIncludingAncestors(context, EditPageRenderer.class);
-            for (final EditPageRenderer renderer : rendererBeans.values()) {
-                if (position == renderer.getEditPagePosition()) {
-                    renderedHTML.append(renderer.getRenderedHtml(testName, testDefinitionJson, isCreate));
-                }
+            for (final EditPageRenderer renderer : ExtensionRegistry.get(servletContext).getEditPageRenderers(position)) {
+                renderedHTML.append(renderer.getRenderedHtml(testName, testDefinitionJson, isCreate));
             }
         } catch (Exception e) {
             LOGGER.error("An error occurred when attempting to inject template.", e);
@@ -4,15 +4,12 @@ import com.indeed.proctor.common.model.TestDefinition;
 import com.indeed.proctor.common.model.TestMatrixVersion;
 import com.indeed.proctor.webapp.extensions.renderer.MatrixListPageRenderer;
 import com.indeed.proctor.webapp.extensions.renderer.MatrixListPageRenderer.MatrixListPagePosition;
+import com.indeed.proctor.webapp.extensions.ExtensionRegistry;
 import org.apache.log4j.Logger;
-import org.springframework.beans.factory.BeanFactoryUtils;
-import org.springframework.web.context.WebApplicationContext;
-import org.springframework.web.context.support.WebApplicationContextUtils;
 
 import javax.servlet.ServletContext;
 import javax.servlet.jsp.tagext.TagSupport;
 import java.io.IOException;
-import java.util.Map;
 
 /**
  */
@@ -53,13 +50,9 @@ public class RenderMatrixListPageInjectionTemplatesHandler extends TagSupport {
     private String renderTemplates() {
         final StringBuilder renderedHTML = new StringBuilder();
         final ServletContext servletContext = pageContext.getServletContext();
-        final WebApplicationContext context = WebApplicationContextUtils.getRequiredWebApplicationContext(servletContext);
         try {
-            final Map<String, MatrixListPageRenderer> rendererBeans = BeanFactoryUtils.beansOfTypeIncludingAncestors(context, MatrixListPageRenderer.class);
-            for (final MatrixListPageRenderer renderer : rendererBeans.values()) {
-                if (position == renderer.getMatrixListPagePosition()) {
-                    renderedHTML.append(renderer.getRenderedHtml(testName, testMatrixVersion, testDefinition));
-                }
+            for (final MatrixListPageRenderer renderer : ExtensionRegistry.get(servletContext).getMatrixListPageRenderers(position)) {
+                renderedHTML.append(renderer.getRenderedHtml(testName, testMatrixVersion, testDefinition));
             }
         } catch (Exception e) {
             LOGGER.error("An error occurred when attempting to inject template.", e);
@@ -3,6 +3,7 @@ package com.indeed.proctor.webapp.tags;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Strings;
 import com.indeed.proctor.common.EnvironmentVersion;
+import com.indeed.proctor.common.RevisionEnvironmentIndex.LiveEnvironments;
 import com.indeed.proctor.common.Serializers;
 import com.indeed.proctor.common.model.Allocation;
 import com.indeed.proctor.common.model.Range;
@@ -35,6 +36,18 @@ public final class TestDefinitionFunctions {
         return null;
     }
 
+    /**
+     * Same answers as isCurrentVersionOnTrunk/Qa/Production in one lookup against the version's precomputed index.
+     *
+     * @return null if version is null
+     */
+    public static LiveEnvironments getLiveEnvironments(final Environment viewing,
+                                                       final Revision history,
+                                                       final EnvironmentVersion version) {
+        if(version == null) { return null; }
+        return version.getRevisionIndex().getLiveEnvironments(viewing, history);
+    }
+
     /**
      *
      * @param viewing
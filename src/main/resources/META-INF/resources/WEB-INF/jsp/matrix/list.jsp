@@ -7,23 +7,48 @@
 <%@ taglib prefix="fn" uri="http://java.sun.com/jsp/jstl/functions" %>
 <%--@elvariable id="session" type="com.indeed.proctor.webapp.model.SessionViewModel"--%>
 <%--@elvariable id="testMatrixVersion" type="com.indeed.proctor.webapp.TestMatrixVersion"--%>
-<%--@elvariable id="testMatrixDefinition" type="java.lang.String"--%>
+<%--@elvariable id="testMatrixPage" type="com.indeed.proctor.webapp.model.MatrixListIndex.Page"--%>
+<%--@elvariable id="testTypes" type="java.util.List<com.indeed.proctor.common.model.TestType>"--%>
 <%--@elvariable id="branch" type="com.indeed.proctor.webapp.db.Environment"--%>
-<c:set var="testMatrix" value="${testMatrixVersion.testMatrixDefinition}"/>
 <layout:base title="Proctor - current test matrix" session="${session}">
         <h2>${branch.name} test matrix</h2>
-        <c:forEach items="${testMatrix.tests}" var="test">
-            <c:set var="testDefinition" value="${test.value}" />
+        <form class="js-matrix-list-filter" action="/proctor/" method="GET">
+            <input type="hidden" name="branch" value="${fn:escapeXml(branch.name)}"/>
+            <ui:grid-row>
+                <ui:grid-columns width="three"><input type="text" name="prefix" placeholder="test name prefix" value="${fn:escapeXml(prefix)}"/></ui:grid-columns>
+                <ui:grid-columns width="three"><input type="text" name="q" placeholder="name or description contains" value="${fn:escapeXml(q)}"/></ui:grid-columns>
+                <ui:grid-columns width="two">
+                    <select name="testType">
+                        <option value="">any test type</option>
+                        <c:forEach items="${testTypes}" var="type">
+                        <option value="${fn:escapeXml(type)}" <c:if test="${type == testType}">selected="selected"</c:if>>${fn:escapeXml(type)}</option>
+                        </c:forEach>
+                    </select>
+                </ui:grid-columns>
+                <ui:grid-columns width="two">
+                    <select name="hasRule">
+                        <option value="">with or without rule</option>
+                        <option value="true" <c:if test="${hasRule == true}">selected="selected"</c:if>>with rule</option>
+                        <option value="false" <c:if test="${hasRule == false}">selected="selected"</c:if>>without rule</option>
+                    </select>
+                </ui:grid-columns>
+                <ui:grid-columns width="two"><input type="submit" class="tiny button radius" value="Filter"/></ui:grid-columns>
+            </ui:grid-row>
+        </form>
+        <p>${testMatrixPage.matchingTests} of ${testMatrixPage.totalTests} tests</p>
+        <div class="js-matrix-list-rows">
+        <c:forEach items="${testMatrixPage.tests}" var="test">
+            <c:set var="testDefinition" value="${test.definition}" />
             <div class="panel radius">
             <ui:grid-row extraCssClass="ui-test-definition">
                 <ui:grid-columns width="three">
-                    <h6 class="mtn"><a class="" href="/proctor/definition/${proctor:urlencode(test.key)}?branch=${proctor:urlencode(branch.name)}">${fn:escapeXml(test.key)}</a></h6>
+                    <h6 class="mtn"><a class="" href="/proctor/definition/${proctor:urlencode(test.name)}?branch=${proctor:urlencode(branch.name)}">${fn:escapeXml(test.name)}</a></h6>
                     <ul class="button-group radius">
-                        <li><a class="tiny button secondary radius" href="/proctor/definition/${proctor:urlencode(test.key)}/edit?branch=${proctor:urlencode(branch.name)}">edit</a></li>
+                        <li><a class="tiny button secondary radius" href="/proctor/definition/${proctor:urlencode(test.name)}/edit?branch=${proctor:urlencode(branch.name)}">edit</a></li>
                         <%--<li><a class="tiny button secondary radius" href="/proctor/definition/${test.key}/history">history</a></li>--%>
-                        <li><a class="tiny button secondary radius" href="/proctor/definition/${proctor:urlencode(test.key)}?branch=${proctor:urlencode(branch.name)}">details</a></li>
+                        <li><a class="tiny button secondary radius" href="/proctor/definition/${proctor:urlencode(test.name)}?branch=${proctor:urlencode(branch.name)}">details</a></li>
                     </ul>
-                    <proctor:renderMatrixListPageInjectionTemplates position="<%=MatrixListPageRenderer.MatrixListPagePosition.LINK%>" testName="${proctor:urlencode(test.key)}" testMatrixVersion="${testMatrixVersion}" testDefinition="${testDefinition}"/>
+                    <proctor:renderMatrixListPageInjectionTemplates position="<%=MatrixListPageRenderer.MatrixListPagePosition.LINK%>" testName="${proctor:urlencode(test.name)}" testMatrixVersion="${testMatrixVersion}" testDefinition="${testDefinition}"/>
                 </ui:grid-columns>
                 <ui:grid-columns width="nine">
                     <div class="def-description">
@@ -35,6 +60,22 @@
             </ui:grid-row>
             </div>
         </c:forEach>
+        </div>
+        <c:if test="${testMatrixPage.pageCount > 1}">
+        <ul class="pagination js-matrix-list-pagination">
+            <c:forEach begin="1" end="${testMatrixPage.pageCount}" var="pageNumber">
+            <c:url var="pageUrl" value="/proctor/">
+                <c:param name="branch" value="${branch.name}"/>
+                <c:param name="prefix" value="${prefix}"/>
+                <c:param name="q" value="${q}"/>
+                <c:param name="testType" value="${testType}"/>
+                <c:param name="hasRule" value="${hasRule}"/>
+                <c:param name="page" value="${pageNumber}"/>
+            </c:url>
+            <li <c:if test="${pageNumber == testMatrixPage.page}">class="current"</c:if>><a href="${fn:escapeXml(pageUrl)}" data-page="${pageNumber}">${pageNumber}</a></li>
+            </c:forEach>
+        </ul>
+        </c:if>
 
     <layout:javascript
             useCompiledJavascript="${session.useCompiledJavaScript}"
@@ -42,10 +83,7 @@
             nonCompiledJavascriptSrc="/static/scripts/app/matrix-list.js"/>
     <script type="text/javascript">
         //<![CDATA[
-        indeed.proctor.app.matrix.list.start(${testMatrixDefinition});
+        indeed.proctor.app.matrix.list.start();
         //]]>
     </script>
-<!--
-<c:out value="${testMatrixDefinition}" />
--->
 </layout:base>
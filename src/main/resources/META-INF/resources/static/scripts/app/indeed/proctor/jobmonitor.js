@@ -43,8 +43,19 @@ indeed.proctor.JobMonitor = function(container, jobid) {
   /** @type {Element} @private */
   this.boundingBox_ = this.render_(container);
 
-  this.checkStatus();
+  /** @type {EventSource} @private */
+  this.eventSource_ = null;
+  /** @type {string} @private */
+  this.log_ = '';
+  /** @type {number} @private */
+  this.logOffset_ = 0;
+
   this.checkStatusTimerId_ = null;
+  if (goog.isDef(window['EventSource'])) {
+    this.openStream_();
+  } else {
+    this.checkStatus();
+  }
 };
 goog.inherits(indeed.proctor.JobMonitor, goog.events.EventTarget);
 
@@ -162,7 +173,7 @@ indeed.proctor.JobMonitor.prototype.checkStatus = function() {
     this.checkStatusTimerId_ = null;
   }
   url = goog.uri.utils.appendParams('/proctor/rpc/jobs/status', 'id',
-                                    this.jobid);
+                                    this.jobid, 'since', this.logOffset_);
   this.xhr_.send(url,
                  'GET',
                  undefined,
@@ -171,11 +182,84 @@ indeed.proctor.JobMonitor.prototype.checkStatus = function() {
 };
 
 
+/**
+ * Subscribes to the server-sent job status stream. Each event carries only
+ * the log lines written since the previous event.
+ * @private
+ */
+indeed.proctor.JobMonitor.prototype.openStream_ = function() {
+  var url = goog.uri.utils.appendParams('/proctor/rpc/jobs/stream', 'id',
+                                        this.jobid),
+      source = new window['EventSource'](url);
+  source.onmessage = goog.bind(this.onStreamMessage_, this);
+  source.onerror = goog.bind(this.onStreamError_, this);
+  this.eventSource_ = source;
+};
+
+
+/**
+ * Closes the job status stream, if open.
+ * @private
+ */
+indeed.proctor.JobMonitor.prototype.closeStream_ = function() {
+  if (this.eventSource_) {
+    this.eventSource_.close();
+    this.eventSource_ = null;
+  }
+};
+
+
+/**
+ * @param {MessageEvent} ev A job status event from the stream.
+ * @private
+ */
+indeed.proctor.JobMonitor.prototype.onStreamMessage_ = function(ev) {
+  var job = goog.json.unsafeParse(ev.data);
+  this.appendLog_(job);
+  if (!job['running']) {
+    this.closeStream_();
+  }
+  this.handleJobStatus_(job);
+};
+
+
+/**
+ * Merges the log lines of a status response into the log received so far
+ * and replaces job['log'] with the complete log.
+ * @param {Object} job The job status.
+ * @private
+ */
+indeed.proctor.JobMonitor.prototype.appendLog_ = function(job) {
+  if (job['logSince'] == 0) {
+    this.log_ = job['log'];
+  } else {
+    this.log_ += job['log'];
+  }
+  this.logOffset_ = job['logOffset'];
+  job['log'] = this.log_;
+};
+
+
+/**
+ * The browser reconnects dropped streams on its own. If the server refused
+ * the stream, fall back to polling.
+ * @param {Event} ev The error event.
+ * @private
+ */
+indeed.proctor.JobMonitor.prototype.onStreamError_ = function(ev) {
+  if (this.eventSource_ && this.eventSource_.readyState == 2) {
+    this.closeStream_();
+    this.checkStatus();
+  }
+};
+
+
 /**
  * Cancel the job, sending an xhr request to the webapp.
  */
 indeed.proctor.JobMonitor.prototype.cancelJob = function() {
   var url;
+  this.closeStream_();
   if (this.xhr_.isActive()) {
     this.xhr_.abort();
   }
@@ -204,21 +288,8 @@ indeed.proctor.JobMonitor.prototype.onAjaxSuccess_ = function(ev) {
       resp = xhr.getResponseJson(), job;
   if (resp['success']) {
     job = resp['data'];
-    this.update(job['title'],
-                job['running'] ? ('RUNNING') : job['status'],
-                job['log']);
-    if (job['running']) {
-      this.dispatchEvent(new indeed.proctor.JobMonitor.Event(
-          indeed.proctor.JobMonitor.EventTypes.IN_PROGRESS, this.jobid, job));
-      this.checkStatusTimerId_ = window.setTimeout(
-          goog.bind(this.checkStatus, this), this.refresh_interval);
-    } else if ('DONE' == job['status']) {
-      this.dispatchEvent(new indeed.proctor.JobMonitor.Event(
-          indeed.proctor.JobMonitor.EventTypes.COMPLETE, this.jobid, job));
-    } else if ('CANCELLED' == job['status']) {
-      this.dispatchEvent(new indeed.proctor.JobMonitor.Event(
-          indeed.proctor.JobMonitor.EventTypes.CANCELLED, this.jobid, job));
-    }
+    this.appendLog_(job);
+    this.handleJobStatus_(job);
   } else {
     this.update(resp['msg'], 'ERROR', resp['msg']);
     this.dispatchEvent(new indeed.proctor.JobMonitor.Event(
@@ -227,6 +298,33 @@ indeed.proctor.JobMonitor.prototype.onAjaxSuccess_ = function(ev) {
 };
 
 
+/**
+ * Updates the UI with the job status and dispatches the appropriate
+ * JobMonitor event. Schedules the next poll unless the status is streamed.
+ * @param {Object} job The job status.
+ * @private
+ */
+indeed.proctor.JobMonitor.prototype.handleJobStatus_ = function(job) {
+  this.update(job['title'],
+              job['running'] ? ('RUNNING') : job['status'],
+              job['log']);
+  if (job['running']) {
+    this.dispatchEvent(new indeed.proctor.JobMonitor.Event(
+        indeed.proctor.JobMonitor.EventTypes.IN_PROGRESS, this.jobid, job));
+    if (!this.eventSource_) {
+      this.checkStatusTimerId_ = window.setTimeout(
+          goog.bind(this.checkStatus, this), this.refresh_interval);
+    }
+  } else if ('DONE' == job['status']) {
+    this.dispatchEvent(new indeed.proctor.JobMonitor.Event(
+        indeed.proctor.JobMonitor.EventTypes.COMPLETE, this.jobid, job));
+  } else if ('CANCELLED' == job['status']) {
+    this.dispatchEvent(new indeed.proctor.JobMonitor.Event(
+        indeed.proctor.JobMonitor.EventTypes.CANCELLED, this.jobid, job));
+  }
+};
+
+
 /**
  *
  * @param {goog.events.Event} ev XHR event, on Ajax Error.
@@ -259,6 +357,7 @@ indeed.proctor.JobMonitor.EventTypes = {
 /** @override */
 indeed.proctor.JobMonitor.prototype.disposeInternal = function() {
   goog.base(this, 'disposeInternal');
+  this.closeStream_();
   if (this.checkStatusTimerId_) {
     window.clearTimeout(this.checkStatusTimerId_);
   }
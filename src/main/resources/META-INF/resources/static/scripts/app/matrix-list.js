@@ -4,10 +4,14 @@ goog.provide('indeed.proctor.app.matrix.usage');
 
 goog.require('goog.array');
 goog.require('goog.dom');
+goog.require('goog.dom.classes');
+goog.require('goog.dom.forms');
 goog.require('goog.events');
 goog.require('goog.events.EventHandler');
 goog.require('goog.events.EventTarget');
 goog.require('goog.events.EventType');
+goog.require('goog.net.XhrLite');
+goog.require('goog.uri.utils');
 goog.require('indeed.expandcollapse.ExpandCollapse');
 goog.require('indeed.foundation.Tabs');
 goog.require('indeed.proctor.JobMonitor');
@@ -28,7 +32,122 @@ indeed.proctor.app.matrix.list.start = function() {
     goog.array.forEach(tabs, function(tab) {
       var uiTab = new indeed.foundation.Tabs(tab);
     });
+
+    var pagination = goog.dom.getElementByClass('js-matrix-list-pagination');
+    if (pagination) {
+      goog.array.forEach(goog.dom.getElementsByTagNameAndClass(goog.dom.TagName.A, undefined, pagination), function(el) {
+        goog.events.listen(el, goog.events.EventType.CLICK, indeed.proctor.app.matrix.list.onPageClick_);
+      });
+    }
+  });
+};
+
+
+/**
+ * Loads the clicked page of the matrix list through /proctor/matrix/list
+ * with the filter of the page, instead of reloading the whole list.
+ *
+ * @param {goog.events.BrowserEvent} ev Browser click event
+ * @private
+ */
+indeed.proctor.app.matrix.list.onPageClick_ = function(ev) {
+  var el = ev.currentTarget,
+      form = goog.dom.getElementByClass('js-matrix-list-filter'),
+      page = el.getAttribute('data-page');
+  if (!form || !page) {
+    return;
+  }
+  ev.preventDefault();
+  goog.net.XhrLite.send(
+        goog.uri.utils.appendParams('/proctor/matrix/list?' + goog.dom.forms.getFormDataString(form), 'page', page),
+        function(e) {
+          indeed.proctor.app.matrix.list.onPageLoaded_(e, el.href);
+        },
+        'GET',
+        undefined,
+        {'X-Requested-With': 'XMLHttpRequest'},
+        /* no timeout */ 0
+  );
+};
+
+
+/**
+ * Replaces the rows and the current page of the list with the loaded page,
+ * falls back to navigating to the page if it could not be loaded.
+ *
+ * @param {goog.events.Event} ev Event Facade.
+ * @param {string} href The url of the page.
+ * @private
+ */
+indeed.proctor.app.matrix.list.onPageLoaded_ = function(ev, href) {
+  var xhr = /** goog.net.XhrIo */ ev.target,
+      rows = goog.dom.getElementByClass('js-matrix-list-rows'),
+      pagination = goog.dom.getElementByClass('js-matrix-list-pagination'),
+      branch = goog.dom.forms.getValueByName(goog.dom.getElementByClass('js-matrix-list-filter'), 'branch'),
+      json;
+  if (!xhr.isSuccess() || !rows) {
+    window.location.href = href;
+    return;
+  }
+  json = xhr.getResponseJson();
+  goog.dom.removeChildren(rows);
+  goog.array.forEach(json['tests'], function(test) {
+    rows.appendChild(indeed.proctor.app.matrix.list.renderRow_(test, branch));
+  });
+  goog.array.forEach(goog.dom.getElementsByTagNameAndClass(goog.dom.TagName.LI, undefined, pagination), function(li) {
+    var a = goog.dom.getElementsByTagNameAndClass(goog.dom.TagName.A, undefined, li)[0];
+    goog.dom.classes.enable(li, 'current', !!a && a.getAttribute('data-page') == String(json['page']));
   });
+  window.scrollTo(0, 0);
+};
+
+
+/**
+ * Builds the panel of one test of the list from the row fields served by
+ * /proctor/matrix/list.
+ *
+ * @param {Object} test The row of the test.
+ * @param {string} branch The branch of the list.
+ * @return {!Element} The panel of the test.
+ * @private
+ */
+indeed.proctor.app.matrix.list.renderRow_ = function(test, branch) {
+  var href = '/proctor/definition/' + encodeURIComponent(test['name']) + '?branch=' + encodeURIComponent(branch),
+      editHref = '/proctor/definition/' + encodeURIComponent(test['name']) + '/edit?branch=' + encodeURIComponent(branch),
+      allocations = goog.dom.createDom('div');
+
+  goog.array.forEach(test['allocations'], function(allocation, i) {
+    var bar = goog.dom.createDom('div', 'ui-allocation-bar');
+    goog.array.forEach(allocation['ranges'], function(range) {
+      var percent, label;
+      if (range['length'] > 0) {
+        percent = Math.round(range['length'] * 10000) / 100 + '%';
+        label = (range['bucket'] || '') + ' - ' + percent;
+        bar.appendChild(goog.dom.createDom('span', {
+              'title': label,
+              'class': 'ui-allocation-range ui-color' + ((1 + range['bucketValue']) % 12),
+              'style': 'width: ' + percent + ';'
+            },
+            goog.dom.createDom('span', 'ui-allocation-range-lbl', label)));
+      }
+    });
+    allocations.appendChild(goog.dom.createDom('div', 'media',
+        i > 0 || allocation['rule'] ?
+            goog.dom.createDom('span', 'img field-label pas', allocation['rule'] || '[Default]') : null,
+        goog.dom.createDom('div', 'bd pas', bar)));
+  });
+
+  return goog.dom.createDom('div', 'panel radius',
+      goog.dom.createDom('div', 'row ui-test-definition',
+          goog.dom.createDom('div', 'three columns',
+              goog.dom.createDom('h6', 'mtn', goog.dom.createDom('a', {'href': href}, test['name'])),
+              goog.dom.createDom('ul', 'button-group radius',
+                  goog.dom.createDom('li', null, goog.dom.createDom('a', {'class': 'tiny button secondary radius', 'href': editHref}, 'edit')),
+                  goog.dom.createDom('li', null, goog.dom.createDom('a', {'class': 'tiny button secondary radius', 'href': href}, 'details')))),
+          goog.dom.createDom('div', 'nine columns',
+              goog.dom.createDom('div', 'def-description', test['description'] || ''),
+              test['rule'] ? goog.dom.createDom('div', 'rule', 'rule: ' + test['rule']) : null,
+              allocations)));
 };
 
 
@@ -0,0 +1,146 @@
+package com.indeed.proctor.common;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestType;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Times {@link TestDefinitionDiff#isAllocationOnlyChange(TestDefinition, TestDefinition)} and the full
+ * {@link TestDefinitionDiff#compare(TestDefinition, TestDefinition)} against the field by field check autopromote
+ * used before the diff existed, on definitions the size of a large test.
+ *
+ * Not a unit test; run it by hand with the test classpath:
+ * java -cp ... com.indeed.proctor.common.AllocationOnlyChangeBenchmark [iterations] [rounds]
+ */
+public class AllocationOnlyChangeBenchmark {
+    public static void main(final String[] args) {
+        final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        final List<TestDefinition[]> pairs = Lists.newArrayList();
+        pairs.add(new TestDefinition[] { large(.5, null), large(.5, null) });
+        pairs.add(new TestDefinition[] { large(.5, null), large(.4, null) });
+        pairs.add(new TestDefinition[] { large(.5, null), large(0, null) });
+        pairs.add(new TestDefinition[] { large(0, null), large(.5, null) });
+        pairs.add(new TestDefinition[] { large(.5, null), large(.5, "country == 'US'") });
+        for (final TestDefinition[] pair : pairs) {
+            final boolean expected = baselineIsAllocationOnlyChange(pair[0], pair[1]);
+            if (expected != TestDefinitionDiff.isAllocationOnlyChange(pair[0], pair[1])
+                    || expected != TestDefinitionDiff.compare(pair[0], pair[1]).isAllocationOnlyChange()) {
+                throw new IllegalStateException("The checks disagree on " + TestDefinitionDiff.compare(pair[0], pair[1]).getChanges());
+            }
+        }
+
+        long baselineNanos = Long.MAX_VALUE;
+        long checkNanos = Long.MAX_VALUE;
+        long compareNanos = Long.MAX_VALUE;
+        int sink = 0;
+        // best of all rounds, the first ones warm up the JIT
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                final TestDefinition[] pair = pairs.get(i % pairs.size());
+                sink += baselineIsAllocationOnlyChange(pair[0], pair[1]) ? 1 : 0;
+            }
+            baselineNanos = Math.min(baselineNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                final TestDefinition[] pair = pairs.get(i % pairs.size());
+                sink += TestDefinitionDiff.isAllocationOnlyChange(pair[0], pair[1]) ? 1 : 0;
+            }
+            checkNanos = Math.min(checkNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                final TestDefinition[] pair = pairs.get(i % pairs.size());
+                sink += TestDefinitionDiff.compare(pair[0], pair[1]).getChanges().size();
+            }
+            compareNanos = Math.min(compareNanos, System.nanoTime() - start);
+        }
+        System.out.println(String.format("%d comparisons, best of %d rounds (%d):", iterations, rounds, sink));
+        System.out.println(String.format("  field by field check      %6d ms", baselineNanos / 1000000));
+        System.out.println(String.format("  isAllocationOnlyChange    %6d ms", checkNanos / 1000000));
+        System.out.println(String.format("  compare                   %6d ms", compareNanos / 1000000));
+    }
+
+    /* 20 buckets, 5 allocations of 40 ranges each */
+    private static TestDefinition large(final double firstLength, final String firstRule) {
+        final TestDefinition definition = new TestDefinition();
+        definition.setTestType(TestType.USER);
+        definition.setSalt("salt");
+        definition.setConstants(Collections.<String, Object>emptyMap());
+        definition.setSpecialConstants(Collections.<String, Object>emptyMap());
+        final List<TestBucket> buckets = Lists.newArrayList();
+        for (int b = 0; b < 20; b++) {
+            buckets.add(new TestBucket("bucket" + b, b, "bucket " + b));
+        }
+        definition.setBuckets(buckets);
+        final List<Allocation> allocations = Lists.newArrayList();
+        for (int a = 0; a < 5; a++) {
+            final List<Range> ranges = Lists.newArrayList(new Range(0, firstLength));
+            for (int r = 1; r < 40; r++) {
+                ranges.add(new Range(r % 20, (1 - firstLength) / 39));
+            }
+            allocations.add(new Allocation(a == 4 ? null : (a == 0 && firstRule != null ? firstRule : "rule" + a), ranges));
+        }
+        definition.setAllocations(allocations);
+        return definition;
+    }
+
+    /* the baseline: isAllocationOnlyChange as ProctorTestDefinitionController had it before TestDefinitionDiff,
+       less its per-bucket loop, which the buckets equals above already covers */
+    private static boolean baselineIsAllocationOnlyChange(final TestDefinition existingTestDefinition, final TestDefinition testDefinitionToUpdate) {
+        final List<Allocation> existingAllocations = existingTestDefinition.getAllocations();
+        final List<Allocation> allocationsToUpdate = testDefinitionToUpdate.getAllocations();
+        if (!Objects.equal(existingTestDefinition.getRule(), testDefinitionToUpdate.getRule())
+                || !Objects.equal(existingTestDefinition.getDescription(), testDefinitionToUpdate.getDescription())
+                || !existingTestDefinition.getConstants().equals(testDefinitionToUpdate.getConstants())
+                || !existingTestDefinition.getSpecialConstants().equals(testDefinitionToUpdate.getSpecialConstants())
+                || !existingTestDefinition.getTestType().equals(testDefinitionToUpdate.getTestType())
+                || !existingTestDefinition.getSalt().equals(testDefinitionToUpdate.getSalt())
+                || !existingTestDefinition.getBuckets().equals(testDefinitionToUpdate.getBuckets())
+                || existingAllocations.size() != allocationsToUpdate.size()) {
+            return false;
+        }
+        for (int i = 0; i < existingAllocations.size(); i++) {
+            if (!Objects.equal(existingAllocations.get(i).getRule(), allocationsToUpdate.get(i).getRule())) {
+                return false;
+            }
+            final Map<Integer, Double> existingAllocRangeMap = baselineRangeMap(existingAllocations.get(i).getRanges());
+            final Map<Integer, Double> allocToUpdateRangeMap = baselineRangeMap(allocationsToUpdate.get(i).getRanges());
+            if (!existingAllocRangeMap.keySet().equals(allocToUpdateRangeMap.keySet())) {
+                return false;
+            }
+            for (final Map.Entry<Integer, Double> entry : existingAllocRangeMap.entrySet()) {
+                final double existingLength = entry.getValue();
+                final double allocToUpdateLength = allocToUpdateRangeMap.get(entry.getKey());
+                if (existingLength == 0 && allocToUpdateLength != 0) {
+                    return false;
+                }
+                if (existingLength != 1 && allocToUpdateLength == 1) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static Map<Integer, Double> baselineRangeMap(final List<Range> ranges) {
+        final Map<Integer, Double> bucketToTotalAllocationMap = new HashMap<Integer, Double>();
+        for (final Range range : ranges) {
+            final Double sum = bucketToTotalAllocationMap.get(range.getBucketValue());
+            bucketToTotalAllocationMap.put(range.getBucketValue(), (sum == null ? 0 : sum) + range.getLength());
+        }
+        return bucketToTotalAllocationMap;
+    }
+}
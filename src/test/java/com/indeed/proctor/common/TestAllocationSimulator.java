@@ -0,0 +1,109 @@
+package com.indeed.proctor.common;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestType;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+public class TestAllocationSimulator {
+    private static final int IDENTIFIERS = 100000;
+    private static AllocationSimulator simulator;
+
+    @BeforeClass
+    public static void setUp() {
+        simulator = new AllocationSimulator(4);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        simulator.shutdown();
+    }
+
+    @Test
+    public void testObservedMatchesExpected() throws InterruptedException {
+        final AllocationSimulator.Report report = simulator.simulate("a", definition("salt", .2, .8),
+                Collections.<String, TestDefinition>emptyMap(), IDENTIFIERS);
+        Assert.assertEquals(IDENTIFIERS, report.getIdentifiers());
+        final List<AllocationSimulator.BucketResult> buckets = report.getAllocations().get(0).getBuckets();
+        Assert.assertEquals(2, buckets.size());
+        Assert.assertEquals("inactive", buckets.get(0).getBucket());
+        Assert.assertEquals(.2, buckets.get(0).getExpected(), 1e-9);
+        Assert.assertEquals(IDENTIFIERS, buckets.get(0).getCount() + buckets.get(1).getCount());
+        Assert.assertTrue(report.getAllocations().get(0).getMaxDeviation() < .01);
+    }
+
+    @Test
+    public void testUnallocated() throws InterruptedException {
+        final AllocationSimulator.Report report = simulator.simulate("a", definition("salt", .3, .3),
+                Collections.<String, TestDefinition>emptyMap(), IDENTIFIERS);
+        final List<AllocationSimulator.BucketResult> buckets = report.getAllocations().get(0).getBuckets();
+        Assert.assertEquals(3, buckets.size());
+        Assert.assertEquals(AllocationSimulator.UNALLOCATED, buckets.get(2).getBucket());
+        Assert.assertEquals(.4, buckets.get(2).getObserved(), .01);
+    }
+
+    @Test
+    public void testSameSaltIsCorrelated() throws InterruptedException {
+        final AllocationSimulator.Report shared = simulator.simulate("a", definition("salt", .5, .5),
+                ImmutableMap.of("b", definition("salt", .5, .5)), IDENTIFIERS);
+        final AllocationSimulator.SaltSharer sharer = shared.getSaltSharers().get(0);
+        Assert.assertEquals("b", sharer.getTestName());
+        // same salt and ranges: every identifier lands in the same bucket of both tests
+        Assert.assertEquals(Collections.singleton("inactive"), sharer.getJoint().get("inactive").keySet());
+        Assert.assertEquals(.25, sharer.getMaxDependence(), .01);
+
+        // the first quarter of the hash space is inactive in both, the rest of b is nested in a's buckets
+        final AllocationSimulator.Report nested = simulator.simulate("a", definition("salt", .5, .5),
+                ImmutableMap.of("b", definition("salt", .25, .75)), IDENTIFIERS);
+        Assert.assertEquals(Collections.singleton("active"), nested.getSaltSharers().get(0).getJoint().get("active").keySet());
+    }
+
+    @Test
+    public void testUploadedIdentifiers() throws InterruptedException {
+        final List<String> identifiers = Lists.newArrayList("a", "b", "c", "d", "e");
+        final AllocationSimulator.Report report = simulator.simulate("a", definition("salt", 1, 0),
+                Collections.<String, TestDefinition>emptyMap(), identifiers.iterator());
+        Assert.assertEquals(5, report.getIdentifiers());
+        Assert.assertEquals(5, report.getAllocations().get(0).getBuckets().get(0).getCount());
+    }
+
+    @Test
+    public void testUploadedIdentifiersInBatches() throws InterruptedException {
+        // more than a few batches per thread, so counts are summed while identifiers are still being read
+        final Iterator<String> identifiers = new AbstractIterator<String>() {
+            private int next = 0;
+
+            @Override
+            protected String computeNext() {
+                return next < 1000000 ? "user" + next++ : endOfData();
+            }
+        };
+        final AllocationSimulator.Report report = simulator.simulate("a", definition("salt", .2, .8),
+                Collections.<String, TestDefinition>emptyMap(), identifiers);
+        Assert.assertEquals(1000000, report.getIdentifiers());
+        final List<AllocationSimulator.BucketResult> buckets = report.getAllocations().get(0).getBuckets();
+        Assert.assertEquals(1000000, buckets.get(0).getCount() + buckets.get(1).getCount());
+        Assert.assertTrue(report.getAllocations().get(0).getMaxDeviation() < .01);
+    }
+
+    private static TestDefinition definition(final String salt, final double inactive, final double active) {
+        final TestDefinition definition = new TestDefinition();
+        definition.setTestType(TestType.USER);
+        definition.setSalt(salt);
+        definition.setBuckets(Lists.newArrayList(new TestBucket("inactive", -1, "inactive"), new TestBucket("active", 1, "active")));
+        definition.setAllocations(Lists.newArrayList(new Allocation(null, Lists.newArrayList(new Range(-1, inactive), new Range(1, active)))));
+        return definition;
+    }
+}
@@ -0,0 +1,71 @@
+package com.indeed.proctor.common;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.common.model.TestType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Checks that AllocationSimulator puts fixed identifiers in the same buckets as proctor's own chooser.
+ */
+public class TestAllocationSimulatorParity {
+    private static final String TEST_NAME = "parity_tst";
+
+    @Test
+    public void testSameBucketsAsProctor() throws InterruptedException {
+        final TestDefinition definition = new TestDefinition();
+        definition.setVersion("1");
+        definition.setTestType(TestType.USER);
+        definition.setSalt("parity_salt");
+        definition.setBuckets(Lists.newArrayList(new TestBucket("inactive", -1, "inactive"),
+                                                 new TestBucket("control", 0, "control"),
+                                                 new TestBucket("test", 1, "test")));
+        definition.setAllocations(Lists.newArrayList(new Allocation(null, Lists.newArrayList(new Range(-1, .1), new Range(0, .45), new Range(1, .45)))));
+
+        final TestMatrixVersion matrix = new TestMatrixVersion();
+        matrix.setVersion("1");
+        matrix.setAuthor("parity");
+        matrix.setPublished(new Date());
+        matrix.setTestMatrixDefinition(new TestMatrixDefinition(ImmutableMap.of(TEST_NAME, definition)));
+        final Proctor proctor = Proctor.construct(ConsumableArtifacts.convert(matrix), ProctorLoadResult.emptyResult(), RuleEvaluator.FUNCTION_MAPPER);
+
+        final List<String> identifiers = Lists.newArrayList("", "0", "user", "été", "a,b");
+        for (int i = 0; i < 200; i++) {
+            identifiers.add("user" + i);
+        }
+        final AllocationSimulator simulator = new AllocationSimulator(1);
+        try {
+            for (final String identifier : identifiers) {
+                final TestBucket expected = proctor.determineTestGroups(new Identifiers(TestType.USER, identifier),
+                                                                        Collections.<String, Object>emptyMap(),
+                                                                        Collections.<String, Integer>emptyMap()).getBuckets().get(TEST_NAME);
+                Assert.assertNotNull(identifier, expected);
+                final AllocationSimulator.Report report = simulator.simulate(TEST_NAME, definition, Collections.<String, TestDefinition>emptyMap(),
+                                                                             Collections.singletonList(identifier).iterator());
+                Assert.assertEquals(identifier, expected.getName(), bucketOf(report));
+            }
+        } finally {
+            simulator.shutdown();
+        }
+    }
+
+    private static String bucketOf(final AllocationSimulator.Report report) {
+        for (final AllocationSimulator.BucketResult bucket : report.getAllocations().get(0).getBuckets()) {
+            if (bucket.getCount() > 0) {
+                return bucket.getBucket();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,83 @@
+package com.indeed.proctor.common;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.common.model.TestType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class TestDriftReport {
+    @Test
+    public void testStatuses() {
+        final TestMatrixVersion trunk = matrix("3");
+        final TestMatrixVersion qa = matrix("2");
+        final TestMatrixVersion production = matrix("1");
+
+        put(trunk, "same", definition("salt", 0, 1));
+        put(qa, "same", definition("salt", 0, 1));
+        put(production, "same", definition("salt", 0, 1));
+
+        // ramped up from 0% to 10% and then 100%: not autopromotable, but still only a change of allocation
+        put(trunk, "ramped", definition("salt", 1, 0));
+        put(qa, "ramped", definition("salt", .9, .1));
+        put(production, "ramped", definition("salt", 0, 1));
+
+        put(trunk, "resalted", definition("new salt", 0, 1));
+        put(qa, "resalted", definition("salt", 0, 1));
+        put(production, "resalted", definition("salt", 0, 1));
+
+        put(trunk, "new", definition("salt", 0, 1));
+
+        final DriftReport report = DriftReport.compute(trunk, qa, production);
+        Assert.assertEquals(Collections.singletonList("same"), names(report, DriftReport.Status.IDENTICAL));
+        Assert.assertEquals(Collections.singletonList("ramped"), names(report, DriftReport.Status.ALLOCATION_ONLY));
+        Assert.assertEquals(Collections.singletonList("resalted"), names(report, DriftReport.Status.DIFFERENT));
+        Assert.assertEquals(Collections.singletonList("new"), names(report, DriftReport.Status.MISSING));
+
+        final DriftReport.TestDrift resalted = report.getTests().get(DriftReport.Status.DIFFERENT).get(0);
+        Assert.assertEquals(DriftReport.Status.DIFFERENT, resalted.getComparisons().get("trunk-qa"));
+        Assert.assertEquals(DriftReport.Status.IDENTICAL, resalted.getComparisons().get("qa-production"));
+
+        Assert.assertTrue(report.isFor(trunk, qa, production));
+        Assert.assertFalse(report.isFor(matrix("4"), qa, production));
+    }
+
+    private static List<String> names(final DriftReport report, final DriftReport.Status status) {
+        final List<String> names = Lists.newArrayList();
+        for (final DriftReport.TestDrift drift : report.getTests().get(status)) {
+            names.add(drift.getTestName());
+        }
+        return names;
+    }
+
+    private static TestMatrixVersion matrix(final String version) {
+        final TestMatrixVersion matrix = new TestMatrixVersion();
+        matrix.setVersion(version);
+        matrix.setTestMatrixDefinition(new TestMatrixDefinition(Maps.<String, TestDefinition>newHashMap()));
+        return matrix;
+    }
+
+    private static void put(final TestMatrixVersion matrix, final String testName, final TestDefinition definition) {
+        final Map<String, TestDefinition> tests = matrix.getTestMatrixDefinition().getTests();
+        tests.put(testName, definition);
+    }
+
+    private static TestDefinition definition(final String salt, final double inactive, final double active) {
+        final TestDefinition definition = new TestDefinition();
+        definition.setTestType(TestType.USER);
+        definition.setSalt(salt);
+        definition.setBuckets(Lists.newArrayList(new TestBucket("inactive", -1, "inactive"), new TestBucket("active", 1, "active")));
+        definition.setAllocations(Lists.newArrayList(new Allocation(null, Lists.newArrayList(new Range(-1, inactive), new Range(1, active)))));
+        return definition;
+    }
+}
@@ -0,0 +1,53 @@
+package com.indeed.proctor.common;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.webapp.db.Environment;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+public class TestSaltIndex {
+    @Test
+    public void testCollisions() {
+        final Map<Environment, TestMatrixVersion> matrices = new EnumMap<Environment, TestMatrixVersion>(Environment.class);
+        matrices.put(Environment.WORKING, matrix("2", ImmutableMap.of("a", definition("shared"), "b", definition("shared"), "c", definition("c"))));
+        matrices.put(Environment.QA, matrix("1", ImmutableMap.of("a", definition("shared"), "c", definition("shared"))));
+        matrices.put(Environment.PRODUCTION, matrix("1", ImmutableMap.<String, TestDefinition>of()));
+        final SaltIndex index = SaltIndex.build(matrices);
+
+        final Map<String, Set<Environment>> collisions = index.getCollisions("a", "shared");
+        Assert.assertEquals(EnumSet.of(Environment.WORKING), collisions.get("b"));
+        Assert.assertEquals(EnumSet.of(Environment.QA), collisions.get("c"));
+        Assert.assertFalse(collisions.containsKey("a"));
+        Assert.assertTrue(index.getCollisions("c", "c").isEmpty());
+        Assert.assertTrue(index.getCollisions("new", "unused").isEmpty());
+
+        Assert.assertEquals(1, index.getSharedSalts().size());
+        Assert.assertEquals("trunk, qa", index.getSharedSalts().get(0).getTests().get("a"));
+        Assert.assertEquals(Lists.newArrayList("a", "b"), index.getSharedSalts(Environment.WORKING).get("shared"));
+        Assert.assertTrue(index.getSharedSalts(Environment.PRODUCTION).isEmpty());
+    }
+
+    private static TestMatrixVersion matrix(final String version, final Map<String, TestDefinition> tests) {
+        final TestMatrixDefinition definition = new TestMatrixDefinition();
+        definition.setTests(tests);
+        final TestMatrixVersion matrix = new TestMatrixVersion();
+        matrix.setVersion(version);
+        matrix.setTestMatrixDefinition(definition);
+        return matrix;
+    }
+
+    private static TestDefinition definition(final String salt) {
+        final TestDefinition definition = new TestDefinition();
+        definition.setSalt(salt);
+        return definition;
+    }
+}
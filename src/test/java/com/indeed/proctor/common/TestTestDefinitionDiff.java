@@ -0,0 +1,96 @@
+package com.indeed.proctor.common;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+public class TestTestDefinitionDiff {
+    @Test
+    public void testIdentical() {
+        final TestDefinitionDiff diff = TestDefinitionDiff.compare(definition("country == 'US'", .5, .5), definition("country == 'US'", .5, .5));
+        Assert.assertTrue(diff.isEmpty());
+        Assert.assertTrue(diff.isAllocationOnlyChange());
+    }
+
+    @Test
+    public void testRangesAreSummedPerBucket() {
+        final TestDefinition split = definition(null, .5, .5);
+        split.getAllocations().get(0).setRanges(Lists.newArrayList(new Range(0, .25), new Range(1, .5), new Range(0, .25)));
+        Assert.assertTrue(TestDefinitionDiff.compare(definition(null, .5, .5), split).isEmpty());
+    }
+
+    @Test
+    public void testChanges() {
+        final TestDefinition before = definition("country == 'US'", .7, .3);
+        final TestDefinition after = definition("country == 'CA'", .5, .5);
+        after.setConstants(ImmutableMap.<String, Object>of("COUNTRIES", "CA"));
+        after.getBuckets().add(new TestBucket("extra", 2, "extra bucket"));
+
+        final TestDefinitionDiff diff = TestDefinitionDiff.compare(before, after);
+        Assert.assertEquals(Lists.newArrayList(
+                "rule: country == 'US' -> country == 'CA'",
+                "constants.COUNTRIES added: CA",
+                "buckets[extra] added: 2",
+                "allocations[0].ranges[0]: 0.7 -> 0.5",
+                "allocations[0].ranges[1]: 0.3 -> 0.5"), descriptions(diff));
+        Assert.assertFalse(diff.isAllocationOnlyChange());
+
+        final TestDefinitionDiff allocationOnly = TestDefinitionDiff.compare(definition(null, .7, .3), definition(null, .5, .5));
+        Assert.assertEquals(2, allocationOnly.getChanges().size());
+        Assert.assertTrue(allocationOnly.isAllocationOnlyChange());
+        Assert.assertFalse(TestDefinitionDiff.compare(definition(null, .5, .5), definition(null, 1, 0)).isAllocationOnlyChange());
+
+        // ramping up is a range only change, but not one that is promoted automatically
+        final TestDefinitionDiff rampUp = TestDefinitionDiff.compare(definition(null, 1, 0), definition(null, .9, .1));
+        Assert.assertTrue(rampUp.isRangeOnlyChange());
+        Assert.assertFalse(rampUp.isAllocationOnlyChange());
+        Assert.assertFalse(diff.isRangeOnlyChange());
+    }
+
+    @Test
+    public void testAllocationOnlyCheckAgreesWithDiff() {
+        final TestDefinition bucketAdded = definition(null, .5, .5);
+        bucketAdded.getBuckets().add(new TestBucket("extra", 2, "extra bucket"));
+        final TestDefinition ruleAdded = definition(null, .5, .5);
+        ruleAdded.getAllocations().get(0).setRule("country == 'US'");
+        final TestDefinition constantAdded = definition(null, .5, .5);
+        constantAdded.setConstants(ImmutableMap.<String, Object>of("COUNTRIES", "CA"));
+        final List<TestDefinition> definitions = Lists.newArrayList(
+                definition(null, .5, .5), definition(null, .7, .3), definition(null, 1, 0), definition(null, 0, 1),
+                definition("country == 'US'", .5, .5), bucketAdded, ruleAdded, constantAdded);
+        for (final TestDefinition from : definitions) {
+            for (final TestDefinition to : definitions) {
+                Assert.assertEquals(TestDefinitionDiff.compare(from, to).isAllocationOnlyChange(), TestDefinitionDiff.isAllocationOnlyChange(from, to));
+            }
+        }
+    }
+
+    private static TestDefinition definition(final String rule, final double inactive, final double active) {
+        final TestDefinition definition = new TestDefinition();
+        definition.setRule(rule);
+        definition.setTestType(TestType.USER);
+        definition.setSalt("salt");
+        definition.setConstants(Collections.<String, Object>emptyMap());
+        definition.setSpecialConstants(Collections.<String, Object>emptyMap());
+        definition.setBuckets(Lists.newArrayList(new TestBucket("inactive", 0, "inactive"), new TestBucket("active", 1, "active")));
+        definition.setAllocations(Lists.newArrayList(new Allocation(null, Lists.newArrayList(new Range(0, inactive), new Range(1, active)))));
+        return definition;
+    }
+
+    private static List<String> descriptions(final TestDefinitionDiff diff) {
+        final List<String> descriptions = Lists.newArrayList();
+        for (final TestDefinitionDiff.Change change : diff.getChanges()) {
+            descriptions.add(change.toString());
+        }
+        return descriptions;
+    }
+}
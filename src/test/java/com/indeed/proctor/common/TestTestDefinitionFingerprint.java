@@ -0,0 +1,72 @@
+package com.indeed.proctor.common;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Payload;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class TestTestDefinitionFingerprint {
+    @Test
+    public void testSameContent() {
+        final TestDefinition a = definition(.5, .5);
+        a.setVersion("10");
+        a.setConstants(ImmutableMap.<String, Object>of("A", 1, "B", Lists.newArrayList("x", "y")));
+        final TestDefinition b = definition(.5, .5);
+        b.setVersion("12");
+        b.setConstants(ImmutableMap.<String, Object>of("B", Lists.newArrayList("x", "y"), "A", 1));
+
+        Assert.assertEquals(TestDefinitionFingerprint.of(a), TestDefinitionFingerprint.of(b));
+        Assert.assertTrue(TestDefinitionFingerprint.sameContent(a, b));
+        Assert.assertFalse(new TestDefinitionFingerprint.Key(a).equals(new TestDefinitionFingerprint.Key(b)));
+    }
+
+    @Test
+    public void testDifferentContent() {
+        final TestDefinition base = definition(.5, .5);
+        Assert.assertFalse(TestDefinitionFingerprint.sameContent(base, definition(.4, .6)));
+
+        final TestDefinition reordered = definition(.5, .5);
+        reordered.getAllocations().get(0).setRanges(Lists.newArrayList(new Range(1, .5), new Range(0, .5)));
+        Assert.assertFalse(TestDefinitionFingerprint.sameContent(base, reordered));
+
+        final TestDefinition withPayload = definition(.5, .5);
+        final Payload payload = new Payload();
+        payload.setStringValue("blue");
+        withPayload.getBuckets().get(1).setPayload(payload);
+        Assert.assertFalse(TestDefinitionFingerprint.sameContent(base, withPayload));
+
+        final TestDefinition renamed = definition(.5, .5);
+        renamed.setSalt("other");
+        Assert.assertFalse(TestDefinitionFingerprint.sameContent(base, renamed));
+    }
+
+    @Test
+    public void testRegisteredFingerprintIsReused() {
+        final TestDefinition definition = definition(.5, .5);
+        final HashCode registered = TestDefinitionFingerprint.register(definition);
+        // loaded definitions are not supposed to change, so the fingerprint computed at load time is kept
+        definition.setSalt("other");
+        Assert.assertEquals(registered, TestDefinitionFingerprint.of(definition));
+    }
+
+    private static TestDefinition definition(final double inactive, final double active) {
+        final TestDefinition definition = new TestDefinition();
+        definition.setRule("country == 'US'");
+        definition.setTestType(TestType.USER);
+        definition.setSalt("salt");
+        definition.setConstants(Collections.<String, Object>emptyMap());
+        definition.setSpecialConstants(Collections.<String, Object>emptyMap());
+        definition.setBuckets(Lists.newArrayList(new TestBucket("inactive", 0, "inactive"), new TestBucket("active", 1, "active")));
+        definition.setAllocations(Lists.newArrayList(new Allocation(null, Lists.newArrayList(new Range(0, inactive), new Range(1, active)))));
+        return definition;
+    }
+}
@@ -0,0 +1,78 @@
+package com.indeed.proctor.common;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixDefinition;
+import com.indeed.proctor.webapp.db.Environment;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+public class TestTestSearchIndex {
+    @Test
+    public void testSearch() {
+        final TestSearchIndex index = new TestSearchIndex();
+        final Map<String, TestDefinition> tests = Maps.newLinkedHashMap();
+        tests.put("srpcolortst", definition("1", "country == 'US'", "Color of the search button", "blue"));
+        tests.put("acmefoottst", definition("2", null, "Footer links", "control"));
+        index.update(Environment.WORKING, matrix(tests));
+
+        Assert.assertEquals(Lists.newArrayList("srpcolortst"), testNames(index.search("countr", null, 10)));
+        Assert.assertEquals(EnumSet.of(TestSearchIndex.Field.ALLOCATION_RULE, TestSearchIndex.Field.BUCKET),
+                            index.search("country blue", Environment.WORKING, 10).get(0).getFields());
+        Assert.assertEquals(Collections.<String>emptyList(), testNames(index.search("country footer", null, 10)));
+        Assert.assertEquals(Collections.<String>emptyList(), testNames(index.search("country", Environment.QA, 10)));
+        Assert.assertEquals(Lists.newArrayList("acmefoottst"), testNames(index.search("LINKS", null, 10)));
+
+        // new version of srpcolortst, acmefoottst removed
+        final Map<String, TestDefinition> updated = Maps.newLinkedHashMap();
+        updated.put("srpcolortst", definition("3", "lang == 'en'", "Color of the search button", "green"));
+        index.update(Environment.WORKING, matrix(updated));
+        Assert.assertEquals(Collections.<String>emptyList(), testNames(index.search("country", null, 10)));
+        Assert.assertEquals(Lists.newArrayList("srpcolortst"), testNames(index.search("green lang", null, 10)));
+        Assert.assertEquals(Collections.<String>emptyList(), testNames(index.search("footer", null, 10)));
+    }
+
+    @Test
+    public void testEditKeepingTheVersionIsReindexed() {
+        final TestSearchIndex index = new TestSearchIndex();
+        index.update(Environment.WORKING, matrix(Collections.singletonMap("srpcolortst", definition("1", "country == 'US'", "Color", "blue"))));
+        Assert.assertEquals(Lists.newArrayList("srpcolortst"), testNames(index.search("blue", null, 10)));
+
+        // edits keep the version of the definition they replace
+        index.update(Environment.WORKING, matrix(Collections.singletonMap("srpcolortst", definition("1", "country == 'US'", "Color", "green"))));
+        Assert.assertEquals(Collections.<String>emptyList(), testNames(index.search("blue", null, 10)));
+        Assert.assertEquals(Lists.newArrayList("srpcolortst"), testNames(index.search("green", null, 10)));
+    }
+
+    private static TestDefinition definition(final String version, final String rule, final String description, final String bucket) {
+        final TestDefinition definition = new TestDefinition();
+        definition.setVersion(version);
+        definition.setDescription(description);
+        definition.setAllocations(Lists.newArrayList(new Allocation(rule, Collections.<Range>emptyList())));
+        definition.setBuckets(Lists.newArrayList(new TestBucket(bucket, 0, "")));
+        return definition;
+    }
+
+    private static TestMatrixDefinition matrix(final Map<String, TestDefinition> tests) {
+        final TestMatrixDefinition matrix = new TestMatrixDefinition();
+        matrix.setTests(tests);
+        return matrix;
+    }
+
+    private static List<String> testNames(final List<TestSearchIndex.Hit> hits) {
+        final List<String> names = Lists.newArrayList();
+        for (final TestSearchIndex.Hit hit : hits) {
+            names.add(hit.getTestName());
+        }
+        return names;
+    }
+}
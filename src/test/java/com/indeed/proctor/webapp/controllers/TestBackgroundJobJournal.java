@@ -0,0 +1,106 @@
+package com.indeed.proctor.webapp.controllers;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Tests for BackgroundJobJournal.java
+ */
+public class TestBackgroundJobJournal {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplay() throws IOException {
+        final File file = new File(folder.getRoot(), "jobs/journal");
+        final BackgroundJobJournal journal = BackgroundJobJournal.open(file, 10, Long.MAX_VALUE);
+        Assert.assertTrue(journal.getRestoredJobs().isEmpty());
+        journal.recordSubmitted(1, "finished job");
+        journal.recordLog(1, "step 1");
+        journal.recordFinished(1, "DONE");
+        journal.recordSubmitted(2, "running job");
+        journal.recordLog(2, "step 1");
+        journal.recordLog(2, "step 2");
+        journal.close();
+
+        final BackgroundJobJournal reopened = BackgroundJobJournal.open(file, 10, Long.MAX_VALUE);
+        reopened.close();
+        final List<BackgroundJobJournal.RestoredBackgroundJob> restored = reopened.getRestoredJobs();
+        Assert.assertEquals(2, restored.size());
+        final BackgroundJobJournal.RestoredBackgroundJob finished = restored.get(0);
+        Assert.assertEquals(Long.valueOf(1), finished.getId());
+        Assert.assertEquals("finished job", finished.getTitle());
+        Assert.assertEquals("DONE", finished.getStatus());
+        Assert.assertEquals("step 1\n", finished.getLog());
+        Assert.assertFalse(finished.isRunning());
+        Assert.assertEquals("DONE", finished.call());
+
+        final BackgroundJobJournal.RestoredBackgroundJob interrupted = restored.get(1);
+        Assert.assertEquals(BackgroundJobJournal.INTERRUPTED_STATUS, interrupted.getStatus());
+        Assert.assertTrue(interrupted.getLog().endsWith("Last step: step 2\n"));
+    }
+
+    @Test
+    public void testBatchedUntilFinished() throws IOException {
+        final File file = folder.newFile("journal");
+        final BackgroundJobJournal journal = BackgroundJobJournal.open(file, 10, Long.MAX_VALUE);
+        final long empty = file.length();
+        journal.recordSubmitted(1, "job");
+        journal.recordLog(1, "step 1");
+        // queued, not written by the logging thread
+        Assert.assertEquals(empty, file.length());
+        journal.recordFinished(1, "DONE");
+        Assert.assertTrue(file.length() > empty);
+        journal.close();
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        final File file = folder.newFile("journal");
+        final BackgroundJobJournal journal = BackgroundJobJournal.open(file, 2, 1);
+        for (int id = 1; id <= 5; id++) {
+            journal.recordSubmitted(id, "job " + id);
+            journal.recordLog(id, "step");
+            journal.recordFinished(id, "DONE");
+        }
+        journal.close();
+
+        final BackgroundJobJournal reopened = BackgroundJobJournal.open(file, 2, Long.MAX_VALUE);
+        reopened.close();
+        final List<BackgroundJobJournal.RestoredBackgroundJob> restored = reopened.getRestoredJobs();
+        Assert.assertEquals(2, restored.size());
+        Assert.assertEquals("job 4", restored.get(0).getTitle());
+        Assert.assertEquals("job 5", restored.get(1).getTitle());
+        Assert.assertEquals("step\n", restored.get(1).getLog());
+    }
+
+    @Test
+    public void testTruncatedRecordIgnored() throws IOException {
+        final File file = folder.newFile("journal");
+        final BackgroundJobJournal journal = BackgroundJobJournal.open(file, 10, Long.MAX_VALUE);
+        journal.recordSubmitted(1, "job");
+        journal.recordFinished(1, "DONE");
+        journal.close();
+
+        // a record cut short by a crash mid-write
+        final FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(new byte[] { 2, 0, 0, 0 });
+        } finally {
+            out.close();
+        }
+
+        final BackgroundJobJournal reopened = BackgroundJobJournal.open(file, 10, Long.MAX_VALUE);
+        reopened.close();
+        final List<BackgroundJobJournal.RestoredBackgroundJob> restored = reopened.getRestoredJobs();
+        Assert.assertEquals(1, restored.size());
+        Assert.assertEquals("DONE", restored.get(0).getStatus());
+    }
+}
@@ -0,0 +1,54 @@
+package com.indeed.proctor.webapp.controllers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for BackgroundJobLog.java
+ */
+public class TestBackgroundJobLog {
+
+    @Test
+    public void testReadSince() {
+        final BackgroundJobLog log = new BackgroundJobLog();
+        Assert.assertEquals("", log.getText());
+        Assert.assertEquals(0, log.read(0).getEnd());
+
+        for (int i = 0; i < 300; i++) {
+            log.append("line " + i);
+        }
+        Assert.assertEquals(300, log.getLineCount());
+        Assert.assertTrue(log.getText().startsWith("line 0\nline 1\n"));
+        Assert.assertTrue(log.getText().endsWith("line 299\n"));
+
+        final BackgroundJobLog.Slice tail = log.read(298);
+        Assert.assertEquals("line 298\nline 299\n", tail.getText());
+        Assert.assertEquals(298, tail.getStart());
+        Assert.assertEquals(300, tail.getEnd());
+
+        // offsets past the end are clamped
+        final BackgroundJobLog.Slice empty = log.read(1000);
+        Assert.assertEquals("", empty.getText());
+        Assert.assertEquals(300, empty.getStart());
+    }
+
+    @Test
+    public void testCompact() {
+        final BackgroundJobLog log = new BackgroundJobLog();
+        for (int i = 0; i < 200; i++) {
+            log.append("line " + i);
+        }
+        final String before = log.getText();
+        log.compact();
+        Assert.assertEquals(before, log.getText());
+        Assert.assertEquals("line 199\n", log.read(199).getText());
+
+        // appending after compaction keeps offsets stable
+        log.append("multi\nline");
+        Assert.assertEquals(201, log.getLineCount());
+        Assert.assertEquals("line 199\nmulti\nline\n", log.read(199).getText());
+        log.compact();
+        Assert.assertEquals("multi\nline\n", log.read(200).getText());
+        Assert.assertEquals(before + "multi\nline\n", log.getText());
+    }
+}
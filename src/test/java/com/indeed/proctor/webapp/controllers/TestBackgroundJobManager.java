@@ -0,0 +1,137 @@
+package com.indeed.proctor.webapp.controllers;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for BackgroundJobManager.java
+ */
+public class TestBackgroundJobManager {
+
+    @Test
+    public void testBatchJobWaitsForEveryLane() throws Exception {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+        try {
+            final BackgroundJobManager manager = new BackgroundJobManager(executor);
+            final List<String> order = Collections.synchronizedList(Lists.<String>newArrayList());
+            final CountDownLatch releaseA = new CountDownLatch(1);
+            final CountDownLatch releaseB = new CountDownLatch(1);
+
+            final BackgroundJob<Boolean> editA = job("a", order, releaseA);
+            final BackgroundJob<Boolean> editB = job("b", order, releaseB);
+            final BackgroundJob<Boolean> batch = job("batch", order, null);
+            final BackgroundJob<Boolean> laterA = job("later a", order, null);
+            final BackgroundJob<Boolean> other = job("c", order, null);
+
+            manager.submit(editA, "a");
+            manager.submit(editB, "b");
+            manager.submit(batch, ImmutableList.of("a", "b"));
+            manager.submit(laterA, "a");
+            manager.submit(other, "c");
+
+            // unrelated lanes are not held up by the batch
+            other.getFuture().get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(2, manager.getQueuedLaneJobCount());
+
+            releaseA.countDown();
+            editA.getFuture().get(5, TimeUnit.SECONDS);
+            Thread.sleep(50);
+            Assert.assertFalse("the batch still waits for b", batch.getFuture().isDone());
+            Assert.assertFalse("a is held by the batch", laterA.getFuture().isDone());
+
+            releaseB.countDown();
+            laterA.getFuture().get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(batch.getFuture().isDone());
+            Assert.assertTrue(order.indexOf("batch") > order.indexOf("b"));
+            Assert.assertTrue(order.indexOf("later a") > order.indexOf("batch"));
+            awaitNoLanes(manager);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCancelledJobReleasesLane() throws Exception {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+        try {
+            final BackgroundJobManager manager = new BackgroundJobManager(executor);
+            final List<String> order = Collections.synchronizedList(Lists.<String>newArrayList());
+            final CountDownLatch release = new CountDownLatch(1);
+            final BackgroundJob<Boolean> first = job("first", order, release);
+            final BackgroundJob<Boolean> cancelled = job("cancelled", order, null);
+            final BackgroundJob<Boolean> last = job("last", order, null);
+            manager.submit(first, "a");
+            manager.submit(cancelled, ImmutableList.of("a", "b"));
+            manager.submit(last, "b");
+
+            cancelled.getFuture().cancel(false);
+            release.countDown();
+            last.getFuture().get(5, TimeUnit.SECONDS);
+            Assert.assertFalse(order.contains("cancelled"));
+            awaitNoLanes(manager);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRejectedJobIsNotLeftRunning() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+        executor.shutdown();
+        final BackgroundJobManager manager = new BackgroundJobManager(executor);
+        final BackgroundJob<Boolean> plain = job("plain", Lists.<String>newArrayList(), null);
+        final BackgroundJob<Boolean> laned = job("laned", Lists.<String>newArrayList(), null);
+        try {
+            manager.submit(plain);
+            Assert.fail("the executor is shut down");
+        } catch (final RejectedExecutionException expected) {
+        }
+        try {
+            manager.submit(laned, "a");
+            Assert.fail("the executor is shut down");
+        } catch (final RejectedExecutionException expected) {
+        }
+        for (final BackgroundJob<Boolean> job : ImmutableList.of(plain, laned)) {
+            Assert.assertFalse(job.isRunning());
+            Assert.assertEquals("CANCELLED", job.getStatus());
+            Assert.assertTrue(job.getLog().contains("Failed to start"));
+        }
+        Assert.assertEquals(0, manager.getActiveLaneCount());
+    }
+
+    /* lanes are released right after the last job's future completes */
+    private static void awaitNoLanes(final BackgroundJobManager manager) throws InterruptedException {
+        for (int i = 0; i < 100 && manager.getActiveLaneCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, manager.getActiveLaneCount());
+    }
+
+    private static BackgroundJob<Boolean> job(final String name, final List<String> order, final CountDownLatch release) {
+        return new BackgroundJob<Boolean>() {
+            @Override
+            public String getTitle() {
+                return name;
+            }
+
+            @Override
+            public Boolean call() throws Exception {
+                if (release != null) {
+                    Assert.assertTrue(release.await(5, TimeUnit.SECONDS));
+                }
+                order.add(name);
+                return true;
+            }
+        };
+    }
+}
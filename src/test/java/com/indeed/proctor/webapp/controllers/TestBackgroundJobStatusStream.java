@@ -0,0 +1,132 @@
+package com.indeed.proctor.webapp.controllers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for BackgroundJobStatusStream.java
+ */
+public class TestBackgroundJobStatusStream {
+
+    @Test
+    public void testSlowClientDoesNotStallOthers() throws Exception {
+        final BackgroundJobStatusStream stream = new BackgroundJobStatusStream(200);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        try {
+            final BackgroundJob<Boolean> job = new BackgroundJob<Boolean>() {
+                @Override
+                public String getTitle() {
+                    return "job";
+                }
+
+                @Override
+                public Boolean call() {
+                    return true;
+                }
+            };
+            job.setId(1);
+            final Client slow = new Client(new Writer() {
+                @Override
+                public void write(final char[] buffer, final int offset, final int length) throws IOException {
+                    try {
+                        unblock.await();
+                    } catch (final InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+
+                @Override
+                public void flush() {
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+            final StringWriter fastOutput = new StringWriter();
+            final Client fast = new Client(fastOutput);
+            stream.subscribe(job, slow.request, slow.response, 0);
+            stream.subscribe(job, fast.request, fast.response, 0);
+
+            job.log("first");
+            Assert.assertTrue(await(fastOutput, "first"));
+            // the slow client is dropped once its write has been blocked for longer than the timeout
+            Assert.assertTrue(slow.completed.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, stream.getSlowSubscribersDropped());
+            Assert.assertEquals(1, stream.getSubscriberCount());
+
+            job.log("second");
+            Assert.assertTrue(await(fastOutput, "second"));
+        } finally {
+            unblock.countDown();
+            stream.shutdown();
+        }
+    }
+
+    private static boolean await(final StringWriter output, final String text) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            synchronized (output.getBuffer()) {
+                if (output.toString().contains(text)) {
+                    return true;
+                }
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    /**
+     * The parts of a suspended request the stream uses.
+     */
+    private static class Client {
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private final HttpServletResponse response;
+        private final AsyncContext context;
+        private final HttpServletRequest request;
+
+        private Client(final Writer output) {
+            final PrintWriter writer = new PrintWriter(output);
+            response = proxy(HttpServletResponse.class, new InvocationHandler() {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                    return "getWriter".equals(method.getName()) ? writer : null;
+                }
+            });
+            context = proxy(AsyncContext.class, new InvocationHandler() {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                    if ("getResponse".equals(method.getName())) {
+                        return response;
+                    } else if ("complete".equals(method.getName())) {
+                        completed.countDown();
+                    }
+                    return null;
+                }
+            });
+            request = proxy(HttpServletRequest.class, new InvocationHandler() {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                    return "startAsync".equals(method.getName()) ? context : null;
+                }
+            });
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(TestBackgroundJobStatusStream.class.getClassLoader(), new Class[] { type }, handler);
+    }
+}
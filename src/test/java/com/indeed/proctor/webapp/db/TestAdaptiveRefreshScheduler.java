@@ -0,0 +1,169 @@
+package com.indeed.proctor.webapp.db;
+
+import com.indeed.proctor.common.model.TestDefinition;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for AdaptiveRefreshScheduler.java
+ */
+public class TestAdaptiveRefreshScheduler {
+    // long enough that scheduled refreshes never fire, the tests run them by hand
+    private static final long MIN_DELAY_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long MAX_DELAY_MILLIS = 4 * MIN_DELAY_MILLIS;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new ScheduledThreadPoolExecutor(1);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testDelayBacksOffUntilAChange() {
+        final VersionedStore store = new VersionedStore();
+        final AdaptiveRefreshScheduler scheduler = new AdaptiveRefreshScheduler(executor, noop(), "test", MIN_DELAY_MILLIS, MAX_DELAY_MILLIS);
+        scheduler.watch(store);
+
+        scheduler.run();
+        Assert.assertEquals(2 * MIN_DELAY_MILLIS, scheduler.getDelayMillis());
+        scheduler.run();
+        scheduler.run();
+        Assert.assertEquals(MAX_DELAY_MILLIS, scheduler.getDelayMillis());
+
+        // pulled in by the refresh
+        store.version++;
+        scheduler.run();
+        Assert.assertEquals(MIN_DELAY_MILLIS, scheduler.getDelayMillis());
+        Assert.assertEquals(1, scheduler.getChangeCount());
+        Assert.assertEquals(4, scheduler.getRefreshCount());
+        Assert.assertEquals(4, executor.getQueue().size());
+    }
+
+    @Test
+    public void testLocalWriteBringsTheRefreshForward() throws Exception {
+        final VersionedStore store = new VersionedStore();
+        final AdaptiveRefreshScheduler scheduler = new AdaptiveRefreshScheduler(executor, noop(), "test", MIN_DELAY_MILLIS, MAX_DELAY_MILLIS);
+        final ForwardingProctorStore watched = (ForwardingProctorStore) scheduler.watch(store);
+        scheduler.run();
+        scheduler.run();
+        Assert.assertEquals(MAX_DELAY_MILLIS, scheduler.getDelayMillis());
+
+        watched.updateTestDefinition("user", "password", "1", "test", new TestDefinition(), Collections.<String, String>emptyMap(), "comment");
+        Assert.assertEquals(MIN_DELAY_MILLIS, scheduler.getDelayMillis());
+
+        // the watching store is destroyed like any other store bean
+        watched.shutdown();
+        Assert.assertTrue(store.closed);
+    }
+
+    @Test
+    public void testLocalWriteIsNotARemoteChange() throws Exception {
+        final VersionedStore store = new VersionedStore();
+        final AdaptiveRefreshScheduler scheduler = new AdaptiveRefreshScheduler(executor, noop(), "test", MIN_DELAY_MILLIS, MAX_DELAY_MILLIS);
+        final ForwardingProctorStore watched = (ForwardingProctorStore) scheduler.watch(store);
+        scheduler.run();
+
+        watched.updateTestDefinition("user", "password", "1", "test", new TestDefinition(), Collections.<String, String>emptyMap(), "comment");
+        scheduler.run();
+        Assert.assertEquals(0, scheduler.getChangeCount());
+        Assert.assertEquals(2 * MIN_DELAY_MILLIS, scheduler.getDelayMillis());
+
+        // changes after the write still count
+        store.version++;
+        scheduler.run();
+        Assert.assertEquals(1, scheduler.getChangeCount());
+        Assert.assertEquals(MIN_DELAY_MILLIS, scheduler.getDelayMillis());
+    }
+
+    @Test
+    public void testListenersRunAfterEveryRefresh() {
+        final AdaptiveRefreshScheduler scheduler = new AdaptiveRefreshScheduler(executor, noop(), "test", MIN_DELAY_MILLIS, MAX_DELAY_MILLIS);
+        final int[] runs = new int[1];
+        scheduler.addRefreshListener(new Runnable() {
+            @Override
+            public void run() {
+                runs[0]++;
+                throw new IllegalStateException("listener");
+            }
+        });
+        scheduler.run();
+        scheduler.run();
+        Assert.assertEquals(2, runs[0]);
+        Assert.assertEquals(2, executor.getQueue().size());
+    }
+
+    @Test
+    public void testFailedRefreshIsRescheduled() {
+        final AdaptiveRefreshScheduler scheduler = new AdaptiveRefreshScheduler(executor, new Runnable() {
+            @Override
+            public void run() {
+                throw new OutOfMemoryError("refresh");
+            }
+        }, "test", MIN_DELAY_MILLIS, MAX_DELAY_MILLIS);
+        scheduler.run();
+        scheduler.run();
+        Assert.assertEquals(2, executor.getQueue().size());
+        Assert.assertEquals(2, scheduler.getRefreshCount());
+        Assert.assertEquals(MAX_DELAY_MILLIS, scheduler.getDelayMillis());
+    }
+
+    @Test
+    public void testNotRescheduledAfterShutdown() {
+        final AdaptiveRefreshScheduler scheduler = new AdaptiveRefreshScheduler(executor, noop(), "test", MIN_DELAY_MILLIS, MAX_DELAY_MILLIS);
+        executor.shutdown();
+        scheduler.run();
+        Assert.assertEquals(1, scheduler.getRefreshCount());
+        Assert.assertEquals(0, executor.getQueue().size());
+    }
+
+    private static Runnable noop() {
+        return new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+    }
+
+    private static class VersionedStore extends ForwardingProctorStore {
+        private int version = 1;
+        private boolean closed = false;
+
+        private VersionedStore() {
+            super(null);
+        }
+
+        @Override
+        public String getLatestVersion() {
+            return String.valueOf(version);
+        }
+
+        @Override
+        public void updateTestDefinition(final String username,
+                                         final String password,
+                                         final String previousVersion,
+                                         final String testName,
+                                         final TestDefinition testDefinition,
+                                         final Map<String, String> metadata,
+                                         final String comment) {
+            version++;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
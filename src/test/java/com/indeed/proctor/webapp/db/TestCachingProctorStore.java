@@ -0,0 +1,187 @@
+package com.indeed.proctor.webapp.db;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.store.StoreException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Tests for CachingProctorStore.java
+ */
+public class TestCachingProctorStore {
+
+    @Test
+    public void testWriteInvalidatesCurrentMatrix() throws StoreException {
+        final FakeStore delegate = new FakeStore();
+        final CachingProctorStore store = new CachingProctorStore(delegate);
+
+        final TestMatrixVersion first = store.getCurrentTestMatrix();
+        Assert.assertSame(first, store.getCurrentTestMatrix());
+        Assert.assertEquals("1", store.getLatestVersion());
+        Assert.assertEquals(1, delegate.matrixLoads);
+
+        store.updateTestDefinition("user", "password", "1", "a", definition(), Collections.<String, String>emptyMap(), "comment");
+        Assert.assertEquals("2", store.getLatestVersion());
+        Assert.assertEquals("2", store.getCurrentTestMatrix().getVersion());
+        Assert.assertEquals(2, delegate.matrixLoads);
+    }
+
+    @Test
+    public void testFailedWriteInvalidates() throws StoreException {
+        final FakeStore delegate = new FakeStore();
+        final CachingProctorStore store = new CachingProctorStore(delegate);
+        store.getCurrentTestMatrix();
+        delegate.failWrites = true;
+        try {
+            store.deleteTestDefinition("user", "password", "1", "a", definition(), "comment");
+            Assert.fail("delete should fail");
+        } catch (final StoreException.TestUpdateException expected) {
+            // a failed commit may still have changed the store
+        }
+        store.getCurrentTestMatrix();
+        Assert.assertEquals(2, delegate.matrixLoads);
+    }
+
+    @Test
+    public void testRefresh() throws StoreException {
+        final FakeStore delegate = new FakeStore();
+        final CachingProctorStore store = new CachingProctorStore(delegate);
+        store.getCurrentTestMatrix();
+        store.getLatestVersion();
+
+        // nothing new
+        store.refresh();
+        store.getCurrentTestMatrix();
+        Assert.assertEquals(1, delegate.matrixLoads);
+
+        // committed by another webapp
+        delegate.version++;
+        store.refresh();
+        Assert.assertEquals("2", store.getCurrentTestMatrix().getVersion());
+        Assert.assertEquals(2, delegate.matrixLoads);
+    }
+
+    @Test
+    public void testRevisionsStayCached() throws StoreException {
+        final FakeStore delegate = new FakeStore();
+        final CachingProctorStore store = new CachingProctorStore(delegate);
+        final TestDefinition definition = store.getTestDefinition("a", "1");
+        Assert.assertSame(definition, store.getTestDefinition("a", "1"));
+        Assert.assertNull(store.getTestDefinition("missing", "1"));
+        Assert.assertNull(store.getTestDefinition("missing", "1"));
+        store.invalidate();
+        Assert.assertSame(definition, store.getTestDefinition("a", "1"));
+        Assert.assertEquals(2, delegate.definitionLoads);
+    }
+
+    @Test
+    public void testWritesHandTheStoreACopy() throws StoreException {
+        final FakeStore delegate = new FakeStore();
+        final CachingProctorStore store = new CachingProctorStore(delegate);
+        final TestDefinition cached = store.getTestDefinition("a", "1");
+        store.deleteTestDefinition("user", "password", "1", "a", cached, "comment");
+        Assert.assertNotSame(cached, delegate.written);
+        delegate.written.getAllocations().get(0).getRanges().get(0).setLength(0);
+        Assert.assertEquals(1, cached.getAllocations().get(0).getRanges().get(0).getLength(), 0);
+    }
+
+    @Test
+    public void testLoadRacingAWriteIsNotCached() throws StoreException {
+        final FakeStore delegate = new FakeStore();
+        final CachingProctorStore store = new CachingProctorStore(delegate);
+        delegate.onMatrixLoad = new Runnable() {
+            @Override
+            public void run() {
+                // a commit lands while the old matrix is being loaded
+                delegate.onMatrixLoad = null;
+                store.invalidate();
+            }
+        };
+        store.getCurrentTestMatrix();
+        store.getCurrentTestMatrix();
+        Assert.assertEquals(2, delegate.matrixLoads);
+    }
+
+    private static TestDefinition definition() {
+        final TestDefinition definition = new TestDefinition();
+        definition.setSalt("a");
+        definition.setAllocations(Lists.newArrayList(new Allocation(null, Lists.newArrayList(new Range(1, 1)))));
+        return definition;
+    }
+
+    private static class FakeStore extends ForwardingProctorStore {
+        private int version = 1;
+        private int matrixLoads = 0;
+        private int definitionLoads = 0;
+        private boolean failWrites = false;
+        private TestDefinition written;
+        private Runnable onMatrixLoad;
+
+        private FakeStore() {
+            super(null);
+        }
+
+        @Override
+        public TestMatrixVersion getCurrentTestMatrix() {
+            matrixLoads++;
+            if (onMatrixLoad != null) {
+                onMatrixLoad.run();
+            }
+            final Map<String, TestDefinition> tests = Maps.newHashMap();
+            tests.put("a", definition());
+            final TestMatrixVersion matrix = new TestMatrixVersion();
+            matrix.setVersion(String.valueOf(version));
+            matrix.setTestMatrixDefinition(new TestMatrixDefinition(tests));
+            return matrix;
+        }
+
+        @Override
+        public String getLatestVersion() {
+            return String.valueOf(version);
+        }
+
+        @Override
+        public TestDefinition getTestDefinition(final String test, final String fetchRevision) {
+            definitionLoads++;
+            return "a".equals(test) ? definition() : null;
+        }
+
+        @Override
+        public void updateTestDefinition(final String username,
+                                         final String password,
+                                         final String previousVersion,
+                                         final String testName,
+                                         final TestDefinition testDefinition,
+                                         final Map<String, String> metadata,
+                                         final String comment) throws StoreException.TestUpdateException {
+            write(testDefinition);
+        }
+
+        @Override
+        public void deleteTestDefinition(final String username,
+                                         final String password,
+                                         final String previousVersion,
+                                         final String testName,
+                                         final TestDefinition testDefinition,
+                                         final String comment) throws StoreException.TestUpdateException {
+            write(testDefinition);
+        }
+
+        private void write(final TestDefinition testDefinition) throws StoreException.TestUpdateException {
+            version++;
+            if (failWrites) {
+                throw new StoreException.TestUpdateException("failed");
+            }
+            written = testDefinition;
+        }
+    }
+}
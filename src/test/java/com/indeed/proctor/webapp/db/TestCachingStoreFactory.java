@@ -0,0 +1,112 @@
+package com.indeed.proctor.webapp.db;
+
+import com.indeed.proctor.store.ProctorStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * Tests for CachingStoreFactory.java
+ */
+public class TestCachingStoreFactory {
+    private ScheduledThreadPoolExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new ScheduledThreadPoolExecutor(1);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testStoresAreCachedOnce() throws Exception {
+        final CountingStoreFactory delegate = new CountingStoreFactory();
+        final CachingStoreFactory factory = new CachingStoreFactory(delegate, executor, 60000);
+
+        final ProctorStore trunk = factory.getTrunkStore();
+        Assert.assertTrue(trunk instanceof CachingProctorStore);
+        Assert.assertSame(trunk, factory.getTrunkStore());
+        Assert.assertSame(factory.createStore("users/a"), factory.createStore("users/a"));
+        Assert.assertNotSame(trunk, factory.getQaStore());
+
+        Assert.assertEquals(3, delegate.created);
+        // one cache refresh task per store
+        Assert.assertEquals(3, executor.getQueue().size());
+        Assert.assertNull(factory.getWorkspaceDirectory(Environment.WORKING));
+    }
+
+    @Test
+    public void testAdaptivelyRefreshedStoresAreCheckedAfterEveryRefresh() throws Exception {
+        // long enough that the scheduled refresh never fires, the test runs it by hand
+        final AdaptiveRefreshScheduler scheduler = new AdaptiveRefreshScheduler(executor, new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, "test", 3600000, 3600000);
+        final VersionedStoreFactory delegate = new VersionedStoreFactory(scheduler);
+        final CachingStoreFactory factory = new CachingStoreFactory(delegate, executor, 60000);
+
+        final ProctorStore trunk = factory.getTrunkStore();
+        Assert.assertEquals("1", trunk.getLatestVersion());
+        // no cache refresh task of its own
+        Assert.assertEquals(0, executor.getQueue().size());
+
+        delegate.version++;
+        Assert.assertEquals("1", trunk.getLatestVersion());
+        scheduler.run();
+        Assert.assertEquals("2", trunk.getLatestVersion());
+    }
+
+    /* a plain StoreFactory, as implemented outside this project */
+    private static class CountingStoreFactory implements StoreFactory {
+        private int created = 0;
+
+        @Override
+        public ProctorStore getTrunkStore() {
+            return createStore("trunk");
+        }
+
+        @Override
+        public ProctorStore getQaStore() {
+            return createStore("qa");
+        }
+
+        @Override
+        public ProctorStore getProductionStore() {
+            return createStore("production");
+        }
+
+        @Override
+        public ProctorStore createStore(final String relativePath) {
+            created++;
+            return new ForwardingProctorStore(null) {
+            };
+        }
+    }
+
+    private static class VersionedStoreFactory extends CountingStoreFactory {
+        private final AdaptiveRefreshScheduler scheduler;
+        private int version = 1;
+
+        private VersionedStoreFactory(final AdaptiveRefreshScheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public ProctorStore createStore(final String relativePath) {
+            return scheduler.watch(new ForwardingProctorStore(null) {
+                @Override
+                public String getLatestVersion() {
+                    return String.valueOf(version);
+                }
+            });
+        }
+    }
+}
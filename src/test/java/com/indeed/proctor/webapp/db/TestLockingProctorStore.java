@@ -0,0 +1,176 @@
+package com.indeed.proctor.webapp.db;
+
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Tests for LockingProctorStore.java
+ */
+public class TestLockingProctorStore {
+
+    @Test
+    public void testCommitsAndRefreshesTakeTurns() throws Exception {
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        // stand-ins for the trunk and qa stores of one clone, plus its refresher
+        final LockingProctorStore trunk = new LockingProctorStore(new CheckoutStore(inside, overlaps), lock);
+        final LockingProctorStore qa = new LockingProctorStore(new CheckoutStore(inside, overlaps), lock);
+        final Runnable refresher = LockingProctorStore.locking(new Runnable() {
+            @Override
+            public void run() {
+                checkout(inside, overlaps);
+            }
+        }, lock.readLock());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final Future<?> trunkCommits = executor.submit(commits(trunk, start));
+            final Future<?> qaCommits = executor.submit(commits(qa, start));
+            final Future<?> refreshes = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    awaitQuietly(start);
+                    for (int i = 0; i < 20; i++) {
+                        refresher.run();
+                    }
+                }
+            });
+            start.countDown();
+            trunkCommits.get(10, TimeUnit.SECONDS);
+            qaCommits.get(10, TimeUnit.SECONDS);
+            refreshes.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(0, overlaps.get());
+    }
+
+    @Test
+    public void testReadsDoNotWaitForRefresh() throws Exception {
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+        final LockingProctorStore trunk = new LockingProctorStore(new CheckoutStore(new AtomicInteger(), new AtomicInteger()), lock);
+        final CountDownLatch refreshing = new CountDownLatch(1);
+        final CountDownLatch fetched = new CountDownLatch(1);
+        final Runnable refresher = LockingProctorStore.locking(new Runnable() {
+            @Override
+            public void run() {
+                refreshing.countDown();
+                awaitQuietly(fetched);
+            }
+        }, lock.readLock());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<?> refresh = executor.submit(refresher);
+            Assert.assertTrue(refreshing.await(10, TimeUnit.SECONDS));
+            // a slow fetch is under way
+            final Future<TestMatrixVersion> read = executor.submit(new Callable<TestMatrixVersion>() {
+                @Override
+                public TestMatrixVersion call() throws Exception {
+                    return trunk.getCurrentTestMatrix();
+                }
+            });
+            Assert.assertNotNull(read.get(10, TimeUnit.SECONDS));
+            fetched.countDown();
+            refresh.get(10, TimeUnit.SECONDS);
+        } finally {
+            fetched.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testClosingLeavesTheSharedStoreOpen() throws Exception {
+        final AtomicInteger closed = new AtomicInteger();
+        final ForwardingProctorStore core = new ForwardingProctorStore(null) {
+            @Override
+            public void close() {
+                closed.incrementAndGet();
+            }
+        };
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+        new LockingProctorStore(core, lock).shutdown();
+        new LockingProctorStore(core, lock).shutdown();
+        Assert.assertEquals(0, closed.get());
+    }
+
+    private static Runnable commits(final LockingProctorStore store, final CountDownLatch start) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                awaitQuietly(start);
+                for (int i = 0; i < 20; i++) {
+                    try {
+                        store.addTestDefinition("user", "password", "test", new TestDefinition(), Collections.<String, String>emptyMap(), "comment");
+                    } catch (final Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        };
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* counts how often two callers are in the working tree at once */
+    private static void checkout(final AtomicInteger inside, final AtomicInteger overlaps) {
+        if (inside.incrementAndGet() > 1) {
+            overlaps.incrementAndGet();
+        }
+        try {
+            Thread.sleep(1);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        inside.decrementAndGet();
+    }
+
+    private static class CheckoutStore extends ForwardingProctorStore {
+        private final AtomicInteger inside;
+        private final AtomicInteger overlaps;
+
+        private CheckoutStore(final AtomicInteger inside, final AtomicInteger overlaps) {
+            super(null);
+            this.inside = inside;
+            this.overlaps = overlaps;
+        }
+
+        @Override
+        public TestMatrixVersion getCurrentTestMatrix() {
+            return new TestMatrixVersion();
+        }
+
+        @Override
+        public void addTestDefinition(final String username,
+                                      final String password,
+                                      final String testName,
+                                      final TestDefinition testDefinition,
+                                      final Map<String, String> metadata,
+                                      final String comment) {
+            checkout(inside, overlaps);
+        }
+    }
+}
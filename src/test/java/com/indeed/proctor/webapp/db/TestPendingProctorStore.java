@@ -0,0 +1,134 @@
+package com.indeed.proctor.webapp.db;
+
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.store.ProctorStore;
+import com.indeed.proctor.store.StoreException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for PendingProctorStore.java
+ */
+public class TestPendingProctorStore {
+
+    @Test
+    public void testCallsWaitUntilReady() throws Exception {
+        final CountDownLatch ready = new CountDownLatch(1);
+        final ReadyStore delegate = new ReadyStore();
+        final FutureTask<ProctorStore> task = new FutureTask<ProctorStore>(new Callable<ProctorStore>() {
+            @Override
+            public ProctorStore call() throws Exception {
+                Assert.assertTrue(ready.await(5, TimeUnit.SECONDS));
+                return delegate;
+            }
+        });
+        final PendingProctorStore store = new PendingProctorStore("trunk", task);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            executor.execute(task);
+            final Future<TestMatrixVersion> read = executor.submit(new Callable<TestMatrixVersion>() {
+                @Override
+                public TestMatrixVersion call() throws Exception {
+                    return store.getCurrentTestMatrix();
+                }
+            });
+            Thread.sleep(50);
+            Assert.assertFalse("waits for the store", read.isDone());
+
+            ready.countDown();
+            Assert.assertSame(delegate.matrix, read.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals("1", store.getLatestVersion());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedInitialization() throws Exception {
+        final FutureTask<ProctorStore> task = new FutureTask<ProctorStore>(new Callable<ProctorStore>() {
+            @Override
+            public ProctorStore call() throws Exception {
+                throw new IOException("clone failed");
+            }
+        });
+        task.run();
+        final PendingProctorStore store = new PendingProctorStore("qa", task);
+        try {
+            store.getCurrentTestMatrix();
+            Assert.fail("reads should fail");
+        } catch (final StoreException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        try {
+            store.addTestDefinition("user", "password", "test", new TestDefinition(), Collections.<String, String>emptyMap(), "comment");
+            Assert.fail("writes should fail");
+        } catch (final StoreException.TestUpdateException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        Assert.assertFalse(store.cleanUserWorkspace("user"));
+        // nothing to close
+        store.shutdown();
+    }
+
+    @Test
+    public void testShutdownBeforeReadyCancels() {
+        final FutureTask<ProctorStore> task = new FutureTask<ProctorStore>(new Callable<ProctorStore>() {
+            @Override
+            public ProctorStore call() {
+                return new ReadyStore();
+            }
+        });
+        new PendingProctorStore("production", task).shutdown();
+        Assert.assertTrue(task.isCancelled());
+    }
+
+    @Test
+    public void testShutdownClosesTheReadyStore() {
+        final ReadyStore delegate = new ReadyStore();
+        final FutureTask<ProctorStore> task = new FutureTask<ProctorStore>(new Callable<ProctorStore>() {
+            @Override
+            public ProctorStore call() {
+                return delegate;
+            }
+        });
+        task.run();
+        new PendingProctorStore("production", task).shutdown();
+        Assert.assertTrue(delegate.closed);
+    }
+
+    private static class ReadyStore extends ForwardingProctorStore {
+        private final TestMatrixVersion matrix = new TestMatrixVersion();
+        private boolean closed = false;
+
+        private ReadyStore() {
+            super(null);
+        }
+
+        @Override
+        public TestMatrixVersion getCurrentTestMatrix() {
+            return matrix;
+        }
+
+        @Override
+        public String getLatestVersion() {
+            return "1";
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
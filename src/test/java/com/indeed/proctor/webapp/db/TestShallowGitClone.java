@@ -0,0 +1,123 @@
+package com.indeed.proctor.webapp.db;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.eclipse.jgit.api.Git;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tests for ShallowGitClone.java
+ *
+ * These run the git executable and are skipped where it is not on the path.
+ */
+public class TestShallowGitClone {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void assumeGitIsInstalled() {
+        Assume.assumeTrue(isGitInstalled());
+    }
+
+    @Test
+    public void testJGitOpensAndUnshallowsTheClone() throws Exception {
+        final File origin = folder.newFolder("origin");
+        final Git originGit = Git.init().setDirectory(origin).call();
+        try {
+            for (int i = 1; i <= 3; i++) {
+                Files.write("revision " + i, new File(origin, "test.json"), Charsets.UTF_8);
+                originGit.add().addFilepattern("test.json").call();
+                originGit.commit().setMessage("revision " + i).setAuthor("proctor", "proctor@example.com").call();
+            }
+        } finally {
+            originGit.close();
+        }
+
+        // a plain path would make git hard link the objects and ignore --depth
+        final String url = "file://" + origin.getAbsolutePath();
+        final File directory = folder.newFolder("clone");
+        final ShallowGitClone clone = ShallowGitClone.seed(directory, url, null, null);
+        Assert.assertFalse(clone.isHistoryComplete());
+        Assert.assertTrue(new File(directory, ".git/shallow").exists());
+        Assert.assertEquals(1, countCommits(directory));
+
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        try {
+            clone.scheduleBackfill(executor, new ReentrantLock(), TimeUnit.MINUTES.toMillis(5));
+            for (int i = 0; i < 1000 && !clone.isHistoryComplete(); i++) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(clone.isHistoryComplete());
+            Assert.assertFalse(new File(directory, ".git/shallow").exists());
+            Assert.assertEquals(3, countCommits(directory));
+            // the backfill is not run again
+            for (int i = 0; i < 1000 && !executor.getQueue().isEmpty(); i++) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(executor.getQueue().isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // a restart finds the complete clone
+        Assert.assertTrue(ShallowGitClone.seed(directory, url, null, null).isHistoryComplete());
+    }
+
+    @Test
+    public void testCredentialsStayOutOfTheArguments() throws Exception {
+        // an existing workspace, so seed does not clone
+        Assert.assertTrue(new File(folder.getRoot(), ".git").mkdir());
+        final ShallowGitClone clone = ShallowGitClone.seed(folder.getRoot(), "https://example.com/tests.git", "user", "secret");
+        final ProcessBuilder builder = clone.processBuilder(folder.getRoot(), "fetch", "--unshallow", "origin");
+        Assert.assertFalse(builder.command().toString().contains("secret"));
+        Assert.assertFalse(builder.command().toString().contains("user@"));
+        Assert.assertEquals("user", builder.environment().get(ShallowGitClone.USERNAME_VARIABLE));
+        Assert.assertEquals("secret", builder.environment().get(ShallowGitClone.PASSWORD_VARIABLE));
+
+        // git asks the helper when the remote wants credentials
+        final Process process = clone.processBuilder(folder.getRoot(), "credential", "fill").start();
+        final OutputStream in = process.getOutputStream();
+        in.write("protocol=https\nhost=example.com\n\n".getBytes(Charsets.UTF_8));
+        in.close();
+        final String output = new String(ByteStreams.toByteArray(process.getInputStream()), Charsets.UTF_8);
+        Assert.assertEquals(0, process.waitFor());
+        Assert.assertTrue(output, output.contains("username=user\n"));
+        Assert.assertTrue(output, output.contains("password=secret\n"));
+    }
+
+    private static boolean isGitInstalled() {
+        try {
+            final Process process = new ProcessBuilder("git", "--version").redirectErrorStream(true).start();
+            ByteStreams.toByteArray(process.getInputStream());
+            return process.waitFor() == 0;
+        } catch (final IOException e) {
+            return false;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static int countCommits(final File directory) throws Exception {
+        final Git git = Git.open(directory);
+        try {
+            return Iterables.size(git.log().call());
+        } finally {
+            git.close();
+        }
+    }
+}
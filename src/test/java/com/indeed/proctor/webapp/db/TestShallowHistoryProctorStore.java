@@ -0,0 +1,46 @@
+package com.indeed.proctor.webapp.db;
+
+import com.indeed.proctor.store.Revision;
+import com.indeed.proctor.store.StoreException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for ShallowHistoryProctorStore.java
+ */
+public class TestShallowHistoryProctorStore {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHistoryIsUnavailableUntilBackfilled() throws Exception {
+        // a workspace left shallow by an earlier run, so seed neither clones nor calls git
+        Assert.assertTrue(new File(folder.getRoot(), ".git").mkdir());
+        Assert.assertTrue(new File(folder.getRoot(), ".git/shallow").createNewFile());
+        final ShallowGitClone clone = ShallowGitClone.seed(folder.getRoot(), "https://example.com/tests.git", null, null);
+        final ShallowHistoryProctorStore store = new ShallowHistoryProctorStore(new ForwardingProctorStore(null) {
+            @Override
+            public List<Revision> getHistory(final String test, final int start, final int limit) {
+                return Collections.emptyList();
+            }
+        }, clone);
+
+        try {
+            store.getHistory("test", 0, 1);
+            Assert.fail("history of a shallow clone should be unavailable");
+        } catch (final StoreException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(folder.getRoot().getPath()));
+        }
+
+        // a restart finds the backfilled clone
+        Assert.assertTrue(new File(folder.getRoot(), ".git/shallow").delete());
+        final ShallowGitClone backfilled = ShallowGitClone.seed(folder.getRoot(), "https://example.com/tests.git", null, null);
+        Assert.assertEquals(0, new ShallowHistoryProctorStore(store.getDelegate(), backfilled).getHistory("test", 0, 1).size());
+    }
+}
@@ -0,0 +1,80 @@
+package com.indeed.proctor.webapp.db;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.indeed.proctor.common.model.TestDefinition;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for UserWorkspacePool.java
+ */
+public class TestUserWorkspacePool {
+
+    @Test
+    public void testLeastRecentlyUsedWorkspaceIsCleaned() throws Exception {
+        final WorkspaceStore delegate = new WorkspaceStore();
+        // evictions wait for the commit that caused them to leave the pool
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final UserWorkspacePool pool = new UserWorkspacePool(delegate, executor, 2);
+        commit(pool, "a");
+        commit(pool, "b");
+        commit(pool, "a");
+        commit(pool, "c");
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Collections.singletonList("b"), delegate.cleaned);
+        Assert.assertEquals(2, pool.getPooledWorkspaces());
+        Assert.assertEquals(1, pool.getEvictions());
+    }
+
+    @Test
+    public void testShutdownClosesTheStore() {
+        final WorkspaceStore delegate = new WorkspaceStore();
+        // the store beans are destroyed through shutdown, whichever decorator is outermost
+        new UserWorkspacePool(delegate, MoreExecutors.sameThreadExecutor(), 2).shutdown();
+        Assert.assertTrue(delegate.closed);
+    }
+
+    private static void commit(final UserWorkspacePool pool, final String username) throws Exception {
+        pool.updateTestDefinition(username, "password", "1", "test", new TestDefinition(), Collections.<String, String>emptyMap(), "comment");
+    }
+
+    private static class WorkspaceStore extends ForwardingProctorStore {
+        private final List<String> cleaned = Collections.synchronizedList(Lists.<String>newArrayList());
+        private boolean closed = false;
+
+        private WorkspaceStore() {
+            super(null);
+        }
+
+        @Override
+        public boolean cleanUserWorkspace(final String username) {
+            cleaned.add(username);
+            return true;
+        }
+
+        @Override
+        public void updateTestDefinition(final String username,
+                                         final String password,
+                                         final String previousVersion,
+                                         final String testName,
+                                         final TestDefinition testDefinition,
+                                         final Map<String, String> metadata,
+                                         final String comment) {
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+        }
+    }
+}
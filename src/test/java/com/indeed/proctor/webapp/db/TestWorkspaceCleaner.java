@@ -0,0 +1,190 @@
+package com.indeed.proctor.webapp.db;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.indeed.proctor.store.ProctorStore;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for WorkspaceCleaner.java
+ */
+public class TestWorkspaceCleaner {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WorkspaceCleaner cleaner;
+
+    @After
+    public void tearDown() {
+        if (cleaner != null) {
+            cleaner.shutdown();
+        }
+    }
+
+    @Test
+    public void testStaleWorkspacesAreDeleted() throws Exception {
+        final File trunk = folder.newFolder("trunk");
+        final File stale = workspace(trunk, "stale", "0123456789", TimeUnit.DAYS.toMillis(2));
+        final File fresh = workspace(trunk, "fresh", "0123", TimeUnit.DAYS.toMillis(2));
+        // recently touched deep inside, although the workspace directory itself is old
+        Files.write("new", new File(fresh, "dir/recent.json"), Charsets.UTF_8);
+        fresh.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2));
+
+        // kept up to date for every user by the refresher, and old when nothing changed
+        final File shared = workspace(trunk, "shared", "0123456789", TimeUnit.DAYS.toMillis(2));
+
+        // a shared git clone has no per user workspaces
+        final File qa = folder.newFolder("qa");
+        Assert.assertTrue(new File(qa, ".git").mkdir());
+        final File clone = workspace(qa, "matrices", "0123456789", TimeUnit.DAYS.toMillis(2));
+
+        final DirectoryStoreFactory factory = new DirectoryStoreFactory(trunk, qa, null);
+        factory.shared = shared;
+        cleaner = new WorkspaceCleaner(factory);
+        final Map<Environment, WorkspaceCleaner.Result> results = cleaner.cleanStaleWorkspaces(TimeUnit.DAYS.toMillis(1), 3000);
+
+        Assert.assertFalse(stale.exists());
+        Assert.assertTrue(fresh.exists());
+        Assert.assertTrue(shared.exists());
+        Assert.assertTrue(clone.exists());
+        Assert.assertEquals(10, results.get(Environment.WORKING).getBytesReclaimed());
+        Assert.assertEquals(0, results.get(Environment.QA).getBytesReclaimed());
+        for (final WorkspaceCleaner.Result result : results.values()) {
+            Assert.assertTrue(result.toString(), result.isSuccess());
+        }
+    }
+
+    @Test
+    public void testWalksAreThrottled() throws Exception {
+        final File trunk = folder.newFolder("trunk");
+        for (int i = 0; i < 10; i++) {
+            workspace(trunk, "user" + i, "0123456789", 0);
+        }
+        final CountingThrottles throttles = new CountingThrottles();
+        cleaner = new WorkspaceCleaner(new DirectoryStoreFactory(trunk, null, null), throttles);
+        // nothing old enough to delete
+        cleaner.cleanStaleWorkspaces(TimeUnit.DAYS.toMillis(1), 30);
+        // the rate is split between the three stores
+        Assert.assertEquals(10, throttles.filesPerSecond, 0.001);
+        // every workspace, its directory and its file
+        Assert.assertEquals(30, throttles.acquired.get());
+    }
+
+    @Test
+    public void testUserCleanupMeasuresOnlyTheUsersWorkspace() throws Exception {
+        final File trunk = folder.newFolder("trunk");
+        final File alice = workspace(trunk, "svn-alice", "0123456789", 0);
+        for (int i = 0; i < 10; i++) {
+            workspace(trunk, "svn-user" + i, "0123456789", 0);
+        }
+        final CountingThrottles throttles = new CountingThrottles();
+        cleaner = new WorkspaceCleaner(new DirectoryStoreFactory(trunk, null, null), throttles);
+        final ProctorStore store = new ForwardingProctorStore(null) {
+            @Override
+            public boolean cleanUserWorkspace(final String username) {
+                try {
+                    FileUtils.deleteDirectory(alice);
+                    return true;
+                } catch (final IOException e) {
+                    return false;
+                }
+            }
+        };
+
+        final Map<Environment, WorkspaceCleaner.Result> results = cleaner.cleanUserWorkspaces("alice", Collections.singletonMap(Environment.WORKING, store));
+        Assert.assertEquals(10, results.get(Environment.WORKING).getBytesReclaimed());
+        // alice's workspace, its directory and its file, measured before the cleanup
+        Assert.assertEquals(3, throttles.acquired.get());
+    }
+
+    private static File workspace(final File parent, final String name, final String contents, final long ageMillis) throws IOException {
+        final File workspace = new File(parent, name);
+        final File file = new File(workspace, "dir/test.json");
+        Files.createParentDirs(file);
+        Files.write(contents, file, Charsets.UTF_8);
+        final long modified = System.currentTimeMillis() - ageMillis;
+        file.setLastModified(modified);
+        file.getParentFile().setLastModified(modified);
+        workspace.setLastModified(modified);
+        return workspace;
+    }
+
+    private static class CountingThrottles implements WorkspaceCleaner.ThrottleFactory {
+        private final AtomicInteger acquired = new AtomicInteger();
+        private volatile double filesPerSecond;
+
+        @Override
+        public WorkspaceCleaner.Throttle create(final double filesPerSecond) {
+            this.filesPerSecond = filesPerSecond;
+            return new WorkspaceCleaner.Throttle() {
+                @Override
+                public void acquire() {
+                    acquired.incrementAndGet();
+                }
+            };
+        }
+    }
+
+    private static class DirectoryStoreFactory implements WorkspaceStoreFactory {
+        private final File trunk;
+        private final File qa;
+        private final File production;
+        // the trunk refresher's working copy
+        private File shared;
+
+        private DirectoryStoreFactory(final File trunk, final File qa, final File production) {
+            this.trunk = trunk;
+            this.qa = qa;
+            this.production = production;
+        }
+
+        @Override
+        public ProctorStore getTrunkStore() {
+            return null;
+        }
+
+        @Override
+        public ProctorStore getQaStore() {
+            return null;
+        }
+
+        @Override
+        public ProctorStore getProductionStore() {
+            return null;
+        }
+
+        @Override
+        public File getWorkspaceDirectory(final Environment branch) {
+            switch (branch) {
+                case WORKING:
+                    return trunk;
+                case QA:
+                    return qa;
+                default:
+                    return production;
+            }
+        }
+
+        @Override
+        public File getSharedWorkspaceDirectory(final Environment branch) {
+            return branch == Environment.WORKING ? shared : null;
+        }
+
+        @Override
+        public ProctorStore createStore(final String relativePath) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.indeed.proctor.webapp.model;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.indeed.proctor.common.model.Allocation;
+import com.indeed.proctor.common.model.Range;
+import com.indeed.proctor.common.model.TestBucket;
+import com.indeed.proctor.common.model.TestDefinition;
+import com.indeed.proctor.common.model.TestMatrixDefinition;
+import com.indeed.proctor.common.model.TestMatrixVersion;
+import com.indeed.proctor.common.model.TestType;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class TestMatrixListIndex {
+    private static final MatrixListIndex INDEX;
+    static {
+        final Map<String, TestDefinition> tests = Maps.newLinkedHashMap();
+        tests.put("srpcolortst", definition(TestType.USER, "country == 'US'", "Color of the search button"));
+        tests.put("acmefoottst", definition(TestType.PAGE, null, "Footer links"));
+        tests.put("srpbannertst", definition(TestType.USER, " ", "Banner size"));
+        tests.put("SRPlogotst", definition(TestType.RANDOM, "lang == 'en'", "Logo color"));
+        final TestMatrixDefinition definition = new TestMatrixDefinition();
+        definition.setTests(tests);
+        final TestMatrixVersion matrix = new TestMatrixVersion();
+        matrix.setVersion("42");
+        matrix.setTestMatrixDefinition(definition);
+        INDEX = new MatrixListIndex(matrix);
+    }
+
+    @Test
+    public void testSortedAndPaged() {
+        final MatrixListIndex.Page first = INDEX.query(new MatrixListIndex.Filter(null, null, null, null), 1, 3);
+        Assert.assertEquals("42", first.getVersion());
+        Assert.assertEquals(4, first.getTotalTests());
+        Assert.assertEquals(4, first.getMatchingTests());
+        Assert.assertEquals(2, first.getPageCount());
+        Assert.assertEquals(Lists.newArrayList("acmefoottst", "srpbannertst", "srpcolortst"), names(first));
+
+        final MatrixListIndex.Page beyondLast = INDEX.query(new MatrixListIndex.Filter(null, null, null, null), 7, 3);
+        Assert.assertEquals(2, beyondLast.getPage());
+        Assert.assertEquals(Lists.newArrayList("SRPlogotst"), names(beyondLast));
+    }
+
+    @Test
+    public void testFilters() {
+        Assert.assertEquals(Lists.newArrayList("srpbannertst", "srpcolortst", "SRPlogotst"),
+                            names(INDEX.query(new MatrixListIndex.Filter("Srp", null, null, null), 1, 10)));
+        Assert.assertEquals(Lists.newArrayList("srpcolortst", "SRPlogotst"),
+                            names(INDEX.query(new MatrixListIndex.Filter(null, "COLOR", null, null), 1, 10)));
+        Assert.assertEquals(Lists.newArrayList("srpbannertst", "srpcolortst"),
+                            names(INDEX.query(new MatrixListIndex.Filter("srp", null, "user", null), 1, 10)));
+        Assert.assertEquals(Lists.newArrayList("srpcolortst", "SRPlogotst"),
+                            names(INDEX.query(new MatrixListIndex.Filter(null, null, null, Boolean.TRUE), 1, 10)));
+        Assert.assertEquals(0, INDEX.query(new MatrixListIndex.Filter("zzz", null, null, null), 1, 10).getMatchingTests());
+    }
+
+    @Test
+    public void testRowFieldsOnly() throws Exception {
+        final TestDefinition definition = definition(TestType.USER, null, "Button color");
+        definition.setBuckets(Lists.newArrayList(new TestBucket("control", 0, null), new TestBucket("blue", 1, null)));
+        definition.setAllocations(Lists.newArrayList(new Allocation("country == 'US'", Lists.newArrayList(new Range(0, 0.25), new Range(1, 0.75)))));
+        definition.setSalt("buttontst");
+        final TestMatrixDefinition matrixDefinition = new TestMatrixDefinition();
+        matrixDefinition.setTests(Maps.newHashMap(Collections.singletonMap("buttontst", definition)));
+        final TestMatrixVersion matrix = new TestMatrixVersion();
+        matrix.setTestMatrixDefinition(matrixDefinition);
+        final MatrixListIndex index = new MatrixListIndex(matrix);
+
+        final MatrixListIndex.Row row = index.query(new MatrixListIndex.Filter(null, null, null, null), 1, 10).getTests().get(0);
+        Assert.assertEquals("USER", row.getTestType());
+        final MatrixListIndex.RowAllocation allocation = row.getAllocations().get(0);
+        Assert.assertEquals("country == 'US'", allocation.getRule());
+        Assert.assertEquals("blue", allocation.getRanges().get(1).getBucket());
+        Assert.assertEquals(0.75, allocation.getRanges().get(1).getLength(), 0);
+        Assert.assertEquals(index.getColors().get("buttontst").get("blue"), allocation.getRanges().get(1).getColor());
+
+        final String json = new ObjectMapper().writeValueAsString(row);
+        Assert.assertTrue(json, json.contains("\"allocations\""));
+        Assert.assertFalse(json, json.contains("\"definition\""));
+        Assert.assertFalse(json, json.contains("\"salt\""));
+    }
+
+    private static TestDefinition definition(final TestType testType, final String rule, final String description) {
+        final TestDefinition definition = new TestDefinition();
+        definition.setTestType(testType);
+        definition.setRule(rule);
+        definition.setDescription(description);
+        return definition;
+    }
+
+    private static List<String> names(final MatrixListIndex.Page page) {
+        final List<String> names = Lists.newArrayList();
+        for (final MatrixListIndex.Row row : page.getTests()) {
+            names.add(row.getName());
+        }
+        return names;
+    }
+}
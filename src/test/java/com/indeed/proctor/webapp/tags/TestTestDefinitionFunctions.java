@@ -2,6 +2,7 @@ package com.indeed.proctor.webapp.tags;
 
 import com.google.common.collect.ImmutableMap;
 import com.indeed.proctor.common.EnvironmentVersion;
+import com.indeed.proctor.common.RevisionEnvironmentIndex.LiveEnvironments;
 import com.indeed.proctor.store.Revision;
 import com.indeed.proctor.webapp.db.Environment;
 import org.junit.Assert;
@@ -192,6 +193,28 @@ public class TestTestDefinitionFunctions {
 
         Assert.assertTrue("r178374 current production.revision", TestDefinitionFunctions.isCurrentVersionOnProduction(viewing, r178374, CHARMED_STATE_OF_THE_WORLD));
     }
+
+    @Test
+    public void testLiveEnvironmentsMatchIsCurrentVersion() {
+        for (final Environment viewing : Environment.values()) {
+            for (final Revision revision : PROMOTED_REVISIONS.values()) {
+                assertLiveEnvironments(viewing, revision, PROMOTED_STATE_OF_THE_WORLD);
+            }
+            for (final Revision revision : CHARMED_REVISIONS.values()) {
+                assertLiveEnvironments(viewing, revision, CHARMED_STATE_OF_THE_WORLD);
+            }
+        }
+        Assert.assertNull(TestDefinitionFunctions.getLiveEnvironments(Environment.QA, PROMOTED_REVISIONS.get("135"), null));
+    }
+
+    private static void assertLiveEnvironments(final Environment viewing, final Revision revision, final EnvironmentVersion version) {
+        final LiveEnvironments live = TestDefinitionFunctions.getLiveEnvironments(viewing, revision, version);
+        final String description = "r" + revision.getRevision() + " viewing " + viewing;
+        Assert.assertEquals(description, TestDefinitionFunctions.isCurrentVersionOnTrunk(viewing, revision, version), live.isTrunk());
+        Assert.assertEquals(description, TestDefinitionFunctions.isCurrentVersionOnQa(viewing, revision, version), live.isQa());
+        Assert.assertEquals(description, TestDefinitionFunctions.isCurrentVersionOnProduction(viewing, revision, version), live.isProduction());
+    }
+
     private static Revision copyRevision(final Revision r) {
         return new Revision(
                 // create a new String for revision. Revision was previously an int, and a bug escaped because comparisons were via == instead of .equals